@@ -0,0 +1,75 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+/**
+ * Shared fixtures for the benchmarks.
+ */
+final class BenchmarkCaches {
+
+    private static final int VALUE_COUNT = 1024;
+    private static final int VALUE_LENGTH = 100;
+    private static final String[] VALUES = new String[VALUE_COUNT];
+    private static final AtomicInteger MANAGER_COUNT = new AtomicInteger();
+
+    static {
+        StringBuilder sb = new StringBuilder(VALUE_LENGTH);
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            sb.setLength(0);
+            sb.append("value-").append(i).append('-');
+            while (sb.length() < VALUE_LENGTH) {
+                sb.append((char) ('a' + sb.length() % 26));
+            }
+            VALUES[i] = sb.toString();
+        }
+    }
+
+    private BenchmarkCaches() {
+        // static helpers only
+    }
+
+    /**
+     * Creates a cache manager with a disk store path private to this run.
+     *
+     * @param name a prefix for the cache manager name
+     * @return a new cache manager
+     */
+    static CacheManager newCacheManager(String name) {
+        String uniqueName = name + "-" + MANAGER_COUNT.incrementAndGet();
+        String path = System.getProperty("java.io.tmpdir") + File.separator + "ehcache-benchmarks" + File.separator + uniqueName;
+        return new CacheManager(new Configuration().name(uniqueName).diskStore(new DiskStoreConfiguration().path(path)));
+    }
+
+    /**
+     * Returns a pre-built value of around a hundred characters for the given key.
+     * <p>
+     * Values are shared so that the benchmarks measure the cache rather than building the values.
+     *
+     * @param key the key
+     * @return the value to store against it
+     */
+    static String value(int key) {
+        return VALUES[key & (VALUE_COUNT - 1)];
+    }
+}
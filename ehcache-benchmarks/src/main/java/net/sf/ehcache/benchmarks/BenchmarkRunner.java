@@ -0,0 +1,90 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar.
+ * <p>
+ * Accepts the usual JMH command line, and runs the selected benchmarks once per thread count listed in the
+ * {@value #THREADS_PROPERTY} system property (default {@value #DEFAULT_THREADS}). Each run writes its results as JSON
+ * to {@code jmh-result-<threads>.json} in the {@value #RESULTS_DIRECTORY_PROPERTY} directory, so that runs of two
+ * builds can be compared file by file. For example:
+ * <pre>
+ * java -Dehcache.benchmarks.threads=1,8 -jar target/benchmarks.jar CacheGetPutBenchmark -p tier=memory,disk
+ * </pre>
+ * Passing {@code -t} on the command line disables the thread count loop.
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * System property listing the thread counts to run with.
+     */
+    public static final String THREADS_PROPERTY = "ehcache.benchmarks.threads";
+
+    /**
+     * Thread counts run when {@value #THREADS_PROPERTY} is not set.
+     */
+    public static final String DEFAULT_THREADS = "1,4";
+
+    /**
+     * System property naming the directory results are written to.
+     */
+    public static final String RESULTS_DIRECTORY_PROPERTY = "ehcache.benchmarks.results";
+
+    private BenchmarkRunner() {
+        // main class only
+    }
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args JMH command line arguments
+     * @throws RunnerException if a benchmark fails to run
+     * @throws CommandLineOptionException if the arguments cannot be parsed
+     * @throws IOException if JMH cannot write its output
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+            || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats() || commandLine.getThreads().hasValue()) {
+            Main.main(args);
+            return;
+        }
+
+        File results = new File(System.getProperty(RESULTS_DIRECTORY_PROPERTY, "."));
+        for (String threads : System.getProperty(THREADS_PROPERTY, DEFAULT_THREADS).split(",")) {
+            int count = Integer.parseInt(threads.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).threads(count);
+            if (!commandLine.getResult().hasValue()) {
+                options.resultFormat(ResultFormatType.JSON).result(new File(results, "jmh-result-" + count + ".json").getPath());
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
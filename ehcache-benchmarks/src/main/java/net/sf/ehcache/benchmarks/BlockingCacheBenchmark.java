@@ -0,0 +1,147 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.constructs.blocking.BlockingCache;
+import net.sf.ehcache.util.VmUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for a crowd of virtual thread callers to go through a BlockingCache.
+ * <p>
+ * Each invocation starts {@link #callers} virtual threads, each getting {@value #GETS} keys out of {@value #KEYS}, and
+ * populating the misses after a 1ms simulated load. The load parks the virtual thread while it holds the lock of the
+ * key, so the other callers of that key park behind it. Every invocation reads keys not read before, so all keys miss
+ * once per invocation. The callers are started by the benchmark thread itself, so run it with a single thread:
+ * <pre>
+ * java -jar target/benchmarks.jar BlockingCacheBenchmark -t 1
+ * </pre>
+ * Only runs on VMs supporting virtual threads.
+ *
+ * @see BlockingCache#setInterruptible(boolean)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BlockingCacheBenchmark {
+
+    private static final int GETS = 10;
+    private static final int KEYS = 10000;
+
+    /**
+     * Whether waits for the lock of a key are interruptible.
+     */
+    @Param({"false", "true"})
+    public boolean interruptible;
+
+    /**
+     * The number of concurrent callers.
+     */
+    @Param({"10000", "100000"})
+    public int callers;
+
+    private final AtomicInteger rounds = new AtomicInteger();
+    private CacheManager manager;
+    private BlockingCache cache;
+
+    /**
+     * Create the cache.
+     */
+    @Setup
+    public void setUp() {
+        if (!VmUtils.isVirtualThreadSupported()) {
+            throw new IllegalStateException("BlockingCacheBenchmark needs a VM supporting virtual threads");
+        }
+        manager = BenchmarkCaches.newCacheManager("blocking");
+        Cache underlying = new Cache(new CacheConfiguration("blocking", KEYS));
+        manager.addCache(underlying);
+        cache = new BlockingCache(underlying);
+        cache.setInterruptible(interruptible);
+    }
+
+    /**
+     * Shut the cache manager down.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * Run all the callers to completion.
+     *
+     * @throws InterruptedException if interrupted waiting for the callers
+     */
+    @Benchmark
+    public void callers() throws InterruptedException {
+        final String round = rounds.incrementAndGet() + "-";
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[callers];
+        for (int i = 0; i < callers; i++) {
+            final int caller = i;
+            threads[i] = VmUtils.newVirtualThread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < GETS; j++) {
+                            String key = round + ((caller + j * 7919) % KEYS);
+                            if (cache.get(key) == null) {
+                                Thread.sleep(1);
+                                cache.put(new Element(key, BenchmarkCaches.value(caller)));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }, "caller-" + i);
+            threads[i].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " callers failed");
+        }
+    }
+}
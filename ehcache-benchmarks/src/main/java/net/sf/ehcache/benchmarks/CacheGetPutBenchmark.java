@@ -0,0 +1,131 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheConfiguration.DiskIndex;
+import net.sf.ehcache.config.MemoryUnit;
+import net.sf.ehcache.config.PersistenceConfiguration;
+import net.sf.ehcache.config.PersistenceConfiguration.Strategy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cache.get/put throughput against the different store configurations.
+ * <p>
+ * The {@code memory} tier holds the whole working set on heap. The {@code disk} and {@code compact-disk} tiers keep a
+ * tenth of it on heap in front of a {@link net.sf.ehcache.store.disk.DiskStore}, using respectively the chained and the
+ * compact segment index. The {@code offheap} tier does the same in front of the off-heap store.
+ *
+ * @see BenchmarkRunner for running with several thread counts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheGetPutBenchmark {
+
+    /**
+     * The store configuration under test.
+     */
+    @Param({"memory", "disk", "compact-disk", "offheap"})
+    public String tier;
+
+    /**
+     * The number of distinct keys accessed.
+     */
+    @Param({"1000", "100000"})
+    public int entries;
+
+    private CacheManager manager;
+    private Cache cache;
+
+    /**
+     * Create the cache and load the whole working set.
+     */
+    @Setup
+    public void setUp() {
+        manager = BenchmarkCaches.newCacheManager("getput");
+        cache = new Cache(configuration());
+        manager.addCache(cache);
+        for (int i = 0; i < entries; i++) {
+            cache.put(new Element(i, BenchmarkCaches.value(i)));
+        }
+    }
+
+    /**
+     * Shut the cache manager down.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * Read a random key of the working set.
+     *
+     * @return the element read
+     */
+    @Benchmark
+    public Element get() {
+        return cache.get(ThreadLocalRandom.current().nextInt(entries));
+    }
+
+    /**
+     * Overwrite a random key of the working set.
+     */
+    @Benchmark
+    public void put() {
+        int key = ThreadLocalRandom.current().nextInt(entries);
+        cache.put(new Element(key, BenchmarkCaches.value(key)));
+    }
+
+    private CacheConfiguration configuration() {
+        CacheConfiguration configuration = new CacheConfiguration(tier, entries).eternal(true);
+        if ("memory".equals(tier)) {
+            return configuration;
+        }
+        configuration.maxEntriesLocalHeap(Math.max(1, entries / 10));
+        if ("offheap".equals(tier)) {
+            return configuration.overflowToOffHeap(true).maxBytesLocalOffHeap(entries, MemoryUnit.KILOBYTES);
+        }
+        configuration.persistence(new PersistenceConfiguration().strategy(Strategy.LOCALTEMPSWAP));
+        if ("compact-disk".equals(tier)) {
+            configuration.diskIndex(DiskIndex.COMPACT);
+        }
+        return configuration;
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.pool.impl.UnboundedPool;
+import net.sf.ehcache.store.AbstractPolicy;
+import net.sf.ehcache.store.FifoPolicy;
+import net.sf.ehcache.store.LfuPolicy;
+import net.sf.ehcache.store.LruPolicy;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import net.sf.ehcache.store.Policy;
+import net.sf.ehcache.store.chm.SelectableConcurrentHashMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Eviction cost of the on-heap tier.
+ * <p>
+ * {@link #sampleAndSelect()} measures one eviction decision: sampling a {@link SelectableConcurrentHashMap} into a
+ * new array and picking a victim with the policy. {@link #sampleIntoBufferAndSelect()} makes the same decision the way
+ * the MemoryStore does, sampling into a reused buffer; run with {@code -prof gc} to compare allocation rates.
+ * {@link #putEvicting()} measures the end to end cost of a put into a full cache, with keys drawn from twice the cache
+ * capacity so that about half the puts evict.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvictionBenchmark {
+
+    private static final int CONCURRENCY = 100;
+
+    /**
+     * The eviction policy, CLOCK selects the map's own clock eviction. EXACT_LRU and TINY_LFU do not sample the map,
+     * they only apply to the cache benchmarks.
+     */
+    @Param({"LRU", "LFU", "FIFO", "CLOCK", "EXACT_LRU", "TINY_LFU"})
+    public String policy;
+
+    /**
+     * The capacity of the map or cache.
+     */
+    @Param({"10000", "1000000"})
+    public int entries;
+
+    private SelectableConcurrentHashMap map;
+    private Policy selector;
+    private CacheManager manager;
+    private Cache cache;
+
+    /**
+     * Fill both the raw map and the cache to capacity.
+     */
+    @Setup
+    public void setUp() {
+        map = new SelectableConcurrentHashMap(UnboundedPool.UNBOUNDED_ACCESSOR, CONCURRENCY, 0, null);
+        for (int i = 0; i < entries; i++) {
+            map.put(i, new Element(i, BenchmarkCaches.value(i)), 0);
+        }
+        selector = policyFor(policy);
+
+        manager = BenchmarkCaches.newCacheManager("eviction");
+        cache = new Cache(new CacheConfiguration("eviction", entries).eternal(true)
+            .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.fromString(policy)));
+        manager.addCache(cache);
+        for (int i = 0; i < entries; i++) {
+            cache.put(new Element(i, BenchmarkCaches.value(i)));
+        }
+    }
+
+    /**
+     * Shut the cache manager down.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * Sample the map and select an eviction candidate.
+     *
+     * @return the candidate, or the sample itself when the map evicts by clock
+     */
+    @Benchmark
+    public Object sampleAndSelect() {
+        Object hint = ThreadLocalRandom.current().nextInt(entries);
+        Element[] sample = map.getRandomValues(AbstractPolicy.calculateSampleSize(entries), hint);
+        if (selector == null) {
+            return sample;
+        }
+        return selector.selectedBasedOnPolicy(sample, null);
+    }
+
+    /**
+     * Sample the map into a reused buffer and select an eviction candidate.
+     *
+     * @param buffer the calling thread's sample buffer
+     * @return the candidate, or the number of sampled values when the map evicts by clock
+     */
+    @Benchmark
+    public Object sampleIntoBufferAndSelect(SampleBuffer buffer) {
+        Object hint = ThreadLocalRandom.current().nextInt(entries);
+        Element[] sample = buffer.elements;
+        int sampled = map.getRandomValues(sample, sample.length, hint);
+        try {
+            if (selector == null) {
+                return sampled;
+            }
+            return ((AbstractPolicy) selector).selectedBasedOnPolicy(sample, sampled, null);
+        } finally {
+            Arrays.fill(sample, 0, sampled, null);
+        }
+    }
+
+    /**
+     * Put into the full cache.
+     */
+    @Benchmark
+    public void putEvicting() {
+        int key = ThreadLocalRandom.current().nextInt(entries * 2);
+        cache.put(new Element(key, BenchmarkCaches.value(key)));
+    }
+
+    private static Policy policyFor(String name) {
+        if (LruPolicy.NAME.equals(name)) {
+            return new LruPolicy();
+        } else if (LfuPolicy.NAME.equals(name)) {
+            return new LfuPolicy();
+        } else if (FifoPolicy.NAME.equals(name)) {
+            return new FifoPolicy();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * A sample buffer per benchmark thread, as the MemoryStore keeps one per thread.
+     */
+    @State(Scope.Thread)
+    public static class SampleBuffer {
+
+        private final Element[] elements = new Element[AbstractPolicy.calculateSampleSize(Integer.MAX_VALUE)];
+    }
+}
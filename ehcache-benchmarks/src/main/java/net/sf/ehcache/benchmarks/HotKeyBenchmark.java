@@ -0,0 +1,105 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cache.get throughput when all threads read the same few keys.
+ * <p>
+ * Every hit updates the access statistics of the element read, so the threads keep writing to the same few objects.
+ * Compare {@code sampled=false} and {@code sampled=true} over increasing thread counts to see how the sampled access
+ * statistics scale, for instance:
+ * <pre>
+ * java -Dehcache.benchmarks.threads=1,8,32,64 -jar target/benchmarks.jar HotKeyBenchmark
+ * </pre>
+ *
+ * @see CacheConfiguration#setSampleAccessStatistics(boolean)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotKeyBenchmark {
+
+    /**
+     * Whether the access statistics are sampled.
+     */
+    @Param({"false", "true"})
+    public boolean sampled;
+
+    /**
+     * The number of hot keys, amongst a working set of a thousand keys.
+     */
+    @Param({"1", "16"})
+    public int hotKeys;
+
+    private CacheManager manager;
+    private Cache cache;
+
+    /**
+     * Create the cache and load the working set.
+     */
+    @Setup
+    public void setUp() {
+        manager = BenchmarkCaches.newCacheManager("hotkey");
+        cache = new Cache(new CacheConfiguration("hotkey", 1000).eternal(true).sampleAccessStatistics(sampled));
+        manager.addCache(cache);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new Element(i, BenchmarkCaches.value(i)));
+        }
+    }
+
+    /**
+     * Shut the cache manager down.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * Read one of the hot keys.
+     *
+     * @return the element read
+     */
+    @Benchmark
+    public Element get() {
+        return cache.get(ThreadLocalRandom.current().nextInt(hotKeys));
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.Attribute;
+import net.sf.ehcache.search.Results;
+import net.sf.ehcache.search.aggregator.Aggregators;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of searches against a standalone searchable cache.
+ * <p>
+ * Covers a selective equality match, a range match returning about a tenth of the cache, and a grouped aggregation
+ * over the whole cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+    private static final int AGES = 100;
+    private static final int DEPARTMENTS = 50;
+
+    /**
+     * The number of entries in the cache.
+     */
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private CacheManager manager;
+    private Cache cache;
+    private Attribute<Integer> age;
+    private Attribute<String> department;
+    private Attribute<Long> salary;
+
+    /**
+     * Create and populate the searchable cache.
+     */
+    @Setup
+    public void setUp() {
+        manager = BenchmarkCaches.newCacheManager("search");
+        cache = new Cache(new CacheConfiguration("search", 0).eternal(true).searchable(new Searchable()
+            .searchAttribute(new SearchAttribute().name("age").expression("value.getAge()"))
+            .searchAttribute(new SearchAttribute().name("department").expression("value.getDepartment()"))
+            .searchAttribute(new SearchAttribute().name("salary").expression("value.getSalary()"))));
+        manager.addCache(cache);
+        for (int i = 0; i < entries; i++) {
+            cache.put(new Element(i, new Employee(i % AGES, "department-" + (i % DEPARTMENTS), 1000L * (i % 1000))));
+        }
+        age = cache.getSearchAttribute("age");
+        department = cache.getSearchAttribute("department");
+        salary = cache.getSearchAttribute("salary");
+    }
+
+    /**
+     * Shut the cache manager down.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * Keys of the entries with a given department and age, about one in five thousand entries.
+     *
+     * @return the number of results
+     */
+    @Benchmark
+    public int equality() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return size(cache.createQuery().includeKeys()
+            .addCriteria(department.eq("department-" + random.nextInt(DEPARTMENTS)).and(age.eq(random.nextInt(AGES))))
+            .execute());
+    }
+
+    /**
+     * Keys and values of the entries within a tenth of the age range.
+     *
+     * @return the number of results
+     */
+    @Benchmark
+    public int range() {
+        int low = ThreadLocalRandom.current().nextInt(AGES - AGES / 10);
+        return size(cache.createQuery().includeKeys().includeValues().addCriteria(age.between(low, low + AGES / 10, true, false))
+            .execute());
+    }
+
+    /**
+     * Average salary per department over the whole cache.
+     *
+     * @return the number of groups
+     */
+    @Benchmark
+    public int groupBy() {
+        return size(cache.createQuery().includeAttribute(department).includeAggregator(Aggregators.average(salary))
+            .addGroupBy(department).execute());
+    }
+
+    private static int size(Results results) {
+        try {
+            return results.size();
+        } finally {
+            results.discard();
+        }
+    }
+
+    /**
+     * The searchable value type.
+     */
+    public static final class Employee implements Serializable {
+
+        private final int age;
+        private final String department;
+        private final long salary;
+
+        /**
+         * Create an employee.
+         *
+         * @param age the age
+         * @param department the department
+         * @param salary the salary
+         */
+        public Employee(int age, String department, long salary) {
+            this.age = age;
+            this.department = department;
+            this.salary = salary;
+        }
+
+        /**
+         * @return the age
+         */
+        public int getAge() {
+            return age;
+        }
+
+        /**
+         * @return the department
+         */
+        public String getDepartment() {
+            return department;
+        }
+
+        /**
+         * @return the salary
+         */
+        public long getSalary() {
+            return salary;
+        }
+    }
+}
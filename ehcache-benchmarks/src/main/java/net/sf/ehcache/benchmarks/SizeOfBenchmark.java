@@ -0,0 +1,124 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.pool.Size;
+import net.sf.ehcache.pool.impl.DefaultSizeOfEngine;
+import net.sf.ehcache.pool.sizeof.AgentSizeOf;
+import net.sf.ehcache.pool.sizeof.ReflectionSizeOf;
+import net.sf.ehcache.pool.sizeof.SizeOf;
+import net.sf.ehcache.pool.sizeof.UnsafeSizeOf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of sizing on-heap entries with each of the {@link SizeOf} implementations.
+ * <p>
+ * {@link #deepSizeOf()} walks the element graph with the selected implementation, {@link #defaultEngine()} goes
+ * through the {@link DefaultSizeOfEngine} used by byte-based pools, with whatever implementation it picks at runtime.
+ * An implementation that cannot be loaded on the running JVM fails the setup of its own parameter set only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SizeOfBenchmark {
+
+    private static final int MAX_DEPTH = 1000;
+
+    /**
+     * The sizing implementation.
+     */
+    @Param({"reflection", "unsafe", "agent"})
+    public String sizeOf;
+
+    /**
+     * The shape of the value: a string, or a map holding that many string entries.
+     */
+    @Param({"0", "10", "100"})
+    public int mapEntries;
+
+    private SizeOf engine;
+    private DefaultSizeOfEngine defaultEngine;
+    private Element element;
+
+    /**
+     * Build the sizing implementation and the element to size.
+     */
+    @Setup
+    public void setUp() {
+        if ("agent".equals(sizeOf)) {
+            engine = new AgentSizeOf();
+        } else if ("unsafe".equals(sizeOf)) {
+            engine = new UnsafeSizeOf();
+        } else {
+            engine = new ReflectionSizeOf();
+        }
+        defaultEngine = new DefaultSizeOfEngine(MAX_DEPTH, false, true);
+
+        if (mapEntries == 0) {
+            element = new Element("key", BenchmarkCaches.value(0));
+        } else {
+            Map<String, List<String>> value = new HashMap<String, List<String>>();
+            for (int i = 0; i < mapEntries; i++) {
+                List<String> list = new ArrayList<String>();
+                list.add(BenchmarkCaches.value(i));
+                value.put("entry-" + i, list);
+            }
+            element = new Element("key", value);
+        }
+    }
+
+    /**
+     * Size the element graph with the selected implementation.
+     *
+     * @return the computed size
+     */
+    @Benchmark
+    public Size deepSizeOf() {
+        return engine.deepSizeOf(MAX_DEPTH, false, element.getObjectKey(), element, element.getObjectValue());
+    }
+
+    /**
+     * Size the element through the default engine.
+     *
+     * @return the computed size
+     */
+    @Benchmark
+    public Size defaultEngine() {
+        return defaultEngine.sizeOf(element.getObjectKey(), element, null);
+    }
+}
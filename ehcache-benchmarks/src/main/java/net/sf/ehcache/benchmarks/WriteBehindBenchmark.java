@@ -0,0 +1,138 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheEntry;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheWriterConfiguration;
+import net.sf.ehcache.config.CacheWriterConfiguration.WriteMode;
+import net.sf.ehcache.writer.AbstractCacheWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of puts on a cache with a local write-behind queue.
+ * <p>
+ * The writer does nothing but count, so the result is the cost of enqueueing on the caller side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+    /**
+     * Whether the writer is handed batches.
+     */
+    @Param({"false", "true"})
+    public boolean batching;
+
+    /**
+     * Whether pending writes to the same key are coalesced.
+     */
+    @Param({"false", "true"})
+    public boolean coalescing;
+
+    /**
+     * The number of distinct keys written.
+     */
+    @Param({"1000", "100000"})
+    public int entries;
+
+    private final CountingWriter writer = new CountingWriter();
+    private CacheManager manager;
+    private Cache cache;
+
+    /**
+     * Create the cache and register the writer.
+     */
+    @Setup
+    public void setUp() {
+        manager = BenchmarkCaches.newCacheManager("writebehind");
+        cache = new Cache(new CacheConfiguration("writebehind", entries).eternal(true)
+            .cacheWriter(new CacheWriterConfiguration().writeMode(WriteMode.WRITE_BEHIND).maxWriteDelay(1)
+                .writeBatching(batching).writeBatchSize(100).writeCoalescing(coalescing)));
+        manager.addCache(cache);
+        cache.registerCacheWriter(writer);
+    }
+
+    /**
+     * Shut the cache manager down.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * Put through the writer.
+     */
+    @Benchmark
+    public void putWithWriter() {
+        int key = ThreadLocalRandom.current().nextInt(entries);
+        cache.putWithWriter(new Element(key, BenchmarkCaches.value(key)));
+    }
+
+    /**
+     * A writer that only counts what it is given.
+     */
+    private static final class CountingWriter extends AbstractCacheWriter {
+
+        private final AtomicLong count = new AtomicLong();
+
+        @Override
+        public void write(Element element) {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void writeAll(Collection<Element> elements) {
+            count.addAndGet(elements.size());
+        }
+
+        @Override
+        public void delete(CacheEntry entry) {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void deleteAll(Collection<CacheEntry> entries) {
+            count.addAndGet(entries.size());
+        }
+    }
+}
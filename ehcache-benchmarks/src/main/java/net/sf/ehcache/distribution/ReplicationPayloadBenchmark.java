@@ -0,0 +1,171 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SerializerConfiguration;
+import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+import net.sf.ehcache.serializer.CompactSerializer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of encoding and decoding the payload of an asynchronous RMI replication call.
+ * <p>
+ * The payload is built the way {@link RMIAsynchronousCacheReplicator} builds it, then marshalled with Java
+ * serialization as RMI does. Network transfer is not included. This class lives in the distribution package because
+ * the payload encoding is package private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplicationPayloadBenchmark {
+
+    private static final int VALUE_LENGTH = 100;
+
+    /**
+     * The cache serializer: the default Java serialization, or the compact serializer.
+     */
+    @Param({"java", "compact"})
+    public String serializer;
+
+    /**
+     * The number of events per replication call.
+     */
+    @Param({"1", "100", "1000"})
+    public int batchSize;
+
+    private CacheManager manager;
+    private Cache cache;
+    private List<RmiEventMessage> events;
+    private byte[] marshalled;
+
+    /**
+     * Create the cache and the batch of put events.
+     *
+     * @throws IOException if the batch cannot be marshalled
+     */
+    @Setup
+    public void setUp() throws IOException {
+        CacheConfiguration configuration = new CacheConfiguration("replication", 0);
+        if ("compact".equals(serializer)) {
+            configuration.serializer(new SerializerConfiguration().className(CompactSerializer.class.getName()));
+        }
+        manager = new CacheManager(new Configuration().name("ReplicationPayloadBenchmark-" + serializer + "-" + batchSize));
+        cache = new Cache(configuration);
+        manager.addCache(cache);
+
+        StringBuilder value = new StringBuilder(VALUE_LENGTH);
+        while (value.length() < VALUE_LENGTH) {
+            value.append((char) ('a' + value.length() % 26));
+        }
+        events = new ArrayList<RmiEventMessage>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            String key = "key-" + i;
+            events.add(new RmiEventMessage(cache, RmiEventType.PUT, key, new Element(key, value.toString() + i)));
+        }
+        marshalled = encode();
+    }
+
+    /**
+     * Shut the cache manager down.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * Build and marshal the payload of one replication call.
+     *
+     * @return the marshalled bytes
+     * @throws IOException if the payload cannot be marshalled
+     */
+    @Benchmark
+    public byte[] encode() throws IOException {
+        List<? extends Serializable> payload;
+        if (SerializedPayload.isUsedBy(cache)) {
+            payload = Collections.singletonList(SerializedPayload.encodeEvents(cache, events));
+        } else {
+            payload = events;
+        }
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bout);
+        try {
+            oos.writeObject(payload);
+        } finally {
+            oos.close();
+        }
+        return bout.toByteArray();
+    }
+
+    /**
+     * Unmarshal the payload of one replication call back into events.
+     *
+     * @return the events
+     * @throws IOException if the payload cannot be read
+     * @throws ClassNotFoundException if a class in the payload cannot be loaded
+     */
+    @Benchmark
+    public List<RmiEventMessage> decode() throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(marshalled));
+        List<?> payload;
+        try {
+            payload = (List<?>) ois.readObject();
+        } finally {
+            ois.close();
+        }
+        List<RmiEventMessage> decoded = new ArrayList<RmiEventMessage>(batchSize);
+        for (Object message : payload) {
+            if (message instanceof SerializedPayload) {
+                decoded.addAll(((SerializedPayload) message).decodeEvents(cache));
+            } else {
+                decoded.add((RmiEventMessage) message);
+            }
+        }
+        return decoded;
+    }
+}
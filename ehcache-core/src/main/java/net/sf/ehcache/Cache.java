@@ -88,6 +88,7 @@ import net.sf.ehcache.store.TxCopyingCacheStore;
 import net.sf.ehcache.store.compound.ReadWriteSerializationCopyStrategy;
 import net.sf.ehcache.store.disk.DiskStore;
 import net.sf.ehcache.store.disk.StoreUpdateException;
+import net.sf.ehcache.store.offheap.OffHeapStore;
 import net.sf.ehcache.terracotta.InternalEhcache;
 import net.sf.ehcache.terracotta.TerracottaNotRunningException;
 import net.sf.ehcache.transaction.AbstractTransactionStore;
@@ -1118,6 +1119,17 @@ public class Cache implements InternalEhcache, StoreListener {
             } else {
                 onDiskPool = new UnboundedPool();
             }
+
+            // off-heap pool configuration
+            final Pool offHeapPool;
+            if (configuration.getMaxBytesLocalOffHeap() > 0) {
+                PoolEvictor evictor = new FromLargestCachePoolEvictor();
+                offHeapPool = new BoundedPool(configuration.getMaxBytesLocalOffHeap(), evictor, null);
+            } else if (getCacheManager() != null && getCacheManager().getConfiguration().isMaxBytesLocalOffHeapSet()) {
+                offHeapPool = getCacheManager().getOffHeapPool();
+            } else {
+                offHeapPool = new UnboundedPool();
+            }
             /*We don't have to worry about the old value as when we are called the CacheConfiguration should
              have validated and resized the Cachemanager Pool as CacheConfiguration adds itself as first listener.
               so we just handle heap and disk pools resizing.*/
@@ -1196,11 +1208,6 @@ public class Cache implements InternalEhcache, StoreListener {
             } else {
                 FeaturesManager featuresManager = cacheManager.getFeaturesManager();
                 if (featuresManager == null) {
-                    if (configuration.isOverflowToOffHeap()) {
-                        throw new CacheException("Cache " + configuration.getName()
-                                + " cannot be configured because the enterprise features manager could not be found. "
-                                + "You must use an enterprise version of Ehcache to successfully enable overflowToOffHeap.");
-                    }
                     PersistenceConfiguration persistence = configuration.getPersistenceConfiguration();
                     if (persistence != null && Strategy.LOCALRESTARTABLE.equals(persistence.getStrategy())) {
                         throw new CacheException("Cache " + configuration.getName()
@@ -1208,7 +1215,13 @@ public class Cache implements InternalEhcache, StoreListener {
                                 + "You must use an enterprise version of Ehcache to successfully enable enterprise persistence.");
                     }
 
-                    if (useClassicLru && configuration.getMemoryStoreEvictionPolicy().equals(MemoryStoreEvictionPolicy.LRU)) {
+                    if (configuration.isOverflowToOffHeap()) {
+                        if (configuration.isOverflowToDisk()) {
+                            LOG.warn("Cache " + configuration.getName() + " overflows to both off-heap and disk. Without the enterprise "
+                                     + "features manager only the off-heap tier is used.");
+                        }
+                        store = OffHeapStore.createCacheStore(this, onHeapPool, offHeapPool);
+                    } else if (useClassicLru && configuration.getMemoryStoreEvictionPolicy().equals(MemoryStoreEvictionPolicy.LRU)) {
                         Store disk = createDiskStore();
                         store = new LegacyStoreWrapper(new LruMemoryStore(this, disk), disk, registeredEventListeners, configuration);
                     } else {
@@ -1759,7 +1772,7 @@ public class Cache implements InternalEhcache, StoreListener {
             getObserver.end(GetOutcome.MISS_EXPIRED);
             return null;
         } else if (!skipUpdateAccessStatistics(element)) {
-            element.updateAccessStatistics();
+            updateAccessStatistics(element);
         }
         getObserver.end(GetOutcome.HIT);
         return element;
@@ -1791,7 +1804,7 @@ public class Cache implements InternalEhcache, StoreListener {
                     tryRemoveImmediately(key, true);
                     expired.add(key);
                 } else {
-                    element.updateAccessStatistics();
+                    updateAccessStatistics(element);
                 }
             }
         }
@@ -2195,6 +2208,14 @@ public class Cache implements InternalEhcache, StoreListener {
         }
     }
 
+    private void updateAccessStatistics(Element element) {
+        if (configuration.isSampleAccessStatistics()) {
+            element.sampleAccessStatistics();
+        } else {
+            element.updateAccessStatistics();
+        }
+    }
+
     private boolean skipUpdateAccessStatistics(Element element) {
       if (configuration.isFrozen()) {
         boolean forLifetime = element.isEternal();
@@ -3784,9 +3805,28 @@ public class Cache implements InternalEhcache, StoreListener {
      * {@inheritDoc}
      */
     public boolean replace(Element old, Element element) throws NullPointerException, IllegalArgumentException {
+        return replace(old, element, false);
+    }
+
+    /**
+     * Replace the cached element only if the current Element is equal to the supplied old Element.
+     * <p>
+     * Unlike {@link #replace(Element, Element)}, this may be used on a replicated cache when the replace should not be
+     * replicated, e.g. to install an element received from a peer.
+     *
+     * @param old Element to be test against
+     * @param element Element to be cached
+     * @param doNotNotifyCacheReplicators whether the replace is coming from a doNotNotifyCacheReplicators cache peer, in which case this
+     *                                    replace should not initiate a further notification to doNotNotifyCacheReplicators cache peers
+     * @return true if the Element was replaced
+     * @throws NullPointerException if the either Element is null or has a null key
+     * @throws IllegalArgumentException if the two Element keys are non-null but not equal
+     */
+    public boolean replace(Element old, Element element, boolean doNotNotifyCacheReplicators) throws NullPointerException,
+            IllegalArgumentException {
         checkStatus();
 
-        checkCASOperationSupported();
+        checkCASOperationSupported(doNotNotifyCacheReplicators);
 
         if (old.getObjectKey() == null || element.getObjectKey() == null) {
             throw new NullPointerException();
@@ -3811,7 +3851,7 @@ public class Cache implements InternalEhcache, StoreListener {
 
         if (result) {
             element.updateUpdateStatistics();
-            notifyPutInternalListeners(element, false, true);
+            notifyPutInternalListeners(element, doNotNotifyCacheReplicators, true);
             replace2Observer.end(CacheOperationOutcomes.ReplaceTwoArgOutcome.SUCCESS);
         } else {
             replace2Observer.end(CacheOperationOutcomes.ReplaceTwoArgOutcome.FAILURE);
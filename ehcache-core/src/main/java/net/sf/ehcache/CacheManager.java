@@ -47,7 +47,11 @@ import net.sf.ehcache.pool.PoolEvictor;
 import net.sf.ehcache.pool.SizeOfEngine;
 import net.sf.ehcache.pool.SizeOfEngineLoader;
 import net.sf.ehcache.pool.impl.BalancedAccessEvictor;
-import net.sf.ehcache.pool.impl.BoundedPool;
+import net.sf.ehcache.pool.impl.ReservingPool;
+import net.sf.ehcache.pool.impl.SamplingSizeOfEngine;
+import net.sf.ehcache.pool.impl.SerializedSizeOfEngine;
+import net.sf.ehcache.serializer.JavaSerializer;
+import net.sf.ehcache.serializer.Serializer;
 import net.sf.ehcache.store.Store;
 import net.sf.ehcache.terracotta.ClusteredInstanceFactory;
 import net.sf.ehcache.terracotta.TerracottaClient;
@@ -60,6 +64,7 @@ import net.sf.ehcache.transaction.TransactionIDFactory;
 import net.sf.ehcache.transaction.manager.TransactionManagerLookup;
 import net.sf.ehcache.transaction.xa.processor.XARequestProcessor;
 import net.sf.ehcache.util.FailSafeTimer;
+import net.sf.ehcache.util.NamedThreadFactory;
 import net.sf.ehcache.util.PropertyUtil;
 import net.sf.ehcache.writer.writebehind.WriteBehind;
 
@@ -82,6 +87,8 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -140,6 +147,11 @@ public class CacheManager {
      */
     private static final int POOL_SHUTDOWN_TIMEOUT_SECS = 60;
 
+    /**
+     * Percentage of the CacheManager pools the caches may hold in reserve, 0 makes the pools account every byte in one counter
+     */
+    private static final int POOL_SLACK_PERCENT = Integer.getInteger("net.sf.ehcache.CacheManager.poolSlackPercent", 1);
+
    /**
      * The Singleton Instance.
      */
@@ -231,6 +243,8 @@ public class CacheManager {
 
     private volatile Pool onDiskPool;
 
+    private volatile Pool offHeapPool;
+
     private volatile Configuration.RuntimeCfg runtimeCfg;
 
     private volatile DelegatingTransactionIDFactory transactionIDFactory;
@@ -244,6 +258,16 @@ public class CacheManager {
      */
     private ScheduledExecutorService statisticsExecutor;
 
+    /**
+     * Thread pool completing the operations of the asynchronous cache facade, created on first use.
+     */
+    private volatile ExecutorService asyncExecutor;
+
+    /**
+     * Application supplied executor, replacing the asynchronous operations thread pool.
+     */
+    private volatile Executor asyncExecutorOverride;
+
    /**
      * An constructor for CacheManager, which takes a configuration object, rather than one created by parsing
      * an ehcache.xml file. This constructor gives complete control over the creation of the CacheManager.
@@ -454,11 +478,15 @@ public class CacheManager {
        if (configuration.isMaxBytesLocalHeapSet()) {
             PoolEvictor evictor = new BalancedAccessEvictor();
             SizeOfEngine sizeOfEngine = createSizeOfEngine(null);
-            this.onHeapPool = new BoundedPool(configuration.getMaxBytesLocalHeap(), evictor, sizeOfEngine);
+            this.onHeapPool = createPool(configuration.getMaxBytesLocalHeap(), evictor, sizeOfEngine);
         }
         if (configuration.isMaxBytesLocalDiskSet()) {
             PoolEvictor evictor = new BalancedAccessEvictor();
-            this.onDiskPool = new BoundedPool(configuration.getMaxBytesLocalDisk(), evictor, null);
+            this.onDiskPool = createPool(configuration.getMaxBytesLocalDisk(), evictor, null);
+        }
+        if (configuration.isMaxBytesLocalOffHeapSet()) {
+            PoolEvictor evictor = new BalancedAccessEvictor();
+            this.offHeapPool = createPool(configuration.getMaxBytesLocalOffHeap(), evictor, null);
         }
 
         boolean clustered = false;
@@ -642,6 +670,50 @@ public class CacheManager {
         return statisticsExecutor;
     }
 
+    /**
+     * Returns the executor completing the operations of the asynchronous cache facade,
+     * {@link net.sf.ehcache.constructs.async.AsyncCache}, for the caches of this CacheManager.
+     * <p>
+     * Unless an executor was set with {@link #setAsyncExecutor(Executor)}, a pool of daemon threads sized by
+     * {@link Configuration#getAsyncExecutorPoolSize()} is created on the first call and shut down with this CacheManager.
+     *
+     * @return the asynchronous operations executor
+     * @throws IllegalStateException if this CacheManager is shut down
+     */
+    public Executor getAsyncExecutor() throws IllegalStateException {
+        Executor override = asyncExecutorOverride;
+        if (override != null) {
+            return override;
+        }
+        ExecutorService executor = asyncExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (this) {
+            if (status.equals(Status.STATUS_SHUTDOWN)) {
+                throw new IllegalStateException("The CacheManager has been shut down. It can no longer be used.");
+            }
+            if (asyncExecutor == null) {
+                int poolSize = getConfiguration().getAsyncExecutorPoolSize();
+                if (poolSize == 0) {
+                    poolSize = Runtime.getRuntime().availableProcessors();
+                }
+                asyncExecutor = Executors.newFixedThreadPool(poolSize, new NamedThreadFactory("Async Cache Operations-" + getName(), true));
+            }
+            return asyncExecutor;
+        }
+    }
+
+    /**
+     * Sets the executor completing the operations of the asynchronous cache facade, e.g. the event loop group or worker
+     * pool of the application. An executor set this way is never shut down by this CacheManager.
+     *
+     * @param executor the executor to use, or null to revert to the pool of this CacheManager
+     */
+    public void setAsyncExecutor(Executor executor) {
+        this.asyncExecutorOverride = executor;
+    }
+
     /**
      * Return this cache manager's shared on-heap pool
      *
@@ -660,6 +732,15 @@ public class CacheManager {
         return onDiskPool;
     }
 
+    /**
+     * Return this cache manager's shared off-heap pool
+     *
+     * @return this cache manager's shared off-heap pool
+     */
+    public Pool getOffHeapPool() {
+        return offHeapPool;
+    }
+
     /**
      * Returns unique cluster-wide id for this cache-manager. Only applicable when running in "cluster" mode, e.g. when this cache-manager
      * contains caches clustered with Terracotta. Otherwise returns blank string.
@@ -1577,6 +1658,9 @@ public class CacheManager {
 
             try {
                 ConcurrencyUtil.shutdownAndWaitForTermination(statisticsExecutor, POOL_SHUTDOWN_TIMEOUT_SECS);
+                if (asyncExecutor != null) {
+                    ConcurrencyUtil.shutdownAndWaitForTermination(asyncExecutor, POOL_SHUTDOWN_TIMEOUT_SECS);
+                }
             } catch (TimeoutException e) {
                 LOG.warn(e.getMessage(), e);
             }
@@ -2033,6 +2117,19 @@ public class CacheManager {
         return softLockManager;
     }
 
+    /**
+     * Creates a pool shared by the caches of this CacheManager, letting them reserve bytes up to the configured slack.
+     *
+     * @param maximumPoolSize the maximum size of the pool, in bytes
+     * @param evictor the pool evictor
+     * @param sizeOfEngine the default SizeOf engine, or {@code null}
+     * @return the pool
+     */
+    private static Pool createPool(long maximumPoolSize, PoolEvictor evictor, SizeOfEngine sizeOfEngine) {
+        long slack = maximumPoolSize / 100 * Math.max(0, Math.min(POOL_SLACK_PERCENT, 100));
+        return new ReservingPool(maximumPoolSize, slack, evictor, sizeOfEngine);
+    }
+
     /**
      * Creates a SizeOfEngine for a cache.
      * It will check for a System property on what class to instantiate.
@@ -2071,8 +2168,17 @@ public class CacheManager {
             if (sizeOfPolicyConfiguration == null) {
                 sizeOfPolicyConfiguration = getConfiguration().getSizeOfPolicyConfiguration();
             }
-            return SizeOfEngineLoader.newSizeOfEngine(sizeOfPolicyConfiguration.getMaxDepth(),
+            SizeOfEngine sizeOfEngine = SizeOfEngineLoader.newSizeOfEngine(sizeOfPolicyConfiguration.getMaxDepth(),
                 sizeOfPolicyConfiguration.getMaxDepthExceededBehavior().isAbort(), false);
+            if (sizeOfPolicyConfiguration.getSizingMode().isSerialized()) {
+                Serializer serializer = cache != null ? cache.getCacheConfiguration().getSerializer() : new JavaSerializer();
+                sizeOfEngine = new SerializedSizeOfEngine(sizeOfEngine, serializer);
+            }
+            if (sizeOfPolicyConfiguration.getSampleInterval() > 0) {
+                sizeOfEngine = new SamplingSizeOfEngine(sizeOfEngine, sizeOfPolicyConfiguration.getSampleInterval(),
+                    sizeOfPolicyConfiguration.getMaxEstimationErrorPercent());
+            }
+            return sizeOfEngine;
         }
     }
 
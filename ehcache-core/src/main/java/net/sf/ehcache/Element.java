@@ -31,6 +31,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
@@ -60,6 +61,16 @@ public class Element implements Serializable, Cloneable {
 
     private static final long NOT_SET_ID = 0;
 
+    /**
+     * Resolution of the last access time when access statistics are sampled, see {@link #sampleAccessStatistics()}.
+     */
+    public static final long ACCESS_TIME_RESOLUTION_MILLIS = 100;
+
+    /**
+     * One in that many hits is counted when access statistics are sampled, see {@link #sampleAccessStatistics()}.
+     */
+    public static final int HIT_SAMPLING_RATE = 16;
+
     static {
         if (ELEMENT_VERSION_AUTO) {
             LOG.warn("Note that net.sf.ehcache.element.version.auto is set and user provided version will not be honored");
@@ -542,6 +553,25 @@ public class Element implements Serializable, Cloneable {
         HIT_COUNT_UPDATER.incrementAndGet(this);
     }
 
+    /**
+     * Records a hit like {@link #updateAccessStatistics()}, without writing to this element on most hits once it is hot.
+     * <p>
+     * The last access time is only set once it is older than {@link #ACCESS_TIME_RESOLUTION_MILLIS}. The first
+     * {@link #HIT_SAMPLING_RATE} hits are counted exactly, then one hit in {@link #HIT_SAMPLING_RATE}, picked at random,
+     * adds {@link #HIT_SAMPLING_RATE} to the hit count, which stays right on average.
+     */
+    public final void sampleAccessStatistics() {
+        long now = getCurrentTime();
+        if (now - lastAccessTime >= ACCESS_TIME_RESOLUTION_MILLIS) {
+            lastAccessTime = now;
+        }
+        if (hitCount < HIT_SAMPLING_RATE) {
+            HIT_COUNT_UPDATER.incrementAndGet(this);
+        } else if (ThreadLocalRandom.current().nextInt(HIT_SAMPLING_RATE) == 0) {
+            HIT_COUNT_UPDATER.addAndGet(this, HIT_SAMPLING_RATE);
+        }
+    }
+
     /**
      * Sets the last access time to now without updating the hit count.
      */
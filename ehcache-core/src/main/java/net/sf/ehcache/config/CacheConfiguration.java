@@ -26,6 +26,7 @@ import net.sf.ehcache.config.PinningConfiguration.Store;
 import net.sf.ehcache.config.TerracottaConfiguration.Consistency;
 import net.sf.ehcache.event.NotificationScope;
 import net.sf.ehcache.search.attribute.DynamicAttributesExtractor;
+import net.sf.ehcache.serializer.Serializer;
 import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 import net.sf.ehcache.store.compound.ReadWriteCopyStrategy;
 
@@ -115,11 +116,36 @@ public class CacheConfiguration implements Cloneable {
      */
     public static final int DEFAULT_DISK_ACCESS_STRIPES = 1;
 
+    /**
+     * Default disk access mode.
+     */
+    public static final DiskAccessMode DEFAULT_DISK_ACCESS_MODE = DiskAccessMode.STRIPED;
+
+    /**
+     * Default disk store index.
+     */
+    public static final DiskIndex DEFAULT_DISK_INDEX = DiskIndex.CHAINED;
+
+    /**
+     * Default number of disk writer threads.
+     */
+    public static final int DEFAULT_DISK_WRITER_THREADS = 1;
+
+    /**
+     * Default maximum number of elements written to disk in one batch.
+     */
+    public static final int DEFAULT_DISK_WRITE_BATCH_SIZE = 64;
+
     /**
      * Logging is off by default.
      */
     public static final boolean DEFAULT_LOGGING = false;
 
+    /**
+     * The access statistics of elements are updated on every hit by default.
+     */
+    public static final boolean DEFAULT_SAMPLE_ACCESS_STATISTICS = false;
+
     /**
      * The default memory store eviction policy is LRU.
      */
@@ -183,6 +209,11 @@ public class CacheConfiguration implements Cloneable {
      */
     public static final CopyStrategyConfiguration DEFAULT_COPY_STRATEGY_CONFIGURATION = new CopyStrategyConfiguration();
 
+    /**
+     * Default serializerConfiguration
+     */
+    public static final SerializerConfiguration DEFAULT_SERIALIZER_CONFIGURATION = new SerializerConfiguration();
+
     /**
      * Default maxBytesOnHeap value
      */
@@ -303,6 +334,26 @@ public class CacheConfiguration implements Cloneable {
      */
     protected volatile int diskAccessStripes = DEFAULT_DISK_ACCESS_STRIPES;
 
+    /**
+     * The I/O engine used to access the disk store's data file.
+     */
+    protected volatile DiskAccessMode diskAccessMode = DEFAULT_DISK_ACCESS_MODE;
+
+    /**
+     * The structure used to index the disk store's entries on heap.
+     */
+    protected volatile DiskIndex diskIndex = DEFAULT_DISK_INDEX;
+
+    /**
+     * The number of threads writing spooled elements to the disk store.
+     */
+    protected volatile int diskWriterThreads = DEFAULT_DISK_WRITER_THREADS;
+
+    /**
+     * The maximum number of spooled elements written to disk in one batch.
+     */
+    protected volatile int diskWriteBatchSize = DEFAULT_DISK_WRITE_BATCH_SIZE;
+
     /**
      * The interval in seconds between runs of the disk expiry thread.
      * <p>
@@ -318,6 +369,11 @@ public class CacheConfiguration implements Cloneable {
      */
     protected volatile boolean logging = DEFAULT_LOGGING;
 
+    /**
+     * Indicates whether the access statistics of elements are sampled on hits. False by default.
+     */
+    protected volatile boolean sampleAccessStatistics = DEFAULT_SAMPLE_ACCESS_STATISTICS;
+
     /**
      * whether elements can overflow to off heap memory when the in-memory cache
      * has reached the set limit.
@@ -384,6 +440,7 @@ public class CacheConfiguration implements Cloneable {
     private volatile TransactionalMode transactionalMode;
     private volatile boolean statistics = DEFAULT_STATISTICS;
     private volatile CopyStrategyConfiguration copyStrategyConfiguration = DEFAULT_COPY_STRATEGY_CONFIGURATION.copy();
+    private volatile SerializerConfiguration serializerConfiguration = DEFAULT_SERIALIZER_CONFIGURATION.copy();
     private volatile SizeOfPolicyConfiguration sizeOfPolicyConfiguration;
     private volatile PersistenceConfiguration persistenceConfiguration;
     private volatile ElementValueComparatorConfiguration elementValueComparatorConfiguration =
@@ -471,6 +528,8 @@ public class CacheConfiguration implements Cloneable {
             config.cacheWriterConfiguration = cacheWriterConfiguration.clone();
         }
 
+        config.serializerConfiguration = serializerConfiguration.copy();
+
         cloneCacheLoaderConfigurations(config);
 
         cloneCacheDecoratorConfigurations(config);
@@ -686,6 +745,37 @@ public class CacheConfiguration implements Cloneable {
         return this;
     }
 
+    /**
+     * Enables or disables the sampling of element access statistics on cache hits.
+     * <p>
+     * By default every hit increments the hit count of the element and sets its last access time, so that many threads
+     * reading the same hot keys keep writing to the same elements. When sampled, the last access time is only written
+     * once it is stale by {@link Element#ACCESS_TIME_RESOLUTION_MILLIS}, and past the first few hits only a random
+     * sample of the hits is counted, each weighing for the hits skipped. LRU and LFU eviction, and time to idle expiry,
+     * then rely on statistics accurate to that resolution.
+     * <p>
+     * This property can be modified dynamically while the cache is operating.
+     *
+     * @param sample If true, access statistics are sampled, otherwise updated on every hit
+     * @see Element#sampleAccessStatistics()
+     */
+    public final void setSampleAccessStatistics(boolean sample) {
+        checkDynamicChange();
+        this.sampleAccessStatistics = sample;
+    }
+
+    /**
+     * Builder to enable or disable the sampling of element access statistics on cache hits.
+     *
+     * @param sample If true, access statistics are sampled, otherwise updated on every hit
+     * @return this configuration instance
+     * @see #setSampleAccessStatistics(boolean)
+     */
+    public final CacheConfiguration sampleAccessStatistics(boolean sample) {
+        setSampleAccessStatistics(sample);
+        return this;
+    }
+
     /**
      * Sets the maximum objects to be held in memory (0 = no limit).
      * <p>
@@ -1068,6 +1158,138 @@ public class CacheConfiguration implements Cloneable {
         return this;
     }
 
+    /**
+     * Sets the I/O engine used to access the disk store's data file. By default the data file is accessed through
+     * {@link #setDiskAccessStripes(int) striped} RandomAccessFiles.
+     *
+     * @param diskAccessMode one of STRIPED, CHANNEL or MAPPED
+     */
+    public final void setDiskAccessMode(String diskAccessMode) {
+        assertArgumentNotNull("Cache diskAccessMode", diskAccessMode);
+        diskAccessMode(DiskAccessMode.valueOf(diskAccessMode.toUpperCase()));
+    }
+
+    /**
+     * Builder which sets the I/O engine used to access the disk store's data file.
+     *
+     * @param diskAccessMode one of STRIPED, CHANNEL or MAPPED
+     * @return this configuration instance
+     * @see #setDiskAccessMode(String)
+     */
+    public final CacheConfiguration diskAccessMode(String diskAccessMode) {
+        setDiskAccessMode(diskAccessMode);
+        return this;
+    }
+
+    /**
+     * Builder which sets the I/O engine used to access the disk store's data file.
+     *
+     * @param diskAccessMode the disk access mode
+     * @return this configuration instance
+     * @see #setDiskAccessMode(String)
+     */
+    public final CacheConfiguration diskAccessMode(DiskAccessMode diskAccessMode) {
+        if (diskAccessMode == null) {
+            throw new IllegalArgumentException("DiskAccessMode value must be non-null");
+        }
+        checkDynamicChange();
+        this.diskAccessMode = diskAccessMode;
+        return this;
+    }
+
+    /**
+     * Sets the structure used to index the disk store's entries on heap. By default entries are indexed in a chained
+     * hash table holding the key and a marker object for every entry.
+     *
+     * @param diskIndex one of CHAINED or COMPACT
+     */
+    public final void setDiskIndex(String diskIndex) {
+        assertArgumentNotNull("Cache diskIndex", diskIndex);
+        diskIndex(DiskIndex.valueOf(diskIndex.toUpperCase()));
+    }
+
+    /**
+     * Builder which sets the structure used to index the disk store's entries on heap.
+     *
+     * @param diskIndex one of CHAINED or COMPACT
+     * @return this configuration instance
+     * @see #setDiskIndex(String)
+     */
+    public final CacheConfiguration diskIndex(String diskIndex) {
+        setDiskIndex(diskIndex);
+        return this;
+    }
+
+    /**
+     * Builder which sets the structure used to index the disk store's entries on heap.
+     *
+     * @param diskIndex the disk index
+     * @return this configuration instance
+     * @see #setDiskIndex(String)
+     */
+    public final CacheConfiguration diskIndex(DiskIndex diskIndex) {
+        if (diskIndex == null) {
+            throw new IllegalArgumentException("DiskIndex value must be non-null");
+        }
+        checkDynamicChange();
+        this.diskIndex = diskIndex;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads writing spooled elements to the disk store. Elements are assigned to a writer by
+     * key hash. By default there is one writer thread.
+     *
+     * @param threads number of writer threads
+     */
+    public void setDiskWriterThreads(int threads) {
+        checkDynamicChange();
+        if (threads <= 0) {
+            this.diskWriterThreads = DEFAULT_DISK_WRITER_THREADS;
+        } else {
+            this.diskWriterThreads = threads;
+        }
+    }
+
+    /**
+     * Builder which sets the number of threads writing spooled elements to the disk store.
+     *
+     * @param threads number of writer threads
+     * @return this configuration instance
+     * @see #setDiskWriterThreads(int)
+     */
+    public final CacheConfiguration diskWriterThreads(int threads) {
+        setDiskWriterThreads(threads);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of spooled elements a disk writer drains and writes to the data file in one
+     * contiguous write. A batch size of 1 writes each element individually.
+     *
+     * @param batchSize maximum number of elements per write
+     */
+    public void setDiskWriteBatchSize(int batchSize) {
+        checkDynamicChange();
+        if (batchSize <= 0) {
+            this.diskWriteBatchSize = DEFAULT_DISK_WRITE_BATCH_SIZE;
+        } else {
+            this.diskWriteBatchSize = batchSize;
+        }
+    }
+
+    /**
+     * Builder which sets the maximum number of spooled elements written to disk in one batch.
+     *
+     * @param batchSize maximum number of elements per write
+     * @return this configuration instance
+     * @see #setDiskWriteBatchSize(int)
+     */
+    public final CacheConfiguration diskWriteBatchSize(int batchSize) {
+        setDiskWriteBatchSize(batchSize);
+        return this;
+    }
+
     /**
      * Sets the maximum number elements on Disk. 0 means unlimited.
      * <p>
@@ -1240,7 +1462,17 @@ public class CacheConfiguration implements Cloneable {
      */
     public ReadWriteCopyStrategy<Element> getCopyStrategy() {
         // todo really make this pluggable through config!
-        return copyStrategyConfiguration.getCopyStrategyInstance(getClassLoader());
+        return copyStrategyConfiguration.getCopyStrategyInstance(getClassLoader(), getSerializer());
+    }
+
+    /**
+     * Getter to the configured Serializer.
+     * This will always return the same unique instance per cache
+     *
+     * @return the {@link Serializer} instance for this cache
+     */
+    public Serializer getSerializer() {
+        return serializerConfiguration.getSerializerInstance(getClassLoader());
     }
 
     /**
@@ -1310,6 +1542,27 @@ public class CacheConfiguration implements Cloneable {
         this.copyStrategyConfiguration = copyStrategyConfiguration;
     }
 
+    /**
+     * Sets the SerializerConfiguration for this cache
+     *
+     * @param serializerConfiguration the Serializer Configuration
+     */
+    public void addSerializer(SerializerConfiguration serializerConfiguration) {
+        checkDynamicChange();
+        this.serializerConfiguration = serializerConfiguration;
+    }
+
+    /**
+     * Builder method to set the SerializerConfiguration for this cache
+     *
+     * @param serializerConfiguration the Serializer Configuration
+     * @return this configuration instance
+     */
+    public CacheConfiguration serializer(SerializerConfiguration serializerConfiguration) {
+        addSerializer(serializerConfiguration);
+        return this;
+    }
+
     /**
      * Sets the ElementValueComparatorConfiguration for this cache
      * The default configuration will setup a {@link net.sf.ehcache.store.DefaultElementValueComparator}
@@ -1644,6 +1897,15 @@ public class CacheConfiguration implements Cloneable {
         return this.copyStrategyConfiguration;
     }
 
+    /**
+     * Returns the serializerConfiguration
+     *
+     * @return the serializerConfiguration
+     */
+    public SerializerConfiguration getSerializerConfiguration() {
+        return this.serializerConfiguration;
+    }
+
     /**
      * Returns the elementComparatorConfiguration
      *
@@ -2619,6 +2881,34 @@ public class CacheConfiguration implements Cloneable {
         return diskAccessStripes;
     }
 
+    /**
+     * Accessor
+     */
+    public DiskAccessMode getDiskAccessMode() {
+        return diskAccessMode;
+    }
+
+    /**
+     * Accessor
+     */
+    public DiskIndex getDiskIndex() {
+        return diskIndex;
+    }
+
+    /**
+     * Accessor
+     */
+    public int getDiskWriterThreads() {
+        return diskWriterThreads;
+    }
+
+    /**
+     * Accessor
+     */
+    public int getDiskWriteBatchSize() {
+        return diskWriteBatchSize;
+    }
+
     /**
      * Accessor
      */
@@ -2634,6 +2924,15 @@ public class CacheConfiguration implements Cloneable {
         return logging;
     }
 
+    /**
+     * Accessor
+     *
+     * @return true if element access statistics are sampled on hits, otherwise false
+     */
+    public boolean isSampleAccessStatistics() {
+        return sampleAccessStatistics;
+    }
+
     /**
      * Accessor
      *
@@ -2882,6 +3181,46 @@ public class CacheConfiguration implements Cloneable {
         }
     }
 
+    /**
+     * The I/O engine used by the local disk store to access its data file.
+     * <p>
+     * All modes share the same on-disk layout, a persistent data file written in one mode can be read in any other.
+     */
+    public static enum DiskAccessMode {
+
+        /**
+         * {@link #getDiskAccessStripes() diskAccessStripes} RandomAccessFiles, each accessed under its own lock
+         */
+        STRIPED,
+
+        /**
+         * Lock-free positional reads and writes through a single FileChannel
+         */
+        CHANNEL,
+
+        /**
+         * Memory-mapped segments of the data file, the file is never shrunk while the cache is alive
+         */
+        MAPPED
+    }
+
+    /**
+     * The structure used by the local disk store to index its entries on heap.
+     */
+    public static enum DiskIndex {
+
+        /**
+         * A chained hash table referencing the key and an on-heap marker object for every entry
+         */
+        CHAINED,
+
+        /**
+         * An open-addressed table of primitive arrays, keys of entries written to disk are read back from the data file
+         * rather than kept on heap
+         */
+        COMPACT
+    }
+
     /**
      * Add a listener to this cache configuration
      *
@@ -62,6 +62,10 @@ public final class Configuration {
      * Default value for defaultTransactionTimeoutInSeconds
      */
     public static final int  DEFAULT_TRANSACTION_TIMEOUT = 15;
+    /**
+     * Default value for asyncExecutorPoolSize, zero standing for the number of available processors
+     */
+    public static final int  DEFAULT_ASYNC_EXECUTOR_POOL_SIZE = 0;
     /**
      * Default value for maxBytesLocalHeap when not explicitly set
      */
@@ -181,6 +185,7 @@ public final class Configuration {
 
     private String cacheManagerName;
     private int defaultTransactionTimeoutInSeconds = DEFAULT_TRANSACTION_TIMEOUT;
+    private int asyncExecutorPoolSize = DEFAULT_ASYNC_EXECUTOR_POOL_SIZE;
     private Monitoring monitoring = DEFAULT_MONITORING;
     private DiskStoreConfiguration diskStoreConfiguration;
     private CacheConfiguration defaultCacheConfiguration;
@@ -409,6 +414,41 @@ public final class Configuration {
         return defaultTransactionTimeoutInSeconds;
     }
 
+    /**
+     * Builder to set the number of threads of the executor completing the asynchronous cache operations.
+     *
+     * @param asyncExecutorPoolSize the pool size, zero standing for the number of available processors
+     * @return this configuration instance
+     */
+    public final Configuration asyncExecutorPoolSize(int asyncExecutorPoolSize) {
+        setAsyncExecutorPoolSize(asyncExecutorPoolSize);
+        return this;
+    }
+
+    /**
+     * Allows BeanHandler to set the number of threads of the executor completing the asynchronous cache operations.
+     */
+    public final void setAsyncExecutorPoolSize(int asyncExecutorPoolSize) {
+        if (asyncExecutorPoolSize < 0) {
+            throw new IllegalArgumentException("asyncExecutorPoolSize must be non-negative, was " + asyncExecutorPoolSize);
+        }
+        final String prop = "asyncExecutorPoolSize";
+        final boolean publish = checkDynChange(prop);
+        final int oldValue = this.asyncExecutorPoolSize;
+        this.asyncExecutorPoolSize = asyncExecutorPoolSize;
+        if (publish) {
+            firePropertyChange(prop, oldValue, asyncExecutorPoolSize);
+        }
+    }
+
+    /**
+     * Get the number of threads of the executor completing the asynchronous cache operations
+     * @return the pool size, zero standing for the number of available processors
+     */
+    public final int getAsyncExecutorPoolSize() {
+        return asyncExecutorPoolSize;
+    }
+
     /**
      * Builder to set the monitoring approach
      *
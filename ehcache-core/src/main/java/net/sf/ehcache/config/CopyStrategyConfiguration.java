@@ -15,7 +15,10 @@
  */
 package net.sf.ehcache.config;
 
+import java.lang.reflect.InvocationTargetException;
+
 import net.sf.ehcache.Element;
+import net.sf.ehcache.serializer.Serializer;
 import net.sf.ehcache.store.compound.CopyStrategy;
 import net.sf.ehcache.store.compound.LegacyCopyStrategyAdapter;
 import net.sf.ehcache.store.compound.ReadWriteCopyStrategy;
@@ -64,6 +67,19 @@ public class CopyStrategyConfiguration {
      * @return the instance
      */
     public synchronized ReadWriteCopyStrategy<Element> getCopyStrategyInstance(ClassLoader loader) {
+        return getCopyStrategyInstance(loader, null);
+    }
+
+    /**
+     * Get (and potentially) instantiate the instance
+     * <p>
+     * Strategies that declare a constructor accepting a {@link Serializer} are handed the cache's serializer.
+     *
+     * @param loader the loader to load the strategy class with
+     * @param serializer the cache's serializer, may be null
+     * @return the instance
+     */
+    public synchronized ReadWriteCopyStrategy<Element> getCopyStrategyInstance(ClassLoader loader, Serializer serializer) {
         if (strategy == null) {
             Class copyStrategy = null;
             try {                
@@ -72,7 +88,7 @@ public class CopyStrategyConfiguration {
                 }
                 
                 copyStrategy = loader.loadClass(className);
-                Object strategyObject = copyStrategy.newInstance();
+                Object strategyObject = newInstance(copyStrategy, serializer);
                 if (strategyObject instanceof CopyStrategy) {
                     strategy = new LegacyCopyStrategyAdapter((CopyStrategy) strategyObject);
                 } else {
@@ -84,6 +100,8 @@ public class CopyStrategyConfiguration {
                 throw new RuntimeException("Couldn't instantiate the CopyStrategy instance!", e);
             } catch (IllegalAccessException e) {
                 throw new RuntimeException("Couldn't instantiate the CopyStrategy instance!", e);
+            } catch (InvocationTargetException e) {
+                throw new RuntimeException("Couldn't instantiate the CopyStrategy instance!", e.getCause());
             } catch (ClassCastException e) {
                 throw new RuntimeException(copyStrategy != null ? copyStrategy.getSimpleName()
                         + " doesn't implement net.sf.ehcache.store.compound.CopyStrategy" : "Error with CopyStrategy", e);
@@ -92,6 +110,18 @@ public class CopyStrategyConfiguration {
         return strategy;
     }
 
+    private static Object newInstance(Class<?> type, Serializer serializer)
+            throws InstantiationException, IllegalAccessException, InvocationTargetException {
+        if (serializer != null) {
+            try {
+                return type.getConstructor(Serializer.class).newInstance(serializer);
+            } catch (NoSuchMethodException e) {
+                // fall through to the no-arg constructor
+            }
+        }
+        return type.newInstance();
+    }
+
     /**
      * Make copy of this configuration
      * @return a copy of this configuration
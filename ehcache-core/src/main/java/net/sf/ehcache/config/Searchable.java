@@ -47,6 +47,16 @@ public class Searchable {
      */
     public static final boolean DYNAMIC_INDEXING_DEFAULT = false;
 
+    /**
+     * Default for maintaining secondary indexes on the search attributes
+     */
+    public static final boolean INDEXED_DEFAULT = false;
+
+    /**
+     * Default number of parallel tasks a query is split into
+     */
+    public static final int PARALLELISM_DEFAULT = 1;
+
     /**
      * The defined search attributes (if any) indexed by name
      */
@@ -55,6 +65,8 @@ public class Searchable {
     private boolean keys;
     private boolean values;
     private boolean allowDynamicIndexing = DYNAMIC_INDEXING_DEFAULT;
+    private boolean indexed = INDEXED_DEFAULT;
+    private int parallelism = PARALLELISM_DEFAULT;
 
     /**
      * Constructor
@@ -232,4 +244,70 @@ public class Searchable {
     public void allowDynamicIndexing(boolean allow) {
         setAllowDynamicIndexing(allow);
     }
+
+    /**
+     * Are secondary indexes maintained on the user defined search attributes?
+     *
+     * @return true if the search attributes are indexed
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Toggle maintenance of secondary indexes on the user defined search attributes.
+     * <p>
+     * Indexed attributes answer equality, collection and range criteria without scanning the cache, at the cost of
+     * extra heap and of updating the indexes on every mutation. Only applies to standalone on-heap caches.
+     *
+     * @param indexed
+     */
+    public void setIndexed(boolean indexed) {
+        checkDynamicChange();
+        this.indexed = indexed;
+    }
+
+    /**
+     * Toggle maintenance of secondary indexes on the user defined search attributes
+     * @param indexed
+     */
+    public void indexed(boolean indexed) {
+        setIndexed(indexed);
+    }
+
+    /**
+     * Get the number of parallel tasks the queries on this cache are split into
+     *
+     * @return the query parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of parallel tasks the queries on this cache are split into.
+     * <p>
+     * Queries with a parallelism greater than one evaluate the segments of the cache on the common fork-join pool,
+     * then merge the partial results. The default of one evaluates queries on the calling thread. Values lower than one
+     * reset the parallelism to its default. A query can override it with
+     * {@link net.sf.ehcache.search.ExecutionHints#setParallelism(int)}.
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        checkDynamicChange();
+        if (parallelism <= 0) {
+            this.parallelism = PARALLELISM_DEFAULT;
+        } else {
+            this.parallelism = parallelism;
+        }
+    }
+
+    /**
+     * Set the number of parallel tasks the queries on this cache are split into
+     * @param parallelism
+     */
+    public void parallelism(int parallelism) {
+        setParallelism(parallelism);
+    }
 }
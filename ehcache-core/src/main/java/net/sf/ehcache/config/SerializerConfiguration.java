@@ -0,0 +1,167 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.ehcache.config;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.serializer.Serializer;
+import net.sf.ehcache.serializer.StatefulSerializer;
+
+/**
+ * Configuration of the {@link Serializer} a cache uses to turn its elements into bytes for the disk store, for
+ * serialization based copy strategies and for replication.
+ */
+public class SerializerConfiguration {
+
+    /**
+     * The default serializer implementation, Java serialization.
+     */
+    public static final String DEFAULT_IMPL = "net.sf.ehcache.serializer.JavaSerializer";
+
+    private volatile String className = DEFAULT_IMPL;
+    private Serializer serializer;
+
+    /**
+     * Returns the fully qualified class name for the Serializer to use
+     *
+     * @return FQCN to the Serializer implementation to use
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Sets the fully qualified class name for the Serializer to use
+     *
+     * @param className
+     *            FQCN
+     */
+    public void setClass(final String className) {
+        this.className = className;
+    }
+
+    /**
+     * Builder method to set the fully qualified class name for the Serializer to use
+     *
+     * @param className FQCN
+     * @return this configuration instance
+     */
+    public SerializerConfiguration className(final String className) {
+        setClass(className);
+        return this;
+    }
+
+    /**
+     * Sets the Serializer instance to use
+     *
+     * @param serializer the serializer
+     */
+    public synchronized void setSerializerInstance(Serializer serializer) {
+        this.serializer = serializer;
+        if (serializer != null) {
+            this.className = serializer.getClass().getName();
+        }
+    }
+
+    /**
+     * Whether this configuration uses the default Java serializer.
+     *
+     * @return true if Java serialization is used
+     */
+    public boolean isDefault() {
+        return DEFAULT_IMPL.equals(className);
+    }
+
+    /**
+     * Get (and potentially) instantiate the instance
+     *
+     * @param loader the loader to load the serializer class with
+     * @return the instance
+     */
+    public synchronized Serializer getSerializerInstance(ClassLoader loader) {
+        if (serializer == null) {
+            serializer = newSerializerInstance(loader);
+        }
+        return serializer;
+    }
+
+    /**
+     * Instantiate a new instance of the configured serializer.
+     * <p>
+     * Serializers may be stateful, independent instances are used where the bytes produced are consumed by another
+     * JVM, such as when replicating.
+     *
+     * @param loader the loader to load the serializer class with
+     * @return a new instance
+     */
+    public Serializer newSerializerInstance(ClassLoader loader) {
+        Class serializerClass = null;
+        try {
+            if (isDefault()) {
+                loader = getClass().getClassLoader();
+            }
+            serializerClass = loader.loadClass(className);
+            return (Serializer) serializerClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new CacheException("Couldn't find the Serializer class!", e);
+        } catch (InstantiationException e) {
+            throw new CacheException("Couldn't instantiate the Serializer instance!", e);
+        } catch (IllegalAccessException e) {
+            throw new CacheException("Couldn't instantiate the Serializer instance!", e);
+        } catch (ClassCastException e) {
+            throw new CacheException(serializerClass != null ? serializerClass.getSimpleName()
+                    + " doesn't implement net.sf.ehcache.serializer.Serializer" : "Error with Serializer", e);
+        }
+    }
+
+    /**
+     * Make copy of this configuration
+     * <p>
+     * A stateful serializer instance is never shared between copies, the copy will instantiate its own.
+     *
+     * @return a copy of this configuration
+     */
+    protected synchronized SerializerConfiguration copy() {
+        SerializerConfiguration clone = new SerializerConfiguration();
+        clone.setClass(getClassName());
+        if (serializer != null && !(serializer instanceof StatefulSerializer)) {
+            clone.setSerializerInstance(serializer);
+        }
+        return clone;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return className == null ? 0 : className.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        SerializerConfiguration other = (SerializerConfiguration) obj;
+        return className == null ? other.className == null : className.equals(other.className);
+    }
+}
@@ -33,6 +33,18 @@ public class SizeOfPolicyConfiguration implements Cloneable {
      * Default max traversal depth exceeded behavior
      */
     public static final MaxDepthExceededBehavior DEFAULT_MAX_DEPTH_EXCEEDED_BEHAVIOR = MaxDepthExceededBehavior.CONTINUE;
+    /**
+     * Default sizing mode
+     */
+    public static final SizingMode DEFAULT_SIZING_MODE = SizingMode.GRAPH;
+    /**
+     * Default sample interval, every element being sized
+     */
+    public static final int DEFAULT_SAMPLE_INTERVAL = 0;
+    /**
+     * Default max estimation error, in percent
+     */
+    public static final int DEFAULT_MAX_ESTIMATION_ERROR_PERCENT = 10;
 
     /**
      * Enum of the possible behaviors of the SizeOf engine when the max depth is exceeded
@@ -67,8 +79,35 @@ public class SizeOfPolicyConfiguration implements Cloneable {
         }
     }
 
+    /**
+     * Enum of the possible ways the SizeOf engine measures the elements
+     */
+    public static enum SizingMode {
+        /**
+         * Measure the on-heap size of the elements by walking their object graph
+         */
+        GRAPH,
+
+        /**
+         * Measure the elements by the length of their serialized form, plus a fixed overhead per element
+         */
+        SERIALIZED;
+
+        /**
+         * Returns true if this mode is equal to SERIALIZED
+         *
+         * @return true if this mode is equal to SERIALIZED
+         */
+        public boolean isSerialized() {
+            return this == SERIALIZED;
+        }
+    }
+
     private volatile int maxDepth = DEFAULT_MAX_SIZEOF_DEPTH;
     private volatile MaxDepthExceededBehavior maxDepthExceededBehavior = DEFAULT_MAX_DEPTH_EXCEEDED_BEHAVIOR;
+    private volatile SizingMode sizingMode = DEFAULT_SIZING_MODE;
+    private volatile int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+    private volatile int maxEstimationErrorPercent = DEFAULT_MAX_ESTIMATION_ERROR_PERCENT;
 
 
     /**
@@ -143,6 +182,115 @@ public class SizeOfPolicyConfiguration implements Cloneable {
         return this;
     }
 
+    /**
+     * Gets the way the SizeOf engine measures the elements
+     *
+     * @return the sizing mode
+     */
+    public SizingMode getSizingMode() {
+        return sizingMode;
+    }
+
+    /**
+     * Sets the way the SizeOf engine measures the elements
+     *
+     * @param sizingMode the sizing mode
+     */
+    public void setSizingMode(String sizingMode) {
+        if (sizingMode == null) {
+            throw new IllegalArgumentException("sizingMode must be non-null");
+        }
+        this.sizingMode(SizingMode.valueOf(SizingMode.class, sizingMode.toUpperCase()));
+    }
+
+    /**
+     * Builder method to set the way the SizeOf engine measures the elements
+     *
+     * @param sizingMode the sizing mode
+     * @return this SizeOfPolicyConfiguration object
+     */
+    public SizeOfPolicyConfiguration sizingMode(SizingMode sizingMode) {
+        this.sizingMode = sizingMode;
+        return this;
+    }
+
+    /**
+     * Builder method to set the way the SizeOf engine measures the elements using a String object
+     *
+     * @param sizingMode the sizing mode
+     * @return this SizeOfPolicyConfiguration object
+     */
+    public SizeOfPolicyConfiguration sizingMode(String sizingMode) {
+        setSizingMode(sizingMode);
+        return this;
+    }
+
+    /**
+     * Gets the interval at which the SizeOf engine still sizes elements whose size it estimates
+     *
+     * @return the sample interval, 0 if every element is sized
+     */
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Sets the interval at which the SizeOf engine still sizes elements whose size it estimates.
+     * Once the sizes of the elements of a value class are known to be stable, only every Nth of them is sized,
+     * the others being estimated. 0 disables the estimation.
+     *
+     * @param sampleInterval the sample interval, 0 if every element is to be sized
+     */
+    public void setSampleInterval(int sampleInterval) {
+        if (sampleInterval < 0) {
+            throw new IllegalArgumentException("sampleInterval must be positive or 0");
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Builder method to set the interval at which the SizeOf engine still sizes elements whose size it estimates
+     *
+     * @param sampleInterval the sample interval, 0 if every element is to be sized
+     * @return this SizeOfPolicyConfiguration object
+     */
+    public SizeOfPolicyConfiguration sampleInterval(int sampleInterval) {
+        setSampleInterval(sampleInterval);
+        return this;
+    }
+
+    /**
+     * Gets the spread of the sizes of a value class, in percent of their mean, beyond which they are not estimated
+     *
+     * @return the max estimation error, in percent
+     */
+    public int getMaxEstimationErrorPercent() {
+        return maxEstimationErrorPercent;
+    }
+
+    /**
+     * Sets the spread of the sizes of a value class, in percent of their mean, beyond which they are not estimated
+     *
+     * @param maxEstimationErrorPercent the max estimation error, in percent
+     */
+    public void setMaxEstimationErrorPercent(int maxEstimationErrorPercent) {
+        if (maxEstimationErrorPercent < 0) {
+            throw new IllegalArgumentException("maxEstimationErrorPercent must be positive or 0");
+        }
+        this.maxEstimationErrorPercent = maxEstimationErrorPercent;
+    }
+
+    /**
+     * Builder method to set the spread of the sizes of a value class, in percent of their mean, beyond which they are not estimated
+     *
+     * @param maxEstimationErrorPercent the max estimation error, in percent
+     * @return this SizeOfPolicyConfiguration object
+     */
+    public SizeOfPolicyConfiguration maxEstimationErrorPercent(int maxEstimationErrorPercent) {
+        setMaxEstimationErrorPercent(maxEstimationErrorPercent);
+        return this;
+    }
+
     /**
      * Helper method which resolves the max depth of a cache, using the cache manager's one if none was configured
      * on the cache itself.
@@ -199,6 +347,9 @@ public class SizeOfPolicyConfiguration implements Cloneable {
         int result = 1;
         result = prime * result + maxDepth;
         result = prime * result + ((maxDepthExceededBehavior == null) ? 0 : maxDepthExceededBehavior.hashCode());
+        result = prime * result + ((sizingMode == null) ? 0 : sizingMode.hashCode());
+        result = prime * result + sampleInterval;
+        result = prime * result + maxEstimationErrorPercent;
         return result;
     }
 
@@ -210,6 +361,7 @@ public class SizeOfPolicyConfiguration implements Cloneable {
             return false;
         }
         SizeOfPolicyConfiguration other = (SizeOfPolicyConfiguration) obj;
-        return (maxDepth == other.maxDepth && maxDepthExceededBehavior == other.maxDepthExceededBehavior);
+        return (maxDepth == other.maxDepth && maxDepthExceededBehavior == other.maxDepthExceededBehavior
+            && sizingMode == other.sizingMode && sampleInterval == other.sampleInterval && maxEstimationErrorPercent == other.maxEstimationErrorPercent);
     }
 }
@@ -25,6 +25,7 @@ import net.sf.ehcache.config.CopyStrategyConfiguration;
 import net.sf.ehcache.config.ElementValueComparatorConfiguration;
 import net.sf.ehcache.config.PersistenceConfiguration;
 import net.sf.ehcache.config.PinningConfiguration;
+import net.sf.ehcache.config.SerializerConfiguration;
 import net.sf.ehcache.config.SizeOfPolicyConfiguration;
 import net.sf.ehcache.config.TerracottaConfiguration;
 import net.sf.ehcache.config.generator.model.NodeElement;
@@ -97,6 +98,16 @@ public class CacheConfigurationElement extends SimpleNodeElement {
                 String.valueOf(CacheConfiguration.DEFAULT_CLEAR_ON_FLUSH)));
         element.addAttribute(new SimpleNodeAttribute("diskAccessStripes", cacheConfiguration.getDiskAccessStripes()).optional(true)
                 .defaultValue(CacheConfiguration.DEFAULT_DISK_ACCESS_STRIPES));
+        element.addAttribute(new SimpleNodeAttribute("diskAccessMode", cacheConfiguration.getDiskAccessMode()).optional(true)
+                .defaultValue(CacheConfiguration.DEFAULT_DISK_ACCESS_MODE));
+        element.addAttribute(new SimpleNodeAttribute("diskIndex", cacheConfiguration.getDiskIndex()).optional(true)
+                .defaultValue(CacheConfiguration.DEFAULT_DISK_INDEX));
+        element.addAttribute(new SimpleNodeAttribute("diskWriterThreads", cacheConfiguration.getDiskWriterThreads()).optional(true)
+                .defaultValue(CacheConfiguration.DEFAULT_DISK_WRITER_THREADS));
+        element.addAttribute(new SimpleNodeAttribute("diskWriteBatchSize", cacheConfiguration.getDiskWriteBatchSize()).optional(true)
+                .defaultValue(CacheConfiguration.DEFAULT_DISK_WRITE_BATCH_SIZE));
+        element.addAttribute(new SimpleNodeAttribute("sampleAccessStatistics", cacheConfiguration.isSampleAccessStatistics())
+                .optional(true).defaultValue(CacheConfiguration.DEFAULT_SAMPLE_ACCESS_STATISTICS));
         element.addAttribute(new SimpleNodeAttribute("diskSpoolBufferSizeMB", cacheConfiguration.getDiskSpoolBufferSizeMB()).optional(true)
                 .defaultValue(CacheConfiguration.DEFAULT_SPOOL_BUFFER_SIZE));
         element
@@ -158,6 +169,7 @@ public class CacheConfigurationElement extends SimpleNodeElement {
             addPersistenceConfigurationElement(element, cacheConfiguration);
         }
         addCopyStrategyConfigurationElement(element, cacheConfiguration);
+        addSerializerConfigurationElement(element, cacheConfiguration);
         addElementValueComparatorConfigurationElement(element, cacheConfiguration);
         addCacheWriterConfigurationElement(element, cacheConfiguration);
         addAllFactoryConfigsAsChildElements(element, "cacheDecoratorFactory", cacheConfiguration.getCacheDecoratorConfigurations());
@@ -207,6 +219,14 @@ public class CacheConfigurationElement extends SimpleNodeElement {
         }
     }
 
+    private static void addSerializerConfigurationElement(NodeElement element, CacheConfiguration cacheConfiguration) {
+        SerializerConfiguration serializerConfiguration = cacheConfiguration.getSerializerConfiguration();
+        if (serializerConfiguration != null &&
+                !serializerConfiguration.equals(CacheConfiguration.DEFAULT_SERIALIZER_CONFIGURATION)) {
+            element.addChildElement(new SerializerConfigurationElement(element, serializerConfiguration));
+        }
+    }
+
     private static void addElementValueComparatorConfigurationElement(NodeElement element, CacheConfiguration cacheConfiguration) {
         ElementValueComparatorConfiguration elementValueComparatorConfiguration = cacheConfiguration
                 .getElementValueComparatorConfiguration();
@@ -77,6 +77,8 @@ public class ConfigurationElement extends SimpleNodeElement {
                 String.valueOf(Configuration.DEFAULT_DYNAMIC_CONFIG)));
         addAttribute(new SimpleNodeAttribute("defaultTransactionTimeoutInSeconds", configuration.getDefaultTransactionTimeoutInSeconds())
                 .optional(true).defaultValue(String.valueOf(Configuration.DEFAULT_TRANSACTION_TIMEOUT)));
+        addAttribute(new SimpleNodeAttribute("asyncExecutorPoolSize", configuration.getAsyncExecutorPoolSize())
+                .optional(true).defaultValue(String.valueOf(Configuration.DEFAULT_ASYNC_EXECUTOR_POOL_SIZE)));
         testAddMaxBytesLocalHeapAttribute();
         testAddMaxBytesLocalOffHeapAttribute();
         testAddMaxBytesLocalDiskAttribute();
@@ -57,6 +57,9 @@ public class SearchableConfigurationElement extends SimpleNodeElement {
         addAttribute(new SimpleNodeAttribute("values", searchable.values()).optional(true).defaultValue(Searchable.VALUES_DEFAULT));
         addAttribute(new SimpleNodeAttribute("allowDynamicIndexing", searchable.isDynamicIndexingAllowed()).optional(true)
                 .defaultValue(Searchable.DYNAMIC_INDEXING_DEFAULT));
+        addAttribute(new SimpleNodeAttribute("indexed", searchable.isIndexed()).optional(true).defaultValue(Searchable.INDEXED_DEFAULT));
+        addAttribute(new SimpleNodeAttribute("parallelism", searchable.getParallelism()).optional(true)
+                .defaultValue(Searchable.PARALLELISM_DEFAULT));
     }
 
 }
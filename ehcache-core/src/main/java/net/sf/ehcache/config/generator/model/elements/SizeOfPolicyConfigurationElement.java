@@ -62,6 +62,12 @@ public class SizeOfPolicyConfigurationElement extends SimpleNodeElement {
             .optional(true).defaultValue(SizeOfPolicyConfiguration.DEFAULT_MAX_SIZEOF_DEPTH));
         addAttribute(new SimpleNodeAttribute("maxDepthExceededBehavior", sizeOfPolicyConfiguration.getMaxDepthExceededBehavior())
             .optional(true).defaultValue(SizeOfPolicyConfiguration.DEFAULT_MAX_DEPTH_EXCEEDED_BEHAVIOR));
+        addAttribute(new SimpleNodeAttribute("sizingMode", sizeOfPolicyConfiguration.getSizingMode())
+            .optional(true).defaultValue(SizeOfPolicyConfiguration.DEFAULT_SIZING_MODE));
+        addAttribute(new SimpleNodeAttribute("sampleInterval", sizeOfPolicyConfiguration.getSampleInterval())
+            .optional(true).defaultValue(SizeOfPolicyConfiguration.DEFAULT_SAMPLE_INTERVAL));
+        addAttribute(new SimpleNodeAttribute("maxEstimationErrorPercent", sizeOfPolicyConfiguration.getMaxEstimationErrorPercent())
+            .optional(true).defaultValue(SizeOfPolicyConfiguration.DEFAULT_MAX_ESTIMATION_ERROR_PERCENT));
     }
 
 }
@@ -0,0 +1,264 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.constructs.async;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.constructs.EhcacheDecoratorAdapter;
+import net.sf.ehcache.loader.CacheLoader;
+
+/**
+ * A cache decorator adding non-blocking variants of the main {@link Ehcache} operations, returning
+ * {@link CompletableFuture}s.
+ * <p>
+ * Reads of elements held in the heap tier complete on the calling thread. All other operations, which may fault from
+ * disk or off-heap, call a {@link CacheLoader} or a {@link net.sf.ehcache.writer.CacheWriter}, or go over the network to
+ * a clustered store, run on an executor, so that the calling thread - e.g. an event loop - is never blocked. Unless an
+ * executor is passed to the constructor, the one of the {@link CacheManager} is used, see
+ * {@link CacheManager#getAsyncExecutor()}.
+ * <p>
+ * Dependent stages attached with the non-async methods of {@link CompletableFuture} run on the thread completing the
+ * future: callers that must resume on their own threads should use the <code>*Async(..., Executor)</code> variants.
+ * <p>
+ * The blocking operations of {@link Ehcache} remain available and are passed through to the underlying cache.
+ */
+public class AsyncCache extends EhcacheDecoratorAdapter {
+
+    private final Executor executor;
+
+    /**
+     * Creates an asynchronous facade running its operations on the executor of the CacheManager of the cache.
+     *
+     * @param underlyingCache the cache to decorate
+     */
+    public AsyncCache(Ehcache underlyingCache) {
+        this(underlyingCache, null);
+    }
+
+    /**
+     * Creates an asynchronous facade running its operations on the given executor.
+     *
+     * @param underlyingCache the cache to decorate
+     * @param executor the executor to run the operations on, or null to use the one of the CacheManager of the cache
+     */
+    public AsyncCache(Ehcache underlyingCache, Executor executor) {
+        super(underlyingCache);
+        this.executor = executor;
+    }
+
+    /**
+     * Gets an element from the cache, updating its access statistics.
+     *
+     * @param key the key of the element
+     * @return a future completed with the element, or null if it is not in the cache or expired
+     * @see Ehcache#get(Object)
+     */
+    public CompletableFuture<Element> getAsync(final Object key) {
+        try {
+            if (underlyingCache.isElementInMemory(key)) {
+                return CompletableFuture.completedFuture(underlyingCache.get(key));
+            }
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+        return supply(new Supplier<Element>() {
+            public Element get() {
+                return underlyingCache.get(key);
+            }
+        });
+    }
+
+    /**
+     * Gets the elements of a collection of keys from the cache, updating their access statistics.
+     *
+     * @param keys the keys of the elements
+     * @return a future completed with a map of the keys to their elements, a key mapping to null if it is not in the cache
+     * @see Ehcache#getAll(Collection)
+     */
+    public CompletableFuture<Map<Object, Element>> getAllAsync(final Collection<?> keys) {
+        return supply(new Supplier<Map<Object, Element>>() {
+            public Map<Object, Element> get() {
+                return underlyingCache.getAll(keys);
+            }
+        });
+    }
+
+    /**
+     * Puts an element into the cache.
+     *
+     * @param element the element to put
+     * @return a future completed once the element is in the cache
+     * @see Ehcache#put(Element)
+     */
+    public CompletableFuture<Void> putAsync(final Element element) {
+        return supply(new Supplier<Void>() {
+            public Void get() {
+                underlyingCache.put(element);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Puts an element into the cache and through the registered {@link net.sf.ehcache.writer.CacheWriter}.
+     *
+     * @param element the element to put
+     * @return a future completed once the element is in the cache and was passed to the writer
+     * @see Ehcache#putWithWriter(Element)
+     */
+    public CompletableFuture<Void> putWithWriterAsync(final Element element) {
+        return supply(new Supplier<Void>() {
+            public Void get() {
+                underlyingCache.putWithWriter(element);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Removes an element from the cache.
+     *
+     * @param key the key of the element
+     * @return a future completed with true if an element was removed
+     * @see Ehcache#remove(Object)
+     */
+    public CompletableFuture<Boolean> removeAsync(final Object key) {
+        return supply(new Supplier<Boolean>() {
+            public Boolean get() {
+                return Boolean.valueOf(underlyingCache.remove(key));
+            }
+        });
+    }
+
+    /**
+     * Gets an element from the cache, loading it through a {@link CacheLoader} if it is not in the cache.
+     *
+     * @param key the key of the element
+     * @param loader the loader to use, or null to use the loaders registered with the cache
+     * @param loaderArgument an argument passed to the loader, may be null
+     * @return a future completed with the element, or null if it could not be loaded
+     * @see Ehcache#getWithLoader(Object, CacheLoader, Object)
+     */
+    public CompletableFuture<Element> getWithLoaderAsync(final Object key, final CacheLoader loader, final Object loaderArgument) {
+        try {
+            Element element = underlyingCache.isElementInMemory(key) ? underlyingCache.get(key) : null;
+            if (element != null) {
+                return CompletableFuture.completedFuture(element);
+            }
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+        return supply(new Supplier<Element>() {
+            public Element get() {
+                return underlyingCache.getWithLoader(key, loader, loaderArgument);
+            }
+        });
+    }
+
+    /**
+     * Gets the elements of a collection of keys from the cache, loading the missing ones through the registered
+     * {@link CacheLoader}s.
+     *
+     * @param keys the keys of the elements
+     * @param loaderArgument an argument passed to the loaders, may be null
+     * @return a future completed with a map of the keys to their values, a key mapping to null if it could not be loaded
+     * @see Ehcache#getAllWithLoader(Collection, Object)
+     */
+    public CompletableFuture<Map<Object, Object>> getAllWithLoaderAsync(final Collection<?> keys, final Object loaderArgument) {
+        return supply(new Supplier<Map<Object, Object>>() {
+            @SuppressWarnings("unchecked")
+            public Map<Object, Object> get() {
+                return underlyingCache.getAllWithLoader(keys, loaderArgument);
+            }
+        });
+    }
+
+    /**
+     * Loads an element into the cache through the registered {@link CacheLoader}s, if it is not already in the cache.
+     * <p>
+     * Unlike {@link Ehcache#load(Object)}, the returned future tells when the load has completed, and whether it failed.
+     *
+     * @param key the key of the element
+     * @return a future completed once the element is in the cache, or the loaders found no value for it
+     */
+    public CompletableFuture<Void> loadAsync(final Object key) {
+        return supply(new Supplier<Void>() {
+            public Void get() {
+                underlyingCache.getWithLoader(key, null, null);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Loads the elements of a collection of keys into the cache through the registered {@link CacheLoader}s, for the
+     * keys not already in the cache.
+     * <p>
+     * Unlike {@link Ehcache#loadAll(Collection, Object)}, the returned future tells when the load has completed, and
+     * whether it failed.
+     *
+     * @param keys the keys of the elements
+     * @param loaderArgument an argument passed to the loaders, may be null
+     * @return a future completed once all the elements were loaded
+     */
+    public CompletableFuture<Void> loadAllAsync(final Collection<?> keys, final Object loaderArgument) {
+        return supply(new Supplier<Void>() {
+            public Void get() {
+                underlyingCache.getAllWithLoader(keys, loaderArgument);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Returns the executor the operations of this facade run on.
+     *
+     * @return the executor passed to the constructor, or else the one of the CacheManager of the cache
+     * @throws IllegalStateException if no executor was passed and the cache has no CacheManager
+     */
+    public Executor getExecutor() throws IllegalStateException {
+        if (executor != null) {
+            return executor;
+        }
+        CacheManager cacheManager = underlyingCache.getCacheManager();
+        if (cacheManager == null) {
+            throw new IllegalStateException("Cache " + underlyingCache.getName() + " has no CacheManager to provide an executor");
+        }
+        return cacheManager.getAsyncExecutor();
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation, getExecutor());
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(t);
+        return future;
+    }
+}
@@ -33,6 +33,7 @@ import net.sf.ehcache.concurrent.Sync;
 import net.sf.ehcache.constructs.EhcacheDecoratorAdapter;
 import net.sf.ehcache.constructs.blocking.BlockingCacheOperationOutcomes.GetOutcome;
 import net.sf.ehcache.loader.CacheLoader;
+import net.sf.ehcache.util.VmUtils;
 
 import org.terracotta.statistics.observer.OperationObserver;
 
@@ -75,6 +76,8 @@ public class BlockingCache extends EhcacheDecoratorAdapter {
      */
     protected volatile int timeoutMillis;
 
+    private volatile boolean interruptible = VmUtils.isVirtualThreadModeEnabled();
+
     private final int stripes;
     private final AtomicReference<CacheLockProvider> cacheLockProviderReference;
 
@@ -192,6 +195,16 @@ public class BlockingCache extends EhcacheDecoratorAdapter {
             } catch (InterruptedException e) {
                 throw new LockTimeoutException("Got interrupted while trying to acquire lock for key " + key, e);
             }
+        } else if (interruptible) {
+            try {
+                boolean acquired = false;
+                while (!acquired) {
+                    acquired = lock.tryLock(lockType, Long.MAX_VALUE);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LockTimeoutException("Got interrupted while waiting for lock for key " + key, e);
+            }
         } else {
             lock.lock(lockType);
         }
@@ -369,6 +382,29 @@ public class BlockingCache extends EhcacheDecoratorAdapter {
         return timeoutMillis;
     }
 
+    /**
+     * Sets whether threads blocked without a timeout waiting for a lock can be interrupted, in which case a
+     * LockTimeoutException is thrown and the interrupt status of the thread is preserved.
+     * <p>
+     * This defaults to true in the virtual thread friendly execution mode, see {@link VmUtils#VIRTUAL_THREADS_PROPERTY},
+     * so that callers abandoning a request, e.g. through structured concurrency, do not leave virtual threads parked
+     * behind a slow loader.
+     *
+     * @param interruptible true if waits for a lock are interruptible
+     */
+    public void setInterruptible(boolean interruptible) {
+        this.interruptible = interruptible;
+    }
+
+    /**
+     * Gets whether threads blocked without a timeout waiting for a lock can be interrupted.
+     *
+     * @return true if waits for a lock are interruptible
+     */
+    public boolean isInterruptible() {
+        return interruptible;
+    }
+
     /**
      * Register a {@link CacheLoader} with the cache. It will then be tied into the cache lifecycle.
      * <p>
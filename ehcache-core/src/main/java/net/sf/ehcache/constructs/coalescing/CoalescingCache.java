@@ -0,0 +1,333 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.constructs.coalescing;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.LoaderTimeoutException;
+import net.sf.ehcache.constructs.EhcacheDecoratorAdapter;
+import net.sf.ehcache.loader.CacheLoader;
+
+/**
+ * A self-populating decorator for {@link Ehcache} coalescing concurrent misses.
+ * <p>
+ * Concurrent misses for the same key share a single in-flight load, whose result every caller receives. Unlike the
+ * {@link net.sf.ehcache.constructs.blocking.BlockingCache}, no lock is held while loading: callers missing on unrelated
+ * keys never wait for each other, and callers hitting the cache never wait at all.
+ * <p>
+ * When a batch window is configured, the misses arriving within that window are folded into a single
+ * {@link CacheLoader#loadAll(Collection)} call: the first miss of a batch waits for the window to elapse, or for the
+ * batch to fill up, then loads all the keys collected meanwhile on behalf of their callers. This trades a little
+ * latency on cold misses for a much lower fan-out to the system of record, e.g. at cold start.
+ * <p>
+ * Loaded values are installed with {@link Ehcache#putIfAbsent(Element)}, so that a value put concurrently with a load
+ * is not overwritten by it. Keys the loader has no value for are not cached, and read as null.
+ */
+public class CoalescingCache extends EhcacheDecoratorAdapter {
+
+    /**
+     * The default maximum number of keys loaded by a single loadAll call
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    private final CacheLoader loader;
+    private final long batchWindowMillis;
+    private final int maxBatchSize;
+    private final ConcurrentMap<Object, CompletableFuture<Element>> inFlight = new ConcurrentHashMap<Object, CompletableFuture<Element>>();
+    private final ReentrantLock batchLock = new ReentrantLock();
+    private Batch currentBatch;
+    private volatile int timeoutMillis;
+
+    /**
+     * Creates a CoalescingCache loading each missing key on its own.
+     *
+     * @param cache the cache to decorate
+     * @param loader the loader of the missing keys
+     */
+    public CoalescingCache(Ehcache cache, CacheLoader loader) {
+        this(cache, loader, 0, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a CoalescingCache folding the misses arriving within a window into batch loads.
+     *
+     * @param cache the cache to decorate
+     * @param loader the loader of the missing keys
+     * @param batchWindowMillis the time the first miss of a batch waits for more misses, 0 to load each key on its own
+     * @param maxBatchSize the maximum number of keys loaded at once, a full batch being loaded without waiting
+     */
+    public CoalescingCache(Ehcache cache, CacheLoader loader, long batchWindowMillis, int maxBatchSize) {
+        super(cache);
+        if (loader == null) {
+            throw new IllegalArgumentException("A CoalescingCache requires a CacheLoader");
+        }
+        if (batchWindowMillis < 0 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch window " + batchWindowMillis + "ms or batch size " + maxBatchSize);
+        }
+        this.loader = loader;
+        this.batchWindowMillis = batchWindowMillis;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Looks up an entry, loading it if not found.
+     * <p>
+     * If a load of the same key is already in flight, waits for it rather than loading the key again.
+     *
+     * @param key the key
+     * @return the element, or null if the loader has no value for the key
+     * @throws LoaderTimeoutException if a timeout is set and the load did not complete in time
+     * @throws CacheException if the load failed
+     */
+    @Override
+    public Element get(final Object key) throws LoaderTimeoutException, CacheException {
+        Element element = underlyingCache.get(key);
+        if (element != null) {
+            return element;
+        }
+
+        CompletableFuture<Element> fault = new CompletableFuture<Element>();
+        CompletableFuture<Element> existing = inFlight.putIfAbsent(key, fault);
+        if (existing != null) {
+            return await(key, existing);
+        }
+        if (!resolveFromCache(key, fault)) {
+            if (batchWindowMillis == 0) {
+                loadAll(singletonMap(key, fault));
+            } else {
+                enqueue(key, fault);
+            }
+        }
+        return await(key, fault);
+    }
+
+    /**
+     * Looks up an entry, loading it if not found.
+     *
+     * @see #get(Object)
+     */
+    @Override
+    public Element get(final Serializable key) throws LoaderTimeoutException, CacheException {
+        return get((Object) key);
+    }
+
+    /**
+     * Looks up a collection of entries, loading all the missing ones not already in flight in a single
+     * {@link CacheLoader#loadAll(Collection)} call.
+     *
+     * @param keys the keys
+     * @return a map of the keys to their elements, a key mapping to null if the loader has no value for it
+     * @throws LoaderTimeoutException if a timeout is set and a load did not complete in time
+     * @throws CacheException if a load failed
+     */
+    @Override
+    public Map<Object, Element> getAll(final Collection<?> keys) throws LoaderTimeoutException, CacheException {
+        Map<Object, Element> result = new HashMap<Object, Element>(underlyingCache.getAll(keys));
+        Map<Object, CompletableFuture<Element>> owned = new HashMap<Object, CompletableFuture<Element>>();
+        Map<Object, CompletableFuture<Element>> awaited = new HashMap<Object, CompletableFuture<Element>>();
+        for (Map.Entry<Object, Element> entry : result.entrySet()) {
+            if (entry.getValue() == null) {
+                CompletableFuture<Element> fault = new CompletableFuture<Element>();
+                CompletableFuture<Element> existing = inFlight.putIfAbsent(entry.getKey(), fault);
+                if (existing != null) {
+                    awaited.put(entry.getKey(), existing);
+                } else {
+                    awaited.put(entry.getKey(), fault);
+                    if (!resolveFromCache(entry.getKey(), fault)) {
+                        owned.put(entry.getKey(), fault);
+                    }
+                }
+            }
+        }
+        if (!owned.isEmpty()) {
+            loadAll(owned);
+        }
+        for (Map.Entry<Object, CompletableFuture<Element>> entry : awaited.entrySet()) {
+            result.put(entry.getKey(), await(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Sets the time to wait for a load to complete. This may be modified at any time.
+     * <p>
+     * A caller timing out does not cancel the load, whose result is still cached and handed to the other callers.
+     *
+     * @param timeoutMillis the time in ms, 0 meaning wait forever
+     */
+    public void setTimeoutMillis(int timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new CacheException("The load timeout must be a positive number of ms. Value was " + timeoutMillis);
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Gets the time to wait for a load to complete.
+     *
+     * @return the time in ms
+     */
+    public int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Returns the number of keys currently being loaded.
+     *
+     * @return the number of loads in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Completes a fault that was just installed with the element another caller installed meanwhile, if any.
+     */
+    private boolean resolveFromCache(Object key, CompletableFuture<Element> fault) {
+        Element element = underlyingCache.getQuiet(key);
+        if (element == null || element.isExpired()) {
+            return false;
+        }
+        inFlight.remove(key, fault);
+        fault.complete(element);
+        return true;
+    }
+
+    private void enqueue(Object key, CompletableFuture<Element> fault) {
+        Batch batch;
+        boolean leader = false;
+        batchLock.lock();
+        try {
+            batch = currentBatch;
+            if (batch == null) {
+                batch = new Batch();
+                currentBatch = batch;
+                leader = true;
+            }
+            batch.faults.put(key, fault);
+            if (batch.faults.size() >= maxBatchSize) {
+                currentBatch = null;
+                batch.full.countDown();
+            }
+        } finally {
+            batchLock.unlock();
+        }
+
+        if (leader) {
+            boolean interrupted = false;
+            try {
+                batch.full.await(batchWindowMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            batchLock.lock();
+            try {
+                if (currentBatch == batch) {
+                    currentBatch = null;
+                }
+            } finally {
+                batchLock.unlock();
+            }
+            loadAll(batch.faults);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Loads the keys of the given faults, installs the values in the cache and completes the faults.
+     */
+    private void loadAll(Map<Object, CompletableFuture<Element>> faults) {
+        try {
+            Map<?, ?> values;
+            if (faults.size() == 1) {
+                Object key = faults.keySet().iterator().next();
+                values = singletonMap(key, loader.load(key));
+            } else {
+                values = loader.loadAll(new ArrayList<Object>(faults.keySet()));
+            }
+            for (Map.Entry<Object, CompletableFuture<Element>> entry : faults.entrySet()) {
+                Object value = values == null ? null : values.get(entry.getKey());
+                Element element = null;
+                if (value != null) {
+                    element = new Element(entry.getKey(), value);
+                    Element existing = underlyingCache.putIfAbsent(element);
+                    if (existing != null) {
+                        element = existing;
+                    }
+                }
+                inFlight.remove(entry.getKey(), entry.getValue());
+                entry.getValue().complete(element);
+            }
+        } catch (Throwable t) {
+            for (Map.Entry<Object, CompletableFuture<Element>> entry : faults.entrySet()) {
+                inFlight.remove(entry.getKey(), entry.getValue());
+                entry.getValue().completeExceptionally(t);
+            }
+        }
+    }
+
+    private Element await(Object key, CompletableFuture<Element> fault) throws LoaderTimeoutException, CacheException {
+        try {
+            int timeout = timeoutMillis;
+            if (timeout > 0) {
+                return fault.get(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                return fault.get();
+            }
+        } catch (TimeoutException e) {
+            throw new LoaderTimeoutException("Timeout on load for key " + key, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException("Interrupted while waiting for the load of key " + key, e);
+        } catch (ExecutionException e) {
+            throw new CacheException("Could not fetch object for cache entry with key \"" + key + "\".", e.getCause());
+        }
+    }
+
+    private static <V> Map<Object, V> singletonMap(Object key, V value) {
+        Map<Object, V> map = new HashMap<Object, V>(2);
+        map.put(key, value);
+        return map;
+    }
+
+    /**
+     * The misses collected while the first of them waits for the batch window to elapse.
+     */
+    private static final class Batch {
+
+        private final Map<Object, CompletableFuture<Element>> faults = new HashMap<Object, CompletableFuture<Element>>();
+        private final CountDownLatch full = new CountDownLatch(1);
+    }
+}
@@ -40,6 +40,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -54,6 +55,11 @@ import java.util.concurrent.atomic.AtomicLong;
  * <p>
  * Provided the {@code Number of threads per node * Number of nodes < the maximum backlog}, only one node in the cluster will refresh a given key at
  * a time.
+ * <p>
+ * Each worker thread refreshes the keys it dequeues in batches, through {@link CacheLoader#loadAll(Collection)}. Stale values are served
+ * while they are being refreshed, optionally for a bounded time only, see
+ * {@link RefreshAheadCacheConfiguration#setMaximumStalenessSeconds(long)}. Refreshes can also be triggered probabilistically ahead of the
+ * time to refresh, weighted by the measured refresh latency, see {@link RefreshAheadCacheConfiguration#setEarlyRefreshBeta(double)}.
  *
  * @author cschanck
  *
@@ -62,12 +68,14 @@ public class RefreshAheadCache extends EhcacheDecoratorAdapter {
 
     private static final Object REFRESH_VALUE = Boolean.TRUE;
     private static final int DEFAULT_SUPPORT_TTL_SECONDS = (int)TimeUnit.SECONDS.convert(10, TimeUnit.MINUTES);
+    private static final int LATENCY_SMOOTHING_SHIFT = 3;
     private final AtomicLong refreshSuccessCount = new AtomicLong();
+    private final AtomicLong refreshLatencyNanos = new AtomicLong();
     private final RefreshAheadCacheConfiguration refreshAheadConfig;
     private CacheConfiguration supportConfig;
 
     private volatile Ehcache supportCache;
-    private volatile ThreadedWorkQueue<Object> refreshWorkQueue;
+    private volatile ThreadedWorkQueue<Element> refreshWorkQueue;
 
     /**
      * Create a Refresh Ahead Cache Adaptor with the specified configuration. An auxiliary EhCache
@@ -157,20 +165,18 @@ public class RefreshAheadCache extends EhcacheDecoratorAdapter {
     }
 
     private void initWorkQueue() {
-        BatchWorker<Object> batchWorker = new BatchWorker<Object>() {
+        BatchWorker<Element> batchWorker = new BatchWorker<Element>() {
 
             @Override
-            public void process(Collection<? extends Object> collection) {
-
-                // only fetch this once for each process() call
-                long accessTime = System.currentTimeMillis();
+            public void process(Collection<? extends Element> collection) {
 
                 HashSet<Object> keysToProcess = new HashSet<Object>();
-                for (Object key : collection) {
+                for (Element offered : collection) {
+                    Object key = offered.getObjectKey();
 
-                    // check if it was loaded by someone else in the meantime -- does it still qualify for refresh ahead?
+                    // check if it was loaded by someone else in the meantime -- is it still the element that was offered for refresh?
                     Element quickTest = underlyingCache.getQuiet(key);
-                    if (quickTest == null || checkForRefresh(quickTest, accessTime, refreshAheadConfig.getTimeToRefreshMillis())) {
+                    if (quickTest == null || quickTest.getCreationTime() <= offered.getCreationTime()) {
                         final Element ersatz = new Element(key, REFRESH_VALUE);
 
                         if (supportCache.putIfAbsent(ersatz) == null) {
@@ -188,7 +194,9 @@ public class RefreshAheadCache extends EhcacheDecoratorAdapter {
                         }
 
                         // try and load them all
+                        long start = System.nanoTime();
                         Map<? extends Object, ? extends Object> values = loader.loadAll(keysToProcess);
+                        recordRefreshLatency(System.nanoTime() - start);
                         // subtract the ones that were loaded
                         keysToProcess.removeAll(values.keySet());
                         try {
@@ -214,7 +222,7 @@ public class RefreshAheadCache extends EhcacheDecoratorAdapter {
             }
         };
 
-        this.refreshWorkQueue = new ThreadedWorkQueue<Object>(batchWorker, refreshAheadConfig.getNumberOfThreads(), new ThreadFactory() {
+        this.refreshWorkQueue = new ThreadedWorkQueue<Element>(batchWorker, refreshAheadConfig.getNumberOfThreads(), new ThreadFactory() {
 
             @Override
             public Thread newThread(Runnable r) {
@@ -225,6 +233,16 @@ public class RefreshAheadCache extends EhcacheDecoratorAdapter {
         }, refreshAheadConfig.getMaximumRefreshBacklogItems(), refreshAheadConfig.getBatchSize());
     }
 
+    private void recordRefreshLatency(long nanos) {
+        // exponentially weighted moving average, so that the early refresh follows changes in the loader latency
+        long current;
+        long updated;
+        do {
+            current = refreshLatencyNanos.get();
+            updated = current == 0 ? nanos : current + ((nanos - current) >> LATENCY_SMOOTHING_SHIFT);
+        } while (!refreshLatencyNanos.compareAndSet(current, updated));
+    }
+
     private boolean checkForRefresh(Element elem, long accessTime, long timeToRefreshMillis) {
         if (elem == null) {
             return false;
@@ -232,28 +250,49 @@ public class RefreshAheadCache extends EhcacheDecoratorAdapter {
 
         long minAccessForRefreshTime = elem.getCreationTime() + timeToRefreshMillis;
 
+        double beta = refreshAheadConfig.getEarlyRefreshBeta();
+        if (beta > 0) {
+            // XFetch: refresh ahead of time, with a probability growing as the refresh time nears and with the refresh latency
+            double gap = getAverageRefreshLatencyMillis() * beta * -Math.log(1.0 - ThreadLocalRandom.current().nextDouble());
+            return accessTime + gap >= minAccessForRefreshTime;
+        }
         return (accessTime >= minAccessForRefreshTime);
     }
 
-    private void possiblyTriggerRefresh(Element elem, long timeToRefreshMillis) {
-        if (checkForRefresh(elem, System.currentTimeMillis(), timeToRefreshMillis)) {
-            // now add the key to the queue. smallest overhead we could get.
-            refreshWorkQueue.offer(elem.getObjectKey());
+    private Element possiblyTriggerRefresh(Element elem, long timeToRefreshMillis) {
+        long now = System.currentTimeMillis();
+        if (checkForRefresh(elem, now, timeToRefreshMillis)) {
+            // now add the element to the queue. smallest overhead we could get.
+            refreshWorkQueue.offer(elem);
+
+            // serve the stale value while it is being refreshed, unless it is staler than allowed
+            long maximumStalenessMillis = refreshAheadConfig.getMaximumStalenessMillis();
+            if (maximumStalenessMillis > 0 && now >= elem.getCreationTime() + timeToRefreshMillis + maximumStalenessMillis) {
+                return null;
+            }
         }
+        return elem;
     }
 
     @Override
     public Element get(Object key) throws IllegalStateException, CacheException {
         Element elem = super.get(key);
-        possiblyTriggerRefresh(elem, refreshAheadConfig.getTimeToRefreshMillis());
-        return elem;
+        return possiblyTriggerRefresh(elem, refreshAheadConfig.getTimeToRefreshMillis());
     }
 
     @Override
     public Element get(Serializable key) throws IllegalStateException, CacheException {
         Element elem = super.get(key);
-        possiblyTriggerRefresh(elem, refreshAheadConfig.getTimeToRefreshMillis());
-        return elem;
+        return possiblyTriggerRefresh(elem, refreshAheadConfig.getTimeToRefreshMillis());
+    }
+
+    /**
+     * Average time taken by a refresh, as measured over the recent batch loads.
+     *
+     * @return the refresh latency in milliseconds
+     */
+    public double getAverageRefreshLatencyMillis() {
+        return refreshLatencyNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
     }
 
     /**
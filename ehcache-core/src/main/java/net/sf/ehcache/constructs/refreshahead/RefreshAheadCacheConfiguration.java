@@ -56,6 +56,16 @@ public class RefreshAheadCacheConfiguration implements Cloneable {
      */
     public static final String EVICT_ON_LOAD_MISS = "evictOnLoadMiss";
 
+    /**
+     * Properties key for the maximum staleness attribute
+     */
+    public static final String MAXIMUM_STALENESS_SECONDS_KEY = "maximumStalenessSeconds";
+
+    /**
+     * Properties key for the early refresh beta attribute
+     */
+    public static final String EARLY_REFRESH_BETA_KEY = "earlyRefreshBeta";
+
     private static final int DEFAULT_NUMBER_THREADS = 1;
     private static final int DEFAULT_BATCHSIZE = 100;
     private static final int DEFAULT_BACKLOG_MAX = -1;
@@ -67,6 +77,8 @@ public class RefreshAheadCacheConfiguration implements Cloneable {
     private boolean evictOnLoadMiss = false;
     private int numberOfThreads = DEFAULT_NUMBER_THREADS;
     private String name = null;
+    private long maximumStalenessSeconds = 0L;
+    private double earlyRefreshBeta = 0.0;
 
     private volatile boolean valid = false;
 
@@ -100,6 +112,10 @@ public class RefreshAheadCacheConfiguration implements Cloneable {
                     setEvictOnLoadMiss(Boolean.parseBoolean(stringValue));
                 } else if (MAX_BACKLOG.equals(property)) {
                     setMaximumRefreshBacklogItems(Integer.parseInt(stringValue));
+                } else if (MAXIMUM_STALENESS_SECONDS_KEY.equals(property)) {
+                    setMaximumStalenessSeconds(Long.parseLong(stringValue));
+                } else if (EARLY_REFRESH_BETA_KEY.equals(property)) {
+                    setEarlyRefreshBeta(Double.parseDouble(stringValue));
                 } else {
                     throw new IllegalArgumentException("Unrecognized RefreshAhead cache config key: " + property);
                 }
@@ -121,6 +137,8 @@ public class RefreshAheadCacheConfiguration implements Cloneable {
         p.setProperty(BATCH_SIZE_KEY, Long.toString(getBatchSize()));
         p.setProperty(EVICT_ON_LOAD_MISS, Boolean.toString(isEvictOnLoadMiss()));
         p.setProperty(MAX_BACKLOG, Long.toString(getMaximumRefreshBacklogItems()));
+        p.setProperty(MAXIMUM_STALENESS_SECONDS_KEY, Long.toString(getMaximumStalenessSeconds()));
+        p.setProperty(EARLY_REFRESH_BETA_KEY, Double.toString(getEarlyRefreshBeta()));
         return p;
     }
 
@@ -142,6 +160,12 @@ public class RefreshAheadCacheConfiguration implements Cloneable {
         if (maximumRefreshBacklogItems <= 0) {
             throw new IllegalStateException("Must provide >=0 maximumBacklogItems for refresh ahead caching");
         }
+        if (maximumStalenessSeconds < 0L) {
+            throw new IllegalStateException("Must provide >=0 maximumStalenessSeconds for refresh ahead caching");
+        }
+        if (earlyRefreshBeta < 0.0 || Double.isNaN(earlyRefreshBeta) || Double.isInfinite(earlyRefreshBeta)) {
+            throw new IllegalStateException("Must provide a finite >=0 earlyRefreshBeta for refresh ahead caching");
+        }
         valid = true;
     }
 
@@ -344,6 +368,86 @@ public class RefreshAheadCacheConfiguration implements Cloneable {
         return this;
     }
 
+    /**
+     * Get the maximum time, past the time to refresh, for which a stale value is served while it is being refreshed.
+     *
+     * @return maximum staleness in seconds, 0 meaning stale values are served until they expire
+     */
+    public long getMaximumStalenessSeconds() {
+        return maximumStalenessSeconds;
+    }
+
+    /**
+     * Get the maximum staleness in milliseconds.
+     *
+     * @return maximum staleness in milliseconds, 0 meaning stale values are served until they expire
+     */
+    public long getMaximumStalenessMillis() {
+        return TimeUnit.MILLISECONDS.convert(maximumStalenessSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Set the maximum time, past the time to refresh, for which a stale value is served while it is being refreshed.
+     * Once an entry is older than the time to refresh plus this, reads return null until the refresh completes.
+     * <p>
+     * For stale values to be served at all, the time to live of the underlying cache should exceed the time to
+     * refresh plus the maximum staleness.
+     *
+     * @param maximumStalenessSeconds maximum staleness in seconds, 0 to serve stale values until they expire
+     */
+    public void setMaximumStalenessSeconds(long maximumStalenessSeconds) {
+        valid = false;
+        this.maximumStalenessSeconds = maximumStalenessSeconds;
+    }
+
+    /**
+     * Fluently set the maximum time, past the time to refresh, for which a stale value is served while it is being
+     * refreshed.
+     *
+     * @param maximumStalenessSeconds maximum staleness in seconds, 0 to serve stale values until they expire
+     * @return this config
+     */
+    public RefreshAheadCacheConfiguration maximumStalenessSeconds(long maximumStalenessSeconds) {
+        setMaximumStalenessSeconds(maximumStalenessSeconds);
+        return this;
+    }
+
+    /**
+     * Get the weight of the probabilistic early refresh.
+     *
+     * @return the early refresh beta, 0 meaning entries are only refreshed once older than the time to refresh
+     */
+    public double getEarlyRefreshBeta() {
+        return earlyRefreshBeta;
+    }
+
+    /**
+     * Set the weight of the probabilistic early refresh.
+     * <p>
+     * When positive, each read of an entry triggers its refresh ahead of the time to refresh with a probability
+     * growing as that time nears, and with the measured refresh latency (the XFetch algorithm): a read at time t
+     * refreshes the entry if {@code t - latency * beta * ln(random) >= creationTime + timeToRefresh}. This spreads
+     * the refreshes of entries created together, rather than having all of them go stale at once. Values above 1
+     * favour earlier refreshes, values below 1 later ones.
+     *
+     * @param earlyRefreshBeta the early refresh beta, 0 to disable early refreshes
+     */
+    public void setEarlyRefreshBeta(double earlyRefreshBeta) {
+        valid = false;
+        this.earlyRefreshBeta = earlyRefreshBeta;
+    }
+
+    /**
+     * Fluently set the weight of the probabilistic early refresh.
+     *
+     * @param earlyRefreshBeta the early refresh beta, 0 to disable early refreshes
+     * @return this config
+     */
+    public RefreshAheadCacheConfiguration earlyRefreshBeta(double earlyRefreshBeta) {
+        setEarlyRefreshBeta(earlyRefreshBeta);
+        return this;
+    }
+
     @Override
     public String toString() {
         return "RefreshAheadCacheConfiguration:  " + toProperties().toString();
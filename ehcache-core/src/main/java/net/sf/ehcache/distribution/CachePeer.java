@@ -136,8 +136,13 @@ public interface CachePeer extends Remote {
      * idle lifetimes are therefore not affected.
      * <p>
      * Cache statistics are still updated.
+     * <p>
+     * Peers of caches configured with a serializer other than Java serialization return a list holding a single serialized
+     * payload of the elements instead of the elements themselves. Callers get the elements of either list with
+     * {@link RMIBootstrapCacheLoader#decodeElements(net.sf.ehcache.Ehcache, List)}.
      * @param keys a list of serializable values which represent keys
-     * @return a list of Elements. If an element was not found or null, it will not be in the list.
+     * @return a list of Elements, or of a serialized payload of them. If an element was not found or null, it will not be
+     * in the list.
      */
     List getElements(List keys) throws RemoteException;
 
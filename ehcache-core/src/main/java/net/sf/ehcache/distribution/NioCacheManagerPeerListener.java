@@ -0,0 +1,446 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+import net.sf.ehcache.event.CacheEventListener;
+import net.sf.ehcache.util.ByteBufferInputStream;
+import net.sf.ehcache.util.CacheTransactionHelper;
+import net.sf.ehcache.util.NamedThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache server serving the replicated caches of a CacheManager over a non-blocking TCP transport.
+ * <p>
+ * All connections are multiplexed on one selector thread. The requests received are executed on a pool of worker
+ * threads. The requests changing a cache are executed in the order they were received on each connection, so that the
+ * replication events sent by a peer are applied in order. Read-only requests, such as the key and element reads of a
+ * bootstrap, are executed as soon as they are received, so that a long read neither stalls the replication from the
+ * same peer nor waits behind it, and the chunks a bootstrap requests in parallel are served in parallel.
+ * <p>
+ * The listener serves the RMI replication scheme: the RMI cache replicators and bootstrap loader work unchanged over
+ * it when it is paired with a {@link NioCacheManagerPeerProvider}.
+ */
+public class NioCacheManagerPeerListener implements CacheManagerPeerListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioCacheManagerPeerListener.class.getName());
+
+    private static final int MINIMUM_SENSIBLE_TIMEOUT = 200;
+
+    /**
+     * The status of the listener
+     */
+    protected volatile Status status;
+
+    /**
+     * The port the listener listens on
+     */
+    protected Integer port;
+
+    private final String hostName;
+    private final CacheManager cacheManager;
+    private final Integer socketTimeoutMillis;
+    private final int maxFrameSize;
+    private final Map<String, NioCachePeer> cachePeers = new ConcurrentHashMap<String, NioCachePeer>();
+    private NioTransport transport;
+    private ExecutorService workers;
+
+    /**
+     * Constructor with full arguments.
+     *
+     * @param hostName            may be null, in which case the hostName will be looked up. Machines with multiple
+     *                            interfaces should specify this if they do not want it to be the default NIC.
+     * @param port                a port in the range 1025 - 65536, or 0 for a free port
+     * @param cacheManager        the CacheManager this listener belongs to
+     * @param socketTimeoutMillis the time the peers bound to this listener wait for a response
+     */
+    public NioCacheManagerPeerListener(String hostName, Integer port, CacheManager cacheManager, Integer socketTimeoutMillis)
+            throws UnknownHostException {
+        this(hostName, port, cacheManager, socketTimeoutMillis, NioCacheManagerPeerListenerFactory.DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Constructor with full arguments.
+     *
+     * @param hostName            may be null, in which case the hostName will be looked up. Machines with multiple
+     *                            interfaces should specify this if they do not want it to be the default NIC.
+     * @param port                a port in the range 1025 - 65536, or 0 for a free port
+     * @param cacheManager        the CacheManager this listener belongs to
+     * @param socketTimeoutMillis the time the peers bound to this listener wait for a response
+     * @param maxFrameSize        the size in bytes of the largest request accepted, a connection sending a larger one
+     *                            being closed
+     */
+    public NioCacheManagerPeerListener(String hostName, Integer port, CacheManager cacheManager, Integer socketTimeoutMillis,
+            int maxFrameSize) throws UnknownHostException {
+        status = Status.STATUS_UNINITIALISED;
+
+        if (hostName != null && hostName.length() != 0) {
+            this.hostName = hostName;
+        } else {
+            this.hostName = InetAddress.getLocalHost().getHostAddress();
+        }
+        if (port == null || port.intValue() == 0) {
+            assignFreePort(false);
+        } else {
+            this.port = port;
+        }
+        this.cacheManager = cacheManager;
+        if (socketTimeoutMillis == null || socketTimeoutMillis.intValue() < MINIMUM_SENSIBLE_TIMEOUT) {
+            throw new IllegalArgumentException("socketTimoutMillis must be a reasonable value greater than 200ms");
+        }
+        this.socketTimeoutMillis = socketTimeoutMillis;
+        if (maxFrameSize <= 0) {
+            throw new IllegalArgumentException("maxFrameSize must be a positive number of bytes");
+        }
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Assigns a free port to be the listener port.
+     *
+     * @throws IllegalStateException if the status of the listener is not {@link net.sf.ehcache.Status#STATUS_UNINITIALISED}
+     */
+    protected void assignFreePort(boolean forced) throws IllegalStateException {
+        if (status != Status.STATUS_UNINITIALISED) {
+            throw new IllegalStateException("Cannot change the port of an already started listener.");
+        }
+        ServerSocket serverSocket = null;
+        try {
+            serverSocket = new ServerSocket(0);
+            this.port = Integer.valueOf(serverSocket.getLocalPort());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not acquire a free port number.");
+        } finally {
+            if (serverSocket != null) {
+                try {
+                    serverSocket.close();
+                } catch (IOException e) {
+                    LOG.debug("Error closing ServerSocket: " + e.getMessage());
+                }
+            }
+        }
+        if (forced) {
+            LOG.warn("Resolving NIO listener port conflict by automatically using a free TCP/IP port to listen on: " + this.port);
+        } else {
+            LOG.debug("Automatically finding a free TCP/IP port to listen on: " + this.port);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void init() throws CacheException {
+        if (!status.equals(Status.STATUS_UNINITIALISED)) {
+            return;
+        }
+        try {
+            transport = new NioTransport("NIO Cache Peer Listener " + port, new RequestHandler(), maxFrameSize);
+            transport.listen(new InetSocketAddress(port.intValue()));
+        } catch (IOException e) {
+            if (transport != null) {
+                transport.dispose();
+            }
+            throw new CacheException("Problem starting listener on port " + port + ". Initial cause was " + e.getMessage(), e);
+        }
+        workers = Executors.newCachedThreadPool(new NamedThreadFactory("NIO Cache Peer Listener Worker", true));
+        transport.start();
+        for (String cacheName : cacheManager.getCacheNames()) {
+            notifyCacheAdded(cacheName);
+        }
+        status = Status.STATUS_ALIVE;
+    }
+
+    /**
+     * Determine if the given cache is distributed.
+     *
+     * @param cache the cache to check
+     * @return true if a <code>CacheReplicator</code> is found in the listeners
+     */
+    protected boolean isDistributed(Ehcache cache) {
+        for (CacheEventListener listener : cache.getCacheEventNotificationService().getCacheEventListeners()) {
+            if (listener instanceof CacheReplicator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void dispose() throws CacheException {
+        if (transport != null) {
+            transport.dispose();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        cachePeers.clear();
+        status = Status.STATUS_SHUTDOWN;
+    }
+
+    /**
+     * All of the caches served by this listener.
+     *
+     * @return a list of <code>NioCachePeer</code> objects. The list is not live
+     */
+    public List getBoundCachePeers() {
+        return new ArrayList<CachePeer>(cachePeers.values());
+    }
+
+    /**
+     * Returns the listener status.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getUniqueResourceIdentifier() {
+        return "NIO listener port: " + port;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the status of the listener is not {@link net.sf.ehcache.Status#STATUS_UNINITIALISED}
+     */
+    public void attemptResolutionOfUniqueResourceConflict() throws IllegalStateException, CacheException {
+        assignFreePort(true);
+    }
+
+    /**
+     * The replication scheme this listener serves, which is the RMI scheme, so that the RMI replicators and bootstrap
+     * loader can be used with it.
+     *
+     * @return "RMI"
+     */
+    public String getScheme() {
+        return "RMI";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void notifyCacheAdded(String cacheName) throws CacheException {
+        if (transport == null || cachePeers.containsKey(cacheName)) {
+            return;
+        }
+        Ehcache cache = cacheManager.getEhcache(cacheName);
+        if (cache != null && isDistributed(cache)) {
+            cachePeers.put(cacheName, new NioCachePeer(transport, hostName, port.intValue(), cacheName,
+                    socketTimeoutMillis.intValue(), cache.getCacheConfiguration().getClassLoader()));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void notifyCacheRemoved(String cacheName) {
+        cachePeers.remove(cacheName);
+    }
+
+    private void handle(NioConnection connection, long id, byte operation, ByteBuffer payload) {
+        byte status;
+        Object response;
+        try {
+            DataInputStream in = new DataInputStream(ByteBufferInputStream.of(payload));
+            Ehcache cache = getBoundCache(in.readUTF());
+            Object argument = NioConnection.readObject(in, cache.getCacheConfiguration().getClassLoader());
+            response = invoke(cache, operation, argument);
+            status = NioCachePeer.SUCCESS;
+        } catch (IOException e) {
+            response = e.toString();
+            status = NioCachePeer.FAILURE;
+        } catch (ClassNotFoundException e) {
+            response = e.toString();
+            status = NioCachePeer.FAILURE;
+        } catch (RuntimeException e) {
+            response = e.toString();
+            status = NioCachePeer.FAILURE;
+        }
+        if (status == NioCachePeer.FAILURE) {
+            LOG.debug("NIO request failed: {}", response);
+        }
+        try {
+            connection.reply(id, status, response);
+        } catch (IOException e) {
+            try {
+                connection.reply(id, NioCachePeer.FAILURE, "Unable to serialize the response: " + e);
+            } catch (IOException f) {
+                LOG.debug("Unable to reply to NIO request: " + f.getMessage());
+            }
+        }
+    }
+
+    private Ehcache getBoundCache(String cacheName) throws RemoteException {
+        Ehcache cache = cachePeers.containsKey(cacheName) ? cacheManager.getEhcache(cacheName) : null;
+        if (cache == null) {
+            throw new RemoteException("No replicated cache " + cacheName + " is bound to this listener");
+        }
+        return cache;
+    }
+
+    private Object invoke(Ehcache cache, byte operation, Object argument) throws RemoteException {
+        boolean started = !cache.getCacheConfiguration().getTransactionalMode().isTransactional()
+                || CacheTransactionHelper.isTransactionStarted(cache);
+        if (!started) {
+            CacheTransactionHelper.beginTransactionIfNeeded(cache);
+        }
+        try {
+            return dispatch(cache, operation, argument);
+        } finally {
+            if (!started) {
+                CacheTransactionHelper.commitTransactionIfNeeded(cache);
+            }
+        }
+    }
+
+    private Object dispatch(Ehcache cache, byte operation, Object argument) throws RemoteException {
+        switch (operation) {
+            case NioCachePeer.GET_KEYS:
+                List keys = cache.getKeys();
+                return keys instanceof Serializable ? keys : new ArrayList(keys);
+            case NioCachePeer.GET_QUIET:
+                return cache.getQuiet(argument);
+            case NioCachePeer.GET_ELEMENTS:
+                return getElements(cache, (List) argument);
+            case NioCachePeer.PUT:
+                cache.put((Element) argument, true);
+                return null;
+            case NioCachePeer.REMOVE:
+                return Boolean.valueOf(cache.remove(argument, true));
+            case NioCachePeer.REMOVE_ALL:
+                cache.removeAll(true);
+                return null;
+            case NioCachePeer.SEND:
+                send(cache, (List) argument);
+                return null;
+            case NioCachePeer.GET_GUID:
+                return cache.getGuid();
+            default:
+                throw new RemoteException("Unknown operation " + operation);
+        }
+    }
+
+    private static List getElements(Ehcache cache, List keys) throws RemoteException {
+        List elements = new ArrayList();
+        if (keys == null) {
+            return elements;
+        }
+        for (Object key : keys) {
+            Element element = cache.getQuiet(key);
+            if (element != null) {
+                elements.add(element);
+            }
+        }
+        if (SerializedPayload.isUsedBy(cache)) {
+            try {
+                List payload = new ArrayList(1);
+                payload.add(SerializedPayload.encodeElements(cache, elements));
+                return payload;
+            } catch (IOException e) {
+                throw new RemoteException("Unable to serialize elements of cache " + cache.getName(), e);
+            }
+        }
+        return elements;
+    }
+
+    private static void send(Ehcache cache, List eventMessages) throws RemoteException {
+        for (Object message : eventMessages) {
+            if (message instanceof SerializedPayload) {
+                try {
+                    for (RmiEventMessage eventMessage : ((SerializedPayload) message).decodeEvents(cache)) {
+                        apply(cache, eventMessage);
+                    }
+                } catch (IOException e) {
+                    throw new RemoteException("Unable to deserialize replication messages for cache " + cache.getName(), e);
+                } catch (ClassNotFoundException e) {
+                    throw new RemoteException("Unable to deserialize replication messages for cache " + cache.getName(), e);
+                }
+            } else {
+                apply(cache, (RmiEventMessage) message);
+            }
+        }
+    }
+
+    private static void apply(Ehcache cache, RmiEventMessage eventMessage) {
+        if (eventMessage.getType() == RmiEventType.PUT) {
+            cache.put(eventMessage.getElement(), true);
+        } else if (eventMessage.getType() == RmiEventType.REMOVE) {
+            cache.remove(eventMessage.getSerializableKey(), true);
+        } else if (eventMessage.getType() == RmiEventType.REMOVE_ALL) {
+            cache.removeAll(true);
+        } else {
+            LOG.error("Unknown event: " + eventMessage);
+        }
+    }
+
+    private static boolean isReadOnly(byte operation) {
+        return operation == NioCachePeer.GET_KEYS || operation == NioCachePeer.GET_QUIET
+                || operation == NioCachePeer.GET_ELEMENTS || operation == NioCachePeer.GET_GUID;
+    }
+
+    /**
+     * Hands the requests received over to the workers, in order for the requests changing a cache.
+     */
+    private final class RequestHandler implements NioTransport.FrameHandler {
+
+        public void frameReceived(final NioConnection connection, final long id, final byte code, final ByteBuffer payload) {
+            Runnable request = new Runnable() {
+                public void run() {
+                    handle(connection, id, code, payload);
+                }
+            };
+            try {
+                if (isReadOnly(code)) {
+                    workers.execute(request);
+                } else {
+                    connection.executeInOrder(request, workers);
+                }
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Dropping NIO request received while the listener is being disposed");
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.net.UnknownHostException;
+import java.util.Properties;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.util.PropertyUtil;
+
+/**
+ * Builds a listener serving the replicated caches over a non-blocking TCP transport.
+ * <p>
+ * Expected configuration line:
+ * <p>
+ * <code>
+ * &lt;cacheManagerPeerListenerFactory class="net.sf.ehcache.distribution.NioCacheManagerPeerListenerFactory"
+ * properties="hostName=localhost, port=40001, socketTimeoutMillis=2000, maxFrameSize=67108864" /&gt;
+ * </code>
+ * <p>
+ * A peer sending a request larger than <code>maxFrameSize</code> bytes has its connection closed.
+ */
+public class NioCacheManagerPeerListenerFactory extends CacheManagerPeerListenerFactory {
+
+    /**
+     * The default size in bytes of the largest frame a listener accepts
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private static final String HOSTNAME = "hostName";
+    private static final String PORT = "port";
+    private static final String SOCKET_TIMEOUT_MILLIS = "socketTimeoutMillis";
+    private static final String MAX_FRAME_SIZE = "maxFrameSize";
+
+    /**
+     * @param properties implementation specific properties. These are configured as comma
+     *                   separated name value pairs in ehcache.xml
+     */
+    public CacheManagerPeerListener createCachePeerListener(CacheManager cacheManager, Properties properties)
+            throws CacheException {
+        String hostName = PropertyUtil.extractAndLogProperty(HOSTNAME, properties);
+
+        String portString = PropertyUtil.extractAndLogProperty(PORT, properties);
+        Integer port;
+        if (portString != null && portString.length() != 0) {
+            port = Integer.valueOf(portString);
+        } else {
+            port = Integer.valueOf(0);
+        }
+
+        String socketTimeoutMillisString = PropertyUtil.extractAndLogProperty(SOCKET_TIMEOUT_MILLIS, properties);
+        Integer socketTimeoutMillis;
+        if (socketTimeoutMillisString == null || socketTimeoutMillisString.length() == 0) {
+            socketTimeoutMillis = RMICacheManagerPeerListenerFactory.DEFAULT_SOCKET_TIMEOUT_MILLIS;
+        } else {
+            socketTimeoutMillis = Integer.valueOf(socketTimeoutMillisString);
+        }
+
+        String maxFrameSizeString = PropertyUtil.extractAndLogProperty(MAX_FRAME_SIZE, properties);
+        int maxFrameSize;
+        if (maxFrameSizeString == null || maxFrameSizeString.length() == 0) {
+            maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+        } else {
+            maxFrameSize = Integer.parseInt(maxFrameSizeString);
+        }
+
+        try {
+            return new NioCacheManagerPeerListener(hostName, port, cacheManager, socketTimeoutMillis, maxFrameSize);
+        } catch (UnknownHostException e) {
+            throw new CacheException("Unable to create CacheManagerPeerListener. Initial cause was " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A provider of manually configured peers served by {@link NioCacheManagerPeerListener}s.
+ * <p>
+ * Peer URLs have the same form as RMI ones, //hostname:port/cacheName. The peers looked up are kept, and all the peers
+ * of a host and port share a single connection, so that looking up the peers of a cache on each replication costs
+ * neither a registry lookup nor a new connection.
+ */
+public class NioCacheManagerPeerProvider extends RMICacheManagerPeerProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioCacheManagerPeerProvider.class.getName());
+
+    private final int socketTimeoutMillis;
+    private final ConcurrentMap<String, CachePeer> cachePeers = new ConcurrentHashMap<String, CachePeer>();
+    private volatile NioTransport transport;
+
+    /**
+     * Creates a provider.
+     *
+     * @param cacheManager the CacheManager this provider belongs to
+     * @param socketTimeoutMillis the time to wait for the response of a peer
+     */
+    public NioCacheManagerPeerProvider(CacheManager cacheManager, int socketTimeoutMillis) {
+        super(cacheManager);
+        this.socketTimeoutMillis = socketTimeoutMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void init() throws CacheException {
+        try {
+            transport = new NioTransport("NIO Cache Peer Provider", null);
+        } catch (IOException e) {
+            throw new CacheException("Unable to start the NIO transport. Initial cause was " + e.getMessage(), e);
+        }
+        transport.start();
+    }
+
+    /**
+     * Register a new peer.
+     *
+     * @param url the peer URL, of the form //hostname:port/cacheName
+     */
+    public void registerPeer(String url) {
+        peerUrls.put(url, new Date());
+    }
+
+    /**
+     * @return a list of {@link CachePeer} peers, excluding the local peer.
+     */
+    public List listRemoteCachePeers(Ehcache cache) throws CacheException {
+        List remoteCachePeers = new ArrayList();
+        synchronized (peerUrls) {
+            for (Object url : peerUrls.keySet()) {
+                if (extractCacheName((String) url).equals(cache.getName())) {
+                    try {
+                        remoteCachePeers.add(lookupRemoteCachePeer((String) url));
+                    } catch (MalformedURLException e) {
+                        LOG.warn("Ignoring malformed peer URL " + url + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+        return remoteCachePeers;
+    }
+
+    /**
+     * Returns a peer for the given URL, without contacting it.
+     *
+     * @param url the peer URL, of the form //hostname:port/cacheName
+     * @return the peer
+     * @throws MalformedURLException if the URL cannot be parsed
+     */
+    @Override
+    public CachePeer lookupRemoteCachePeer(String url) throws MalformedURLException {
+        CachePeer cachePeer = cachePeers.get(url);
+        if (cachePeer == null) {
+            int hostStart = url.indexOf("//") + 2;
+            int pathStart = url.indexOf('/', hostStart);
+            int portStart = url.lastIndexOf(':', pathStart);
+            if (hostStart < 2 || pathStart < 0 || portStart < hostStart) {
+                throw new MalformedURLException("Expected //hostname:port/cacheName but got " + url);
+            }
+            String hostName = url.substring(hostStart, portStart).replace("[", "").replace("]", "");
+            String cacheName = extractCacheName(url);
+            int port;
+            try {
+                port = Integer.parseInt(url.substring(portStart + 1, pathStart));
+            } catch (NumberFormatException e) {
+                throw new MalformedURLException("Invalid port in " + url);
+            }
+            Ehcache cache = cacheManager.getEhcache(cacheName);
+            ClassLoader loader = cache == null ? cacheManager.getConfiguration().getClassLoader()
+                    : cache.getCacheConfiguration().getClassLoader();
+            cachePeer = new NioCachePeer(transport, hostName, port, cacheName, socketTimeoutMillis, loader);
+            CachePeer previous = cachePeers.putIfAbsent(url, cachePeer);
+            if (previous != null) {
+                cachePeer = previous;
+            }
+        }
+        return cachePeer;
+    }
+
+    /**
+     * Manually configured peers are never stale.
+     *
+     * @param date the date the entry was created
+     * @return false
+     */
+    @Override
+    protected boolean stale(Date date) {
+        return false;
+    }
+
+    /**
+     * Time for a cluster to form. As the peers are configured, there is none.
+     *
+     * @return 0
+     */
+    public long getTimeForClusterToForm() {
+        return 0;
+    }
+
+    /**
+     * Closes the connections to the peers.
+     */
+    @Override
+    public void dispose() throws CacheException {
+        if (transport != null) {
+            transport.dispose();
+        }
+        cachePeers.clear();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.util.Properties;
+import java.util.StringTokenizer;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.util.PropertyUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds a provider of peers served by {@link NioCacheManagerPeerListener}s.
+ * <p>
+ * Expected configuration line:
+ * <p>
+ * <code>
+ * &lt;cacheManagerPeerProviderFactory class="net.sf.ehcache.distribution.NioCacheManagerPeerProviderFactory"
+ * properties="peerDiscovery=manual, peerUrls=//server1:40001/sampleCache1|//server2:40001/sampleCache1" /&gt;
+ * </code>
+ */
+public class NioCacheManagerPeerProviderFactory extends CacheManagerPeerProviderFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioCacheManagerPeerProviderFactory.class.getName());
+
+    private static final String PEER_DISCOVERY = "peerDiscovery";
+    private static final String MANUALLY_CONFIGURED_PEER_DISCOVERY = "manual";
+    private static final String PEER_URLS = "peerUrls";
+    private static final String SOCKET_TIMEOUT_MILLIS = "socketTimeoutMillis";
+
+    /**
+     * @param properties implementation specific properties. These are configured as comma
+     *                   separated name value pairs in ehcache.xml
+     */
+    public CacheManagerPeerProvider createCachePeerProvider(CacheManager cacheManager, Properties properties)
+            throws CacheException {
+        String peerDiscovery = PropertyUtil.extractAndLogProperty(PEER_DISCOVERY, properties);
+        if (peerDiscovery != null && !peerDiscovery.equalsIgnoreCase(MANUALLY_CONFIGURED_PEER_DISCOVERY)) {
+            throw new CacheException("The NIO peer provider only supports manual peer discovery, not " + peerDiscovery);
+        }
+
+        String socketTimeoutMillisString = PropertyUtil.extractAndLogProperty(SOCKET_TIMEOUT_MILLIS, properties);
+        int socketTimeoutMillis;
+        if (socketTimeoutMillisString == null || socketTimeoutMillisString.length() == 0) {
+            socketTimeoutMillis = RMICacheManagerPeerListenerFactory.DEFAULT_SOCKET_TIMEOUT_MILLIS.intValue();
+        } else {
+            socketTimeoutMillis = Integer.parseInt(socketTimeoutMillisString);
+        }
+
+        NioCacheManagerPeerProvider provider = new NioCacheManagerPeerProvider(cacheManager, socketTimeoutMillis);
+        String peerUrls = PropertyUtil.extractAndLogProperty(PEER_URLS, properties);
+        if (peerUrls == null || peerUrls.trim().length() == 0) {
+            LOG.info("Starting NIO peer provider with empty list of peers. No replication will occur unless peers are added.");
+            return provider;
+        }
+        StringTokenizer stringTokenizer = new StringTokenizer(peerUrls.trim(), PayloadUtil.URL_DELIMITER);
+        while (stringTokenizer.hasMoreTokens()) {
+            String peerUrl = stringTokenizer.nextToken().trim();
+            provider.registerPeer(peerUrl);
+            LOG.debug("Registering peer {}", peerUrl);
+        }
+        return provider;
+    }
+}
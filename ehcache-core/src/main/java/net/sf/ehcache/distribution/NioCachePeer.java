@@ -0,0 +1,192 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.rmi.RemoteException;
+import java.util.List;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.util.ByteBufferInputStream;
+
+/**
+ * A <code>CachePeer</code> calling a remote {@link NioCacheManagerPeerListener}.
+ * <p>
+ * All the peers of a transport calling the same host and port share a single connection, over which their calls are
+ * pipelined. The name and URLs of the peer are known locally and never cause a remote call.
+ */
+public class NioCachePeer implements CachePeer {
+
+    /** Operation code of {@link #getKeys()} */
+    static final byte GET_KEYS = 1;
+    /** Operation code of {@link #getQuiet(Serializable)} */
+    static final byte GET_QUIET = 2;
+    /** Operation code of {@link #getElements(List)} */
+    static final byte GET_ELEMENTS = 3;
+    /** Operation code of {@link #put(Element)} */
+    static final byte PUT = 4;
+    /** Operation code of {@link #remove(Serializable)} */
+    static final byte REMOVE = 5;
+    /** Operation code of {@link #removeAll()} */
+    static final byte REMOVE_ALL = 6;
+    /** Operation code of {@link #send(List)} */
+    static final byte SEND = 7;
+    /** Operation code of {@link #getGuid()} */
+    static final byte GET_GUID = 8;
+
+    /** Status of a successful response, carrying the result */
+    static final byte SUCCESS = 0;
+    /** Status of a failed response, carrying the failure message */
+    static final byte FAILURE = 1;
+
+    private final NioTransport transport;
+    private final String hostName;
+    private final int port;
+    private final String cacheName;
+    private final int timeoutMillis;
+    private final ClassLoader loader;
+    private final InetSocketAddress address;
+
+    /**
+     * Creates a peer.
+     *
+     * @param transport the transport to call the peer through
+     * @param hostName the host the peer listens on
+     * @param port the port the peer listens on
+     * @param cacheName the name of the remote cache
+     * @param timeoutMillis the time to wait for a response
+     * @param loader the class loader the classes of the responses are resolved with
+     */
+    NioCachePeer(NioTransport transport, String hostName, int port, String cacheName, int timeoutMillis, ClassLoader loader) {
+        this.transport = transport;
+        this.hostName = hostName;
+        this.port = port;
+        this.cacheName = cacheName;
+        this.timeoutMillis = timeoutMillis;
+        this.loader = loader;
+        this.address = new InetSocketAddress(hostName, port);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void put(Element element) throws IllegalArgumentException, IllegalStateException, RemoteException {
+        call(PUT, element);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean remove(Serializable key) throws IllegalStateException, RemoteException {
+        return ((Boolean) call(REMOVE, key)).booleanValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeAll() throws RemoteException, IllegalStateException {
+        call(REMOVE_ALL, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void send(List eventMessages) throws RemoteException {
+        call(SEND, eventMessages);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getName() {
+        return cacheName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getGuid() throws RemoteException {
+        return (String) call(GET_GUID, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the URL, without the scheme, as a string e.g. //hostname:port/cacheName
+     */
+    public String getUrl() {
+        return getUrlBase() + "/" + cacheName;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the URL, without the scheme, as a string e.g. //hostname:port
+     */
+    public String getUrlBase() {
+        return "//" + (hostName.contains(":") ? ("[" + hostName + "]") : hostName) + ":" + port;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List getKeys() throws RemoteException {
+        return (List) call(GET_KEYS, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element getQuiet(Serializable key) throws RemoteException {
+        return (Element) call(GET_QUIET, key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List getElements(List keys) throws RemoteException {
+        return (List) call(GET_ELEMENTS, keys);
+    }
+
+    private Object call(byte operation, Object argument) throws RemoteException {
+        NioConnection.PendingCall call;
+        Object result;
+        try {
+            NioConnection connection = transport.connect(address, timeoutMillis);
+            call = connection.call(operation, cacheName, argument, timeoutMillis);
+            result = NioConnection.readObject(ByteBufferInputStream.of(call.getPayload()), loader);
+        } catch (IOException e) {
+            throw new RemoteException("Unable to call " + getUrl(), e);
+        } catch (ClassNotFoundException e) {
+            throw new RemoteException("Unable to deserialize the response of " + getUrl(), e);
+        }
+        if (call.getStatus() != SUCCESS) {
+            throw new RemoteException("Call to " + getUrl() + " failed: " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a String that represents the value of this object.
+     */
+    @Override
+    public String toString() {
+        return "URL: " + getUrl();
+    }
+}
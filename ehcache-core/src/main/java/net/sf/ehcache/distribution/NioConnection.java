@@ -0,0 +1,388 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.util.PreferredLoaderObjectInputStream;
+
+/**
+ * A connection of a {@link NioTransport}, exchanging frames over a non-blocking socket channel.
+ * <p>
+ * A frame is made of its length, a request id, a one byte code and a payload. Requests are pipelined: any number of
+ * calls may be outstanding on a connection at once, responses being matched to their callers by request id. Frames
+ * are queued by the sending threads and written by the selector thread of the transport, which gathers as many of
+ * them as it can in a single write.
+ */
+final class NioConnection {
+
+    private static final int LENGTH_SIZE = 4;
+    private static final int ID_SIZE = 8;
+    private static final int FRAME_HEADER_SIZE = ID_SIZE + 1;
+    private static final int INITIAL_FRAME_CAPACITY = 256;
+    private static final int WRITE_BATCH = 64;
+
+    private final NioTransport transport;
+    private final SocketChannel channel;
+    private final InetSocketAddress remoteAddress;
+    private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicBoolean writeRequested = new AtomicBoolean();
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(LENGTH_SIZE);
+    private final AtomicLong requestIds = new AtomicLong();
+    private final ConcurrentMap<Long, PendingCall> pendingCalls = new ConcurrentHashMap<Long, PendingCall>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean executing = new AtomicBoolean();
+    private ByteBuffer frameBuffer;
+    private SelectionKey key;
+    private volatile boolean closed;
+
+    /**
+     * Creates a connection over a connected channel.
+     *
+     * @param transport the transport owning the connection
+     * @param channel the connected channel
+     * @param remoteAddress the address this connection was opened to, or null if it was accepted
+     */
+    NioConnection(NioTransport transport, SocketChannel channel, InetSocketAddress remoteAddress) {
+        this.transport = transport;
+        this.channel = channel;
+        this.remoteAddress = remoteAddress;
+    }
+
+    /**
+     * Calls the remote end of this connection and waits for its response.
+     *
+     * @param code the operation code
+     * @param header a header the remote end can read before the argument
+     * @param argument the argument, may be null
+     * @param timeoutMillis the time to wait for the response
+     * @return the completed call
+     * @throws IOException if the request cannot be sent, or no response was received in time
+     */
+    PendingCall call(byte code, String header, Object argument, long timeoutMillis) throws IOException {
+        FrameOutputStream out = new FrameOutputStream();
+        new DataOutputStream(out).writeUTF(header);
+        writeObject(out, argument);
+
+        Long id = Long.valueOf(requestIds.incrementAndGet());
+        PendingCall call = new PendingCall();
+        pendingCalls.put(id, call);
+        try {
+            send(out.toFrame(id.longValue(), code));
+            if (closed) {
+                call.fail(new EOFException("Connection to " + remoteAddress + " closed"));
+            }
+            call.await(timeoutMillis);
+        } finally {
+            pendingCalls.remove(id);
+        }
+        return call;
+    }
+
+    /**
+     * Replies to a request received on this connection.
+     *
+     * @param id the id of the request
+     * @param status the status of the response
+     * @param response the response, may be null
+     * @throws IOException if the response cannot be serialized
+     */
+    void reply(long id, byte status, Object response) throws IOException {
+        FrameOutputStream out = new FrameOutputStream();
+        writeObject(out, response);
+        send(out.toFrame(id, status));
+    }
+
+    /**
+     * Reads an object written as the argument of a call or a response.
+     *
+     * @param in a stream over the payload, positioned after any header
+     * @param loader the class loader to resolve classes with
+     * @return the object, or null if none was written
+     */
+    static Object readObject(InputStream in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        if (in.available() == 0) {
+            return null;
+        }
+        return new PreferredLoaderObjectInputStream(in, loader).readObject();
+    }
+
+    private static void writeObject(FrameOutputStream out, Object object) throws IOException {
+        if (object != null) {
+            ObjectOutputStream objectOut = new ObjectOutputStream(out);
+            objectOut.writeObject(object);
+            objectOut.close();
+        }
+    }
+
+    private void send(ByteBuffer frame) throws IOException {
+        if (closed) {
+            throw new EOFException("Connection to " + remoteAddress + " closed");
+        }
+        writeQueue.offer(frame);
+        if (writeRequested.compareAndSet(false, true)) {
+            transport.requestWrite(this);
+        }
+    }
+
+    /**
+     * Executes a task on the given executor once all the tasks previously submitted to this connection have completed.
+     * <p>
+     * This preserves the order of the requests received on a connection while still dispatching them away from the
+     * selector thread.
+     *
+     * @param task the task
+     * @param executor the executor to run the task on
+     */
+    void executeInOrder(Runnable task, Executor executor) {
+        tasks.offer(task);
+        scheduleTasks(executor);
+    }
+
+    private void scheduleTasks(final Executor executor) {
+        if (!tasks.isEmpty() && executing.compareAndSet(false, true)) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                            task.run();
+                        }
+                    } finally {
+                        executing.set(false);
+                        scheduleTasks(executor);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Registers this connection with the selector of its transport. Called from the selector thread.
+     */
+    void register(Selector selector) throws IOException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+        enableWrites();
+    }
+
+    /**
+     * Makes the selector watch for this connection becoming writable, if frames are waiting. Called from the selector thread.
+     */
+    void enableWrites() {
+        writeRequested.set(false);
+        if (key != null && key.isValid() && !writeQueue.isEmpty()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Reads the frames available on the channel, passing each to the handler. Called from the selector thread.
+     *
+     * @param handler the handler of the requests received, ignored by connections that were opened by this end
+     * @throws IOException if the channel was closed, or a corrupt frame or an oversized request was received
+     */
+    void readFrames(NioTransport.FrameHandler handler) throws IOException {
+        while (true) {
+            if (frameBuffer == null) {
+                if (channel.read(lengthBuffer) < 0) {
+                    throw new EOFException("Connection closed by peer");
+                }
+                if (lengthBuffer.hasRemaining()) {
+                    return;
+                }
+                lengthBuffer.flip();
+                int length = lengthBuffer.getInt();
+                lengthBuffer.clear();
+                if (length < FRAME_HEADER_SIZE) {
+                    throw new IOException("Corrupt frame of length " + length);
+                }
+                // responses to the calls of this end are as large as the remote end made them, e.g. the keys of a large cache
+                if (remoteAddress == null && length > transport.getMaxFrameSize()) {
+                    throw new IOException("Request of length " + length + " exceeds the maximum frame size of "
+                            + transport.getMaxFrameSize() + " bytes");
+                }
+                frameBuffer = ByteBuffer.allocate(length);
+            }
+            if (channel.read(frameBuffer) < 0) {
+                throw new EOFException("Connection closed by peer");
+            }
+            if (frameBuffer.hasRemaining()) {
+                return;
+            }
+            frameBuffer.flip();
+            long id = frameBuffer.getLong();
+            byte code = frameBuffer.get();
+            ByteBuffer payload = frameBuffer.slice();
+            frameBuffer = null;
+            if (remoteAddress == null) {
+                handler.frameReceived(this, id, code, payload);
+            } else {
+                PendingCall call = pendingCalls.get(Long.valueOf(id));
+                if (call != null) {
+                    call.complete(code, payload);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes as many of the queued frames as the channel accepts. Called from the selector thread.
+     */
+    void writeFrames() throws IOException {
+        ByteBuffer[] batch = new ByteBuffer[WRITE_BATCH];
+        while (true) {
+            int count = 0;
+            for (Iterator<ByteBuffer> it = writeQueue.iterator(); it.hasNext() && count < WRITE_BATCH;) {
+                batch[count++] = it.next();
+            }
+            if (count == 0) {
+                break;
+            }
+            channel.write(batch, 0, count);
+            for (int i = 0; i < count && !batch[i].hasRemaining(); i++) {
+                writeQueue.poll();
+            }
+            if (batch[count - 1].hasRemaining()) {
+                return;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        if (!writeQueue.isEmpty()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Closes the channel, failing the calls still waiting for a response.
+     */
+    void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing more we can do
+        }
+        writeQueue.clear();
+        for (PendingCall call : pendingCalls.values()) {
+            call.fail(new EOFException("Connection to " + remoteAddress + " closed"));
+        }
+    }
+
+    /**
+     * @return true once this connection is closed
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the address this connection was opened to, or null if it was accepted
+     */
+    InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * A call waiting for its response.
+     */
+    static final class PendingCall {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile byte status;
+        private volatile ByteBuffer payload;
+        private volatile IOException failure;
+
+        private void complete(byte status, ByteBuffer payload) {
+            this.status = status;
+            this.payload = payload;
+            done.countDown();
+        }
+
+        private void fail(IOException failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        private void await(long timeoutMillis) throws IOException {
+            try {
+                if (!done.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new SocketTimeoutException("No response received within " + timeoutMillis + "ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a response");
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        /**
+         * @return the status of the response
+         */
+        byte getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the payload of the response
+         */
+        ByteBuffer getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * A byte array stream reserving room for the frame header, so that the frame can be sent without copying.
+     */
+    private static final class FrameOutputStream extends ByteArrayOutputStream {
+
+        FrameOutputStream() {
+            super(INITIAL_FRAME_CAPACITY);
+            count = LENGTH_SIZE + FRAME_HEADER_SIZE;
+        }
+
+        ByteBuffer toFrame(long id, byte code) {
+            ByteBuffer frame = ByteBuffer.wrap(buf, 0, count);
+            frame.putInt(0, count - LENGTH_SIZE);
+            frame.putLong(LENGTH_SIZE, id);
+            frame.put(LENGTH_SIZE + ID_SIZE, code);
+            return frame;
+        }
+    }
+}
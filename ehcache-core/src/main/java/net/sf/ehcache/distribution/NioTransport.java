@@ -0,0 +1,307 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A multiplexed TCP transport, serving all of its connections from a single selector thread.
+ * <p>
+ * A transport may listen for connections, the requests received on those being passed to its {@link FrameHandler}, and
+ * open connections of its own, which are kept and shared by all the callers to the same address.
+ */
+final class NioTransport implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioTransport.class.getName());
+
+    private static final long DISPOSE_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Handles the requests received on the accepted connections of a transport.
+     */
+    interface FrameHandler {
+
+        /**
+         * Called from the selector thread for each request received. Implementations must not block.
+         *
+         * @param connection the connection the request was received on
+         * @param id the request id, to reply with
+         * @param code the operation code
+         * @param payload the payload of the request
+         */
+        void frameReceived(NioConnection connection, long id, byte code, ByteBuffer payload);
+    }
+
+    private final Selector selector;
+    private final FrameHandler handler;
+    private final int maxFrameSize;
+    private final Thread thread;
+    private final Queue<NioConnection> registrations = new ConcurrentLinkedQueue<NioConnection>();
+    private final Queue<NioConnection> writers = new ConcurrentLinkedQueue<NioConnection>();
+    private final ConcurrentMap<InetSocketAddress, NioConnection> connections = new ConcurrentHashMap<InetSocketAddress, NioConnection>();
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+
+    /**
+     * Creates a transport accepting requests of up to {@link NioCacheManagerPeerListenerFactory#DEFAULT_MAX_FRAME_SIZE}
+     * bytes.
+     *
+     * @param name the name of the selector thread
+     * @param handler the handler of the requests received, or null if this transport does not listen
+     * @throws IOException if the selector cannot be opened
+     */
+    NioTransport(String name, FrameHandler handler) throws IOException {
+        this(name, handler, NioCacheManagerPeerListenerFactory.DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Creates a transport.
+     *
+     * @param name the name of the selector thread
+     * @param handler the handler of the requests received, or null if this transport does not listen
+     * @param maxFrameSize the size in bytes of the largest request accepted, an accepted connection receiving a larger one
+     *                     being closed. The responses to the calls of this transport are not limited
+     * @throws IOException if the selector cannot be opened
+     */
+    NioTransport(String name, FrameHandler handler, int maxFrameSize) throws IOException {
+        if (maxFrameSize <= 0) {
+            throw new IllegalArgumentException("The maximum frame size must be positive. Value was " + maxFrameSize);
+        }
+        this.selector = Selector.open();
+        this.handler = handler;
+        this.maxFrameSize = maxFrameSize;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Listens for connections on the given address. Must be called before the transport is started.
+     *
+     * @param address the address to listen on
+     * @throws IOException if the address cannot be bound
+     */
+    void listen(InetSocketAddress address) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Starts the selector thread.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Returns the connection to the given address, opening it if there is none yet or the previous one was closed.
+     *
+     * @param address the address to connect to
+     * @param timeoutMillis the connect timeout
+     * @return a connection shared by all the callers to that address
+     * @throws IOException if the connection cannot be opened
+     */
+    NioConnection connect(InetSocketAddress address, int timeoutMillis) throws IOException {
+        NioConnection connection = connections.get(address);
+        if (connection != null && !connection.isClosed()) {
+            return connection;
+        }
+        if (!running) {
+            throw new IOException("Transport disposed");
+        }
+
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().connect(address, timeoutMillis);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        NioConnection opened = new NioConnection(this, channel, address);
+        if (connection == null ? connections.putIfAbsent(address, opened) == null : connections.replace(address, connection, opened)) {
+            registrations.offer(opened);
+            selector.wakeup();
+            return opened;
+        } else {
+            channel.close();
+            return connect(address, timeoutMillis);
+        }
+    }
+
+    /**
+     * Asks the selector thread to write the frames queued on a connection.
+     *
+     * @param connection the connection
+     */
+    void requestWrite(NioConnection connection) {
+        writers.offer(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                for (NioConnection connection = registrations.poll(); connection != null; connection = registrations.poll()) {
+                    try {
+                        connection.register(selector);
+                    } catch (IOException e) {
+                        close(connection);
+                    }
+                }
+                for (NioConnection connection = writers.poll(); connection != null; connection = writers.poll()) {
+                    connection.enableWrites();
+                }
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext();) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    process(key);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("NIO transport " + thread.getName() + " stopped on " + e.getMessage(), e);
+        } catch (ClosedSelectorException e) {
+            LOG.debug("NIO transport {} stopped", thread.getName());
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void process(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        } else if (key.isAcceptable()) {
+            try {
+                accept();
+            } catch (IOException e) {
+                LOG.warn("Failed to accept an NIO connection on " + e.getMessage());
+            }
+            return;
+        }
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.readFrames(handler);
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.writeFrames();
+            }
+        } catch (IOException e) {
+            LOG.debug("Closing NIO connection to " + connection.getRemoteAddress() + " on " + e.getMessage());
+            close(connection);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel != null) {
+            try {
+                channel.socket().setTcpNoDelay(true);
+                channel.configureBlocking(false);
+                new NioConnection(this, channel, null).register(selector);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+    }
+
+    private void close(NioConnection connection) {
+        connection.close();
+        if (connection.getRemoteAddress() != null) {
+            connections.remove(connection.getRemoteAddress(), connection);
+        }
+    }
+
+    private void closeAll() {
+        running = false;
+        if (selector.isOpen()) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof NioConnection) {
+                    close((NioConnection) key.attachment());
+                }
+            }
+        }
+        for (NioConnection connection : registrations) {
+            close(connection);
+        }
+        for (NioConnection connection : connections.values()) {
+            close(connection);
+        }
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            LOG.debug("Error closing NIO transport: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the size in bytes of the largest request accepted
+     */
+    int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * @return the port this transport listens on
+     */
+    int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops the selector thread, closing all the connections.
+     */
+    void dispose() {
+        running = false;
+        selector.wakeup();
+        if (thread.isAlive()) {
+            try {
+                thread.join(DISPOSE_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            closeAll();
+        }
+    }
+}
@@ -21,13 +21,24 @@ import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.Status;
 
+import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.rmi.UnmarshalException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+import net.sf.ehcache.util.NamedThreadFactory;
 
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
@@ -51,6 +62,12 @@ import org.slf4j.Logger;
  * of SoftReferences is that the VM (JDK1.5 anyway) will do that rather than grow the heap size to the maximum.
  * The workaround is to either set minimum heap size to the maximum heap size to force heap allocation at start
  * up, or put up with a few lost messages while the heap grows.
+ * <p>
+ * Each batch is coalesced before being sent: only the last event for a key is kept, and everything preceding a
+ * removeAll is dropped. Batches are sent to all peers in parallel, the next batch being sent once every peer has
+ * been sent the previous one. The queue is bounded: once it holds its maximum size, the threads notifying events
+ * wait for the replication thread to make room. Batches can also be sent as gzipped {@link SerializedPayload}s,
+ * which peers running older versions cannot read.
  *
  * @author Greg Luck
  * @version $Id$
@@ -77,13 +94,33 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
      */
     private final int maximumBatchSize;
 
+    /**
+     * The maximum number of messages waiting in the queue.
+     */
+    private final int maximumQueueSize;
+
+    /**
+     * Whether batches are gzipped.
+     */
+    private final boolean compressed;
+
     /**
      * A queue of updates.
      */
     private final Queue<Object> replicationQueue = new ConcurrentLinkedQueue<Object>();
 
     /**
-     * Constructor for internal and subclass use
+     * Room left in the replication queue.
+     */
+    private final Semaphore queueCapacity;
+
+    /**
+     * Sends batches to peers in parallel, created on first use.
+     */
+    private volatile ExecutorService sendExecutor;
+
+    /**
+     * Constructor for internal and subclass use, with an unbounded queue and uncompressed batches
      */
     public RMIAsynchronousCacheReplicator(
             boolean replicatePuts,
@@ -93,6 +130,23 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
             boolean replicateRemovals,
             int replicationInterval,
             int maximumBatchSize) {
+        this(replicatePuts, replicatePutsViaCopy, replicateUpdates, replicateUpdatesViaCopy, replicateRemovals,
+                replicationInterval, maximumBatchSize, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Constructor for internal and subclass use
+     */
+    public RMIAsynchronousCacheReplicator(
+            boolean replicatePuts,
+            boolean replicatePutsViaCopy,
+            boolean replicateUpdates,
+            boolean replicateUpdatesViaCopy,
+            boolean replicateRemovals,
+            int replicationInterval,
+            int maximumBatchSize,
+            int maximumQueueSize,
+            boolean compressed) {
         super(replicatePuts,
                 replicatePutsViaCopy,
                 replicateUpdates,
@@ -100,6 +154,9 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
                 replicateRemovals);
         this.replicationInterval = replicationInterval;
         this.maximumBatchSize = maximumBatchSize;
+        this.maximumQueueSize = maximumQueueSize;
+        this.compressed = compressed;
+        this.queueCapacity = new Semaphore(maximumQueueSize);
         status = Status.STATUS_ALIVE;
         replicationThread.start();
     }
@@ -272,14 +329,15 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
      * Adds a message to the queue.
      * <p>
      * This method checks the state of the replication thread and warns
-     * if it has stopped and then discards the message.
+     * if it has stopped and then discards the message. If the queue is full, it waits for the replication
+     * thread to make room.
      *
      * @param eventMessage
      */
     protected void addToReplicationQueue(RmiEventMessage eventMessage) {
         if (!replicationThread.isAlive()) {
             LOG.error("CacheEventMessages cannot be added to the replication queue because the replication thread has died.");
-        } else {
+        } else if (awaitQueueCapacity()) {
             switch (eventMessage.getType()) {
                 case PUT:
                     replicationQueue.add(new SoftReference(eventMessage));
@@ -292,12 +350,30 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
     }
 
 
+    private boolean awaitQueueCapacity() {
+        try {
+            while (!queueCapacity.tryAcquire(replicationInterval, TimeUnit.MILLISECONDS)) {
+                if (notAlive() || !replicationThread.isAlive()) {
+                    LOG.warn("CacheEventMessage discarded as the replication queue stayed full until replication stopped.");
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("CacheEventMessage discarded as the thread was interrupted while waiting for room in the replication queue.");
+            return false;
+        }
+    }
+
     /**
      * Gets called once per {@link #replicationInterval}.
      * <p>
      * Sends accumulated messages in bulk to each peer. i.e. if ther are 100 messages and 1 peer,
      * 1 RMI invocation results, not 100. Also, if a peer is unavailable this is discovered in only 1 try.
      * <p>
+     * The messages are coalesced, and sent to all peers in parallel.
+     * <p>
      * Makes a copy of the queue so as not to hold up the enqueue operations.
      * <p>
      * Any exceptions are caught so that the replication thread does not die, and because errors are expected,
@@ -306,28 +382,114 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
      * This method issues warnings for problems that can be fixed with configuration changes.
      */
     private void writeReplicationQueue() {
-        List<EventMessage> eventMessages = extractEventMessages(maximumBatchSize);
+        List<EventMessage> eventMessages = coalesce(extractEventMessages(maximumBatchSize));
 
         if (!eventMessages.isEmpty()) {
-            for (CachePeer cachePeer : listRemoteCachePeers(eventMessages.get(0).getEhcache())) {
+            Ehcache cache = eventMessages.get(0).getEhcache();
+            List<?> payload = eventMessages;
+            if (compressed || SerializedPayload.isUsedBy(cache)) {
                 try {
-                    cachePeer.send(eventMessages);
-                } catch (UnmarshalException e) {
-                    String message = e.getMessage();
-                    if (message.contains("Read time out") || message.contains("Read timed out")) {
-                        LOG.warn("Unable to send message to remote peer due to socket read timeout. Consider increasing" +
-                                " the socketTimeoutMillis setting in the cacheManagerPeerListenerFactory. " +
-                                "Message was: " + message);
-                    } else {
-                        LOG.debug("Unable to send message to remote peer.  Message was: " + message);
-                    }
-                } catch (Throwable t) {
-                    LOG.warn("Unable to send message to remote peer.  Message was: " + t.getMessage(), t);
+                    payload = Collections.singletonList(SerializedPayload.encodeEvents(cache, eventMessages, compressed));
+                } catch (IOException e) {
+                    LOG.warn("Unable to serialize replication messages for cache " + cache.getName() + ". " + e.getMessage(), e);
+                    return;
                 }
             }
+            List<CachePeer> cachePeers = listRemoteCachePeers(cache);
+            if (cachePeers.size() == 1) {
+                send(cachePeers.get(0), payload);
+            } else {
+                sendInParallel(cachePeers, payload);
+            }
         }
     }
 
+    private void sendInParallel(List<CachePeer> cachePeers, final List<?> payload) {
+        ExecutorService executor = getSendExecutor();
+        List<Future<?>> sends = new ArrayList<Future<?>>(cachePeers.size());
+        for (final CachePeer cachePeer : cachePeers) {
+            sends.add(executor.submit(new Runnable() {
+                public void run() {
+                    send(cachePeer, payload);
+                }
+            }));
+        }
+        for (Future<?> send : sends) {
+            try {
+                send.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                LOG.warn("Unable to send message to remote peer.  Message was: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    private ExecutorService getSendExecutor() {
+        ExecutorService executor = sendExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = sendExecutor;
+                if (executor == null) {
+                    executor = Executors.newCachedThreadPool(new NamedThreadFactory("Replication Sender", true));
+                    sendExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static void send(CachePeer cachePeer, List<?> payload) {
+        try {
+            cachePeer.send(payload);
+        } catch (UnmarshalException e) {
+            String message = e.getMessage();
+            if (message.contains("Read time out") || message.contains("Read timed out")) {
+                LOG.warn("Unable to send message to remote peer due to socket read timeout. Consider increasing" +
+                        " the socketTimeoutMillis setting in the cacheManagerPeerListenerFactory. " +
+                        "Message was: " + message);
+            } else {
+                LOG.debug("Unable to send message to remote peer.  Message was: " + message);
+            }
+        } catch (Throwable t) {
+            LOG.warn("Unable to send message to remote peer.  Message was: " + t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Coalesces a batch of messages, keeping only the last message for each key, in the order of these last
+     * messages, and dropping the messages preceding the last removeAll.
+     *
+     * @param eventMessages the messages, in the order they were queued
+     * @return the coalesced messages
+     */
+    static List<EventMessage> coalesce(List<EventMessage> eventMessages) {
+        Map<Object, EventMessage> lastMessages = new LinkedHashMap<Object, EventMessage>();
+        EventMessage removeAll = null;
+        for (EventMessage message : eventMessages) {
+            RmiEventMessage eventMessage = (RmiEventMessage) message;
+            if (eventMessage.getType() == RmiEventType.REMOVE_ALL) {
+                lastMessages.clear();
+                removeAll = eventMessage;
+            } else {
+                Object key = eventMessage.getType() == RmiEventType.PUT
+                        ? eventMessage.getElement().getObjectKey() : eventMessage.getSerializableKey();
+                lastMessages.remove(key);
+                lastMessages.put(key, eventMessage);
+            }
+        }
+        if (removeAll == null && lastMessages.size() == eventMessages.size()) {
+            return eventMessages;
+        }
+        List<EventMessage> coalesced = new ArrayList<EventMessage>(lastMessages.size() + 1);
+        if (removeAll != null) {
+            coalesced.add(removeAll);
+        }
+        coalesced.addAll(lastMessages.values());
+        return coalesced;
+    }
+
     private void flushReplicationQueue() {
         while (!replicationQueue.isEmpty()) {
             writeReplicationQueue();
@@ -352,7 +514,9 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
             Object polled = replicationQueue.poll();
             if (polled == null) {
                 break;
-            } else if (polled instanceof EventMessage) {
+            }
+            queueCapacity.release();
+            if (polled instanceof EventMessage) {
                 list.add((EventMessage) polled);
             } else {
                 EventMessage message = ((SoftReference<EventMessage>) polled).get();
@@ -396,6 +560,10 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
     public final void dispose() {
         status = Status.STATUS_SHUTDOWN;
         flushReplicationQueue();
+        ExecutorService executor = sendExecutor;
+        if (executor != null) {
+            executor.shutdown();
+        }
     }
 
 
@@ -412,7 +580,8 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
         //shutup checkstyle
         super.clone();
         return new RMIAsynchronousCacheReplicator(replicatePuts, replicatePutsViaCopy,
-                replicateUpdates, replicateUpdatesViaCopy, replicateRemovals, replicationInterval, maximumBatchSize);
+                replicateUpdates, replicateUpdatesViaCopy, replicateRemovals, replicationInterval, maximumBatchSize,
+                maximumQueueSize, compressed);
     }
 
 
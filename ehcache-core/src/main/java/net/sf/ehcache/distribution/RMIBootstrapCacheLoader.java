@@ -16,21 +16,45 @@
 
 package net.sf.ehcache.distribution;
 
+import net.sf.ehcache.Cache;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.bootstrap.BootstrapCacheLoader;
+import net.sf.ehcache.util.NamedThreadFactory;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.terracotta.statistics.Statistic;
+import org.terracotta.statistics.StatisticsManager;
 
 /**
- * Loads Elements from a random Cache Peer
+ * Loads Elements from random Cache Peers
+ * <p>
+ * The keys are listed by one peer, then fetched in chunks from up to {@link #getMaximumBootstrapPeers()} peers at once,
+ * each peer having up to {@link #getChunksInFlight()} chunks requested at a time. Chunks are put in the cache as soon as
+ * they are received, so that receiving a chunk overlaps with loading the previous one. Chunks a failing peer could not
+ * serve are fetched from the remaining ones.
+ * <p>
+ * A delta bootstrap does not request the keys already present locally, for instance restored from a persistent disk
+ * store, and does not overwrite local elements with older versions, such as replicated updates received while
+ * bootstrapping.
  *
  * @author Greg Luck
  * @version $Id$
@@ -38,6 +62,8 @@ import org.slf4j.LoggerFactory;
 public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable {
 
     private static final int ONE_SECOND = 1000;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final double NANOS_PER_SECOND = 1e9;
 
     private static final Logger LOG = LoggerFactory.getLogger(RMIBootstrapCacheLoader.class.getName());
 
@@ -51,14 +77,53 @@ public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable
      */
     protected int maximumChunkSizeBytes;
 
+    /**
+     * The maximum number of peers to fetch elements from concurrently.
+     */
+    protected int maximumBootstrapPeers;
+
+    /**
+     * The maximum number of chunks requested from a peer at a time.
+     */
+    protected int chunksInFlight;
+
+    /**
+     * Whether keys present locally are skipped, and local elements kept unless the peer holds a newer version.
+     */
+    protected boolean deltaBootstrap;
+
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile long requestedKeys;
+    private final AtomicLong fetchedKeys = new AtomicLong();
+    private final AtomicLong loadedElements = new AtomicLong();
+    private final AtomicLong skippedKeys = new AtomicLong();
+
     /**
      * Creates a boostrap cache loader that will work with RMI based distribution
      *
      * @param asynchronous Whether to load asynchronously
      */
     public RMIBootstrapCacheLoader(boolean asynchronous, int maximumChunkSize) {
+        this(asynchronous, maximumChunkSize, 1, 1, false);
+    }
+
+    /**
+     * Creates a boostrap cache loader that will work with RMI based distribution
+     *
+     * @param asynchronous Whether to load asynchronously
+     * @param maximumChunkSize the maximum serialized size of the elements requested at once
+     * @param maximumBootstrapPeers the maximum number of peers to fetch elements from concurrently
+     * @param chunksInFlight the maximum number of chunks requested from a peer at a time
+     * @param deltaBootstrap whether keys present locally are skipped
+     */
+    public RMIBootstrapCacheLoader(boolean asynchronous, int maximumChunkSize, int maximumBootstrapPeers, int chunksInFlight,
+                                   boolean deltaBootstrap) {
         this.asynchronous = asynchronous;
         this.maximumChunkSizeBytes = maximumChunkSize;
+        this.maximumBootstrapPeers = Math.max(1, maximumBootstrapPeers);
+        this.chunksInFlight = Math.max(1, chunksInFlight);
+        this.deltaBootstrap = deltaBootstrap;
     }
 
 
@@ -70,6 +135,7 @@ public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable
      *          if anything goes wrong with the remote call
      */
     public void load(Ehcache cache) throws RemoteCacheException {
+        StatisticsManager.associate(this).withParent(cache);
         if (asynchronous) {
             BootstrapThread bootstrapThread = new BootstrapThread(cache);
             bootstrapThread.start();
@@ -117,7 +183,7 @@ public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable
 
 
     /**
-     * Bootstraps the cache from a random CachePeer. Requests are done in chunks estimated at 5MB Serializable
+     * Bootstraps the cache from random CachePeers. Requests are done in chunks estimated at 5MB Serializable
      * size. This balances memory use on each end and network performance.
      * <p>
      * Bootstrapping requires the establishment of a cluster. This can be instantaneous for manually configued
@@ -134,49 +200,145 @@ public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable
             LOG.debug("Empty list of cache peers for cache " + cache.getName() + ". No cache peer to bootstrap from.");
             return;
         }
-        Random random = new Random();
-        int randomPeerNumber = random.nextInt(cachePeers.size());
-        CachePeer cachePeer = (CachePeer) cachePeers.get(randomPeerNumber);
-        LOG.debug("Bootstrapping " + cache.getName() + " from " + cachePeer);
+        List<CachePeer> peers = new ArrayList<CachePeer>(cachePeers);
+        Collections.shuffle(peers);
+        if (peers.size() > maximumBootstrapPeers) {
+            peers = peers.subList(0, maximumBootstrapPeers);
+        }
+        CachePeer cachePeer = peers.get(0);
+        LOG.debug("Bootstrapping " + cache.getName() + " from " + peers);
 
         try {
+            startNanos = System.nanoTime();
+            endNanos = 0;
+            fetchedKeys.set(0);
+            loadedElements.set(0);
+            skippedKeys.set(0);
 
             //Estimate element size
-            Element sampleElement = null;
             List keys = cachePeer.getKeys();
-            for (int i = 0; i < keys.size(); i++) {
-                Serializable key = (Serializable) keys.get(i);
-                sampleElement = cachePeer.getQuiet(key);
-                if (sampleElement != null && sampleElement.getSerializedSize() != 0) {
-                    break;
-                }
-            }
+            requestedKeys = keys.size();
+            Element sampleElement = sampleElement(keys, cachePeer);
             if (sampleElement == null) {
                 LOG.debug("All cache peer elements were either null or empty. Nothing to bootstrap from. Cache was "
                         + cache.getName() + ". Cache peer was " + cachePeer);
                 return;
             }
             long size = sampleElement.getSerializedSize();
-            int chunkSize = (int) (maximumChunkSizeBytes / size);
-
-            List requestChunk = new ArrayList();
-            for (int i = 0; i < keys.size(); i++) {
-                Serializable serializable = (Serializable) keys.get(i);
-                requestChunk.add(serializable);
-                if (requestChunk.size() == chunkSize) {
-                    fetchAndPutElements(cache, requestChunk, cachePeer);
-                    requestChunk.clear();
-                }
-            }
-            //get leftovers
-            fetchAndPutElements(cache, requestChunk, cachePeer);
-            LOG.debug("Bootstrap of " + cache.getName() + " from " + cachePeer + " finished. "
-                    + keys.size() + " keys requested.");
+            int chunkSize = (int) Math.max(1, maximumChunkSizeBytes / size);
+            BlockingQueue<List> chunks = splitInChunks(cache, keys, chunkSize);
+            fetchChunks(cache, chunks, peers);
+            endNanos = System.nanoTime();
+            LOG.debug("Bootstrap of " + cache.getName() + " from " + peers + " finished. " + keys.size() + " keys listed, "
+                    + skippedKeys.get() + " present locally, " + loadedElements.get() + " elements loaded at "
+                    + (long) getBootstrapThroughput() + " elements/s.");
+        } catch (RemoteCacheException e) {
+            throw e;
         } catch (Throwable t) {
             throw new RemoteCacheException("Error bootstrapping from remote peer. Message was: " + t.getMessage(), t);
         }
     }
 
+    private static Element sampleElement(List keys, CachePeer cachePeer) throws RemoteException {
+        for (int i = 0; i < keys.size(); i++) {
+            Element sampleElement = cachePeer.getQuiet((Serializable) keys.get(i));
+            if (sampleElement != null && sampleElement.getSerializedSize() != 0) {
+                return sampleElement;
+            }
+        }
+        return null;
+    }
+
+    private BlockingQueue<List> splitInChunks(Ehcache cache, List keys, int chunkSize) {
+        BlockingQueue<List> chunks = new LinkedBlockingQueue<List>();
+        List requestChunk = new ArrayList();
+        for (int i = 0; i < keys.size(); i++) {
+            Serializable serializable = (Serializable) keys.get(i);
+            if (deltaBootstrap && cache.isKeyInCache(serializable)) {
+                skippedKeys.incrementAndGet();
+                continue;
+            }
+            requestChunk.add(serializable);
+            if (requestChunk.size() == chunkSize) {
+                chunks.add(requestChunk);
+                requestChunk = new ArrayList();
+            }
+        }
+        //get leftovers
+        if (!requestChunk.isEmpty()) {
+            chunks.add(requestChunk);
+        }
+        return chunks;
+    }
+
+    private void fetchChunks(Ehcache cache, BlockingQueue<List> chunks, List<CachePeer> peers) throws InterruptedException {
+        AtomicInteger pendingChunks = new AtomicInteger(chunks.size());
+        int fetchers = peers.size() * chunksInFlight;
+        if (fetchers == 1) {
+            new ChunkFetcher(cache, peers.get(0), chunks, pendingChunks).call();
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(fetchers,
+                    new NamedThreadFactory("Bootstrap Thread for cache " + cache.getName(), true));
+            try {
+                List<Future<Void>> results = new ArrayList<Future<Void>>();
+                for (CachePeer peer : peers) {
+                    for (int i = 0; i < chunksInFlight; i++) {
+                        results.add(executor.submit(new ChunkFetcher(cache, peer, chunks, pendingChunks)));
+                    }
+                }
+                for (Future<Void> result : results) {
+                    result.get();
+                }
+            } catch (ExecutionException e) {
+                throw new RemoteCacheException("Error bootstrapping " + cache.getName() + ". Message was: "
+                        + e.getCause().getMessage(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        if (pendingChunks.get() > 0) {
+            throw new RemoteCacheException("Error bootstrapping " + cache.getName() + ". No remote peer could serve "
+                    + pendingChunks.get() + " chunks of keys.");
+        }
+    }
+
+    /**
+     * Fetches chunks of elements from one peer until all of them are loaded, or the peer fails.
+     */
+    private final class ChunkFetcher implements Callable<Void> {
+
+        private final Ehcache cache;
+        private final CachePeer peer;
+        private final BlockingQueue<List> chunks;
+        private final AtomicInteger pendingChunks;
+
+        private ChunkFetcher(Ehcache cache, CachePeer peer, BlockingQueue<List> chunks, AtomicInteger pendingChunks) {
+            this.cache = cache;
+            this.peer = peer;
+            this.chunks = chunks;
+            this.pendingChunks = pendingChunks;
+        }
+
+        public Void call() throws InterruptedException {
+            while (pendingChunks.get() > 0) {
+                List chunk = chunks.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (chunk == null) {
+                    continue;
+                }
+                try {
+                    fetchAndPutElements(cache, chunk, peer);
+                } catch (RemoteException e) {
+                    chunks.add(chunk);
+                    LOG.warn("Stopped bootstrapping " + cache.getName() + " from " + peer + ". The cause was: " + e.getMessage());
+                    return null;
+                }
+                fetchedKeys.addAndGet(chunk.size());
+                pendingChunks.decrementAndGet();
+            }
+            return null;
+        }
+    }
+
     /**
      * Acquires the cache peers for this cache.
      *
@@ -222,14 +384,86 @@ public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable
      * @throws java.rmi.RemoteException
      */
     protected void fetchAndPutElements(Ehcache cache, List requestChunk, CachePeer cachePeer) throws RemoteException {
-        List receivedChunk = cachePeer.getElements(requestChunk);
-        for (int i = 0; i < receivedChunk.size(); i++) {
-            Element element = (Element) receivedChunk.get(i);
-            // element could be expired at the peer
-            if (element != null) {
-                cache.put(element, true);
+        for (Element element : decodeElements(cache, cachePeer.getElements(requestChunk))) {
+            putElement(cache, element);
+        }
+    }
+
+    /**
+     * Gets the elements of a list returned by {@link CachePeer#getElements(List)}.
+     * <p>
+     * Peers of caches configured with a serializer other than Java serialization return the elements as a serialized
+     * payload, which is decoded with a new instance of the serializer configured for the given cache.
+     *
+     * @param cache        the cache the elements were requested for
+     * @param receivedChunk the list returned by the peer
+     * @return the elements received
+     * @throws RemoteException if a serialized payload cannot be decoded
+     */
+    public static List<Element> decodeElements(Ehcache cache, List receivedChunk) throws RemoteException {
+        List<Element> elements = new ArrayList<Element>(receivedChunk.size());
+        for (Object received : receivedChunk) {
+            if (received instanceof SerializedPayload) {
+                elements.addAll(decodeElements(cache, (SerializedPayload) received));
+            } else if (received != null) {
+                // element could be expired at the peer
+                elements.add((Element) received);
             }
         }
+        return elements;
+    }
+
+    private void putElement(Ehcache cache, Element element) {
+        if (!deltaBootstrap) {
+            cache.put(element, true);
+        } else if (cache instanceof Cache) {
+            if (!putIfNewer((Cache) cache, element)) {
+                return;
+            }
+        } else {
+            Element local = cache.getQuiet(element.getObjectKey());
+            if (local != null && !isNewer(element, local)) {
+                return;
+            }
+            cache.put(element, true);
+        }
+        loadedElements.incrementAndGet();
+    }
+
+    /**
+     * Installs an element unless the local one is as recent, with compare and swap operations so that an update
+     * replicated since the local element was read is never overwritten.
+     */
+    private static boolean putIfNewer(Cache cache, Element element) {
+        while (true) {
+            Element local = cache.getQuiet(element.getObjectKey());
+            if (local == null) {
+                if (cache.putIfAbsent(element, true) == null) {
+                    return true;
+                }
+            } else if (!isNewer(element, local)) {
+                return false;
+            } else if (cache.replace(local, element, true)) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean isNewer(Element remote, Element local) {
+        if (remote.getVersion() != local.getVersion()) {
+            return remote.getVersion() > local.getVersion();
+        }
+        return remote.getLatestOfCreationAndUpdateTime() > local.getLatestOfCreationAndUpdateTime();
+    }
+
+    private static List<Element> decodeElements(Ehcache cache, SerializedPayload payload) throws RemoteException {
+        try {
+            return payload.decodeElements(cache);
+        } catch (IOException e) {
+            throw new RemoteException("Unable to deserialize bootstrap elements", e);
+        } catch (ClassNotFoundException e) {
+            throw new RemoteException("Unable to deserialize bootstrap elements", e);
+        }
     }
 
     /**
@@ -254,13 +488,73 @@ public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable
         return maximumChunkSizeBytes;
     }
 
+    /**
+     * Gets the maximum number of peers elements are fetched from concurrently
+     */
+    public int getMaximumBootstrapPeers() {
+        return maximumBootstrapPeers;
+    }
+
+    /**
+     * Gets the maximum number of chunks requested from a peer at a time
+     */
+    public int getChunksInFlight() {
+        return chunksInFlight;
+    }
+
+    /**
+     * Whether keys present locally are skipped
+     */
+    public boolean isDeltaBootstrap() {
+        return deltaBootstrap;
+    }
+
+    /**
+     * The fraction of the keys listed by the peer that were fetched or skipped so far.
+     *
+     * @return the progress of the current or last bootstrap, between 0 and 1
+     */
+    @Statistic(name = "bootstrap-progress", tags = "bootstrap")
+    public double getBootstrapProgress() {
+        long requested = requestedKeys;
+        if (requested == 0) {
+            return endNanos == 0 ? 0 : 1;
+        }
+        return Math.min(1.0, (double) (fetchedKeys.get() + skippedKeys.get()) / requested);
+    }
+
+    /**
+     * The number of elements put in the cache by the current or last bootstrap.
+     *
+     * @return the number of elements loaded
+     */
+    @Statistic(name = "bootstrap-elements", tags = "bootstrap")
+    public long getBootstrappedElements() {
+        return loadedElements.get();
+    }
+
+    /**
+     * The rate at which the current or last bootstrap loaded elements.
+     *
+     * @return elements loaded per second
+     */
+    @Statistic(name = "bootstrap-throughput", tags = "bootstrap")
+    public double getBootstrapThroughput() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return end == start ? 0 : loadedElements.get() * NANOS_PER_SECOND / (end - start);
+    }
+
     /**
      * Clones this loader
      */
     @Override
     public Object clone() throws CloneNotSupportedException {
         //checkstyle
-        return new RMIBootstrapCacheLoader(asynchronous, maximumChunkSizeBytes);
+        return new RMIBootstrapCacheLoader(asynchronous, maximumChunkSizeBytes, maximumBootstrapPeers, chunksInFlight, deltaBootstrap);
     }
 
 }
@@ -37,6 +37,21 @@ public class RMIBootstrapCacheLoaderFactory extends BootstrapCacheLoaderFactory<
      */
     public static final String MAXIMUM_CHUNK_SIZE_BYTES = "maximumChunkSizeBytes";
 
+    /**
+     * The property name expected in ehcache.xml for the maximum number of peers to bootstrap from concurrently
+     */
+    public static final String MAXIMUM_BOOTSTRAP_PEERS = "maximumBootstrapPeers";
+
+    /**
+     * The property name expected in ehcache.xml for the maximum number of chunks requested from a peer at a time
+     */
+    public static final String CHUNKS_IN_FLIGHT = "chunksInFlight";
+
+    /**
+     * The property name expected in ehcache.xml for the delta bootstrap switch
+     */
+    public static final String DELTA_BOOTSTRAP = "deltaBootstrap";
+
     /**
      * The default maximum serialized size of the elements to request from a remote cache peer during bootstrap.
      */
@@ -52,6 +67,16 @@ public class RMIBootstrapCacheLoaderFactory extends BootstrapCacheLoaderFactory<
      */
     protected static final int FIVE_KB = 5000;
 
+    /**
+     * The default maximum number of peers to bootstrap from concurrently.
+     */
+    protected static final int DEFAULT_MAXIMUM_BOOTSTRAP_PEERS = 1;
+
+    /**
+     * The default maximum number of chunks requested from a peer at a time.
+     */
+    protected static final int DEFAULT_CHUNKS_IN_FLIGHT = 2;
+
     private static final Logger LOG = LoggerFactory.getLogger(RMIBootstrapCacheLoaderFactory.class.getName());
 
 
@@ -65,7 +90,36 @@ public class RMIBootstrapCacheLoaderFactory extends BootstrapCacheLoaderFactory<
     public RMIBootstrapCacheLoader createBootstrapCacheLoader(Properties properties) {
         boolean bootstrapAsynchronously = extractBootstrapAsynchronously(properties);
         int maximumChunkSizeBytes = extractMaximumChunkSizeBytes(properties);
-        return new RMIBootstrapCacheLoader(bootstrapAsynchronously, maximumChunkSizeBytes);
+        int maximumBootstrapPeers = extractPositiveInt(properties, MAXIMUM_BOOTSTRAP_PEERS, DEFAULT_MAXIMUM_BOOTSTRAP_PEERS);
+        int chunksInFlight = extractPositiveInt(properties, CHUNKS_IN_FLIGHT, DEFAULT_CHUNKS_IN_FLIGHT);
+        boolean deltaBootstrap = extractBoolean(properties, DELTA_BOOTSTRAP, false);
+        return new RMIBootstrapCacheLoader(bootstrapAsynchronously, maximumChunkSizeBytes, maximumBootstrapPeers, chunksInFlight,
+                deltaBootstrap);
+    }
+
+    /**
+     * Extracts a strictly positive integer from the properties, defaulting if the property is missing or invalid
+     *
+     * @param properties the properties passed by the CacheManager, read from the configuration file
+     * @param prop the property name to look for
+     * @param defaultValue the default value
+     * @return the value, or its default, for the property
+     */
+    protected int extractPositiveInt(Properties properties, String prop, int defaultValue) {
+        String valueString = PropertyUtil.extractAndLogProperty(prop, properties);
+        if (valueString == null) {
+            return defaultValue;
+        }
+        try {
+            int value = Integer.parseInt(valueString.trim());
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // warned below
+        }
+        LOG.warn("Invalid value " + valueString + " for " + prop + ". Using the default of " + defaultValue + " instead.");
+        return defaultValue;
     }
 
     /**
@@ -19,6 +19,7 @@ package net.sf.ehcache.distribution;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
@@ -146,9 +147,13 @@ public class RMICachePeer extends UnicastRemoteObject implements CachePeer, Remo
      * Callers should ideally first call this method with a small list of keys to gauge the size of a typical Element.
      * Then a calculation can be made of the right number to request each time so as to optimise network performance and
      * not cause an OutOfMemory error on this Cache.
+     * <p>
+     * If the cache is configured with a serializer other than Java serialization, the elements are returned as a single
+     * serialized payload, decoded by {@link RMIBootstrapCacheLoader#decodeElements(Ehcache, List)}.
      *
      * @param keys a list of serializable values which represent keys
-     * @return a list of Elements. If an element was not found or null, it will not be in the list.
+     * @return a list of Elements, or of a serialized payload of them. If an element was not found or null, it will not be
+     * in the list.
      */
     public List getElements(List keys) throws RemoteException {
         if (keys == null) {
@@ -162,6 +167,15 @@ public class RMICachePeer extends UnicastRemoteObject implements CachePeer, Remo
                 elements.add(element);
             }
         }
+        if (SerializedPayload.isUsedBy(cache)) {
+            try {
+                List payload = new ArrayList(1);
+                payload.add(SerializedPayload.encodeElements(cache, elements));
+                return payload;
+            } catch (IOException e) {
+                throw new RemoteException("Unable to serialize elements of cache " + cache.getName(), e);
+            }
+        }
         return elements;
     }
 
@@ -216,19 +230,39 @@ public class RMICachePeer extends UnicastRemoteObject implements CachePeer, Remo
      */
     public void send(List eventMessages) throws RemoteException {
         for (int i = 0; i < eventMessages.size(); i++) {
-            RmiEventMessage eventMessage = (RmiEventMessage) eventMessages.get(i);
-            if (eventMessage.getType() == RmiEventType.PUT) {
-                put(eventMessage.getElement());
-            } else if (eventMessage.getType() == RmiEventType.REMOVE) {
-                remove(eventMessage.getSerializableKey());
-            } else if (eventMessage.getType() == RmiEventType.REMOVE_ALL) {
-                removeAll();
+            Object message = eventMessages.get(i);
+            if (message instanceof SerializedPayload) {
+                for (RmiEventMessage eventMessage : decodeEvents((SerializedPayload) message)) {
+                    apply(eventMessage);
+                }
             } else {
-                LOG.error("Unknown event: " + eventMessage);
+                apply((RmiEventMessage) message);
             }
         }
     }
 
+    private void apply(RmiEventMessage eventMessage) throws RemoteException {
+        if (eventMessage.getType() == RmiEventType.PUT) {
+            put(eventMessage.getElement());
+        } else if (eventMessage.getType() == RmiEventType.REMOVE) {
+            remove(eventMessage.getSerializableKey());
+        } else if (eventMessage.getType() == RmiEventType.REMOVE_ALL) {
+            removeAll();
+        } else {
+            LOG.error("Unknown event: " + eventMessage);
+        }
+    }
+
+    private List<RmiEventMessage> decodeEvents(SerializedPayload payload) throws RemoteException {
+        try {
+            return payload.decodeEvents(cache);
+        } catch (IOException e) {
+            throw new RemoteException("Unable to deserialize replication messages for cache " + cache.getName(), e);
+        } catch (ClassNotFoundException e) {
+            throw new RemoteException("Unable to deserialize replication messages for cache " + cache.getName(), e);
+        }
+    }
+
     /**
      * Gets the cache name
      */
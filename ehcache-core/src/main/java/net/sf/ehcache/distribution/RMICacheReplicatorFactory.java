@@ -53,6 +53,11 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
      */
     protected static final int DEFAULT_ASYNCHRONOUS_REPLICATION_MAXIMUM_BATCH_SIZE = 1000;
 
+    /**
+     * A default for the maximum number of operations waiting to be replicated.
+     */
+    protected static final int DEFAULT_ASYNCHRONOUS_REPLICATION_MAXIMUM_QUEUE_SIZE = 100000;
+
     private static final Logger LOG = LoggerFactory.getLogger(RMICacheReplicatorFactory.class.getName());
     private static final String REPLICATE_PUTS = "replicatePuts";
     private static final String REPLICATE_PUTS_VIA_COPY = "replicatePutsViaCopy";
@@ -62,6 +67,8 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
     private static final String REPLICATE_ASYNCHRONOUSLY = "replicateAsynchronously";
     private static final String ASYNCHRONOUS_REPLICATION_INTERVAL_MILLIS = "asynchronousReplicationIntervalMillis";
     private static final String ASYNCHRONOUS_REPLICATION_MAXIMUM_BATCH_SIZE = "asynchronousReplicationMaximumBatchSize";
+    private static final String ASYNCHRONOUS_REPLICATION_MAXIMUM_QUEUE_SIZE = "asynchronousReplicationMaximumQueueSize";
+    private static final String ASYNCHRONOUS_REPLICATION_COMPRESSION = "asynchronousReplicationCompression";
     private static final int MINIMUM_REASONABLE_INTERVAL = 10;
 
     /**
@@ -76,6 +83,9 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
      * <li>replicateRemovals=true;
      * <li>replicateAsynchronously=true
      * <li>asynchronousReplicationIntervalMillis=1000
+     * <li>asynchronousReplicationMaximumBatchSize=1000
+     * <li>asynchronousReplicationMaximumQueueSize=100000
+     * <li>asynchronousReplicationCompression=false
      * </ul>
      *
      * @param properties implementation specific properties. These are configured as comma
@@ -102,6 +112,8 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
         boolean replicateAsynchronously = extractReplicateAsynchronously(properties);
         int replicationIntervalMillis = extractReplicationIntervalMilis(properties);
         int maximumBatchSize = extractMaximumBatchSize(properties);
+        int maximumQueueSize = extractMaximumQueueSize(properties);
+        boolean compression = extractCompression(properties);
 
         if (replicateAsynchronously) {
             return new RMIAsynchronousCacheReplicator(
@@ -111,7 +123,9 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
                     replicateUpdatesViaCopy,
                     replicateRemovals,
                     replicationIntervalMillis,
-                    maximumBatchSize);
+                    maximumBatchSize,
+                    maximumQueueSize,
+                    compression);
         } else {
             return new RMISynchronousCacheReplicator(
                     replicatePuts,
@@ -174,6 +188,42 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
         }
     }
     
+    /**
+     * Extracts the value of maximumQueueSize. Sets it to 100000 if
+     * either not set or there is a problem parsing the number
+     * @param properties
+     */
+    protected int extractMaximumQueueSize(Properties properties) {
+        String maximumQueueSizeString =
+                PropertyUtil.extractAndLogProperty(ASYNCHRONOUS_REPLICATION_MAXIMUM_QUEUE_SIZE, properties);
+        if (maximumQueueSizeString == null) {
+            return DEFAULT_ASYNCHRONOUS_REPLICATION_MAXIMUM_QUEUE_SIZE;
+        } else {
+            try {
+                int maximumQueueSize = Integer.parseInt(maximumQueueSizeString);
+                if (maximumQueueSize < 1) {
+                    LOG.warn("Trying to set the asynchronousReplicationMaximumQueueSize to an unreasonable number." +
+                            " Using the default instead.");
+                    return DEFAULT_ASYNCHRONOUS_REPLICATION_MAXIMUM_QUEUE_SIZE;
+                }
+                return maximumQueueSize;
+            } catch (NumberFormatException e) {
+                LOG.warn("Number format exception trying to set maximumQueueSize. " +
+                        "Using the default instead. String value was: '" + maximumQueueSizeString + "'");
+                return DEFAULT_ASYNCHRONOUS_REPLICATION_MAXIMUM_QUEUE_SIZE;
+            }
+        }
+    }
+
+    /**
+     * Extracts the value of asynchronousReplicationCompression from the properties
+     * @param properties
+     */
+    protected boolean extractCompression(Properties properties) {
+        String compressionString = PropertyUtil.extractAndLogProperty(ASYNCHRONOUS_REPLICATION_COMPRESSION, properties);
+        return compressionString != null && PropertyUtil.parseBoolean(compressionString);
+    }
+
     /**
      * Extracts the value of replicateAsynchronously from the properties
      * @param properties
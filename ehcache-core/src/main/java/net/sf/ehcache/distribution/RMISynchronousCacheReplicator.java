@@ -21,7 +21,9 @@ import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.Status;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -143,10 +145,23 @@ public class RMISynchronousCacheReplicator implements CacheReplicator {
      */
     protected static void replicatePutNotification(Ehcache cache, Element element) throws RemoteCacheException {
         List cachePeers = listRemoteCachePeers(cache);
+        List<SerializedPayload> payload = null;
+        if (SerializedPayload.isUsedBy(cache)) {
+            try {
+                payload = Collections.singletonList(SerializedPayload.encodeEvents(cache,
+                        Collections.singletonList(new RmiEventMessage(cache, RmiEventMessage.RmiEventType.PUT, null, element))));
+            } catch (IOException e) {
+                throw new RemoteCacheException("Unable to serialize element for replication: " + e.getMessage(), e);
+            }
+        }
         for (Object cachePeer1 : cachePeers) {
             CachePeer cachePeer = (CachePeer) cachePeer1;
             try {
-                cachePeer.put(element);
+                if (payload == null) {
+                    cachePeer.put(element);
+                } else {
+                    cachePeer.send(payload);
+                }
             } catch (Throwable t) {
                 LOG.error("Exception on replication of putNotification. " + t.getMessage() + ". Continuing...", t);
             }
@@ -0,0 +1,219 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.SerializerConfiguration;
+import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+import net.sf.ehcache.serializer.Serializer;
+
+/**
+ * A batch of replication messages or elements encoded with a cache's configured {@link Serializer}.
+ * <p>
+ * Peers of caches using a serializer other than Java serialization exchange these payloads in place of the raw
+ * {@link RmiEventMessage}s and {@link Element}s. Serializers may be stateful, so each payload is encoded with a new
+ * serializer instance, and decoded on the receiving side by a new instance of the serializer configured for the receiving
+ * cache. Payloads encoded with any other serializer are rejected.
+ * <p>
+ * Payloads may be gzipped as a whole, which lets the compression work across the entries of a batch.
+ *
+ * @see net.sf.ehcache.config.CacheConfiguration#getSerializerConfiguration()
+ */
+final class SerializedPayload implements Serializable {
+
+    private static final long serialVersionUID = 3716420127396389414L;
+
+    private static final int ESTIMATED_ENTRY_SIZE = 256;
+
+    private final String serializerClassName;
+    private final byte[] bytes;
+    private final boolean compressed;
+
+    private SerializedPayload(String serializerClassName, byte[] bytes, boolean compressed) {
+        this.serializerClassName = serializerClassName;
+        this.bytes = bytes;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Whether the given cache replicates through serialized payloads.
+     *
+     * @param cache the cache
+     * @return true if the cache's serializer is not the default Java serializer
+     */
+    static boolean isUsedBy(Ehcache cache) {
+        return !cache.getCacheConfiguration().getSerializerConfiguration().isDefault();
+    }
+
+    /**
+     * Encode a list of {@link RmiEventMessage}s.
+     *
+     * @param cache the cache the messages relate to
+     * @param eventMessages the messages
+     * @return the encoded payload
+     * @throws IOException if a key or element cannot be serialized
+     */
+    static SerializedPayload encodeEvents(Ehcache cache, List<? extends EventMessage> eventMessages) throws IOException {
+        return encodeEvents(cache, eventMessages, false);
+    }
+
+    /**
+     * Encode a list of {@link RmiEventMessage}s, optionally compressing the payload.
+     *
+     * @param cache the cache the messages relate to
+     * @param eventMessages the messages
+     * @param compress true if the payload is to be gzipped
+     * @return the encoded payload
+     * @throws IOException if a key or element cannot be serialized
+     */
+    static SerializedPayload encodeEvents(Ehcache cache, List<? extends EventMessage> eventMessages, boolean compress) throws IOException {
+        Encoder encoder = new Encoder(cache, eventMessages.size());
+        for (EventMessage message : eventMessages) {
+            RmiEventMessage eventMessage = (RmiEventMessage) message;
+            encoder.out.writeByte(eventMessage.getType().ordinal());
+            encoder.write(eventMessage.getSerializableKey());
+            encoder.write(eventMessage.getElement());
+        }
+        return encoder.finish(compress);
+    }
+
+    /**
+     * Encode a list of {@link Element}s.
+     *
+     * @param cache the cache the elements belong to
+     * @param elements the elements
+     * @return the encoded payload
+     * @throws IOException if an element cannot be serialized
+     */
+    static SerializedPayload encodeElements(Ehcache cache, List<Element> elements) throws IOException {
+        Encoder encoder = new Encoder(cache, elements.size());
+        for (Element element : elements) {
+            encoder.write(element);
+        }
+        return encoder.finish(false);
+    }
+
+    /**
+     * Decode a payload created by {@link #encodeEvents(Ehcache, List)}.
+     *
+     * @param cache the receiving cache
+     * @return the decoded messages
+     * @throws IOException if the payload cannot be read, or was encoded with a serializer other than the cache's
+     * @throws ClassNotFoundException if a class in the payload cannot be loaded
+     */
+    List<RmiEventMessage> decodeEvents(Ehcache cache) throws IOException, ClassNotFoundException {
+        Decoder decoder = new Decoder(cache);
+        int count = decoder.in.readInt();
+        List<RmiEventMessage> messages = new ArrayList<RmiEventMessage>(count);
+        for (int i = 0; i < count; i++) {
+            RmiEventType type = RmiEventType.values()[decoder.in.readUnsignedByte()];
+            Serializable key = (Serializable) decoder.read();
+            Element element = (Element) decoder.read();
+            messages.add(new RmiEventMessage(cache, type, key, element));
+        }
+        return messages;
+    }
+
+    /**
+     * Decode a payload created by {@link #encodeElements(Ehcache, List)}.
+     *
+     * @param cache the receiving cache
+     * @return the decoded elements
+     * @throws IOException if the payload cannot be read, or was encoded with a serializer other than the cache's
+     * @throws ClassNotFoundException if a class in the payload cannot be loaded
+     */
+    List<Element> decodeElements(Ehcache cache) throws IOException, ClassNotFoundException {
+        Decoder decoder = new Decoder(cache);
+        int count = decoder.in.readInt();
+        List<Element> elements = new ArrayList<Element>(count);
+        for (int i = 0; i < count; i++) {
+            elements.add((Element) decoder.read());
+        }
+        return elements;
+    }
+
+    /**
+     * Encodes length prefixed entries, so that serializers need not be self-delimiting.
+     */
+    private static final class Encoder {
+
+        private final String className;
+        private final Serializer serializer;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final ByteArrayOutputStream entry = new ByteArrayOutputStream(ESTIMATED_ENTRY_SIZE);
+
+        Encoder(Ehcache cache, int count) throws IOException {
+            CacheConfiguration config = cache.getCacheConfiguration();
+            SerializerConfiguration serializerConfiguration = config.getSerializerConfiguration();
+            this.className = serializerConfiguration.getClassName();
+            this.serializer = serializerConfiguration.newSerializerInstance(config.getClassLoader());
+            out.writeInt(count);
+        }
+
+        void write(Object object) throws IOException {
+            entry.reset();
+            serializer.serialize(object, entry);
+            out.writeInt(entry.size());
+            entry.writeTo(out);
+        }
+
+        SerializedPayload finish(boolean compress) throws IOException {
+            out.flush();
+            return new SerializedPayload(className, compress ? PayloadUtil.gzip(bytes.toByteArray()) : bytes.toByteArray(), compress);
+        }
+    }
+
+    /**
+     * Decodes the entries written by an {@link Encoder}.
+     */
+    private final class Decoder {
+
+        private final Serializer serializer;
+        private final ClassLoader loader;
+        private final DataInputStream in = new DataInputStream(new ByteArrayInputStream(compressed ? PayloadUtil.ungzip(bytes) : bytes));
+
+        Decoder(Ehcache cache) throws RemoteException {
+            CacheConfiguration config = cache.getCacheConfiguration();
+            SerializerConfiguration serializerConfiguration = config.getSerializerConfiguration();
+            if (!serializerConfiguration.getClassName().equals(serializerClassName)) {
+                throw new RemoteException("Payload encoded with serializer " + serializerClassName + " rejected by cache "
+                        + cache.getName() + " configured with serializer " + serializerConfiguration.getClassName());
+            }
+            this.loader = config.getClassLoader();
+            this.serializer = serializerConfiguration.newSerializerInstance(loader);
+        }
+
+        Object read() throws IOException, ClassNotFoundException {
+            byte[] entry = new byte[in.readInt()];
+            in.readFully(entry);
+            return serializer.deserialize(new ByteArrayInputStream(entry), loader);
+        }
+    }
+}
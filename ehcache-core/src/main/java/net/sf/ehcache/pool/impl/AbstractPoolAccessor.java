@@ -55,6 +55,15 @@ public abstract class AbstractPoolAccessor implements PoolAccessor<PoolParticipa
         this.sizeOfEngine = sizeOfEngine;
     }
 
+    /**
+     * Gets the SizeOf engine used by the accessor.
+     *
+     * @return the SizeOf engine
+     */
+    public SizeOfEngine getSizeOfEngine() {
+        return sizeOfEngine;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -16,13 +16,9 @@
 
 package net.sf.ehcache.pool.impl;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.IdentityHashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 import net.sf.ehcache.pool.PoolAccessor;
 import net.sf.ehcache.pool.PoolEvictor;
@@ -39,49 +35,38 @@ public class BalancedAccessEvictor implements PoolEvictor<PoolParticipant> {
 
     private static final int SAMPLE_SIZE = 5;
 
-    /**
-     * Comparator used to rank the stores in order of eviction 'cost'.
-     */
-    private final class EvictionCostComparator implements Comparator<PoolAccessor> {
-
-        private final long unloadedSize;
-        private final Map<PoolAccessor, Float> evictionCostCache;
-
-        public EvictionCostComparator(long unloadedSize, int collectionSize) {
-            this.unloadedSize = unloadedSize;
-            this.evictionCostCache = new IdentityHashMap<PoolAccessor, Float>(collectionSize);
-        }
-
-        public int compare(PoolAccessor s1, PoolAccessor s2) {
-            Float f1 = evictionCostCache.get(s1);
-            if (f1 == null) {
-              f1 = evictionCost(s1, unloadedSize);
-              evictionCostCache.put(s1, f1);
-            }
-            Float f2 = evictionCostCache.get(s2);
-            if (f2 == null) {
-              f2 = evictionCost(s2, unloadedSize);
-              evictionCostCache.put(s2, f2);
-            }
-            return Float.compare(f1, f2);
-        }
-    }
-
     /**
      * {@inheritDoc}
+     * <p>
+     * The accessors are visited in a random order, by groups of {@value #SAMPLE_SIZE}, and the accessors of each group
+     * are tried from the cheapest to evict from to the most expensive one. Only the groups visited get ranked, so that
+     * freeing a few bytes does not cost in proportion to the number of accessors.
      */
     public boolean freeSpace(Collection<PoolAccessor<PoolParticipant>> from, long bytes) {
         if (from == null || from.isEmpty()) {
             return false;
         }
-        List<PoolAccessor> random = new ArrayList<PoolAccessor>(from);
-        Collections.shuffle(random);
-
-        for (int i = 0; i < random.size(); i += SAMPLE_SIZE) {
-            List<PoolAccessor> sorted = random.subList(i, Math.min(SAMPLE_SIZE + i, random.size()));
-            Collections.sort(sorted, new EvictionCostComparator(getDesiredUnloadedSize(sorted), sorted.size() + 1));
+        // sized by toArray itself: accessors may be unregistered concurrently
+        PoolAccessor[] accessors = from.toArray(new PoolAccessor[0]);
+        int size = accessors.length;
+        if (size == 0) {
+            return false;
+        }
+        Random random = ThreadLocalRandom.current();
+        int start = random.nextInt(size);
+        int stride = coprimeStride(size, random);
+
+        PoolAccessor[] group = new PoolAccessor[SAMPLE_SIZE];
+        float[] costs = new float[SAMPLE_SIZE];
+        for (int i = 0; i < size; i += SAMPLE_SIZE) {
+            int groupSize = Math.min(SAMPLE_SIZE, size - i);
+            for (int j = 0; j < groupSize; j++) {
+                group[j] = accessors[(int) ((start + (long) (i + j) * stride) % size)];
+            }
+            rank(group, costs, groupSize);
 
-            for (PoolAccessor accessor : sorted) {
+            for (int j = 0; j < groupSize; j++) {
+                PoolAccessor accessor = group[j];
                 int count;
                 long byteSize = accessor.getSize();
                 long countSize = accessor.getParticipant().getApproximateCountSize();
@@ -99,6 +84,53 @@ public class BalancedAccessEvictor implements PoolEvictor<PoolParticipant> {
         return false;
     }
 
+    /**
+     * Sorts the first accessors of a group by increasing eviction cost, computing each cost once.
+     */
+    private void rank(PoolAccessor[] group, float[] costs, int groupSize) {
+        long unloadedSize = getDesiredUnloadedSize(group, groupSize);
+        for (int j = 0; j < groupSize; j++) {
+            costs[j] = evictionCost(group[j], unloadedSize);
+        }
+        for (int j = 1; j < groupSize; j++) {
+            PoolAccessor accessor = group[j];
+            float cost = costs[j];
+            int k = j - 1;
+            for (; k >= 0 && costs[k] > cost; k--) {
+                group[k + 1] = group[k];
+                costs[k + 1] = costs[k];
+            }
+            group[k + 1] = accessor;
+            costs[k + 1] = cost;
+        }
+    }
+
+    /**
+     * Picks a random stride visiting every index of an array of the given size.
+     */
+    private static int coprimeStride(int size, Random random) {
+        if (size <= 2) {
+            return 1;
+        }
+        while (true) {
+            int stride = 1 + random.nextInt(size - 1);
+            if (gcd(stride, size) == 1) {
+                return stride;
+            }
+        }
+    }
+
+    private static int gcd(int a, int b) {
+        int x = a;
+        int y = b;
+        while (y != 0) {
+            int t = x % y;
+            x = y;
+            y = t;
+        }
+        return x;
+    }
+
     private float evictionCost(PoolAccessor accessor, long unloadedSize) {
         float hitRate = accessor.getParticipant().getApproximateHitRate();
         float missRate = accessor.getParticipant().getApproximateMissRate();
@@ -121,11 +153,11 @@ public class BalancedAccessEvictor implements PoolEvictor<PoolParticipant> {
         }
     }
 
-    private long getDesiredUnloadedSize(Collection<PoolAccessor> from) {
+    private long getDesiredUnloadedSize(PoolAccessor[] group, int groupSize) {
         long unloadedSize = 0L;
-        for (PoolAccessor accessor : from) {
-            unloadedSize += accessor.getSize();
+        for (int j = 0; j < groupSize; j++) {
+            unloadedSize += group[j].getSize();
         }
-        return unloadedSize / from.size();
+        return unloadedSize / groupSize;
     }
 }
@@ -0,0 +1,150 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.pool.PoolEvictor;
+import net.sf.ehcache.pool.PoolParticipant;
+import net.sf.ehcache.pool.SizeOfEngine;
+
+/**
+ * A pool shared by many accessors, which hands out bytes in reservations so that adding to it does not require
+ * summing the sizes of all its accessors.
+ * <p>
+ * Each accessor keeps a credit of reserved bytes it consumes locally, and only goes to the pool-wide reservation
+ * counter when that credit runs out. The credits of all accessors together are bounded by the configured slack: the
+ * pool never grows beyond its maximum size, but it may start evicting up to that many bytes early. Once the pool is
+ * within its slack of being full, freed bytes go straight back to the pool rather than to the credit of their accessor.
+ * <p>
+ * Only accessors created by this pool take part in the reservations.
+ */
+public class ReservingPool extends AbstractPool {
+
+    private final long slack;
+    private final AtomicLong reserved = new AtomicLong();
+    private volatile boolean underPressure;
+
+    /**
+     * Create a ReservingPool instance
+     *
+     * @param maximumPoolSize the maximum size of the pool, in bytes.
+     * @param slack the number of bytes the accessors may hold in reserve, shared among them.
+     * @param evictor the pool evictor, for cross-store eviction.
+     * @param defaultSizeOfEngine the default SizeOf engine used by the accessors.
+     */
+    public ReservingPool(long maximumPoolSize, long slack, PoolEvictor evictor, SizeOfEngine defaultSizeOfEngine) {
+        super(maximumPoolSize, evictor, defaultSizeOfEngine);
+        if (slack < 0) {
+            throw new IllegalArgumentException("Slack must not be negative: " + slack);
+        }
+        this.slack = slack;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public PoolAccessor createPoolAccessor(PoolParticipant participant, SizeOfEngine sizeOfEngine) {
+        ReservingPoolAccessor accessor = new ReservingPoolAccessor(this, participant, sizeOfEngine);
+        registerPoolAccessor(accessor);
+        return accessor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removePoolAccessor(PoolAccessor accessor) {
+        super.removePoolAccessor(accessor);
+        if (accessor instanceof ReservingPoolAccessor) {
+            ((ReservingPoolAccessor) accessor).releaseAll();
+        }
+    }
+
+    /**
+     * Gets the number of bytes reserved by the accessors, consumed or held as credit.
+     *
+     * @return the reserved size, in bytes
+     */
+    public long getReservedSize() {
+        return reserved.get();
+    }
+
+    /**
+     * Gets the slack shared by the accessors.
+     *
+     * @return the slack, in bytes
+     */
+    public long getSlack() {
+        return slack;
+    }
+
+    /**
+     * Gets the credit an accessor may hold, its share of the slack.
+     *
+     * @return the credit, in bytes
+     */
+    long getCreditLimit() {
+        return slack / Math.max(1, getPoolAccessors().size());
+    }
+
+    /**
+     * Whether the pool is within its slack of being full, in which case accessors do not keep the bytes they free.
+     *
+     * @return true if the pool is under pressure
+     */
+    boolean isUnderPressure() {
+        return underPressure;
+    }
+
+    /**
+     * Reserves bytes from the pool.
+     *
+     * @param bytes the number of bytes to reserve
+     * @param force true if the bytes must be reserved even if that makes the pool go over its maximum size
+     * @return true if the bytes were reserved
+     */
+    boolean reserve(long bytes, boolean force) {
+        while (true) {
+            long current = reserved.get();
+            long updated = current + bytes;
+            if (!force && updated > getMaxSize()) {
+                if (!underPressure) {
+                    underPressure = true;
+                }
+                return false;
+            }
+            if (reserved.compareAndSet(current, updated)) {
+                boolean pressure = getMaxSize() - updated <= slack;
+                if (pressure != underPressure) {
+                    underPressure = pressure;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases bytes to the pool.
+     *
+     * @param bytes the number of bytes to release
+     */
+    void release(long bytes) {
+        reserved.addAndGet(-bytes);
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.sf.ehcache.pool.PoolParticipant;
+import net.sf.ehcache.pool.SizeOfEngine;
+
+/**
+ * The PoolAccessor class of the ReservingPool
+ * <p>
+ * The size is kept in a striped counter and additions are paid for from a local credit, topped up from the pool one
+ * share of its slack at a time.
+ */
+final class ReservingPoolAccessor extends AbstractPoolAccessor {
+
+    private final ReservingPool pool;
+    private final LongAdder size = new LongAdder();
+    private final AtomicLong credit = new AtomicLong();
+
+    /**
+     * Creates a reserving pool accessor with the specified properties.
+     *
+     * @param pool pool to be accessed
+     * @param poolParticipant accessing poolParticipant
+     * @param sizeOfEngine engine used to size objects
+     */
+    ReservingPoolAccessor(ReservingPool pool, PoolParticipant poolParticipant, SizeOfEngine sizeOfEngine) {
+        super(pool, poolParticipant, sizeOfEngine);
+        this.pool = pool;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected long add(long sizeOf, boolean force) throws IllegalArgumentException {
+        if (sizeOf < 0L) {
+            throw new IllegalArgumentException("cannot add negative size");
+        }
+        while (true) {
+            if (consumeCredit(sizeOf) || reserveWithCredit(sizeOf) || pool.reserve(sizeOf, false)) {
+                size.add(sizeOf);
+                return sizeOf;
+            }
+
+            // check that the element isn't too big
+            if (!force && sizeOf > pool.getMaxSize()) {
+                // this is too big to fit in the pool
+                return -1;
+            }
+
+            // if there is not enough room => evict, the pool being under pressure the freed bytes are released to it
+            long missingSize = pool.getReservedSize() + sizeOf - pool.getMaxSize();
+            boolean successful = pool.getEvictor().freeSpace(pool.getPoolAccessors(), Math.max(missingSize, 1L));
+            if (force) {
+                pool.reserve(sizeOf, true);
+                size.add(sizeOf);
+                return sizeOf;
+            } else if (!successful) {
+                // cannot free enough bytes
+                return -1;
+            }
+            // retry, as the freed space may have been 'stolen' by another thread
+        }
+    }
+
+    private boolean consumeCredit(long sizeOf) {
+        while (true) {
+            long current = credit.get();
+            if (current < sizeOf) {
+                return false;
+            } else if (credit.compareAndSet(current, current - sizeOf)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean reserveWithCredit(long sizeOf) {
+        long limit = pool.getCreditLimit();
+        if (limit > 0 && pool.reserve(sizeOf + limit, false)) {
+            credit.addAndGet(limit);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean canAddWithoutEvicting(long sizeOf) {
+        return credit.get() >= sizeOf || pool.getReservedSize() + sizeOf <= pool.getMaxSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long delete(long sizeOf) throws IllegalArgumentException {
+        checkLinked();
+        size.add(-sizeOf);
+        if (sizeOf < 0L) {
+            pool.reserve(-sizeOf, true);
+        } else if (pool.isUnderPressure()) {
+            pool.release(sizeOf);
+        } else {
+            long current = credit.addAndGet(sizeOf);
+            long excess = current - pool.getCreditLimit();
+            if (excess > 0 && credit.compareAndSet(current, current - excess)) {
+                pool.release(excess);
+            }
+        }
+        return sizeOf;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getSize() {
+        return size.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void doClear() {
+        pool.release(size.sumThenReset() + credit.getAndSet(0));
+    }
+
+    /**
+     * Releases everything this accessor reserved, once it is unlinked from the pool.
+     */
+    void releaseAll() {
+        doClear();
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.sf.ehcache.pool.Size;
+import net.sf.ehcache.pool.SizeOfEngine;
+import net.sf.ehcache.util.WeakIdentityConcurrentMap;
+
+/**
+ * A SizeOf engine learning the size of the elements of each value class, which only walks the object graph of
+ * every Nth element once the sizes of a class are known to be stable.
+ * <p>
+ * Sizes are learnt per value class over windows of measured elements. As long as the sizes measured in a window spread
+ * by no more than the configured error around their mean, the elements of that class are estimated to that mean, and
+ * only every {@code sampleInterval}th one is measured to keep the estimate honest. Classes of a fixed shape, such as
+ * boxed primitives or flyweights, are so sized once per interval, while classes of varying size keep being measured.
+ * <p>
+ * Copies made through {@link #copyWith(int, boolean)} share what was learnt, but keep their own statistics.
+ */
+public class SamplingSizeOfEngine implements SizeOfEngine {
+
+    /**
+     * Number of elements of a class measured in a window before their sizes are estimated.
+     */
+    static final int WARMUP_SAMPLES = 8;
+
+    /**
+     * Number of measured elements of a class after which a new window is started.
+     */
+    static final int WINDOW_SAMPLES = 64;
+
+    private static final long PARTS_PER_MILLION = 1000000L;
+
+    private final SizeOfEngine delegate;
+    private final int sampleInterval;
+    private final float maxError;
+    private final WeakIdentityConcurrentMap<Class<?>, Shape> shapes;
+
+    private final LongAdder sized = new LongAdder();
+    private final LongAdder estimated = new LongAdder();
+    private final LongAdder sizingTime = new LongAdder();
+    private final LongAdder errorSamples = new LongAdder();
+    private final LongAdder errorPpm = new LongAdder();
+
+    /**
+     * Creates a sampling SizeOf engine.
+     *
+     * @param delegate the engine measuring the elements
+     * @param sampleInterval the interval at which elements of a class whose size is estimated are still measured
+     * @param maxErrorPercent the spread of the measured sizes of a class, in percent of their mean, beyond which they are not estimated
+     */
+    public SamplingSizeOfEngine(SizeOfEngine delegate, int sampleInterval, int maxErrorPercent) {
+        this(delegate, sampleInterval, maxErrorPercent / 100f, new WeakIdentityConcurrentMap<Class<?>, Shape>());
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("Sample interval must be positive: " + sampleInterval);
+        } else if (maxErrorPercent < 0) {
+            throw new IllegalArgumentException("Max estimation error must not be negative: " + maxErrorPercent);
+        }
+    }
+
+    private SamplingSizeOfEngine(SizeOfEngine delegate, int sampleInterval, float maxError, WeakIdentityConcurrentMap<Class<?>, Shape> shapes) {
+        this.delegate = delegate;
+        this.sampleInterval = sampleInterval;
+        this.maxError = maxError;
+        this.shapes = shapes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Size sizeOf(Object key, Object value, Object container) {
+        long start = System.nanoTime();
+        Shape shape = shapeOf(value != null ? value : key);
+        long estimate = shape.estimate;
+        Size size;
+        if (estimate < 0 || shape.calls.incrementAndGet() % sampleInterval == 0) {
+            size = delegate.sizeOf(key, value, container);
+            if (size.isExact()) {
+                shape.record(size.getCalculated(), maxError);
+                if (estimate >= 0 && size.getCalculated() > 0) {
+                    errorSamples.increment();
+                    errorPpm.add(Math.abs(size.getCalculated() - estimate) * PARTS_PER_MILLION / size.getCalculated());
+                }
+            }
+        } else {
+            size = new Size(estimate, true);
+            estimated.increment();
+        }
+        sized.increment();
+        sizingTime.add(System.nanoTime() - start);
+        return size;
+    }
+
+    private Shape shapeOf(Object object) {
+        Class<?> klazz = object == null ? Void.class : object.getClass();
+        Shape shape = shapes.get(klazz);
+        if (shape == null) {
+            Shape newShape = new Shape();
+            shape = shapes.putIfAbsent(klazz, newShape);
+            if (shape == null) {
+                shape = newShape;
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SizeOfEngine copyWith(int maxDepth, boolean abortWhenMaxDepthExceeded) {
+        return new SamplingSizeOfEngine(delegate.copyWith(maxDepth, abortWhenMaxDepthExceeded), sampleInterval, maxError, shapes);
+    }
+
+    /**
+     * Gets the mean time taken to size an element, estimated or measured.
+     *
+     * @return the mean sizing time, in nanoseconds
+     */
+    public long getAverageSizingTime() {
+        long count = sized.sum();
+        return count == 0 ? 0 : sizingTime.sum() / count;
+    }
+
+    /**
+     * Gets the ratio of the sized elements whose size was estimated rather than measured.
+     *
+     * @return the estimated ratio, between 0 and 1
+     */
+    public double getEstimatedRatio() {
+        long count = sized.sum();
+        return count == 0 ? 0 : (double) estimated.sum() / count;
+    }
+
+    /**
+     * Gets the mean error of the estimates, as observed on the elements measured while their class was estimated.
+     *
+     * @return the mean estimation error, in percent of the measured size
+     */
+    public double getAverageEstimationError() {
+        long count = errorSamples.sum();
+        return count == 0 ? 0 : errorPpm.sum() * 100d / PARTS_PER_MILLION / count;
+    }
+
+    /**
+     * The sizes learnt for a value class.
+     */
+    private static final class Shape {
+
+        private final AtomicLong calls = new AtomicLong();
+        private volatile long estimate = -1;
+
+        private int windowSamples;
+        private long windowTotal;
+        private long windowMin = Long.MAX_VALUE;
+        private long windowMax = Long.MIN_VALUE;
+
+        /**
+         * Records a measured size, deciding whether the sizes of this class can be estimated.
+         *
+         * @param size the measured size
+         * @param maxError the tolerated spread of the sizes, relative to their mean
+         */
+        synchronized void record(long size, float maxError) {
+            windowSamples++;
+            windowTotal += size;
+            windowMin = Math.min(windowMin, size);
+            windowMax = Math.max(windowMax, size);
+            if (windowSamples >= WARMUP_SAMPLES) {
+                long mean = windowTotal / windowSamples;
+                estimate = windowMax - windowMin <= maxError * mean ? mean : -1;
+            }
+            if (windowSamples == WINDOW_SAMPLES) {
+                windowSamples = 0;
+                windowTotal = 0;
+                windowMin = Long.MAX_VALUE;
+                windowMax = Long.MIN_VALUE;
+            }
+        }
+    }
+}
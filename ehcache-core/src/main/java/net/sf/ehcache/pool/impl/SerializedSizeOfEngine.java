@@ -0,0 +1,130 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import net.sf.ehcache.pool.Size;
+import net.sf.ehcache.pool.SizeOfEngine;
+import net.sf.ehcache.serializer.Serializer;
+import net.sf.ehcache.util.WeakIdentityConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A SizeOf engine accounting elements by the length of their serialized form rather than by walking their object graph.
+ * <p>
+ * Values already held in their serialized form, as stored by the serialization copy strategies, are accounted by the
+ * length of their byte array at no cost. Other keys and values are serialized into a counting stream, which keeps no
+ * bytes. On top of that, each element is charged the fixed overhead of its container, measured once per container
+ * class by the delegate engine.
+ * <p>
+ * Elements that cannot be serialized are sized by the delegate engine instead.
+ */
+public class SerializedSizeOfEngine implements SizeOfEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SerializedSizeOfEngine.class.getName());
+
+    private final SizeOfEngine delegate;
+    private final Serializer serializer;
+    private final WeakIdentityConcurrentMap<Class<?>, Long> overheads;
+
+    /**
+     * Creates a serialized SizeOf engine.
+     *
+     * @param delegate the engine measuring container overheads and the elements that cannot be serialized
+     * @param serializer the serializer keys and values are serialized with
+     */
+    public SerializedSizeOfEngine(SizeOfEngine delegate, Serializer serializer) {
+        this(delegate, serializer, new WeakIdentityConcurrentMap<Class<?>, Long>());
+    }
+
+    private SerializedSizeOfEngine(SizeOfEngine delegate, Serializer serializer, WeakIdentityConcurrentMap<Class<?>, Long> overheads) {
+        this.delegate = delegate;
+        this.serializer = serializer;
+        this.overheads = overheads;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Size sizeOf(Object key, Object value, Object container) {
+        long keySize;
+        long valueSize;
+        try {
+            keySize = serializedSizeOf(key);
+            valueSize = serializedSizeOf(value);
+        } catch (IOException e) {
+            LOG.debug("Sizing element by its object graph, as it cannot be serialized", e);
+            return delegate.sizeOf(key, value, container);
+        }
+        return new Size(keySize + valueSize + overheadOf(key, value, container), true);
+    }
+
+    private long serializedSizeOf(Object object) throws IOException {
+        if (object == null) {
+            return 0;
+        } else if (object instanceof byte[]) {
+            return ((byte[]) object).length;
+        } else {
+            CountingOutputStream out = new CountingOutputStream();
+            serializer.serialize(object, out);
+            return out.count;
+        }
+    }
+
+    private long overheadOf(Object key, Object value, Object container) {
+        if (container == null) {
+            return 0;
+        }
+        Long overhead = overheads.get(container.getClass());
+        if (overhead == null) {
+            Size withContainer = delegate.sizeOf(key, value, container);
+            Size withoutContainer = delegate.sizeOf(key, value, null);
+            overhead = Math.max(0L, withContainer.getCalculated() - withoutContainer.getCalculated());
+            overheads.put(container.getClass(), overhead);
+        }
+        return overhead;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SizeOfEngine copyWith(int maxDepth, boolean abortWhenMaxDepthExceeded) {
+        return new SerializedSizeOfEngine(delegate.copyWith(maxDepth, abortWhenMaxDepthExceeded), serializer, overheads);
+    }
+
+    /**
+     * An output stream discarding what is written to it, only counting the bytes.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -26,12 +26,21 @@ public class ExecutionHints {
      * Default value
      */
     public static final int DEFAULT_RESULT_BATCH_SIZE = -1;
+
+    /**
+     * Default parallelism, meaning the parallelism configured on the searched cache applies
+     */
+    public static final int DEFAULT_PARALLELISM = 0;
     
     private int batchSize = DEFAULT_RESULT_BATCH_SIZE;
+    private int parallelism = DEFAULT_PARALLELISM;
     
     /**
      * Set desired batch size for search results. This may be used as a safeguard to keep memory overhead fixed,
      * when expecting total number of results to be large.
+     * <p>
+     * Unclustered queries without ordering, grouping or aggregators then return {@link StreamingResults}, searched for
+     * as they are read, one page of this size at a time.
      * @param size
      * @return
      */
@@ -46,4 +55,22 @@ public class ExecutionHints {
     public int getResultBatchSize() {
         return batchSize;
     }
+
+    /**
+     * Set the number of parallel tasks an unclustered query is split into, overriding the parallelism configured on the
+     * searched cache. A parallelism of one evaluates the query on the calling thread.
+     * @param parallelism
+     * @return
+     */
+    public ExecutionHints setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @return desired query parallelism, or {@link #DEFAULT_PARALLELISM} to use the cache configuration
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
 }
@@ -0,0 +1,62 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Results that are produced lazily, as they are read, rather than computed up front.
+ * <p>
+ * Unclustered queries executed with a {@link ExecutionHints#setResultBatchSize(int) result batch size} return streaming
+ * results when they have no ordering, grouping or aggregators. Matching elements are then searched for as results are
+ * read, and the values of the results are only read from the cache when requested. Results therefore reflect the cache
+ * at the time they are read: entries modified while the results are being read may or may not be included, and the
+ * value of a result whose entry was removed is {@code null}.
+ * <p>
+ * {@link #nextPage()} and forward calls of {@link #range(int, int)} continue the search where the previous page ended.
+ * {@link #all()} and {@link #size()} read through all the results, and should be avoided on broad queries.
+ */
+public interface StreamingResults extends Results, Iterable<Result> {
+
+    /**
+     * Iterate over all the results, searching for them as the iteration proceeds.
+     * Each call starts a new search, independently of the paging cursor.
+     *
+     * @return an iterator over the results
+     * @throws SearchException if these results were discarded
+     */
+    Iterator<Result> iterator() throws SearchException;
+
+    /**
+     * A sequential stream of all the results, searching for them as the stream is consumed.
+     * Each call starts a new search, independently of the paging cursor.
+     *
+     * @return a stream of the results
+     * @throws SearchException if these results were discarded
+     */
+    Stream<Result> stream() throws SearchException;
+
+    /**
+     * Retrieve the next page of results, of the result batch size the query was executed with.
+     *
+     * @return the results following the last page read, an empty list if there are no more results
+     * @throws SearchException if these results were discarded
+     */
+    List<Result> nextPage() throws SearchException;
+}
@@ -23,7 +23,7 @@ import net.sf.ehcache.search.Attribute;
  *
  * @author teck
  */
-public class Average implements AggregatorInstance<Double> {
+public class Average implements MergeableAggregatorInstance<Double> {
 
     private final Attribute<?> attribute;
 
@@ -64,6 +64,22 @@ public class Average implements AggregatorInstance<Double> {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void merge(AggregatorInstance<Double> partial) throws AggregatorException {
+        Engine other = ((Average) partial).engine;
+        if (other == null) {
+            return;
+        }
+
+        if (engine == null) {
+            engine = other;
+        } else {
+            engine.merge(other);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -121,6 +137,27 @@ public class Average implements AggregatorInstance<Double> {
          */
         abstract Number result();
 
+        /**
+         * Add the inputs accepted by another engine to this engine.
+         *
+         * @param other engine to merge
+         */
+        abstract void merge(Engine other);
+
+        /**
+         * Get the number of inputs accepted by this engine.
+         *
+         * @return input count
+         */
+        abstract int count();
+
+        /**
+         * Get the (current) sum of the inputs accepted by this engine.
+         *
+         * @return input sum
+         */
+        abstract Number sum();
+
         /**
          * An int based averaging engine.
          */
@@ -149,6 +186,22 @@ public class Average implements AggregatorInstance<Double> {
             Number result() {
                 return Float.valueOf(((float) sum) / count);
             }
+
+            @Override
+            void merge(Engine other) {
+                count += other.count();
+                sum += other.sum().longValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return Long.valueOf(sum);
+            }
         }
 
         /**
@@ -179,6 +232,22 @@ public class Average implements AggregatorInstance<Double> {
             Number result() {
                 return Double.valueOf(((double) sum) / count);
             }
+
+            @Override
+            void merge(Engine other) {
+                count += other.count();
+                sum += other.sum().longValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return Long.valueOf(sum);
+            }
         }
 
         /**
@@ -209,6 +278,22 @@ public class Average implements AggregatorInstance<Double> {
             Number result() {
                 return Float.valueOf(sum / count);
             }
+
+            @Override
+            void merge(Engine other) {
+                count += other.count();
+                sum += other.sum().floatValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return Float.valueOf(sum);
+            }
         }
 
         /**
@@ -239,6 +324,22 @@ public class Average implements AggregatorInstance<Double> {
             Number result() {
                 return Double.valueOf(sum / count);
             }
+
+            @Override
+            void merge(Engine other) {
+                count += other.count();
+                sum += other.sum().doubleValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return Double.valueOf(sum);
+            }
         }
     }
 }
@@ -24,7 +24,7 @@ import net.sf.ehcache.search.Attribute;
  * @author teck
  * @param <T>
  */
-public class Max<T> implements AggregatorInstance<T> {
+public class Max<T> implements MergeableAggregatorInstance<T> {
 
     private Comparable max;
     private final Attribute<?> attribute;
@@ -42,6 +42,13 @@ public class Max<T> implements AggregatorInstance<T> {
     public Max<T> createClone() {
         return new Max(attribute);
     }
+    /**
+     * {@inheritDoc}
+     */
+    public void merge(AggregatorInstance<T> partial) throws AggregatorException {
+        accept(partial.aggregateResult());
+    }
+
     /**
      * {@inheritDoc}
      * <p>
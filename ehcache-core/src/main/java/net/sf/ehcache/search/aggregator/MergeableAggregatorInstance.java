@@ -0,0 +1,40 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search.aggregator;
+
+/**
+ * An {@link AggregatorInstance} whose partial results, computed over disjoint sets of inputs, can be combined.
+ * <p>
+ * Searches executed in parallel aggregate each part of the cache separately, and merge the partial aggregators when
+ * grouping results. Group by queries using aggregators that are not mergeable are executed sequentially.
+ *
+ * @param <T>
+ *            the runtime type of aggregation result
+ */
+public interface MergeableAggregatorInstance<T> extends AggregatorInstance<T> {
+
+    /**
+     * Combine the inputs accepted by the given aggregator into this one.
+     * <p>
+     * The given aggregator must have been created by {@link #createClone()} on this aggregator or on one of its clones,
+     * and must not be used afterwards.
+     *
+     * @param partial the partial aggregator
+     * @throws AggregatorException if the partial results cannot be combined
+     */
+    void merge(AggregatorInstance<T> partial) throws AggregatorException;
+}
@@ -24,7 +24,7 @@ import net.sf.ehcache.search.Attribute;
  * @author teck
  * @param <T>
  */
-public class Min<T> implements AggregatorInstance<T> {
+public class Min<T> implements MergeableAggregatorInstance<T> {
 
     private Comparable min;
     private final Attribute<?> attribute;
@@ -43,6 +43,13 @@ public class Min<T> implements AggregatorInstance<T> {
         return new Min(attribute);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void merge(AggregatorInstance<T> partial) throws AggregatorException {
+        accept(partial.aggregateResult());
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -25,7 +25,7 @@ import net.sf.ehcache.search.Attribute;
  *
  * @author Greg Luck
  */
-public class Sum implements AggregatorInstance<Long> {
+public class Sum implements MergeableAggregatorInstance<Long> {
 
     private final Attribute<?> attribute;
 
@@ -65,6 +65,13 @@ public class Sum implements AggregatorInstance<Long> {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void merge(AggregatorInstance<Long> partial) throws AggregatorException {
+        accept(partial.aggregateResult());
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -65,6 +65,25 @@ public abstract class BaseCriteria implements Criteria {
         throw new AssertionError("Unknown search attribute " + attrName);
     }
 
+    /**
+     * Gets the name of the attribute tested, for criteria only testing the value of a single attribute.
+     *
+     * @return the attribute name, or null if these criteria are not a test of a single attribute value
+     */
+    String getTestedAttributeName() {
+        return null;
+    }
+
+    /**
+     * Tests the value of the attribute named by {@link #getTestedAttributeName()}.
+     *
+     * @param attributeValue the value of the attribute, possibly null
+     * @return true if the value matches
+     */
+    boolean matches(Object attributeValue) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not test a single attribute value");
+    }
+
     /**
      * Returns all search attributes referenced by this instance
      */
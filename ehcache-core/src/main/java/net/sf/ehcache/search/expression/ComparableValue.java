@@ -87,7 +87,16 @@ public abstract class ComparableValue extends BaseCriteria {
      * {@inheritDoc}
      */
     public boolean execute(Element e, Map<String, AttributeExtractor> attributeExtractors) {
-        Object attrValue = getExtractor(getAttributeName(), attributeExtractors).attributeFor(e, getAttributeName());
+        return matches(getExtractor(getAttributeName(), attributeExtractors).attributeFor(e, getAttributeName()));
+    }
+
+    @Override
+    String getTestedAttributeName() {
+        return getAttributeName();
+    }
+
+    @Override
+    boolean matches(Object attrValue) {
         if (attrValue == null) {
             return false;
         } else {
@@ -85,7 +85,16 @@ public class EqualTo extends BaseCriteria {
      * {@inheritDoc}
      */
     public boolean execute(Element e, Map<String, AttributeExtractor> attributeExtractors) {
-        Object attributeValue = getExtractor(getAttributeName(), attributeExtractors).attributeFor(e, getAttributeName());
+        return matches(getExtractor(getAttributeName(), attributeExtractors).attributeFor(e, getAttributeName()));
+    }
+
+    @Override
+    String getTestedAttributeName() {
+        return getAttributeName();
+    }
+
+    @Override
+    boolean matches(Object attributeValue) {
         if (attributeValue == null) {
             return false;
         } else {
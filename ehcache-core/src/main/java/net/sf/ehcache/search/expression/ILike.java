@@ -145,7 +145,16 @@ public class ILike extends BaseCriteria {
      * {@inheritDoc}
      */
     public boolean execute(Element e, Map<String, AttributeExtractor> attributeExtractors) {
-        Object value = getExtractor(attributeName, attributeExtractors).attributeFor(e, attributeName);
+        return matches(getExtractor(attributeName, attributeExtractors).attributeFor(e, attributeName));
+    }
+
+    @Override
+    String getTestedAttributeName() {
+        return attributeName;
+    }
+
+    @Override
+    boolean matches(Object value) {
         if (value == null) {
             return false;
         }
@@ -107,8 +107,17 @@ public class InCollection extends BaseCriteria {
             return false;
         }
 
-        Object attrValue = getExtractor(attributeName, attributeExtractors).attributeFor(e, attributeName);
-        if (attrValue == null) {
+        return matches(getExtractor(attributeName, attributeExtractors).attributeFor(e, attributeName));
+    }
+
+    @Override
+    String getTestedAttributeName() {
+        return attributeName;
+    }
+
+    @Override
+    boolean matches(Object attrValue) {
+        if (empty || attrValue == null) {
             return false;
         } else {
             AttributeType attrType = AttributeType.typeFor(getAttributeName(), attrValue);
@@ -51,7 +51,17 @@ public class IsNull extends BaseCriteria {
 
     @Override
     public boolean execute(Element e, Map<String, AttributeExtractor> attributeExtractors) {
-        return getExtractor(getAttributeName(), attributeExtractors).attributeFor(e, getAttributeName()) == null;
+        return matches(getExtractor(getAttributeName(), attributeExtractors).attributeFor(e, getAttributeName()));
+    }
+
+    @Override
+    String getTestedAttributeName() {
+        return attributeName;
+    }
+
+    @Override
+    boolean matches(Object attributeValue) {
+        return attributeValue == null;
     }
 
     @Override
@@ -16,11 +16,6 @@
 
 package net.sf.ehcache.search.expression;
 
-import java.util.Map;
-
-import net.sf.ehcache.Element;
-import net.sf.ehcache.search.attribute.AttributeExtractor;
-
 /**
  * Criteria for plain "not equals to" condition
  *
@@ -38,12 +33,9 @@ public class NotEqualTo extends EqualTo {
         super(attributeName, value);
     }
 
-    /**
-     * {@inheritDoc}
-     */
     @Override
-    public boolean execute(Element e, Map<String, AttributeExtractor> attributeExtractors) {
-        return !super.execute(e, attributeExtractors);
+    boolean matches(Object attributeValue) {
+        return !super.matches(attributeValue);
     }
 
 }
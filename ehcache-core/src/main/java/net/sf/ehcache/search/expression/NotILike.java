@@ -47,6 +47,16 @@ public class NotILike extends BaseCriteria {
         return !src.execute(e, attributeExtractors);
     }
 
+    @Override
+    String getTestedAttributeName() {
+        return src.getAttributeName();
+    }
+
+    @Override
+    boolean matches(Object attributeValue) {
+        return !src.matches(attributeValue);
+    }
+
     /**
      * Return attribute name.
      *
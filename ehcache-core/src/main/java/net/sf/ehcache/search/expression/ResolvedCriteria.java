@@ -0,0 +1,164 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search.expression;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.search.attribute.AttributeExtractor;
+
+/**
+ * Criteria resolved against a fixed set of attribute extractors, for evaluating them against many elements.
+ * <p>
+ * {@link Criteria#execute(Element, Map)} looks the extractor of each attribute tested up by name for every element.
+ * Once resolved, each attribute test holds its extractor in its own slot, and/or groups and negations are evaluated
+ * directly on their resolved members, so evaluating an element does no map lookup at all. Criteria of types not
+ * defined in this package are evaluated as they are, with the extractors they were resolved against.
+ */
+public abstract class ResolvedCriteria {
+
+    private static final Set<Class<?>> ATTRIBUTE_TESTS = new HashSet<Class<?>>(Arrays.<Class<?>>asList(EqualTo.class,
+        NotEqualTo.class, GreaterThan.class, GreaterThanOrEqual.class, LessThan.class, LessThanOrEqual.class, Between.class,
+        ILike.class, NotILike.class, InCollection.class, IsNull.class, NotNull.class));
+
+    private ResolvedCriteria() {
+        // only the nested implementations
+    }
+
+    /**
+     * Test these criteria against a cache element
+     *
+     * @param element cache element
+     * @return true if the criteria match this element
+     */
+    public abstract boolean execute(Element element);
+
+    /**
+     * Resolves criteria against the given attribute extractors.
+     *
+     * @param criteria the criteria
+     * @param attributeExtractors map of attribute names to their extractors, used for all the elements the resolved
+     *            criteria are executed against
+     * @return the resolved criteria
+     */
+    public static ResolvedCriteria resolve(Criteria criteria, Map<String, AttributeExtractor> attributeExtractors) {
+        Class<?> type = criteria.getClass();
+        if (type == And.class || type == Or.class) {
+            Criteria[] members = type == And.class ? ((And) criteria).getCriterion() : ((Or) criteria).getCriterion();
+            ResolvedCriteria[] resolved = new ResolvedCriteria[members.length];
+            for (int i = 0; i < members.length; i++) {
+                resolved[i] = resolve(members[i], attributeExtractors);
+            }
+            return new Junction(type == And.class, resolved);
+        } else if (type == Not.class) {
+            return new Negation(resolve(((Not) criteria).getCriteria(), attributeExtractors));
+        } else if (ATTRIBUTE_TESTS.contains(type)) {
+            BaseCriteria test = (BaseCriteria) criteria;
+            String attributeName = test.getTestedAttributeName();
+            AttributeExtractor extractor = attributeExtractors.get(attributeName);
+            if (extractor != null) {
+                return new AttributeTest(test, attributeName, extractor);
+            }
+        }
+        // unknown attributes are reported by the criteria themselves, should the element be tested
+        return new Unresolved(criteria, attributeExtractors);
+    }
+
+    /**
+     * A test of the value of an attribute, whose extractor is resolved.
+     */
+    private static final class AttributeTest extends ResolvedCriteria {
+
+        private final BaseCriteria test;
+        private final String attributeName;
+        private final AttributeExtractor extractor;
+
+        private AttributeTest(BaseCriteria test, String attributeName, AttributeExtractor extractor) {
+            this.test = test;
+            this.attributeName = attributeName;
+            this.extractor = extractor;
+        }
+
+        @Override
+        public boolean execute(Element element) {
+            return test.matches(extractor.attributeFor(element, attributeName));
+        }
+    }
+
+    /**
+     * An and/or group of resolved criteria.
+     */
+    private static final class Junction extends ResolvedCriteria {
+
+        private final boolean and;
+        private final ResolvedCriteria[] members;
+
+        private Junction(boolean and, ResolvedCriteria[] members) {
+            this.and = and;
+            this.members = members;
+        }
+
+        @Override
+        public boolean execute(Element element) {
+            for (ResolvedCriteria member : members) {
+                if (member.execute(element) != and) {
+                    return !and;
+                }
+            }
+            return and;
+        }
+    }
+
+    /**
+     * A negation of resolved criteria.
+     */
+    private static final class Negation extends ResolvedCriteria {
+
+        private final ResolvedCriteria negated;
+
+        private Negation(ResolvedCriteria negated) {
+            this.negated = negated;
+        }
+
+        @Override
+        public boolean execute(Element element) {
+            return !negated.execute(element);
+        }
+    }
+
+    /**
+     * Criteria evaluated as they are.
+     */
+    private static final class Unresolved extends ResolvedCriteria {
+
+        private final Criteria criteria;
+        private final Map<String, AttributeExtractor> attributeExtractors;
+
+        private Unresolved(Criteria criteria, Map<String, AttributeExtractor> attributeExtractors) {
+            this.criteria = criteria;
+            this.attributeExtractors = attributeExtractors;
+        }
+
+        @Override
+        public boolean execute(Element element) {
+            return criteria.execute(element, attributeExtractors);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search.impl;
+
+import java.util.Map;
+
+import net.sf.ehcache.search.SearchException;
+import net.sf.ehcache.store.StoreQuery;
+
+/**
+ * Result implementation reading its value when it is first requested, rather than holding it from the search.
+ */
+public class LazyValueResultImpl extends BaseResult {
+
+    private static final Object UNREAD = new Object();
+
+    private final Object key;
+    private final ValueReader valueReader;
+    private final Map<String, Object> attributes;
+    private volatile Object value = UNREAD;
+
+    /**
+     * Constructor
+     *
+     * @param key
+     * @param valueReader
+     * @param query
+     * @param attributes
+     */
+    public LazyValueResultImpl(Object key, ValueReader valueReader, StoreQuery query, Map<String, Object> attributes) {
+        super(query);
+        this.key = key;
+        this.valueReader = valueReader;
+        this.attributes = attributes;
+    }
+
+    @Override
+    protected Object basicGetKey() {
+        return key;
+    }
+
+    @Override
+    protected Object basicGetValue() {
+        Object current = value;
+        if (current == UNREAD) {
+            current = valueReader.read(key);
+            value = current;
+        }
+        return current;
+    }
+
+    @Override
+    protected Object basicGetAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    Object getSortAttribute(int pos) {
+        throw new SearchException("Sort attributes not included in results streamed from an unordered query");
+    }
+
+    /**
+     * Reads the value of a result.
+     */
+    public interface ValueReader {
+
+        /**
+         * Read the value currently mapped to the given key.
+         *
+         * @param key the key of the result
+         * @return the value, or null if the key is no longer mapped
+         */
+        Object read(Object key);
+    }
+}
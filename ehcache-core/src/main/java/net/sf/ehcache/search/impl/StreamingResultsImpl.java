@@ -0,0 +1,215 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import net.sf.ehcache.search.Result;
+import net.sf.ehcache.search.SearchException;
+import net.sf.ehcache.search.StreamingResults;
+
+/**
+ * StreamingResults implementation, reading results from an {@link Iterable} that searches for them lazily.
+ * <p>
+ * The paging cursor keeps the iterator of the last page read, so that reading pages in order searches the source only
+ * once. Reading a page before the cursor restarts the search from the beginning.
+ */
+public class StreamingResultsImpl implements StreamingResults {
+
+    private final Iterable<Result> source;
+    private final int pageSize;
+    private final boolean hasKeys;
+    private final boolean hasValues;
+    private final boolean hasAttributes;
+
+    private Iterator<Result> cursor;
+    private int position;
+    private volatile Boolean empty;
+    private volatile boolean discarded;
+
+    /**
+     * Constructor
+     *
+     * @param source the results, searched for as they are iterated
+     * @param pageSize the number of results returned by {@link #nextPage()}
+     * @param hasKeys
+     * @param hasValues
+     * @param hasAttributes
+     */
+    public StreamingResultsImpl(Iterable<Result> source, int pageSize, boolean hasKeys, boolean hasValues, boolean hasAttributes) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize: " + pageSize);
+        }
+        this.source = source;
+        this.pageSize = pageSize;
+        this.hasKeys = hasKeys;
+        this.hasValues = hasValues;
+        this.hasAttributes = hasAttributes;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingResults(pageSize=" + pageSize + ", hasKeys=" + hasKeys + ", hasValues=" + hasValues
+                + ", hasAttributes=" + hasAttributes + ")";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void discard() {
+        discarded = true;
+        cursor = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Iterator<Result> iterator() throws SearchException {
+        checkNotDiscarded();
+        return source.iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Stream<Result> stream() throws SearchException {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized List<Result> nextPage() throws SearchException {
+        checkNotDiscarded();
+        if (cursor == null) {
+            cursor = source.iterator();
+            position = 0;
+        }
+        return take(pageSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Result> all() throws SearchException {
+        List<Result> all = new ArrayList<Result>();
+        for (Iterator<Result> it = iterator(); it.hasNext();) {
+            all.add(it.next());
+        }
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized List<Result> range(int start, int length) throws SearchException {
+        if (start < 0) {
+            throw new IllegalArgumentException("start: " + start);
+        }
+
+        if (length < 0) {
+            throw new IllegalArgumentException("length: " + length);
+        }
+
+        checkNotDiscarded();
+        if (cursor == null || start < position) {
+            cursor = source.iterator();
+            position = 0;
+        }
+        while (position < start && cursor.hasNext()) {
+            cursor.next();
+            position++;
+        }
+        if (position < start) {
+            return Collections.emptyList();
+        }
+        return take(length);
+    }
+
+    private List<Result> take(int count) {
+        List<Result> page = new ArrayList<Result>(Math.min(count, pageSize));
+        while (page.size() < count && cursor.hasNext()) {
+            page.add(cursor.next());
+            position++;
+        }
+        return Collections.unmodifiableList(page);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int size() {
+        int size = 0;
+        for (Iterator<Result> it = iterator(); it.hasNext(); it.next()) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasKeys() {
+        return hasKeys && !isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasValues() {
+        return hasValues && !isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasAttributes() {
+        return hasAttributes && !isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasAggregators() {
+        return false;
+    }
+
+    /**
+     * Whether the first search found no result, searching up to the first match only.
+     */
+    private boolean isEmpty() {
+        Boolean isEmpty = empty;
+        if (isEmpty == null) {
+            isEmpty = !iterator().hasNext();
+            empty = isEmpty;
+        }
+        return isEmpty;
+    }
+
+    private void checkNotDiscarded() {
+        if (discarded) {
+            throw new SearchException("Results have been discarded");
+        }
+    }
+}
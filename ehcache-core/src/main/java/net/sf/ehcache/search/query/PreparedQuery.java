@@ -0,0 +1,81 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search.query;
+
+import net.sf.ehcache.search.Query;
+import net.sf.ehcache.search.Results;
+import net.sf.ehcache.search.SearchException;
+
+/**
+ * A statement parsed once by a {@link QueryManager} and executed many times, with values bound to its {@code ?}
+ * placeholders.
+ * <p>
+ * For instance {@code select * from people where (age > ? and name = ?)} takes two parameters, bound with
+ * {@link #setParameter(int, Object)} using indexes starting at 1. Values are used as is, so they must be of the type
+ * of the attribute they are compared to.
+ * <p>
+ * Instances hold the bound values and are not thread safe.
+ */
+public interface PreparedQuery {
+
+    /**
+     * Gets the statement this query was prepared from.
+     *
+     * @return the statement
+     */
+    String getStatement();
+
+    /**
+     * Gets the number of parameter placeholders in the statement.
+     *
+     * @return the parameter count
+     */
+    int getParameterCount();
+
+    /**
+     * Binds a value to a parameter placeholder.
+     *
+     * @param index the parameter index, starting at 1
+     * @param value the non-null value
+     * @return this prepared query
+     * @throws SearchException if the index is out of range or the value is null
+     */
+    PreparedQuery setParameter(int index, Object value) throws SearchException;
+
+    /**
+     * Unbinds all parameters.
+     *
+     * @return this prepared query
+     */
+    PreparedQuery clearParameters();
+
+    /**
+     * Creates a {@link net.sf.ehcache.search.Query Query} with the currently bound parameter values.
+     *
+     * @return a new query, tied to the cache specified in the statement
+     * @throws SearchException if a parameter is not bound
+     */
+    Query createQuery() throws SearchException;
+
+    /**
+     * Executes the query with the currently bound parameter values.
+     *
+     * @return the results
+     * @throws SearchException if a parameter is not bound or the search fails
+     */
+    Results execute() throws SearchException;
+}
@@ -39,4 +39,14 @@ public interface QueryManager {
      * @throws CacheException if the cache could not be found or if a parse error occurs
      */
     Query createQuery(String statement) throws CacheException;
+
+    /**
+     * Parses a {@link java.lang.String String} statement, possibly containing {@code ?} parameter placeholders, into a
+     * {@link PreparedQuery} that can be executed repeatedly with different parameter values.
+     *
+     * @param statement a String expressing an Ehcache Search query
+     * @return a {@link PreparedQuery} tied to the cache specified in the statement
+     * @throws CacheException if the cache could not be found or if a parse error occurs
+     */
+    PreparedQuery prepareQuery(String statement) throws CacheException;
 }
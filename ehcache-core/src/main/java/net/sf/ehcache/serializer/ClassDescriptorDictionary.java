@@ -0,0 +1,178 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.util.PreferredLoaderObjectInputStream;
+
+/**
+ * An append-only dictionary of class descriptors, used to replace the class metadata Java serialization writes in every
+ * stream by a small integer.
+ * <p>
+ * The first time a class is written its full descriptor follows its id inline, every later occurrence only writes the
+ * id. A reader sharing the dictionary with the writer can therefore decode any record, while a reader with a fresh
+ * dictionary can decode a sequence of records as long as it reads them in the order they were written.
+ */
+final class ClassDescriptorDictionary implements Serializable {
+
+    private static final long serialVersionUID = 5209432466125432871L;
+
+    private static final int KNOWN = 0;
+    private static final int DEFINED = 1;
+
+    private final ConcurrentMap<Integer, ObjectStreamClass> descriptors = new ConcurrentHashMap<Integer, ObjectStreamClass>();
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Create an {@code ObjectOutputStream} writing class descriptors through this dictionary.
+     *
+     * @param out the underlying stream
+     * @return a dictionary backed object stream
+     * @throws IOException on header write failure
+     */
+    ObjectOutputStream createObjectOutputStream(OutputStream out) throws IOException {
+        return new ObjectOutputStream(out) {
+            @Override
+            protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+                Integer id = ids.get(key(desc));
+                if (id == null) {
+                    writeByte(DEFINED);
+                    writeInt(register(desc));
+                    super.writeClassDescriptor(desc);
+                } else {
+                    writeByte(KNOWN);
+                    writeInt(id);
+                }
+            }
+        };
+    }
+
+    /**
+     * Create an {@code ObjectInputStream} resolving class descriptors through this dictionary.
+     *
+     * @param in the underlying stream
+     * @param loader the classloader to resolve classes with
+     * @return a dictionary backed object stream
+     * @throws IOException on header read failure
+     */
+    ObjectInputStream createObjectInputStream(InputStream in, ClassLoader loader) throws IOException {
+        return new PreferredLoaderObjectInputStream(in, loader) {
+            @Override
+            protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+                int type = readByte();
+                int id = readInt();
+                if (type == DEFINED) {
+                    ObjectStreamClass desc = super.readClassDescriptor();
+                    define(id, desc);
+                    return desc;
+                }
+                ObjectStreamClass desc = descriptors.get(id);
+                if (desc == null) {
+                    throw new InvalidClassException("Unknown class descriptor id " + id);
+                }
+                return desc;
+            }
+        };
+    }
+
+    private int register(ObjectStreamClass desc) {
+        String key = key(desc);
+        Integer id = ids.get(key);
+        if (id == null) {
+            synchronized (this) {
+                id = ids.get(key);
+                if (id == null) {
+                    id = nextId.getAndIncrement();
+                    descriptors.put(id, desc);
+                    ids.put(key, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    private synchronized void define(int id, ObjectStreamClass desc) {
+        if (descriptors.putIfAbsent(id, desc) == null) {
+            ids.putIfAbsent(key(desc), id);
+            if (id >= nextId.get()) {
+                nextId.set(id + 1);
+            }
+        }
+    }
+
+    /**
+     * Return the number of descriptors in this dictionary.
+     *
+     * @return the dictionary size
+     */
+    int size() {
+        return descriptors.size();
+    }
+
+    /**
+     * Write all descriptors in this dictionary to the given stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException on write failure
+     */
+    synchronized void save(OutputStream out) throws IOException {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeInt(descriptors.size());
+        for (Map.Entry<Integer, ObjectStreamClass> e : descriptors.entrySet()) {
+            oos.writeInt(e.getKey());
+            oos.writeObject(e.getValue());
+        }
+        oos.flush();
+    }
+
+    /**
+     * Replace the content of this dictionary by the descriptors read from the given stream.
+     *
+     * @param in the stream to read from
+     * @param loader the classloader to resolve classes with
+     * @throws IOException on read failure
+     * @throws ClassNotFoundException if a described class cannot be resolved
+     */
+    synchronized void load(InputStream in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new PreferredLoaderObjectInputStream(in, loader);
+        int count = ois.readInt();
+        descriptors.clear();
+        ids.clear();
+        nextId.set(0);
+        for (int i = 0; i < count; i++) {
+            int id = ois.readInt();
+            define(id, (ObjectStreamClass) ois.readObject());
+        }
+    }
+
+    private static String key(ObjectStreamClass desc) {
+        return desc.getName() + '#' + desc.getSerialVersionUID();
+    }
+}
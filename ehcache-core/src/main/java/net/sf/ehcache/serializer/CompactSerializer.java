@@ -0,0 +1,252 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.Charset;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.ElementIdHelper;
+import net.sf.ehcache.util.MemoryEfficientByteArrayOutputStream;
+
+/**
+ * A compact binary serializer.
+ * <p>
+ * Strings, boxed primitives, byte arrays and {@link Element}s are written with a one byte type tag followed by their
+ * raw content. Any other object is written using Java serialization, with class descriptors replaced by ids from a
+ * {@link ClassDescriptorDictionary} shared by all records written by this instance, so that class metadata is written
+ * once per class instead of once per record.
+ * <p>
+ * Because of this dictionary, persistent disk stores using this serializer save its state next to their index file.
+ */
+public class CompactSerializer implements StatefulSerializer, Serializable {
+
+    private static final long serialVersionUID = 8816356237150316519L;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int SHORT = 4;
+    private static final int BYTE = 5;
+    private static final int CHARACTER = 6;
+    private static final int BOOLEAN = 7;
+    private static final int FLOAT = 8;
+    private static final int DOUBLE = 9;
+    private static final int BYTE_ARRAY = 10;
+    private static final int ELEMENT = 11;
+    private static final int OBJECT = 12;
+
+    private static final int ESTIMATED_OBJECT_SIZE = 128;
+
+    private final ClassDescriptorDictionary dictionary = new ClassDescriptorDictionary();
+
+    /**
+     * {@inheritDoc}
+     */
+    public void serialize(Object object, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        write(object, data);
+        data.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object deserialize(InputStream in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        return read(new DataInputStream(in), loader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void saveState(OutputStream out) throws IOException {
+        dictionary.save(out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void loadState(InputStream in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        dictionary.load(in, loader);
+    }
+
+    /**
+     * Return the number of classes known to this serializer's descriptor dictionary.
+     *
+     * @return the number of dictionary entries
+     */
+    public int getDictionarySize() {
+        return dictionary.size();
+    }
+
+    private void write(Object object, DataOutputStream out) throws IOException {
+        if (object == null) {
+            out.writeByte(NULL);
+        } else if (object instanceof String) {
+            byte[] bytes = ((String) object).getBytes(UTF8);
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (object instanceof byte[]) {
+            byte[] bytes = (byte[]) object;
+            out.writeByte(BYTE_ARRAY);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (object instanceof Element) {
+            out.writeByte(ELEMENT);
+            writeElement((Element) object, out);
+        } else if (!writePrimitive(object, out)) {
+            out.writeByte(OBJECT);
+            MemoryEfficientByteArrayOutputStream buffer = new MemoryEfficientByteArrayOutputStream(ESTIMATED_OBJECT_SIZE);
+            ObjectOutputStream oos = dictionary.createObjectOutputStream(buffer);
+            oos.writeObject(object);
+            oos.close();
+            out.writeInt(buffer.size());
+            buffer.writeTo(out);
+        }
+    }
+
+    private static boolean writePrimitive(Object object, DataOutputStream out) throws IOException {
+        Class<?> type = object.getClass();
+        if (type == Integer.class) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) object);
+        } else if (type == Long.class) {
+            out.writeByte(LONG);
+            out.writeLong((Long) object);
+        } else if (type == Short.class) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) object);
+        } else if (type == Byte.class) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) object);
+        } else if (type == Character.class) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) object);
+        } else if (type == Boolean.class) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) object);
+        } else if (type == Float.class) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) object);
+        } else if (type == Double.class) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) object);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void writeElement(Element element, DataOutputStream out) throws IOException {
+        write(element.getObjectKey(), out);
+        write(element.getObjectValue(), out);
+        out.writeLong(element.getVersion());
+        out.writeLong(element.getCreationTime());
+        out.writeLong(element.getLastAccessTime());
+        out.writeLong(element.getHitCount());
+        out.writeLong(element.getLastUpdateTime());
+        out.writeBoolean(element.usesCacheDefaultLifespan());
+        out.writeInt(element.getTimeToLive());
+        out.writeInt(element.getTimeToIdle());
+        out.writeLong(ElementIdHelper.hasId(element) ? ElementIdHelper.getId(element) : 0);
+    }
+
+    private Object read(DataInputStream in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(in), UTF8);
+            case BYTE_ARRAY:
+                return readBytes(in);
+            case ELEMENT:
+                return readElement(in, loader);
+            case OBJECT:
+                ObjectInputStream ois = dictionary.createObjectInputStream(new ByteArrayInputStream(readBytes(in)), loader);
+                try {
+                    return ois.readObject();
+                } finally {
+                    ois.close();
+                }
+            default:
+                return readPrimitive(tag, in);
+        }
+    }
+
+    private static Object readPrimitive(int tag, DataInputStream in) throws IOException {
+        switch (tag) {
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHARACTER:
+                return in.readChar();
+            case BOOLEAN:
+                return in.readBoolean();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            default:
+                throw new StreamCorruptedException("Unknown type tag " + tag);
+        }
+    }
+
+    private Element readElement(DataInputStream in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        Object key = read(in, loader);
+        Object value = read(in, loader);
+        long version = in.readLong();
+        long creationTime = in.readLong();
+        long lastAccessTime = in.readLong();
+        long hitCount = in.readLong();
+        long lastUpdateTime = in.readLong();
+        boolean cacheDefaultLifespan = in.readBoolean();
+        int timeToLive = in.readInt();
+        int timeToIdle = in.readInt();
+        long id = in.readLong();
+        Element element = new Element(key, value, version, creationTime, lastAccessTime, hitCount, cacheDefaultLifespan,
+                timeToLive, timeToIdle, lastUpdateTime);
+        if (id != 0) {
+            ElementIdHelper.setId(element, id);
+        }
+        return element;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
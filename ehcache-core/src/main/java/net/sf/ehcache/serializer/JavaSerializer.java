@@ -0,0 +1,54 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+import net.sf.ehcache.util.PreferredLoaderObjectInputStream;
+
+/**
+ * The default serializer: plain Java serialization.
+ * <p>
+ * The binary form of elements written by this serializer is identical to the one produced by previous versions, so
+ * it remains compatible with existing persistent disk stores and with older replication peers.
+ */
+public class JavaSerializer implements Serializer, Serializable {
+
+    private static final long serialVersionUID = -2413529327183384364L;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void serialize(Object object, OutputStream out) throws IOException {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(object);
+        oos.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object deserialize(InputStream in, ClassLoader loader) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new PreferredLoaderObjectInputStream(in, loader);
+        return ois.readObject();
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Turns objects into bytes and back for a single cache.
+ * <p>
+ * A serializer is used wherever a cache needs the binary form of its keys, values or elements: records written to the
+ * local disk store, copies made by the serialization copy strategies, RMI replication payloads and bootstrap chunks.
+ * The instance returned by {@link net.sf.ehcache.config.CacheConfiguration#getSerializer()} is used for the whole life
+ * of the cache, and must therefore be thread safe.
+ * <p>
+ * Output only has to be readable by the instance that wrote it. Replication and bootstrap payloads are encoded by a
+ * fresh instance and decoded, in the same order, by another fresh instance on the receiving node.
+ * Serializers whose output depends on state accumulated across records should implement {@link StatefulSerializer} so
+ * that persistent disk stores can be re-opened.
+ */
+public interface Serializer {
+
+    /**
+     * Write the binary form of the given object to the stream.
+     * <p>
+     * Implementations may assume the stream holds nothing but this object, and must not close it.
+     *
+     * @param object the object to serialize, possibly {@code null}
+     * @param out the stream to write to
+     * @throws IOException if the object cannot be serialized
+     */
+    void serialize(Object object, OutputStream out) throws IOException;
+
+    /**
+     * Read back an object from its binary form.
+     *
+     * @param in the stream to read from, positioned at the start of the binary form
+     * @param loader the classloader to resolve classes with
+     * @return the deserialized object
+     * @throws IOException if the stream cannot be read
+     * @throws ClassNotFoundException if a class of the serialized graph cannot be resolved
+     */
+    Object deserialize(InputStream in, ClassLoader loader) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,48 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A {@link Serializer} whose output references state shared between records, for example a dictionary of class
+ * descriptors.
+ * <p>
+ * Persistent disk stores save this state next to their index on flush, and restore it before reading any record.
+ */
+public interface StatefulSerializer extends Serializer {
+
+    /**
+     * Write the shared state of this serializer to the given stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException on write failure
+     */
+    void saveState(OutputStream out) throws IOException;
+
+    /**
+     * Restore the shared state of this serializer, replacing any state it currently holds.
+     *
+     * @param in the stream to read from
+     * @param loader the classloader to resolve classes with
+     * @throws IOException on read failure
+     * @throws ClassNotFoundException if a class referenced by the state cannot be resolved
+     */
+    void loadState(InputStream in, ClassLoader loader) throws IOException, ClassNotFoundException;
+}
@@ -608,6 +608,27 @@ public interface FlatStatistics  {
      */
     long getLocalDiskSizeInBytes();
 
+    /**
+     * Gets the number of entries waiting to be written to the local disk.
+     *
+     * @return the local disk write queue length
+     */
+    long getLocalDiskWriteQueueLength();
+
+    /**
+     * Gets the mean number of entries written to the local disk per batch.
+     *
+     * @return the mean local disk write batch size
+     */
+    double getLocalDiskWriteBatchSize();
+
+    /**
+     * Gets the mean time taken to write a batch of entries to the local disk.
+     *
+     * @return the mean local disk write latency in nanoseconds
+     */
+    long getLocalDiskWriteLatency();
+
     /**
      * Gets the remote size.
      *
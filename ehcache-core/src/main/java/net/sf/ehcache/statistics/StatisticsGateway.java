@@ -352,6 +352,21 @@ public class StatisticsGateway implements FlatStatistics {
         return extended.localDiskSizeInBytes().value().longValue();
     }
 
+    @Override
+    public long getLocalDiskWriteQueueLength() {
+        return extended.localDiskWriteQueueLength().value().longValue();
+    }
+
+    @Override
+    public double getLocalDiskWriteBatchSize() {
+        return extended.localDiskWriteBatchSize().value().doubleValue();
+    }
+
+    @Override
+    public long getLocalDiskWriteLatency() {
+        return extended.localDiskWriteLatency().value().longValue();
+    }
+
     @Override
     public long getLocalOffHeapSizeInBytes() {
         return extended.localOffHeapSizeInBytes().value().longValue();
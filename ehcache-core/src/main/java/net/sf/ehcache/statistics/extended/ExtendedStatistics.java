@@ -528,6 +528,27 @@ public interface ExtendedStatistics {
      */
     Statistic<Number> localDiskSizeInBytes();
 
+    /**
+     * Gets the local disk write queue length.
+     *
+     * @return the local disk write queue length
+     */
+    Statistic<Number> localDiskWriteQueueLength();
+
+    /**
+     * Gets the mean number of entries per local disk write.
+     *
+     * @return the mean local disk write batch size
+     */
+    Statistic<Number> localDiskWriteBatchSize();
+
+    /**
+     * Gets the mean local disk write latency in nanoseconds.
+     *
+     * @return the mean local disk write latency
+     */
+    Statistic<Number> localDiskWriteLatency();
+
     /**
      * Gets the remote size.
      *
@@ -681,6 +681,36 @@ public class ExtendedStatisticsImpl implements ExtendedStatistics {
         return getStandardPassThrough(StandardPassThroughStatistic.LOCAL_DISK_SIZE_BYTES);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see net.sf.ehcache.statistics.extended.ExtendedStatistics#localDiskWriteQueueLength()
+     */
+    @Override
+    public Statistic<Number> localDiskWriteQueueLength() {
+        return getStandardPassThrough(StandardPassThroughStatistic.LOCAL_DISK_WRITE_QUEUE_LENGTH);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see net.sf.ehcache.statistics.extended.ExtendedStatistics#localDiskWriteBatchSize()
+     */
+    @Override
+    public Statistic<Number> localDiskWriteBatchSize() {
+        return getStandardPassThrough(StandardPassThroughStatistic.LOCAL_DISK_WRITE_BATCH_SIZE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see net.sf.ehcache.statistics.extended.ExtendedStatistics#localDiskWriteLatency()
+     */
+    @Override
+    public Statistic<Number> localDiskWriteLatency() {
+        return getStandardPassThrough(StandardPassThroughStatistic.LOCAL_DISK_WRITE_LATENCY);
+    }
+
     /*
      * (non-Javadoc)
      * 
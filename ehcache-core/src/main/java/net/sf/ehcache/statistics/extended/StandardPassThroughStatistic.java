@@ -52,6 +52,17 @@ public enum StandardPassThroughStatistic {
     /** local disk size in bytes */
     LOCAL_DISK_SIZE_BYTES(cache().children().exclude(Ehcache.class).add(descendants()), Long.TYPE, 0L, "size-in-bytes", "local-disk"),
 
+    /** local disk write queue length in entries */
+    LOCAL_DISK_WRITE_QUEUE_LENGTH(cache().children().exclude(Ehcache.class).add(descendants()), Integer.TYPE, 0, "write-queue-length",
+            "local-disk"),
+
+    /** mean number of entries per local disk write */
+    LOCAL_DISK_WRITE_BATCH_SIZE(cache().children().exclude(Ehcache.class).add(descendants()), Double.TYPE, 0.0, "write-batch-size",
+            "local-disk"),
+
+    /** mean local disk write latency in nanoseconds */
+    LOCAL_DISK_WRITE_LATENCY(cache().children().exclude(Ehcache.class).add(descendants()), Long.TYPE, 0L, "write-latency", "local-disk"),
+
     /** writer queue length */
     WRITER_QUEUE_LENGTH(cache().descendants(), Long.TYPE, 0L, "queue-length", "write-behind"),
 
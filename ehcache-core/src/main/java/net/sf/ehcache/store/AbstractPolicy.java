@@ -18,6 +18,7 @@ package net.sf.ehcache.store;
 
 import net.sf.ehcache.Element;
 
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -37,6 +38,12 @@ public abstract class AbstractPolicy implements Policy {
      */
     static final Random RANDOM = new Random();
 
+    /**
+     * Whether {@link #selectedBasedOnPolicy(Element[], Element)} is this class's own selection, and so can be applied
+     * directly to a partially filled sample buffer.
+     */
+    private final boolean inheritedSelection = inheritsSelection(getClass());
+
     /**
      * sampleSize how many samples to take
      *
@@ -61,12 +68,36 @@ public abstract class AbstractPolicy implements Policy {
      * @return the least hit
      */
     public Element selectedBasedOnPolicy(Element[] sampledElements, Element justAdded) {
+        return select(sampledElements, sampledElements.length, justAdded);
+    }
+
+    /**
+     * Finds the best eviction candidate among the first {@code count} elements of a sample buffer.
+     * <p>
+     * This lets stores sample into a reused buffer. Subclasses that override
+     * {@link #selectedBasedOnPolicy(Element[], Element)} are handed an exact copy of the sample instead.
+     *
+     * @param sampleBuffer a buffer starting with a random subset of the population
+     * @param count        the number of sampled elements in the buffer
+     * @param justAdded    we never want to select the element just added. May be null.
+     * @return the least hit
+     */
+    public Element selectedBasedOnPolicy(Element[] sampleBuffer, int count, Element justAdded) {
+        if (inheritedSelection) {
+            return select(sampleBuffer, count, justAdded);
+        } else {
+            return selectedBasedOnPolicy(Arrays.copyOf(sampleBuffer, count), justAdded);
+        }
+    }
+
+    private Element select(Element[] sampledElements, int count, Element justAdded) {
         //edge condition when Memory Store configured to size 0
-        if (sampledElements.length == 1) {
+        if (count == 1) {
             return sampledElements[0];
         }
         Element lowestElement = null;
-        for (Element element : sampledElements) {
+        for (int i = 0; i < count; i++) {
+            Element element = sampledElements[i];
             if (element == null) {
                 continue;
             }
@@ -82,6 +113,14 @@ public abstract class AbstractPolicy implements Policy {
         return lowestElement;
     }
 
+    private static boolean inheritsSelection(Class<?> policyClass) {
+        try {
+            return policyClass.getMethod("selectedBasedOnPolicy", Element[].class, Element.class).getDeclaringClass() == AbstractPolicy.class;
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     /**
      * Generates a random sample from a population
      *
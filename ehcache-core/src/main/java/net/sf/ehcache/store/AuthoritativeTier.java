@@ -15,6 +15,9 @@
  */
 package net.sf.ehcache.store;
 
+import java.util.Collection;
+import java.util.Map;
+
 import net.sf.ehcache.Element;
 
 /**
@@ -33,6 +36,15 @@ public interface AuthoritativeTier extends Store {
      */
     Element fault(Object key, boolean updateStats);
 
+    /**
+     * Marks the entries of all the given keys as not evictable and returns them, in a single bulk operation
+     *
+     * @param keys the keys to fault
+     * @param updateStats true to update the stats, false otherwise
+     * @return a map of all the keys to their element, or to null when there is no mapping
+     */
+    Map<Object, Element> faultAll(Collection<?> keys, boolean updateStats);
+
     /**
      * Stupid "implicit" contract in tests that dictates that entries put, will be in highest tier!
      *
@@ -23,22 +23,28 @@ import net.sf.ehcache.config.ConfigurationHelper;
 import net.sf.ehcache.config.SearchAttribute;
 import net.sf.ehcache.config.Searchable;
 import net.sf.ehcache.search.Attribute;
+import net.sf.ehcache.search.ExecutionHints;
+import net.sf.ehcache.search.Result;
 import net.sf.ehcache.search.Results;
 import net.sf.ehcache.search.SearchException;
 import net.sf.ehcache.search.aggregator.AggregatorInstance;
+import net.sf.ehcache.search.aggregator.MergeableAggregatorInstance;
 import net.sf.ehcache.search.attribute.AttributeExtractor;
 import net.sf.ehcache.search.attribute.AttributeExtractorException;
 import net.sf.ehcache.search.attribute.AttributeType;
 import net.sf.ehcache.search.attribute.DynamicAttributesExtractor;
 import net.sf.ehcache.search.expression.Criteria;
+import net.sf.ehcache.search.expression.ResolvedCriteria;
 import net.sf.ehcache.search.impl.AggregateOnlyResult;
 import net.sf.ehcache.search.impl.BaseResult;
 import net.sf.ehcache.search.impl.DynamicSearchChecker;
 import net.sf.ehcache.search.impl.GroupedResultImpl;
+import net.sf.ehcache.search.impl.LazyValueResultImpl;
 import net.sf.ehcache.search.impl.OrderComparator;
 import net.sf.ehcache.search.impl.ResultImpl;
 import net.sf.ehcache.search.impl.ResultsImpl;
 import net.sf.ehcache.search.impl.SearchManager;
+import net.sf.ehcache.search.impl.StreamingResultsImpl;
 import net.sf.ehcache.transaction.SoftLockID;
 
 import java.util.ArrayList;
@@ -46,11 +52,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static net.sf.ehcache.search.expression.BaseCriteria.getExtractor;
 
@@ -102,136 +113,408 @@ public class BruteForceSearchManager implements SearchManager {
     @Override
     public Results executeQuery(StoreQuery query, Map<String, AttributeExtractor> extractors, DynamicAttributesExtractor
             dynIndexer) {
-        Criteria c = query.getCriteria();
+        if (isStreamable(query)) {
+            return new StreamingResultsImpl(new MatchingResults(query, extractors, dynIndexer), query.getExecutionHints().getResultBatchSize(),
+                    query.requestsKeys(), query.requestsValues(), !query.requestedAttributes().isEmpty());
+        }
+
+        Evaluation evaluation = new Evaluation(query, extractors, dynIndexer);
 
-        List<AggregatorInstance<?>> aggregators = query.getAggregatorInstances();
+        PartialResults partial;
+        int parallelism = getParallelism(query);
+        if (parallelism > 1 && evaluation.isSplittable()) {
+            List<Iterable<Element>> splits = splits(query, parallelism);
+            int splitsPerTask = Math.max(1, (splits.size() + parallelism - 1) / parallelism);
+            partial = ForkJoinPool.commonPool().invoke(new EvaluationTask(evaluation, splits, 0, splits.size(), splitsPerTask));
+        } else {
+            partial = evaluation.newPartialResults();
+            evaluation.evaluate(candidates(query), partial);
+        }
+        return evaluation.toResults(partial);
+    }
+
+    /**
+     * Queries executed with a result batch size are streamed, unless their results have to be computed all at once.
+     */
+    private static boolean isStreamable(StoreQuery query) {
+        ExecutionHints hints = query.getExecutionHints();
+        return hints != null && hints.getResultBatchSize() > 0 && query.getOrdering().isEmpty() && query.groupByAttributes().isEmpty()
+                && query.getAggregatorInstances().isEmpty();
+    }
 
-        final Set<Attribute<?>> groupByAttributes = query.groupByAttributes();
-        final boolean isGroupBy = !groupByAttributes.isEmpty();
-        boolean includeResults = query.requestsKeys() || query.requestsValues() || !query.requestedAttributes().isEmpty() || isGroupBy;
+    private int getParallelism(StoreQuery query) {
+        ExecutionHints hints = query.getExecutionHints();
+        if (hints != null && hints.getParallelism() > 0) {
+            return hints.getParallelism();
+        }
+        Searchable searchable = bruteForceSource.getSearchable();
+        return searchable == null ? Searchable.PARALLELISM_DEFAULT : searchable.getParallelism();
+    }
 
-        boolean hasOrder = !query.getOrdering().isEmpty();
+    /**
+     * The evaluation of one query: matches elements against the criteria, and accumulates the matches into
+     * {@link PartialResults} that can be merged when the query is evaluated in parallel.
+     */
+    private final class Evaluation {
+
+        private final StoreQuery query;
+        private final Map<String, AttributeExtractor> extractors;
+        private final DynamicAttributesExtractor dynIndexer;
+        private final Criteria criteria;
+        private final ResolvedCriteria resolvedCriteria;
+        private final List<AggregatorInstance<?>> aggregators;
+        private final Set<Attribute<?>> groupByAttributes;
+        private final boolean isGroupBy;
+        private final boolean includeResults;
+        private final boolean hasOrder;
+        private final int maxResults;
+        private final OrderComparator<BaseResult> comp;
 
-        final Map<Set<?>, ResultHolder> groupByResults = new HashMap<Set<?>, ResultHolder>();
-        final Map<Set, List<AggregatorInstance<?>>> groupByAggregators = new HashMap<Set, List<AggregatorInstance<?>>>();
+        /**
+         * Aggregation only queries without a result limit aggregate each match as it is found.
+         */
+        private final boolean folding;
+
+        /**
+         * Unordered queries with a result limit stop once enough matches were found, across all splits.
+         */
+        private final boolean limited;
+        private final AtomicInteger taken = new AtomicInteger();
+
+        private Evaluation(StoreQuery query, Map<String, AttributeExtractor> extractors, DynamicAttributesExtractor dynIndexer) {
+            this.query = query;
+            this.extractors = extractors;
+            this.dynIndexer = dynIndexer;
+            this.criteria = query.getCriteria();
+            this.resolvedCriteria = resolve(criteria, extractors, dynIndexer);
+            this.aggregators = query.getAggregatorInstances();
+            this.groupByAttributes = query.groupByAttributes();
+            this.isGroupBy = !groupByAttributes.isEmpty();
+            this.includeResults = query.requestsKeys() || query.requestsValues() || !query.requestedAttributes().isEmpty() || isGroupBy;
+            this.hasOrder = !query.getOrdering().isEmpty();
+            this.maxResults = query.maxResults();
+            this.comp = new OrderComparator<BaseResult>(query.getOrdering());
+            this.folding = !isGroupBy && !includeResults && maxResults < 0 && !aggregators.isEmpty();
+            this.limited = !isGroupBy && !hasOrder && maxResults >= 0;
+        }
 
-        Collection<Element> matches = new LinkedList<Element>();
-        Map<Object, Map<String, AttributeExtractor>> eltExtractors = new HashMap<Object, Map<String, AttributeExtractor>>();
+        /**
+         * Partial aggregators can only be combined when they are all mergeable.
+         */
+        private boolean isSplittable() {
+            for (AggregatorInstance<?> aggregator : aggregators) {
+                if (!(aggregator instanceof MergeableAggregatorInstance)) {
+                    return !isGroupBy && !folding;
+                }
+            }
+            return true;
+        }
 
-        for (Element element : bruteForceSource.elements()) {
+        private PartialResults newPartialResults() {
+            PartialResults partial = new PartialResults(hasOrder && maxResults >= 0 ? maxResults : -1);
+            if (folding) {
+                partial.aggregators = cloneAggregators();
+            }
+            return partial;
+        }
 
-            Map<String, AttributeExtractor> extractorSuperset = getCombinedExtractors(extractors, dynIndexer, element);
-            eltExtractors.put(element.getObjectKey(), extractorSuperset);
+        private List<AggregatorInstance<?>> cloneAggregators() {
+            List<AggregatorInstance<?>> clones = new ArrayList<AggregatorInstance<?>>(aggregators.size());
+            for (AggregatorInstance<?> aggregator : aggregators) {
+                clones.add(aggregator.createClone());
+            }
+            return clones;
+        }
 
-            if (c.execute(element, extractorSuperset)) {
-                if (!isGroupBy && !hasOrder && query.maxResults() >= 0 && matches.size() == query.maxResults()) {
+        private void evaluate(Iterable<Element> elements, PartialResults partial) {
+            for (Element element : elements) {
+                if (limited && taken.get() >= maxResults) {
                     break;
                 }
 
-                matches.add(element);
+                Map<String, AttributeExtractor> extractorSuperset = getCombinedExtractors(extractors, dynIndexer, element);
+                boolean matches = resolvedCriteria != null ? resolvedCriteria.execute(element)
+                    : criteria.execute(element, extractorSuperset);
+                if (matches && !accept(element, extractorSuperset, partial)) {
+                    break;
+                }
             }
         }
 
-        Collection<ResultHolder> results = isGroupBy ? groupByResults.values() : new ArrayList<ResultHolder>();
-
-        boolean anyMatches = !matches.isEmpty();
-        OrderComparator<BaseResult> comp = new OrderComparator<BaseResult>(query.getOrdering());
-        
-        for (Element element : matches) {
-            Map<String, AttributeExtractor> extractorSuperset = eltExtractors.get(element.getObjectKey());
+        /**
+         * Accumulate a match, returns false if the result limit was reached.
+         */
+        private boolean accept(Element element, Map<String, AttributeExtractor> extractorSuperset, PartialResults partial) {
+            if (limited && taken.incrementAndGet() > maxResults) {
+                return false;
+            }
+            partial.anyMatches = true;
 
             List<Object> resultAggs = new ArrayList<Object>(aggregators.size());
-            for (AggregatorInstance<?> agg: aggregators) {
+            for (AggregatorInstance<?> agg : aggregators) {
                 Attribute aggrAttr = agg.getAttribute();
                 // placeholder input for count
-                Object val = aggrAttr != null ? 
+                Object val = aggrAttr != null ?
                     getExtractor(aggrAttr.getAttributeName(), extractorSuperset).attributeFor(element, aggrAttr.getAttributeName()) : null;
                 resultAggs.add(val);
             }
-            
+
+            if (folding) {
+                acceptAll(partial.aggregators, resultAggs);
+                return true;
+            }
+
             Map<String, Object> attributes = getAttributeValues(query.requestedAttributes(), extractorSuperset, element);
             Object[] sortAttributes = getSortAttributes(query, extractorSuperset, element);
 
             if (!isGroupBy) {
-                results.add(new ResultHolder(new ResultImpl(element.getObjectKey(), element.getObjectValue(), query, attributes, sortAttributes), 
-                            resultAggs, comp));
+                partial.add(new ResultHolder(new ResultImpl(element.getObjectKey(), element.getObjectValue(), query, attributes,
+                        sortAttributes), resultAggs, comp));
             } else {
                 Map<String, Object> groupByValues = getAttributeValues(groupByAttributes, extractorSuperset, element);
                 Set<?> groupId = new HashSet<Object>(groupByValues.values());
-                List<AggregatorInstance<?>> groupAggrs = groupByAggregators.get(groupId);
+                List<AggregatorInstance<?>> groupAggrs = partial.groupAggregators.get(groupId);
                 if (groupAggrs == null) {
-                    groupAggrs = new ArrayList<AggregatorInstance<?>>(aggregators.size());
-                    for (AggregatorInstance<?> aggr : aggregators) {
-                        groupAggrs.add(aggr.createClone());
-                    }
-                    groupByAggregators.put(groupId, groupAggrs);
+                    groupAggrs = cloneAggregators();
+                    partial.groupAggregators.put(groupId, groupAggrs);
                 }
-                int i = 0;
-                for (AggregatorInstance<?> inst: groupAggrs) {
-                    inst.accept(resultAggs.get(i++));
+                acceptAll(groupAggrs, resultAggs);
+                if (!partial.groups.containsKey(groupId)) {
+                    partial.groups.put(groupId, new ResultHolder(new GroupedResultImpl(query, attributes, sortAttributes,
+                            Collections.emptyList(), groupByValues), Collections.emptyList(), comp));
                 }
-                ResultHolder group = groupByResults.get(groupId);
-                if (group == null) {
-                    group = new ResultHolder(new GroupedResultImpl(query, attributes, sortAttributes, Collections.emptyList(),
-                            groupByValues), Collections.emptyList(), comp);
-                    groupByResults.put(groupId, group);
+            }
+            return true;
+        }
+
+        private void acceptAll(List<AggregatorInstance<?>> instances, List<Object> inputs) {
+            int i = 0;
+            for (AggregatorInstance<?> inst : instances) {
+                inst.accept(inputs.get(i++));
+            }
+        }
+
+        /**
+         * Merge the results of two disjoint parts of the source, keeping the first result seen for a group.
+         */
+        private PartialResults merge(PartialResults into, PartialResults from) {
+            into.anyMatches |= from.anyMatches;
+            for (ResultHolder result : from.results) {
+                into.add(result);
+            }
+            for (Map.Entry<Set<?>, ResultHolder> group : from.groups.entrySet()) {
+                List<AggregatorInstance<?>> groupAggrs = into.groupAggregators.get(group.getKey());
+                if (groupAggrs == null) {
+                    into.groups.put(group.getKey(), group.getValue());
+                    into.groupAggregators.put(group.getKey(), from.groupAggregators.get(group.getKey()));
+                } else {
+                    mergeAll(groupAggrs, from.groupAggregators.get(group.getKey()));
                 }
             }
+            if (folding) {
+                mergeAll(into.aggregators, from.aggregators);
+            }
+            return into;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void mergeAll(List<AggregatorInstance<?>> into, List<AggregatorInstance<?>> from) {
+            for (int i = 0; i < into.size(); i++) {
+                ((MergeableAggregatorInstance<Object>) into.get(i)).merge((AggregatorInstance<Object>) from.get(i));
+            }
         }
 
-        if (hasOrder || isGroupBy) {
-            if (isGroupBy) {
-                results = new ArrayList<ResultHolder>(results);
+        private Results toResults(PartialResults partial) {
+            Collection<ResultHolder> results = isGroupBy ? partial.groups.values() : partial.results;
+            if (hasOrder || isGroupBy) {
+                List<ResultHolder> sorted = new ArrayList<ResultHolder>(results);
+                if (hasOrder) {
+                    Collections.sort(sorted);
+                }
+                // trim results to max length if necessary
+                if (maxResults >= 0 && (sorted.size() > maxResults)) {
+                    sorted = sorted.subList(0, maxResults);
+                }
+                results = sorted;
             }
 
-            if (hasOrder) {
-                Collections.sort((List<ResultHolder>)results);
+            List<AggregatorInstance<?>> resultAggregators = folding ? partial.aggregators : aggregators;
+            if (!folding && !aggregators.isEmpty()) {
+                aggregate(results, partial);
             }
-            // trim results to max length if necessary
-            int max = query.maxResults();
-            if (max >= 0 && (results.size() > max)) {
-                results = ((List<ResultHolder>)results).subList(0, max);
+
+            List<BaseResult> output;
+            if (!isGroupBy && partial.anyMatches && !includeResults && !resultAggregators.isEmpty()) {
+                // add one row in the results if the only thing included was aggregators and anything matched
+                BaseResult aggOnly = new AggregateOnlyResult(query);
+                setResultAggregators(resultAggregators, aggOnly);
+                output = Collections.singletonList(aggOnly);
+            } else {
+                output = new ArrayList<BaseResult>(results.size());
+                for (ResultHolder rh : results) {
+                    output.add(rh.result);
+                }
             }
+
+            return new ResultsImpl(output, query.requestsKeys(), query.requestsValues(), !query.requestedAttributes().isEmpty(),
+                    partial.anyMatches && !resultAggregators.isEmpty());
         }
 
-        if (!aggregators.isEmpty()) {
+        private void aggregate(Collection<ResultHolder> results, PartialResults partial) {
             for (ResultHolder rh : results) {
                 if (isGroupBy) {
-                    GroupedResultImpl group = (GroupedResultImpl)rh.result;
+                    GroupedResultImpl group = (GroupedResultImpl) rh.result;
                     Set<?> groupId = new HashSet<Object>(group.getGroupByValues().values());
-                    aggregators = groupByAggregators.get(groupId);
-                    setResultAggregators(aggregators, group);
+                    setResultAggregators(partial.groupAggregators.get(groupId), group);
                 } else {
-                    int i = 0;
-                    for (Object val: rh.aggregatorInputs) {
-                        aggregators.get(i++).accept(val);
-                    }
+                    acceptAll(aggregators, rh.aggregatorInputs);
                 }
             }
             if (includeResults && !isGroupBy) {
                 // Set the same aggregate values for each result
-                for (ResultHolder rh: results) {
+                for (ResultHolder rh : results) {
                     setResultAggregators(aggregators, rh.result);
                 }
             }
         }
-        
-        List<BaseResult> output;
-        
-        if (!isGroupBy && anyMatches && !includeResults && !aggregators.isEmpty()) {
-            // add one row in the results if the only thing included was aggregators and anything matched
-            BaseResult aggOnly = new AggregateOnlyResult(query);
-            setResultAggregators(aggregators, aggOnly);
-            output = Collections.singletonList(aggOnly);
-        } else {
-            output = new ArrayList<BaseResult>(results.size());
-            for (ResultHolder rh: results) {
-                output.add(rh.result);
+    }
+
+    /**
+     * The results of a streamed query, searched for as they are iterated.
+     */
+    private final class MatchingResults implements Iterable<Result>, LazyValueResultImpl.ValueReader {
+
+        private final StoreQuery query;
+        private final Map<String, AttributeExtractor> extractors;
+        private final DynamicAttributesExtractor dynIndexer;
+        private final ResolvedCriteria resolvedCriteria;
+
+        private MatchingResults(StoreQuery query, Map<String, AttributeExtractor> extractors, DynamicAttributesExtractor dynIndexer) {
+            this.query = query;
+            this.extractors = extractors;
+            this.dynIndexer = dynIndexer;
+            this.resolvedCriteria = resolve(query.getCriteria(), extractors, dynIndexer);
+        }
+
+        @Override
+        public Object read(Object key) {
+            Element element = bruteForceSource.element(key);
+            return element == null ? null : element.getObjectValue();
+        }
+
+        @Override
+        public Iterator<Result> iterator() {
+            final Iterator<Element> elements = candidates(query).iterator();
+            return new Iterator<Result>() {
+                private int count;
+                private Result next = advance();
+
+                private Result advance() {
+                    while (elements.hasNext() && (query.maxResults() < 0 || count < query.maxResults())) {
+                        Element element = elements.next();
+                        Map<String, AttributeExtractor> extractorSuperset = getCombinedExtractors(extractors, dynIndexer, element);
+                        boolean matches = resolvedCriteria != null ? resolvedCriteria.execute(element)
+                            : query.getCriteria().execute(element, extractorSuperset);
+                        if (matches) {
+                            count++;
+                            return new LazyValueResultImpl(element.getObjectKey(), MatchingResults.this, query,
+                                    getAttributeValues(query.requestedAttributes(), extractorSuperset, element));
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Result next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Result result = next;
+                    next = advance();
+                    return result;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /**
+     * The matches found in part of the source.
+     */
+    private static final class PartialResults {
+
+        private final int bound;
+        private final Collection<ResultHolder> results;
+        private final Map<Set<?>, ResultHolder> groups = new HashMap<Set<?>, ResultHolder>();
+        private final Map<Set<?>, List<AggregatorInstance<?>>> groupAggregators = new HashMap<Set<?>, List<AggregatorInstance<?>>>();
+        private List<AggregatorInstance<?>> aggregators;
+        private boolean anyMatches;
+
+        /**
+         * @param bound the number of results to keep, or -1 to keep them all
+         */
+        private PartialResults(int bound) {
+            this.bound = bound;
+            if (bound >= 0) {
+                // the worst of the results kept sits at the head of the queue
+                this.results = new PriorityQueue<ResultHolder>(bound + 1, Collections.<ResultHolder>reverseOrder());
+            } else {
+                this.results = new ArrayList<ResultHolder>();
             }
         }
 
-        return new ResultsImpl(output, query.requestsKeys(), query.requestsValues(), !query.requestedAttributes().isEmpty(), anyMatches
-                && !aggregators.isEmpty());
+        private void add(ResultHolder result) {
+            results.add(result);
+            if (bound >= 0 && results.size() > bound) {
+                ((PriorityQueue<ResultHolder>) results).poll();
+            }
+        }
+    }
+
+    /**
+     * Evaluates a range of splits of the source, forking when the range is larger than the splits handled by one task.
+     */
+    private static final class EvaluationTask extends RecursiveTask<PartialResults> {
+
+        private final Evaluation evaluation;
+        private final List<Iterable<Element>> splits;
+        private final int from;
+        private final int to;
+        private final int splitsPerTask;
+
+        private EvaluationTask(Evaluation evaluation, List<Iterable<Element>> splits, int from, int to, int splitsPerTask) {
+            this.evaluation = evaluation;
+            this.splits = splits;
+            this.from = from;
+            this.to = to;
+            this.splitsPerTask = splitsPerTask;
+        }
+
+        @Override
+        protected PartialResults compute() {
+            if (to - from <= splitsPerTask) {
+                PartialResults partial = evaluation.newPartialResults();
+                for (int i = from; i < to; i++) {
+                    evaluation.evaluate(splits.get(i), partial);
+                }
+                return partial;
+            }
+
+            int middle = (from + to) >>> 1;
+            EvaluationTask left = new EvaluationTask(evaluation, splits, from, middle, splitsPerTask);
+            left.fork();
+            PartialResults right = new EvaluationTask(evaluation, splits, middle, to, splitsPerTask).compute();
+            return evaluation.merge(left.join(), right);
+        }
     }
 
     private void setResultAggregators(List<AggregatorInstance<?>> aggregators, BaseResult result)
@@ -260,6 +543,15 @@ public class BruteForceSearchManager implements SearchManager {
         return values;
     }
 
+    /**
+     * Without dynamic attributes every element is searched with the same extractors, so the criteria are resolved against
+     * them once per query. Returns null when the extractors are combined per element.
+     */
+    private static ResolvedCriteria resolve(Criteria criteria, Map<String, AttributeExtractor> extractors,
+                                            DynamicAttributesExtractor dynIndexer) {
+        return dynIndexer == null ? ResolvedCriteria.resolve(criteria, extractors) : null;
+    }
+
     private Map<String, AttributeExtractor> getCombinedExtractors(Map<String, AttributeExtractor> configExtractors, DynamicAttributesExtractor
             dynIndexer, Element element) {
         if (dynIndexer != null) {
@@ -387,6 +679,42 @@ public class BruteForceSearchManager implements SearchManager {
         this.bruteForceSource = bruteForceSource;
     }
 
+    /**
+     * Returns the source this manager searches.
+     *
+     * @return the source
+     */
+    BruteForceSource getBruteForceSource() {
+        return bruteForceSource;
+    }
+
+    /**
+     * Returns the elements the given query has to be evaluated against.
+     * <p>
+     * This implementation returns every element of the source. The criteria of the query are always re-evaluated on
+     * the returned elements, so overriding implementations may return a superset of the matching elements.
+     *
+     * @param query the query
+     * @return the candidate elements
+     */
+    Iterable<Element> candidates(StoreQuery query) {
+        return bruteForceSource.elements();
+    }
+
+    /**
+     * Returns the elements the given query has to be evaluated against, split into parts evaluated in parallel.
+     * <p>
+     * This implementation returns the segments of the source. As for {@link #candidates(StoreQuery)}, overriding
+     * implementations may return a superset of the matching elements.
+     *
+     * @param query the query
+     * @param parallelism the number of parallel tasks the query is evaluated by
+     * @return the candidate elements, split into parts
+     */
+    List<Iterable<Element>> splits(StoreQuery query, int parallelism) {
+        return bruteForceSource.segments();
+    }
+
     /**
      * Add search attributes
      *
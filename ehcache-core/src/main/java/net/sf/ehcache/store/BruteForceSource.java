@@ -16,6 +16,8 @@
 
 package net.sf.ehcache.store;
 
+import java.util.List;
+
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.Searchable;
 
@@ -34,6 +36,22 @@ interface BruteForceSource {
      */
     Iterable<Element> elements();
 
+    /**
+     * The elements from the source, split into parts that can be iterated concurrently.
+     * Together the parts hold the same elements as {@link #elements()}, in the same form.
+     *
+     * @return a List of Iterables of Element
+     */
+    List<Iterable<Element>> segments();
+
+    /**
+     * Returns the element mapped to the given key, in the same form as {@link #elements()} would return it.
+     *
+     * @param key the key
+     * @return the element, or null if there is none
+     */
+    Element element(Object key);
+
     /**
      * Returns the {@link Searchable} configuration of the source.
      *
@@ -30,6 +30,7 @@ import net.sf.ehcache.terracotta.TerracottaNotRunningException;
 import net.sf.ehcache.writer.CacheWriterManager;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -170,8 +171,21 @@ public class CacheStore implements Store {
 
     @Override
     public void putAll(final Collection<Element> elements) throws CacheException {
-        for (Element element : elements) {
-            put(element);
+        try {
+            authoritativeTier.putAll(elements);
+        } catch (RuntimeException e) {
+            for (Element element : elements) {
+                if (element != null) {
+                    authoritativeTier.flush(element);
+                }
+            }
+            throw e;
+        } finally {
+            for (Element element : elements) {
+                if (element != null) {
+                    cachingTier.remove(element.getObjectKey());
+                }
+            }
         }
     }
 
@@ -241,8 +255,14 @@ public class CacheStore implements Store {
 
     @Override
     public void removeAll(final Collection<?> keys) {
-        for (Object key : keys) {
-            remove(key);
+        try {
+            authoritativeTier.removeAll(keys);
+        } finally {
+            for (Object key : keys) {
+                if (key != null) {
+                    cachingTier.remove(key);
+                }
+            }
         }
     }
 
@@ -513,22 +533,37 @@ public class CacheStore implements Store {
         return authoritativeTier.getSearchAttributes();
     }
 
-    // TODO this is probably not optimum
     @Override
     public Map<Object, Element> getAllQuiet(final Collection<?> keys) {
-        final Map<Object, Element> result = new HashMap<Object, Element>();
-        for (Object key : keys) {
-            result.put(key, getQuiet(key));
-        }
-        return result;
+        return getAll(keys, false);
     }
 
-    // TODO this is probably not optimum
     @Override
     public Map<Object, Element> getAll(final Collection<?> keys) {
-        final Map<Object, Element> result = new HashMap<Object, Element>();
+        return getAll(keys, true);
+    }
+
+    private Map<Object, Element> getAll(final Collection<?> keys, final boolean updateStats) {
+        final List<Object> nonNullKeys = new ArrayList<Object>(keys.size());
         for (Object key : keys) {
-            result.put(key, get(key));
+            if (key != null) {
+                nonNullKeys.add(key);
+            }
+        }
+        final Map<Object, Element> result = cachingTier.getAll(nonNullKeys, new CachingTier.BulkSource<Object, Element>() {
+            @Override
+            public Map<Object, Element> loadAll(final Collection<Object> missingKeys) throws Exception {
+                final Lock lock = daLock.readLock();
+                lock.lock();
+                try {
+                    return authoritativeTier.faultAll(missingKeys, updateStats);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }, updateStats);
+        if (nonNullKeys.size() < keys.size()) {
+            result.put(null, null);
         }
         return result;
     }
@@ -15,6 +15,8 @@
  */
 package net.sf.ehcache.store;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 /**
@@ -47,6 +49,16 @@ public interface CachingTier<K, V> {
      */
     V get(K key, Callable<V> source, boolean updateStats);
 
+    /**
+     * Returns the values associated with the keys, populating all the missing mappings with a single call to the bulk source
+     *
+     * @param keys the keys to look up
+     * @param source the source to use for all the keys with no mapping present
+     * @param updateStats true to update the stats, false otherwise
+     * @return a map of all the keys to their value, or to null when the source had none
+     */
+    Map<K, V> getAll(Collection<? extends K> keys, BulkSource<K, V> source, boolean updateStats);
+
     /**
      * Removes the mapping associated to the key passed in
      *
@@ -147,6 +159,24 @@ public interface CachingTier<K, V> {
     @Deprecated
     void setEvictionPolicy(Policy policy);
 
+    /**
+     * A source of values for several keys at once
+     *
+     * @param <K>
+     * @param <V>
+     */
+    public interface BulkSource<K, V> {
+
+        /**
+         * Loads the values of the given keys.
+         *
+         * @param keys the keys to load
+         * @return a map of the keys to their value, keys without any value may be absent or mapped to null
+         * @throws Exception if the values could not be loaded
+         */
+        Map<K, V> loadAll(Collection<K> keys) throws Exception;
+    }
+
     /**
      * A listener that will be notified when eviction of a mapping happens
      *
@@ -0,0 +1,556 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.sf.ehcache.Element;
+
+/**
+ * Keeps the exact eviction order of a {@link MemoryStore}, instead of sampling it.
+ * <p>
+ * Reads are recorded into striped, lossy ring buffers and writes into a queue, so that cache operations never contend
+ * on the eviction order. The buffers are drained in batches by whichever thread acquires the eviction lock, either
+ * when a buffer fills up or when a victim is selected. The order is kept as doubly linked lists of nodes, one per key,
+ * only ever touched under the eviction lock.
+ * <p>
+ * Writes are reported by the {@link ListeningConcurrentHashMap} backing the store under the segment lock, so the
+ * events for a key are queued in the order they happened. A read buffer that is full drops the access: the order then
+ * misses a few accesses under heavy load, which is the price for never blocking a reader.
+ */
+abstract class ConcurrentEvictionEngine implements ListeningConcurrentHashMap.MappingListener {
+
+    /**
+     * Number of slots of each read buffer.
+     */
+    static final int READ_BUFFER_SIZE = 16;
+
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+    private static final int WRITE_BUFFER_DRAIN_THRESHOLD = 64;
+    private static final int MAXIMUM_STRIPES = 64;
+
+    private final ReadBuffer[] readBuffers;
+    private final int stripeMask;
+    private final ConcurrentLinkedQueue<WriteEvent> writeBuffer = new ConcurrentLinkedQueue<WriteEvent>();
+    private final AtomicInteger writeCount = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final Map<Object, Node> nodes = new HashMap<Object, Node>();
+    private volatile boolean enabled = true;
+
+    /**
+     * Create an engine with one read buffer stripe per processor, rounded up to a power of two.
+     */
+    ConcurrentEvictionEngine() {
+        int stripes = 1;
+        while (stripes < Math.min(MAXIMUM_STRIPES, Runtime.getRuntime().availableProcessors())) {
+            stripes <<= 1;
+        }
+        readBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+        stripeMask = stripes - 1;
+    }
+
+    /**
+     * Creates the engine implementing the given policy, if it is one of the exact policies.
+     *
+     * @param policy the configured policy
+     * @param maximumSize the maximum number of entries of the store, or 0 if unbounded
+     * @return the engine, or {@code null} for a sampled policy
+     */
+    static ConcurrentEvictionEngine forPolicy(MemoryStoreEvictionPolicy policy, long maximumSize) {
+        if (MemoryStoreEvictionPolicy.EXACT_LRU.equals(policy)) {
+            return new Lru();
+        } else if (MemoryStoreEvictionPolicy.TINY_LFU.equals(policy)) {
+            return new TinyLfu(maximumSize);
+        }
+        return null;
+    }
+
+    /**
+     * Records an access to a stored element, without blocking.
+     *
+     * @param element the element read
+     */
+    void recordRead(Element element) {
+        if (!enabled) {
+            return;
+        }
+        int pending = readBuffers[(int) Thread.currentThread().getId() & stripeMask].offer(element);
+        if (pending == READ_BUFFER_DRAIN_THRESHOLD || pending >= READ_BUFFER_SIZE) {
+            tryDrain();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void installed(Object key, Element previous, Element value) {
+        recordWrite(new WriteEvent(key, value, false));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removed(Object key, Element value) {
+        recordWrite(new WriteEvent(key, value, true));
+    }
+
+    private void recordWrite(WriteEvent event) {
+        if (!enabled) {
+            return;
+        }
+        writeBuffer.add(event);
+        if (writeCount.incrementAndGet() % WRITE_BUFFER_DRAIN_THRESHOLD == 0) {
+            tryDrain();
+        }
+    }
+
+    /**
+     * Selects the next element to evict, leaving it in the eviction order.
+     * <p>
+     * The key is only forgotten once its removal is reported through {@link #removed(Object, Element)}: should the
+     * caller fail to evict the element, e.g. because its segment is contended, the key remains a candidate for the
+     * next eviction.
+     *
+     * @param elementJustAdded the element added by the action calling this, avoided if possible, can be {@code null}
+     * @return the element to evict, or {@code null} if the store is empty
+     */
+    Element selectVictim(Element elementJustAdded) {
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            Node victim = victim(elementJustAdded == null ? null : elementJustAdded.getObjectKey());
+            return victim == null ? null : victim.element;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Stops recording and forgets the eviction order, once the store switched to another policy.
+     */
+    void disable() {
+        enabled = false;
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            nodes.clear();
+            clear();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of keys currently ordered, as of the last drain. Must be called under the eviction lock, or once
+     * the store is quiescent.
+     *
+     * @return the number of keys
+     */
+    final int size() {
+        return nodes.size();
+    }
+
+    private void tryDrain() {
+        if (evictionLock.tryLock()) {
+            try {
+                drainBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void drainBuffers() {
+        for (WriteEvent event = writeBuffer.poll(); event != null; event = writeBuffer.poll()) {
+            if (event.removal) {
+                Node node = nodes.get(event.key);
+                if (node != null && node.element == event.value) {
+                    nodes.remove(event.key);
+                    onRemove(node);
+                }
+            } else {
+                Node node = nodes.get(event.key);
+                if (node == null) {
+                    node = new Node(event.key, event.value);
+                    nodes.put(event.key, node);
+                    onAdd(node);
+                } else {
+                    node.element = event.value;
+                    onAccess(node);
+                }
+            }
+        }
+        for (ReadBuffer buffer : readBuffers) {
+            buffer.drainTo(this);
+        }
+    }
+
+    private void onRead(Element element) {
+        Node node = nodes.get(element.getObjectKey());
+        if (node != null) {
+            onAccess(node);
+        }
+    }
+
+    /**
+     * Places a new key in the eviction order.
+     *
+     * @param node the node of the key
+     */
+    abstract void onAdd(Node node);
+
+    /**
+     * Records an access, or an update, to a key.
+     *
+     * @param node the node of the key
+     */
+    abstract void onAccess(Node node);
+
+    /**
+     * Removes a key from the eviction order.
+     *
+     * @param node the node of the key
+     */
+    abstract void onRemove(Node node);
+
+    /**
+     * Chooses the node to evict, without unlinking it.
+     *
+     * @param keyJustAdded the key to avoid if possible, can be {@code null}
+     * @return the node to evict, or {@code null} if there is none
+     */
+    abstract Node victim(Object keyJustAdded);
+
+    /**
+     * Forgets the whole eviction order.
+     */
+    abstract void clear();
+
+    /**
+     * Exact least recently used order.
+     */
+    static final class Lru extends ConcurrentEvictionEngine {
+
+        private final AccessOrder order = new AccessOrder();
+
+        @Override
+        void onAdd(Node node) {
+            order.addLast(node);
+        }
+
+        @Override
+        void onAccess(Node node) {
+            order.moveToLast(node);
+        }
+
+        @Override
+        void onRemove(Node node) {
+            order.remove(node);
+        }
+
+        @Override
+        Node victim(Object keyJustAdded) {
+            return avoiding(order.first(), keyJustAdded);
+        }
+
+        @Override
+        void clear() {
+            order.clear();
+        }
+    }
+
+    /**
+     * Window TinyLFU: new keys enter a small LRU window, then must beat the least recently used key of the main region
+     * on estimated frequency to stay in the cache.
+     * <p>
+     * The main region is a segmented LRU: keys accessed again while on probation are promoted to the protected segment,
+     * which holds at most 80% of the main region. The window holds 1% of the keys. When a victim is needed, the
+     * newest key on probation, the last one admitted from the window, is compared to the oldest: the less frequent of
+     * the two is evicted.
+     */
+    static final class TinyLfu extends ConcurrentEvictionEngine {
+
+        private static final int WINDOW_PERCENT = 1;
+        private static final int PROTECTED_PERCENT = 80;
+
+        private final AccessOrder window = new AccessOrder();
+        private final AccessOrder probation = new AccessOrder();
+        private final AccessOrder protectedOrder = new AccessOrder();
+        private final FrequencySketch sketch;
+
+        /**
+         * Create a W-TinyLFU engine.
+         *
+         * @param maximumSize the expected maximum number of entries, or 0 if unknown
+         */
+        TinyLfu(long maximumSize) {
+            sketch = new FrequencySketch(maximumSize > 0 ? maximumSize : READ_BUFFER_SIZE);
+        }
+
+        /**
+         * Gets the estimated access frequency of a key.
+         *
+         * @param key the key
+         * @return the frequency
+         */
+        int frequency(Object key) {
+            return sketch.frequency(key);
+        }
+
+        @Override
+        void onAdd(Node node) {
+            sketch.ensureCapacity(size());
+            sketch.increment(node.key);
+            node.region = Node.WINDOW;
+            window.addLast(node);
+            int windowMaximum = Math.max(1, size() * WINDOW_PERCENT / 100);
+            while (window.size() > windowMaximum) {
+                Node admitted = window.first();
+                window.remove(admitted);
+                admitted.region = Node.PROBATION;
+                probation.addLast(admitted);
+            }
+        }
+
+        @Override
+        void onAccess(Node node) {
+            sketch.increment(node.key);
+            switch (node.region) {
+                case Node.WINDOW:
+                    window.moveToLast(node);
+                    break;
+                case Node.PROBATION:
+                    probation.remove(node);
+                    node.region = Node.PROTECTED;
+                    protectedOrder.addLast(node);
+                    int protectedMaximum = (size() - window.size()) * PROTECTED_PERCENT / 100;
+                    while (protectedOrder.size() > protectedMaximum) {
+                        Node demoted = protectedOrder.first();
+                        protectedOrder.remove(demoted);
+                        demoted.region = Node.PROBATION;
+                        probation.addLast(demoted);
+                    }
+                    break;
+                default:
+                    protectedOrder.moveToLast(node);
+                    break;
+            }
+        }
+
+        @Override
+        void onRemove(Node node) {
+            switch (node.region) {
+                case Node.WINDOW:
+                    window.remove(node);
+                    break;
+                case Node.PROBATION:
+                    probation.remove(node);
+                    break;
+                default:
+                    protectedOrder.remove(node);
+                    break;
+            }
+        }
+
+        @Override
+        Node victim(Object keyJustAdded) {
+            Node victim = probation.first();
+            Node candidate = probation.last();
+            if (victim == null) {
+                victim = protectedOrder.first() != null ? protectedOrder.first() : window.first();
+                return avoiding(victim, keyJustAdded);
+            } else if (victim == candidate) {
+                return avoiding(victim, keyJustAdded);
+            } else if (candidate.key.equals(keyJustAdded)) {
+                return victim;
+            } else if (victim.key.equals(keyJustAdded)) {
+                return candidate;
+            }
+            return sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+        }
+
+        @Override
+        void clear() {
+            window.clear();
+            probation.clear();
+            protectedOrder.clear();
+        }
+    }
+
+    /**
+     * Returns the given node, or its successor if it holds the key to avoid and has one.
+     *
+     * @param node the node, can be {@code null}
+     * @param keyToAvoid the key to avoid, can be {@code null}
+     * @return the node to use
+     */
+    static Node avoiding(Node node, Object keyToAvoid) {
+        if (node != null && node.next != null && node.next.key != null && node.key.equals(keyToAvoid)) {
+            return node.next;
+        }
+        return node;
+    }
+
+    /**
+     * The position of a key in the eviction order.
+     */
+    static final class Node {
+
+        static final int WINDOW = 0;
+        static final int PROBATION = 1;
+        static final int PROTECTED = 2;
+
+        final Object key;
+        Element element;
+        int region;
+        Node previous;
+        Node next;
+
+        Node(Object key, Element element) {
+            this.key = key;
+            this.element = element;
+        }
+    }
+
+    /**
+     * A doubly linked list of nodes, least recently used first, with a sentinel node holding a {@code null} key.
+     */
+    static final class AccessOrder {
+
+        private final Node sentinel = new Node(null, null);
+        private int size;
+
+        AccessOrder() {
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+        }
+
+        Node first() {
+            return sentinel.next == sentinel ? null : sentinel.next;
+        }
+
+        Node last() {
+            return sentinel.previous == sentinel ? null : sentinel.previous;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void addLast(Node node) {
+            node.previous = sentinel.previous;
+            node.next = sentinel;
+            sentinel.previous.next = node;
+            sentinel.previous = node;
+            size++;
+        }
+
+        void remove(Node node) {
+            node.previous.next = node.next;
+            node.next.previous = node.previous;
+            node.previous = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToLast(Node node) {
+            remove(node);
+            addLast(node);
+        }
+
+        void clear() {
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+            size = 0;
+        }
+    }
+
+    /**
+     * A write waiting to be applied to the eviction order.
+     */
+    private static final class WriteEvent {
+
+        private final Object key;
+        private final Element value;
+        private final boolean removal;
+
+        private WriteEvent(Object key, Element value, boolean removal) {
+            this.key = key;
+            this.value = value;
+            this.removal = removal;
+        }
+    }
+
+    /**
+     * A bounded ring buffer of reads, filled without locking by any number of threads and drained under the eviction
+     * lock.
+     */
+    private static final class ReadBuffer {
+
+        private final AtomicReferenceArray<Element> slots = new AtomicReferenceArray<Element>(READ_BUFFER_SIZE);
+        private final AtomicLong writes = new AtomicLong();
+        private volatile long reads;
+
+        /**
+         * Adds a read unless the buffer is full or contended.
+         *
+         * @param element the element read
+         * @return the number of reads pending, {@link #READ_BUFFER_SIZE} if the buffer is full, 0 if the read was dropped
+         */
+        private int offer(Element element) {
+            long head = reads;
+            long tail = writes.get();
+            long pending = tail - head;
+            if (pending >= READ_BUFFER_SIZE) {
+                return READ_BUFFER_SIZE;
+            }
+            if (writes.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) tail & READ_BUFFER_MASK, element);
+                return (int) pending + 1;
+            }
+            return 0;
+        }
+
+        private void drainTo(ConcurrentEvictionEngine engine) {
+            long head = reads;
+            long tail = writes.get();
+            for (; head < tail; head++) {
+                int index = (int) head & READ_BUFFER_MASK;
+                Element element = slots.get(index);
+                if (element == null) {
+                    // slot claimed but not published yet, resume from here next time
+                    break;
+                }
+                slots.lazySet(index, null);
+                engine.onRead(element);
+            }
+            reads = head;
+        }
+    }
+}
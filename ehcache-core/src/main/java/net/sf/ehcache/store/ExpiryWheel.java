@@ -0,0 +1,413 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hierarchical timing wheel of keys by expiration time, so that expiring a store costs in proportion to the number
+ * of keys due rather than to the size of the store.
+ * <p>
+ * Stores {@link #schedule(Object, long) schedule} a key when a mapping is installed with an earlier expiration time
+ * than the mapping it replaces, and {@link #cancel(Object) cancel} it when the mapping is removed or evicted. The wheel
+ * holds at most one entry per key, at the earliest expiration time it was scheduled for, so that it never grows larger
+ * than the store. When a key comes due, the store is asked for its current expiration time, and the key is expired if
+ * it is due, or rescheduled if its expiration moved on, as time to idle expirations do on every access.
+ * <p>
+ * Scheduling and cancelling only append to a lock free queue, which is applied to the wheel under its lock, by the
+ * thread expiring or maintaining it, or by the thread finding the queue over {@link #MAINTENANCE_THRESHOLD} if the
+ * lock is free. The wheel has four levels of 64 buckets, the first one ticking every {@code resolution} milliseconds
+ * and each level ticking 64 times slower than the previous one. Keys further away than the last level are parked in
+ * its farthest bucket and placed again when it is reached.
+ *
+ * @param <K> the key type
+ */
+public final class ExpiryWheel<K> {
+
+    /**
+     * Default resolution of the wheel, in milliseconds.
+     */
+    public static final long DEFAULT_RESOLUTION_MILLIS = 1000;
+
+    /**
+     * Number of scheduled or cancelled keys waiting to be applied to the wheel above which {@link #needsMaintenance()}
+     * is true.
+     */
+    public static final int MAINTENANCE_THRESHOLD = 4096;
+
+    private static final int BUCKET_BITS = 6;
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+    private static final int BUCKET_MASK = BUCKETS - 1;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (BUCKET_BITS * LEVELS);
+    private static final int DUE = -1;
+    private static final int UNLINKED = -2;
+
+    private final long resolution;
+    private final ConcurrentLinkedQueue<Entry<K>> staged = new ConcurrentLinkedQueue<Entry<K>>();
+    private final AtomicInteger stagedCount = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Entry<K>[][] buckets;
+    private final Map<K, Entry<K>> entries = new HashMap<K, Entry<K>>();
+    private final ArrayDeque<Entry<K>> due = new ArrayDeque<Entry<K>>();
+    private long currentTick;
+
+    /**
+     * Create a wheel with the default resolution.
+     *
+     * @param now the current time
+     */
+    public ExpiryWheel(long now) {
+        this(DEFAULT_RESOLUTION_MILLIS, now);
+    }
+
+    /**
+     * Create a wheel.
+     *
+     * @param resolution the duration of a tick of the first level, in milliseconds
+     * @param now the current time
+     */
+    @SuppressWarnings("unchecked")
+    public ExpiryWheel(long resolution, long now) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive: " + resolution);
+        }
+        this.resolution = resolution;
+        this.buckets = new Entry[LEVELS][BUCKETS];
+        this.currentTick = now / resolution;
+    }
+
+    /**
+     * The store the keys of a wheel belong to.
+     *
+     * @param <K> the key type
+     */
+    public interface Expirer<K> {
+
+        /**
+         * Gets the current expiration time of a key.
+         *
+         * @param key the key
+         * @return the expiration time, or {@link Long#MAX_VALUE} if the key is absent or never expires
+         */
+        long getExpirationTime(K key);
+
+        /**
+         * Expires a key found due, notifying listeners as appropriate.
+         *
+         * @param key the key
+         * @param now the current time
+         * @return true if the key was expired, false if it could not be right now
+         */
+        boolean expire(K key, long now);
+    }
+
+    /**
+     * Schedules a key, without blocking.
+     * <p>
+     * A key already in the wheel is only moved if the new expiration time is earlier.
+     *
+     * @param key the key
+     * @param expirationTime its expiration time, nothing is scheduled for {@link Long#MAX_VALUE}
+     */
+    public void schedule(K key, long expirationTime) {
+        if (expirationTime == Long.MAX_VALUE) {
+            return;
+        }
+        stage(new Entry<K>(key, expirationTime, false));
+    }
+
+    /**
+     * Removes a key from the wheel, without blocking.
+     *
+     * @param key the key
+     */
+    public void cancel(K key) {
+        stage(new Entry<K>(key, Long.MAX_VALUE, true));
+    }
+
+    /**
+     * Removes all keys from the wheel, without blocking.
+     */
+    public void clear() {
+        stage(new Entry<K>(null, Long.MAX_VALUE, true));
+    }
+
+    /**
+     * Whether enough keys were scheduled or cancelled since the wheel was last advanced to warrant a {@link #maintain}
+     * call.
+     *
+     * @return true if maintenance is needed
+     */
+    public boolean needsMaintenance() {
+        return stagedCount.get() >= MAINTENANCE_THRESHOLD;
+    }
+
+    /**
+     * Advances the wheel and expires the keys due, up to the given number.
+     *
+     * @param now the current time
+     * @param expirer the store the keys belong to
+     * @param limit the maximum number of keys to expire
+     * @return the number of keys expired
+     */
+    public int expire(long now, Expirer<K> expirer, int limit) {
+        lock.lock();
+        try {
+            return advance(now, expirer, limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Advances the wheel and expires the keys due, up to the given number, unless another thread is at it.
+     *
+     * @param now the current time
+     * @param expirer the store the keys belong to
+     * @param limit the maximum number of keys to expire
+     * @return the number of keys expired
+     */
+    public int tryExpire(long now, Expirer<K> expirer, int limit) {
+        if (lock.tryLock()) {
+            try {
+                return advance(now, expirer, limit);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Applies the keys scheduled and cancelled, and advances the wheel without expiring anything, unless another
+     * thread is at it. Keys found due are kept until the next call to an expire method.
+     *
+     * @param now the current time
+     */
+    public void maintain(long now) {
+        if (lock.tryLock()) {
+            try {
+                advance(now, null, 0);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of keys in the wheel, excluding the ones scheduled or cancelled since it was last advanced.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void stage(Entry<K> entry) {
+        staged.add(entry);
+        if (stagedCount.incrementAndGet() >= MAINTENANCE_THRESHOLD && !lock.isHeldByCurrentThread() && lock.tryLock()) {
+            try {
+                applyStaged();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void applyStaged() {
+        for (Entry<K> entry = staged.poll(); entry != null; entry = staged.poll()) {
+            stagedCount.decrementAndGet();
+            if (entry.key == null) {
+                for (Entry<K> existing : entries.values()) {
+                    unlink(existing);
+                }
+                entries.clear();
+                continue;
+            }
+            Entry<K> existing = entries.get(entry.key);
+            if (entry.cancellation) {
+                if (existing != null) {
+                    entries.remove(entry.key);
+                    unlink(existing);
+                }
+            } else if (existing == null) {
+                entries.put(entry.key, entry);
+                place(entry);
+            } else if (existing.level != DUE && entry.expirationTime < existing.expirationTime) {
+                unlink(existing);
+                existing.expirationTime = entry.expirationTime;
+                place(existing);
+            }
+        }
+    }
+
+    private int advance(long now, Expirer<K> expirer, int limit) {
+        applyStaged();
+        long nowTick = now / resolution;
+        while (currentTick < nowTick) {
+            collect(currentTick, now);
+            currentTick++;
+            cascade();
+        }
+        collect(currentTick, now);
+        return process(now, expirer, limit);
+    }
+
+    private int process(long now, Expirer<K> expirer, int limit) {
+        int expired = 0;
+        while (expired < limit) {
+            Entry<K> entry = due.poll();
+            if (entry == null) {
+                break;
+            } else if (entry.level != DUE) {
+                // cancelled while due
+                continue;
+            }
+            long expirationTime = expirer.getExpirationTime(entry.key);
+            if (expirationTime == Long.MAX_VALUE) {
+                drop(entry);
+            } else if (expirationTime > now) {
+                entry.expirationTime = expirationTime;
+                place(entry);
+            } else if (expirer.expire(entry.key, now)) {
+                drop(entry);
+                expired++;
+            } else {
+                entry.expirationTime = now + resolution;
+                place(entry);
+            }
+        }
+        return expired;
+    }
+
+    private void drop(Entry<K> entry) {
+        entry.level = UNLINKED;
+        entries.remove(entry.key, entry);
+    }
+
+    private void collect(long tick, long now) {
+        int index = (int) (tick & BUCKET_MASK);
+        Entry<K> entry = buckets[0][index];
+        buckets[0][index] = null;
+        while (entry != null) {
+            Entry<K> next = entry.next;
+            entry.prev = null;
+            entry.next = null;
+            if (entry.expirationTime <= now) {
+                entry.level = DUE;
+                due.add(entry);
+            } else {
+                place(entry);
+            }
+            entry = next;
+        }
+    }
+
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = BUCKET_BITS * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+            int index = (int) ((currentTick >>> shift) & BUCKET_MASK);
+            Entry<K> entry = buckets[level][index];
+            buckets[level][index] = null;
+            while (entry != null) {
+                Entry<K> next = entry.next;
+                entry.prev = null;
+                entry.next = null;
+                place(entry);
+                entry = next;
+            }
+        }
+    }
+
+    private void place(Entry<K> entry) {
+        long tick = Math.max(entry.expirationTime / resolution, currentTick);
+        long delta = tick - currentTick;
+        if (delta >= SPAN) {
+            tick = currentTick + SPAN - 1;
+            delta = SPAN - 1;
+        }
+        int level = 0;
+        while (delta >= (1L << (BUCKET_BITS * (level + 1)))) {
+            level++;
+        }
+        int index = (int) ((tick >>> (BUCKET_BITS * level)) & BUCKET_MASK);
+        Entry<K> head = buckets[level][index];
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        buckets[level][index] = entry;
+        entry.level = level;
+        entry.index = index;
+    }
+
+    /**
+     * Takes an entry out of its bucket, or marks it as cancelled if it is due.
+     */
+    private void unlink(Entry<K> entry) {
+        if (entry.level >= 0) {
+            if (entry.prev == null) {
+                buckets[entry.level][entry.index] = entry.next;
+            } else {
+                entry.prev.next = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+        }
+        entry.level = UNLINKED;
+    }
+
+    /**
+     * A scheduled key, or a cancellation waiting to be applied to the wheel.
+     *
+     * @param <K> the key type
+     */
+    private static final class Entry<K> {
+
+        private final K key;
+        private final boolean cancellation;
+        private long expirationTime;
+        private int level = UNLINKED;
+        private int index;
+        private Entry<K> prev;
+        private Entry<K> next;
+
+        private Entry(K key, long expirationTime, boolean cancellation) {
+            this.key = key;
+            this.expirationTime = expirationTime;
+            this.cancellation = cancellation;
+        }
+    }
+}
@@ -0,0 +1,509 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.attribute.AttributeExtractor;
+import net.sf.ehcache.search.expression.And;
+import net.sf.ehcache.search.expression.Between;
+import net.sf.ehcache.search.expression.Criteria;
+import net.sf.ehcache.search.expression.EqualTo;
+import net.sf.ehcache.search.expression.GreaterThan;
+import net.sf.ehcache.search.expression.GreaterThanOrEqual;
+import net.sf.ehcache.search.expression.InCollection;
+import net.sf.ehcache.search.expression.LessThan;
+import net.sf.ehcache.search.expression.LessThanOrEqual;
+import net.sf.ehcache.search.expression.Or;
+import net.sf.ehcache.transaction.SoftLockID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Search manager maintaining secondary indexes on the user defined search attributes of an on-heap cache.
+ * <p>
+ * Each attribute gets a hash index, answering {@link EqualTo} and {@link InCollection} criteria, and a sorted index
+ * answering {@link Between}, {@link GreaterThan}, {@link GreaterThanOrEqual}, {@link LessThan} and
+ * {@link LessThanOrEqual} criteria. {@link And} criteria intersect the keys found by their indexable children, {@link Or}
+ * criteria unite them when all children are indexable. Queries the indexes cannot answer are executed by scanning,
+ * as the {@link BruteForceSearchManager} does.
+ * <p>
+ * The indexes only narrow down the elements a query is evaluated against: the query criteria are always re-evaluated
+ * on the current element, so an index lagging behind the store never produces a wrong result. The indexes are updated
+ * by the backing map of the store, under the lock of the segment being mutated, see {@link ListeningConcurrentHashMap}.
+ *
+ * @see Searchable#isIndexed()
+ */
+public class IndexedSearchManager extends BruteForceSearchManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexedSearchManager.class);
+
+    private final Ehcache cache;
+    private final Map<String, AttributeIndex> indexes = new ConcurrentHashMap<String, AttributeIndex>();
+
+    /**
+     * Create an IndexedSearchManager
+     *
+     * @param cache the cache searched
+     */
+    public IndexedSearchManager(Ehcache cache) {
+        super(cache);
+        this.cache = cache;
+    }
+
+    /**
+     * Start indexing the user defined search attributes amongst the given ones.
+     *
+     * @param extractors the attribute extractors of the cache
+     */
+    void indexAttributes(Map<String, AttributeExtractor> extractors) {
+        Searchable searchable = getBruteForceSource().getSearchable();
+        for (String name : searchable.getUserDefinedSearchAttributes().keySet()) {
+            AttributeExtractor extractor = extractors.get(name);
+            if (extractor != null && !indexes.containsKey(name)) {
+                indexes.put(name, new AttributeIndex(name, extractor));
+            }
+        }
+    }
+
+    /**
+     * Index the element just installed in the store for the given key.
+     * <p>
+     * Must be called under the lock of the store segment holding the key.
+     *
+     * @param key the key
+     * @param stored the element, as stored
+     */
+    void index(Object key, Element stored) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        Element element = stored;
+        if (element.getObjectValue() instanceof SoftLockID) {
+            element = ((SoftLockID) element.getObjectValue()).getOldElement();
+        }
+        if (element == null) {
+            unindex(key);
+            return;
+        }
+        element = getBruteForceSource().transformForIndexing(element);
+        for (AttributeIndex index : indexes.values()) {
+            index.index(key, element);
+        }
+    }
+
+    /**
+     * Gets a listener keeping the indexes up to date with the mappings of a {@link ListeningConcurrentHashMap}.
+     *
+     * @return the listener
+     */
+    ListeningConcurrentHashMap.MappingListener indexer() {
+        return new ListeningConcurrentHashMap.MappingListener() {
+            @Override
+            public void installed(Object key, Element previous, Element value) {
+                index(key, value);
+            }
+
+            @Override
+            public void removed(Object key, Element value) {
+                unindex(key);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Must be called under the lock of the store segment holding the key.
+     */
+    @Override
+    public void remove(String cacheName, Object uniqueKey, int segmentId, boolean isRemoval) {
+        unindex(uniqueKey);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear(String cacheName, int segmentId) {
+        for (AttributeIndex index : indexes.values()) {
+            index.clear();
+        }
+    }
+
+    @Override
+    Iterable<Element> candidates(StoreQuery query) {
+        Set<Object> keys = keysFor(query.getCriteria());
+        return keys == null ? super.candidates(query) : elementsFor(keys);
+    }
+
+    @Override
+    List<Iterable<Element>> splits(StoreQuery query, int parallelism) {
+        Set<Object> keys = keysFor(query.getCriteria());
+        if (keys == null) {
+            return super.splits(query, parallelism);
+        }
+
+        List<Element> candidates = elementsFor(keys);
+        int size = Math.max(1, (candidates.size() + parallelism - 1) / parallelism);
+        List<Iterable<Element>> splits = new ArrayList<Iterable<Element>>(parallelism);
+        for (int from = 0; from < candidates.size(); from += size) {
+            splits.add(candidates.subList(from, Math.min(from + size, candidates.size())));
+        }
+        return splits;
+    }
+
+    private List<Element> elementsFor(Set<Object> keys) {
+        BruteForceSource source = getBruteForceSource();
+        List<Element> elements = new ArrayList<Element>(keys.size());
+        for (Object key : keys) {
+            Element element = source.element(key);
+            if (element != null) {
+                elements.add(element);
+            }
+        }
+        return elements;
+    }
+
+    private void unindex(Object key) {
+        for (AttributeIndex index : indexes.values()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Returns a superset of the keys of the elements matching the criteria, or null if the indexes cannot tell.
+     */
+    private Set<Object> keysFor(Criteria criteria) {
+        if (criteria instanceof And) {
+            return keysForAll(((And) criteria).getCriterion());
+        } else if (criteria instanceof Or) {
+            return keysForAny(((Or) criteria).getCriterion());
+        } else if (criteria instanceof EqualTo) {
+            EqualTo equalTo = (EqualTo) criteria;
+            AttributeIndex index = indexes.get(equalTo.getAttributeName());
+            return index == null ? null : index.equalTo(Collections.singleton(equalTo.getValue()));
+        } else if (criteria instanceof InCollection) {
+            InCollection in = (InCollection) criteria;
+            AttributeIndex index = indexes.get(in.getAttributeName());
+            return index == null ? null : index.equalTo(in.values());
+        } else if (criteria instanceof Between) {
+            Between between = (Between) criteria;
+            AttributeIndex index = indexes.get(between.getAttributeName());
+            return index == null ? null : index.range(between.getMin(), between.getMax());
+        } else {
+            return keysForBound(criteria);
+        }
+    }
+
+    private Set<Object> keysForBound(Criteria criteria) {
+        String name;
+        Object lower = null;
+        Object upper = null;
+        if (criteria instanceof GreaterThan) {
+            name = ((GreaterThan) criteria).getAttributeName();
+            lower = ((GreaterThan) criteria).getComparableValue();
+        } else if (criteria instanceof GreaterThanOrEqual) {
+            name = ((GreaterThanOrEqual) criteria).getAttributeName();
+            lower = ((GreaterThanOrEqual) criteria).getComparableValue();
+        } else if (criteria instanceof LessThan) {
+            name = ((LessThan) criteria).getAttributeName();
+            upper = ((LessThan) criteria).getComparableValue();
+        } else if (criteria instanceof LessThanOrEqual) {
+            name = ((LessThanOrEqual) criteria).getAttributeName();
+            upper = ((LessThanOrEqual) criteria).getComparableValue();
+        } else {
+            return null;
+        }
+        AttributeIndex index = indexes.get(name);
+        return index == null ? null : index.range(lower, upper);
+    }
+
+    private Set<Object> keysForAll(Criteria[] criterion) {
+        List<Set<Object>> found = new ArrayList<Set<Object>>(criterion.length);
+        Set<Object> smallest = null;
+        for (Criteria c : criterion) {
+            Set<Object> keys = keysFor(c);
+            if (keys != null) {
+                found.add(keys);
+                if (smallest == null || keys.size() < smallest.size()) {
+                    smallest = keys;
+                }
+            }
+        }
+        if (smallest == null) {
+            return null;
+        }
+        found.remove(smallest);
+        for (Set<Object> keys : found) {
+            smallest.retainAll(keys);
+        }
+        return smallest;
+    }
+
+    private Set<Object> keysForAny(Criteria[] criterion) {
+        Set<Object> union = new HashSet<Object>();
+        for (Criteria c : criterion) {
+            Set<Object> keys = keysFor(c);
+            if (keys == null) {
+                return null;
+            }
+            union.addAll(keys);
+        }
+        return union;
+    }
+
+    /**
+     * The hash and sorted indexes of one attribute.
+     * <p>
+     * Updates for a given key are serialized by the store segment lock, updates of the key set of a given value by a
+     * striped lock. Strings are indexed case insensitively, as the search criteria compare them.
+     */
+    private final class AttributeIndex {
+
+        private static final int STRIPES = 64;
+
+        private final String name;
+        private final AttributeExtractor extractor;
+        private final ConcurrentMap<Object, Object> values = new ConcurrentHashMap<Object, Object>();
+        private final ConcurrentMap<Object, Set<Object>> hashed = new ConcurrentHashMap<Object, Set<Object>>();
+        private final ConcurrentNavigableMap<Object, Set<Object>> sorted = new ConcurrentSkipListMap<Object, Set<Object>>();
+        private final Object[] stripes = new Object[STRIPES];
+        private volatile Class<?> valueClass;
+        private volatile boolean usable = true;
+
+        private AttributeIndex(String name, AttributeExtractor extractor) {
+            this.name = name;
+            this.extractor = extractor;
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new Object();
+            }
+        }
+
+        private void index(Object key, Element element) {
+            if (!usable) {
+                return;
+            }
+            Object value;
+            try {
+                value = extractor.attributeFor(element, name);
+            } catch (RuntimeException e) {
+                disable("its extractor failed on key " + key + ": " + e);
+                return;
+            }
+
+            Object old = value == null ? values.remove(key) : values.put(key, value);
+            if (old != null) {
+                if (old.equals(value)) {
+                    return;
+                }
+                unlink(key, old);
+            }
+            if (value != null && accepts(value)) {
+                link(key, value);
+            }
+        }
+
+        private void remove(Object key) {
+            if (usable) {
+                Object old = values.remove(key);
+                if (old != null) {
+                    unlink(key, old);
+                }
+            }
+        }
+
+        private void clear() {
+            values.clear();
+            hashed.clear();
+            sorted.clear();
+        }
+
+        private Set<Object> equalTo(Collection<?> queried) {
+            if (!usable || !hasType(queried)) {
+                return null;
+            }
+            Set<Object> keys = new HashSet<Object>();
+            for (Object value : queried) {
+                Set<Object> found = hashed.get(hashKey(value));
+                if (found != null) {
+                    keys.addAll(found);
+                }
+            }
+            return keys;
+        }
+
+        private Set<Object> range(Object lower, Object upper) {
+            List<Object> bounds = new ArrayList<Object>(2);
+            if (lower != null) {
+                bounds.add(lower);
+            }
+            if (upper != null) {
+                bounds.add(upper);
+            }
+            if (!usable || !hasType(bounds)) {
+                return null;
+            }
+
+            ConcurrentNavigableMap<Object, Set<Object>> range;
+            if (lower == null) {
+                range = sorted.headMap(sortKey(upper), true);
+            } else if (upper == null) {
+                range = sorted.tailMap(sortKey(lower), true);
+            } else if (compare(sortKey(lower), sortKey(upper)) > 0) {
+                return new HashSet<Object>();
+            } else {
+                range = sorted.subMap(sortKey(lower), true, sortKey(upper), true);
+            }
+            Set<Object> keys = new HashSet<Object>();
+            for (Set<Object> found : range.values()) {
+                keys.addAll(found);
+            }
+            return keys;
+        }
+
+        /**
+         * Values of several classes cannot be compared, the index then falls back to scanning, which reports the type
+         * mismatch the way unindexed searches do.
+         */
+        private boolean hasType(Collection<?> queried) {
+            Class<?> indexed = valueClass;
+            if (indexed == null) {
+                return true;
+            }
+            for (Object value : queried) {
+                if (classOf(value) != indexed) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean accepts(Object value) {
+            Class<?> type = classOf(value);
+            if (valueClass == null) {
+                synchronized (this) {
+                    if (valueClass == null) {
+                        valueClass = type;
+                    }
+                }
+            }
+            if (valueClass != type) {
+                disable("it holds both " + valueClass.getName() + " and " + type.getName() + " values");
+                return false;
+            }
+            return true;
+        }
+
+        private void disable(String reason) {
+            if (usable) {
+                usable = false;
+                LOG.warn("Search attribute {} of cache {} is no longer indexed because {}", new Object[] {name, cache.getName(), reason});
+                clear();
+            }
+        }
+
+        private void link(Object key, Object value) {
+            add(hashed, hashKey(value), key);
+            add(sorted, sortKey(value), key);
+        }
+
+        private void unlink(Object key, Object value) {
+            delete(hashed, hashKey(value), key);
+            delete(sorted, sortKey(value), key);
+        }
+
+        private void add(ConcurrentMap<Object, Set<Object>> map, Object value, Object key) {
+            synchronized (stripeFor(value)) {
+                Set<Object> keys = map.get(value);
+                if (keys == null) {
+                    keys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+                    map.put(value, keys);
+                }
+                keys.add(key);
+            }
+        }
+
+        private void delete(ConcurrentMap<Object, Set<Object>> map, Object value, Object key) {
+            synchronized (stripeFor(value)) {
+                Set<Object> keys = map.get(value);
+                if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                    map.remove(value);
+                }
+            }
+        }
+
+        private Object stripeFor(Object value) {
+            int h = value.hashCode();
+            h ^= (h >>> 16);
+            return stripes[h & (STRIPES - 1)];
+        }
+    }
+
+    private static Class<?> classOf(Object value) {
+        return value instanceof Enum ? ((Enum<?>) value).getDeclaringClass() : value.getClass();
+    }
+
+    /**
+     * Equality of string attributes ignores case, as {@link String#equalsIgnoreCase(String)} does.
+     */
+    private static Object hashKey(Object value) {
+        if (value instanceof String) {
+            String s = (String) value;
+            char[] folded = new char[s.length()];
+            for (int i = 0; i < folded.length; i++) {
+                folded[i] = Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+            }
+            return new String(folded);
+        }
+        return value;
+    }
+
+    /**
+     * String attributes are ordered character by character on their lower case form, as the comparison criteria do.
+     */
+    private static Object sortKey(Object value) {
+        if (value instanceof String) {
+            String s = (String) value;
+            char[] lower = new char[s.length()];
+            for (int i = 0; i < lower.length; i++) {
+                lower[i] = Character.toLowerCase(s.charAt(i));
+            }
+            return new String(lower);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+}
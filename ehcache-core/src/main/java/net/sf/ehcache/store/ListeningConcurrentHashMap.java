@@ -0,0 +1,175 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.RegisteredEventListeners;
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.store.chm.SelectableConcurrentHashMap;
+
+/**
+ * MemoryStore backing map reporting its mappings to a {@link MappingListener}.
+ * <p>
+ * Every mapping installed or removed, evictions included, is reported while the segment lock is held, so that the
+ * notifications for a given key happen in the order of the store updates. This keeps the indexes of an
+ * {@link IndexedSearchManager}, the access order of a {@link ConcurrentEvictionEngine} and the expiry wheel of a
+ * {@link MemoryStore} up to date.
+ */
+class ListeningConcurrentHashMap extends SelectableConcurrentHashMap {
+
+    private final MappingListener listener;
+
+    /**
+     * Create a listening backing map.
+     *
+     * @param listener the listener to report mappings to
+     * @param poolAccessor on-heap pool accessor
+     * @param concurrency map concurrency
+     * @param maximumSize maximum store capacity
+     * @param eventListener event listener (or {@code null} for no notifications)
+     */
+    ListeningConcurrentHashMap(MappingListener listener, PoolAccessor poolAccessor, int concurrency,
+            long maximumSize, RegisteredEventListeners eventListener) {
+        super(poolAccessor, concurrency, maximumSize, eventListener);
+        this.listener = listener;
+    }
+
+    /**
+     * Create a listening backing map.
+     *
+     * @param listener the listener to report mappings to
+     * @param poolAccessor on-heap pool accessor
+     * @param initialCapacity initial store capacity
+     * @param loadFactor map load factor
+     * @param concurrency map concurrency
+     * @param maximumSize maximum store capacity
+     * @param eventListener event listener (or {@code null} for no notifications)
+     */
+    ListeningConcurrentHashMap(MappingListener listener, PoolAccessor poolAccessor, int initialCapacity,
+            float loadFactor, int concurrency, long maximumSize, RegisteredEventListeners eventListener) {
+        super(poolAccessor, initialCapacity, loadFactor, concurrency, maximumSize, eventListener);
+        this.listener = listener;
+    }
+
+    @Override
+    protected Segment createSegment(int initialCapacity, float lf) {
+        return new ListeningSegment(initialCapacity, lf);
+    }
+
+    /**
+     * Receives the mappings of a listening backing map, under the lock of the segment being mutated.
+     * <p>
+     * Implementations must be quick and must not call back into the map.
+     */
+    interface MappingListener {
+
+        /**
+         * Called once a mapping was installed or updated.
+         *
+         * @param key the key
+         * @param previous the element replaced, or {@code null} if there was none
+         * @param value the element, as stored
+         */
+        void installed(Object key, Element previous, Element value);
+
+        /**
+         * Called before a mapping is removed.
+         *
+         * @param key the key
+         * @param value the element being removed
+         */
+        void removed(Object key, Element value);
+    }
+
+    /**
+     * Combines two listeners, either of which may be {@code null}.
+     *
+     * @param first the first listener
+     * @param second the second listener
+     * @return a listener notifying both, or {@code null} if both are {@code null}
+     */
+    static MappingListener combine(final MappingListener first, final MappingListener second) {
+        if (first == null) {
+            return second;
+        } else if (second == null) {
+            return first;
+        }
+        return new MappingListener() {
+            @Override
+            public void installed(Object key, Element previous, Element value) {
+                first.installed(key, previous, value);
+                second.installed(key, previous, value);
+            }
+
+            @Override
+            public void removed(Object key, Element value) {
+                first.removed(key, value);
+                second.removed(key, value);
+            }
+        };
+    }
+
+    /**
+     * Segment reporting its mappings to the listener.
+     */
+    private final class ListeningSegment extends Segment {
+
+        private ListeningSegment(int initialCapacity, float lf) {
+            super(initialCapacity, lf);
+        }
+
+        @Override
+        protected void preRemove(HashEntry e) {
+            listener.removed(e.key, e.value);
+        }
+
+        @Override
+        protected void postInstall(Object key, Element oldValue, Element value) {
+            listener.installed(key, oldValue, value);
+        }
+    }
+
+    /**
+     * Factory of listening backing maps.
+     */
+    static class Factory implements MemoryStore.BackingFactory {
+
+        private final MappingListener listener;
+
+        /**
+         * Create a factory of backing maps reporting to the given listener.
+         *
+         * @param listener the listener
+         */
+        Factory(MappingListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public SelectableConcurrentHashMap newBackingMap(PoolAccessor poolAccessor, int concurrency,
+                int maximumCapacity, RegisteredEventListeners eventListener) {
+            return new ListeningConcurrentHashMap(listener, poolAccessor, concurrency, maximumCapacity, eventListener);
+        }
+
+        @Override
+        public SelectableConcurrentHashMap newBackingMap(PoolAccessor poolAccessor, int initialCapacity,
+                float loadFactor, int concurrency, int maximumCapacity, RegisteredEventListeners eventListener) {
+            return new ListeningConcurrentHashMap(listener, poolAccessor, initialCapacity, loadFactor,
+                    concurrency, maximumCapacity, eventListener);
+        }
+    }
+}
@@ -35,6 +35,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
 import net.sf.ehcache.CacheOperationOutcomes.EvictionOutcome;
 import net.sf.ehcache.statistics.StatisticBuilder;
 import net.sf.ehcache.store.StoreOperationOutcomes.GetOutcome;
@@ -87,6 +89,11 @@ public class LruMemoryStore extends AbstractStore {
 
     private final CopyStrategyHandler copyStrategyHandler;
 
+    /**
+     * Guards the map. A j.u.c. lock rather than the object monitor, so that virtual threads waiting on it, or spooling
+     * to disk while holding it, do not pin their carrier thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
 
     private final OperationObserver<GetOutcome> getObserver = StatisticBuilder.operation(GetOutcome.class).named("get").of(this)
             .tag("local-heap").build();
@@ -153,22 +160,27 @@ public class LruMemoryStore extends AbstractStore {
         return putInternal(element, writerManager);
     }
 
-    private synchronized boolean putInternal(Element element, CacheWriterManager writerManager) throws CacheException {
-        putObserver.begin();
-        boolean newPut = true;
-        if (element != null) {
-            newPut = map.put(element.getObjectKey(), element) == null;
-            if (writerManager != null) {
-                writerManager.put(element);
+    private boolean putInternal(Element element, CacheWriterManager writerManager) throws CacheException {
+        lock.lock();
+        try {
+            putObserver.begin();
+            boolean newPut = true;
+            if (element != null) {
+                newPut = map.put(element.getObjectKey(), element) == null;
+                if (writerManager != null) {
+                    writerManager.put(element);
+                }
+                doPut(element);
             }
-            doPut(element);
-        }
-        if (newPut) {
-            putObserver.end(PutOutcome.ADDED);
-        } else {
-            putObserver.end(PutOutcome.UPDATED);
+            if (newPut) {
+                putObserver.end(PutOutcome.ADDED);
+            } else {
+                putObserver.end(PutOutcome.UPDATED);
+            }
+            return newPut;
+        } finally {
+            lock.unlock();
         }
-        return newPut;
     }
 
     /**
@@ -188,15 +200,20 @@ public class LruMemoryStore extends AbstractStore {
      * @param key the cache key
      * @return the element, or null if there was no match for the key
      */
-    public final synchronized Element get(Object key) {
-        getObserver.begin();
-        Element e = (Element) map.get(key);
-        if (e == null) {
-            getObserver.end(GetOutcome.MISS);
-            return null;
-        } else {
-            getObserver.end(GetOutcome.HIT);
-            return e;
+    public final Element get(Object key) {
+        lock.lock();
+        try {
+            getObserver.begin();
+            Element e = (Element) map.get(key);
+            if (e == null) {
+                getObserver.end(GetOutcome.MISS);
+                return null;
+            } else {
+                getObserver.end(GetOutcome.HIT);
+                return e;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -206,8 +223,13 @@ public class LruMemoryStore extends AbstractStore {
      * @param key the cache key
      * @return the element, or null if there was no match for the key
      */
-    public final synchronized Element getQuiet(Object key) {
-        return (Element) map.get(key);
+    public final Element getQuiet(Object key) {
+        lock.lock();
+        try {
+            return (Element) map.get(key);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -227,26 +249,36 @@ public class LruMemoryStore extends AbstractStore {
         return removeInternal(key, writerManager);
     }
 
-    private synchronized Element removeInternal(Object key, CacheWriterManager writerManager) throws CacheException {
-        // remove single item.
-        removeObserver.begin();
-        Element element = (Element) map.remove(key);
-        if (writerManager != null) {
-            writerManager.remove(new CacheEntry(key, element));
-        }
-        removeObserver.end(RemoveOutcome.SUCCESS);
-        if (element != null) {
-            return element;
-        } else {
-            return null;
+    private Element removeInternal(Object key, CacheWriterManager writerManager) throws CacheException {
+        lock.lock();
+        try {
+            // remove single item.
+            removeObserver.begin();
+            Element element = (Element) map.remove(key);
+            if (writerManager != null) {
+                writerManager.remove(new CacheEntry(key, element));
+            }
+            removeObserver.end(RemoveOutcome.SUCCESS);
+            if (element != null) {
+                return element;
+            } else {
+                return null;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
      * Remove all of the elements from the store.
      */
-    public final synchronized void removeAll() throws CacheException {
-        clear();
+    public final void removeAll() throws CacheException {
+        lock.lock();
+        try {
+            clear();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -259,15 +291,20 @@ public class LruMemoryStore extends AbstractStore {
     /**
      * Prepares for shutdown.
      */
-    public final synchronized void dispose() {
-        if (status.equals(Status.STATUS_SHUTDOWN)) {
-            return;
-        }
-        status = Status.STATUS_SHUTDOWN;
-        flush();
+    public final void dispose() {
+        lock.lock();
+        try {
+            if (status.equals(Status.STATUS_SHUTDOWN)) {
+                return;
+            }
+            status = Status.STATUS_SHUTDOWN;
+            flush();
 
-        //release reference to cache
-        cache = null;
+            //release reference to cache
+            cache = null;
+        } finally {
+            lock.unlock();
+        }
     }
 
 
@@ -320,7 +357,7 @@ public class LruMemoryStore extends AbstractStore {
      * Puts the element in the DiskStore.
      * Should only be called if isOverflowToDisk is true
      * <p>
-     * Relies on being called from a synchronized method
+     * Relies on being called with the store lock held
      *
      * @param element The Element
      */
@@ -345,8 +382,13 @@ public class LruMemoryStore extends AbstractStore {
      *
      * @return An Object[]
      */
-    public final synchronized List getKeys() {
-        return new ArrayList(map.keySet());
+    public final List getKeys() {
+        lock.lock();
+        try {
+            return new ArrayList(map.keySet());
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -385,11 +427,20 @@ public class LruMemoryStore extends AbstractStore {
      * <p>
      * Warning: This method can be very expensive to run. Allow approximately 1 second
      * per 1MB of entries. Running this method could create liveness problems
-     * because the object lock is held for a long period
+     * because the store lock is held for a long period
      *
      * @return the size, in bytes
      */
-    public final synchronized long getSizeInBytes() throws CacheException {
+    public final long getSizeInBytes() throws CacheException {
+        lock.lock();
+        try {
+            return calculateSizeInBytes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long calculateSizeInBytes() {
         SizeOfEngine defaultSizeOfEngine = SizeOfEngineLoader.newSizeOfEngine(
             SizeOfPolicyConfiguration.resolveMaxDepth(cache),
             SizeOfPolicyConfiguration.resolveBehavior(cache)
@@ -557,7 +608,7 @@ public class LruMemoryStore extends AbstractStore {
         }
 
         /**
-         * Relies on being called from a synchronized method
+         * Relies on being called with the store lock held
          *
          * @param element
          * @return true if the LRU element should be removed
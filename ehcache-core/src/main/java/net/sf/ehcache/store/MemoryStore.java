@@ -36,6 +36,8 @@ import net.sf.ehcache.pool.PoolParticipant;
 import net.sf.ehcache.pool.Size;
 import net.sf.ehcache.pool.SizeOfEngine;
 import net.sf.ehcache.pool.SizeOfEngineLoader;
+import net.sf.ehcache.pool.impl.AbstractPoolAccessor;
+import net.sf.ehcache.pool.impl.SamplingSizeOfEngine;
 import net.sf.ehcache.pool.impl.UnboundedPool;
 import net.sf.ehcache.search.Attribute;
 import net.sf.ehcache.search.attribute.AttributeExtractor;
@@ -57,6 +59,7 @@ import org.terracotta.statistics.derived.OperationResultFilter;
 import org.terracotta.statistics.observer.OperationObserver;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -95,6 +98,16 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
 
     private static final CopyStrategyHandler NO_COPY_STRATEGY_HANDLER = new CopyStrategyHandler(false, false, null, null);
 
+    /**
+     * Per-thread buffer the eviction sample is taken into, so that evicting puts do not allocate for sampling.
+     */
+    private static final ThreadLocal<Element[]> EVICTION_SAMPLE = new ThreadLocal<Element[]>() {
+        @Override
+        protected Element[] initialValue() {
+            return new Element[AbstractPolicy.DEFAULT_SAMPLE_SIZE];
+        }
+    };
+
     /**
      * Eviction outcome observer
      */
@@ -133,6 +146,18 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      */
     private volatile Policy policy;
 
+    /**
+     * The engine keeping the exact eviction order, {@code null} when the policy samples the store
+     */
+    private volatile ConcurrentEvictionEngine evictionEngine;
+
+    /**
+     * The keys by expiration time, {@code null} when expiring the store means scanning it
+     */
+    private final ExpiryWheel<Object> expiryWheel;
+
+    private final ExpiryWheel.Expirer<Object> expirer = new Expirer();
+
     /**
      * The pool accessor
      */
@@ -147,11 +172,28 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      * @param searchManager the search manager
      */
     protected MemoryStore(Ehcache cache, Pool pool, BackingFactory factory, final SearchManager searchManager) {
+        this(cache, pool, factory, searchManager, null, null);
+    }
+
+    /**
+     * Constructs things that all MemoryStores have in common.
+     *
+     * @param cache the cache
+     * @param pool the pool tracking the on-heap usage
+     * @param factory the factory of the backing map, reporting to the eviction engine and expiry wheel if there are any
+     * @param searchManager the search manager
+     * @param evictionEngine the engine keeping the exact eviction order, or {@code null} to sample the store
+     * @param expiryWheel the wheel the keys are scheduled in by expiration time, or {@code null} to scan the store
+     */
+    MemoryStore(Ehcache cache, Pool pool, BackingFactory factory, final SearchManager searchManager,
+            ConcurrentEvictionEngine evictionEngine, ExpiryWheel<Object> expiryWheel) {
         super(searchManager, cache.getName());
         status = Status.STATUS_UNINITIALISED;
         this.cache = cache;
         this.maximumSize = (int) cache.getCacheConfiguration().getMaxEntriesLocalHeap();
         this.policy = determineEvictionPolicy(cache);
+        this.evictionEngine = evictionEngine;
+        this.expiryWheel = expiryWheel;
         if (pool instanceof UnboundedPool) {
             this.poolAccessor = pool.createPoolAccessor(null, null);
         } else {
@@ -197,7 +239,7 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         }
     }
 
-    private boolean determineStorePinned(CacheConfiguration cacheConfiguration) {
+    private static boolean determineStorePinned(CacheConfiguration cacheConfiguration) {
         PinningConfiguration pinningConfiguration = cacheConfiguration.getPinningConfiguration();
         if (pinningConfiguration == null) {
             return false;
@@ -237,8 +279,25 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      */
     public static Store create(final Ehcache cache, Pool pool) {
         CacheConfiguration cacheConfiguration = cache.getCacheConfiguration();
-        final BruteForceSearchManager searchManager = new BruteForceSearchManager(cache);
-        MemoryStore memoryStore = new MemoryStore(cache, pool, new BasicBackingFactory(), searchManager);
+        final BruteForceSearchManager searchManager;
+        ListeningConcurrentHashMap.MappingListener listener = null;
+        if (cacheConfiguration.isSearchable() && cacheConfiguration.getSearchable().isIndexed()) {
+            IndexedSearchManager indexedSearchManager = new IndexedSearchManager(cache);
+            searchManager = indexedSearchManager;
+            listener = indexedSearchManager.indexer();
+        } else {
+            searchManager = new BruteForceSearchManager(cache);
+        }
+        ConcurrentEvictionEngine evictionEngine = null;
+        if (!determineStorePinned(cacheConfiguration)) {
+            evictionEngine = ConcurrentEvictionEngine.forPolicy(cacheConfiguration.getMemoryStoreEvictionPolicy(),
+                    cacheConfiguration.getMaxEntriesLocalHeap());
+            listener = ListeningConcurrentHashMap.combine(listener, evictionEngine);
+        }
+        ExpiryWheel<Object> expiryWheel = new ExpiryWheel<Object>(System.currentTimeMillis());
+        listener = ListeningConcurrentHashMap.combine(listener, expiryScheduler(expiryWheel));
+        final BackingFactory factory = new ListeningConcurrentHashMap.Factory(listener);
+        MemoryStore memoryStore = new MemoryStore(cache, pool, factory, searchManager, evictionEngine, expiryWheel);
         cacheConfiguration.addConfigurationListener(memoryStore);
         searchManager.setBruteForceSource(createBruteForceSource(memoryStore, cache.getCacheConfiguration()));
         return memoryStore;
@@ -347,6 +406,10 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
                 return null;
             } else {
                 getObserver.end(GetOutcome.HIT);
+                ConcurrentEvictionEngine engine = evictionEngine;
+                if (engine != null) {
+                    engine.recordRead(e);
+                }
                 return e;
             }
         }
@@ -413,12 +476,41 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         return false;
     }
 
+    /**
+     * Gets a listener scheduling keys in the expiry wheel whenever their expiration time moves backwards, and
+     * cancelling them when their mapping is removed or evicted.
+     *
+     * @param expiryWheel the wheel
+     * @return the listener
+     */
+    private static ListeningConcurrentHashMap.MappingListener expiryScheduler(final ExpiryWheel<Object> expiryWheel) {
+        return new ListeningConcurrentHashMap.MappingListener() {
+            @Override
+            public void installed(Object key, Element previous, Element value) {
+                long expirationTime = value.getExpirationTime();
+                if (previous == null || previous.getExpirationTime() > expirationTime) {
+                    expiryWheel.schedule(key, expirationTime);
+                }
+            }
+
+            @Override
+            public void removed(Object key, Element value) {
+                expiryWheel.cancel(key);
+            }
+        };
+    }
+
     /**
      * Expire all elements.
      * <p>
-     * This is a default implementation which does nothing. Expiration on demand is only implemented for disk stores.
+     * Stores created through {@link #create(Ehcache, Pool)} only visit the keys due in their expiry wheel, others scan
+     * all their keys.
      */
     public void expireElements() {
+        if (expiryWheel != null) {
+            expiryWheel.expire(System.currentTimeMillis(), expirer, Integer.MAX_VALUE);
+            return;
+        }
         for (Object key : keySet()) {
             final Element element = expireElement(key);
             if (element != null) {
@@ -440,17 +532,19 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
 
     /**
      * Chooses the Policy from the cache configuration
+     * <p>
+     * The exact policies map to their sampled counterparts: the order itself is kept by the {@link ConcurrentEvictionEngine}.
      * @param cache the cache
      * @return the chosen eviction policy
      */
     static Policy determineEvictionPolicy(Ehcache cache) {
         MemoryStoreEvictionPolicy policySelection = cache.getCacheConfiguration().getMemoryStoreEvictionPolicy();
 
-        if (policySelection.equals(MemoryStoreEvictionPolicy.LRU)) {
+        if (policySelection.equals(MemoryStoreEvictionPolicy.LRU) || policySelection.equals(MemoryStoreEvictionPolicy.EXACT_LRU)) {
             return new LruPolicy();
         } else if (policySelection.equals(MemoryStoreEvictionPolicy.FIFO)) {
             return new FifoPolicy();
-        } else if (policySelection.equals(MemoryStoreEvictionPolicy.LFU)) {
+        } else if (policySelection.equals(MemoryStoreEvictionPolicy.LFU) || policySelection.equals(MemoryStoreEvictionPolicy.TINY_LFU)) {
             return new LfuPolicy();
         } else if (policySelection.equals(MemoryStoreEvictionPolicy.CLOCK)) {
             return null;
@@ -587,6 +681,9 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      * @param elementJustAdded the element added by the action calling this check
      */
     private void checkCapacity(final Element elementJustAdded) {
+        if (expiryWheel != null && expiryWheel.needsMaintenance()) {
+            expiryWheel.maintain(System.currentTimeMillis());
+        }
         if (maximumSize > 0 && !isClockEviction()) {
             int evict = Math.min(map.quickSize() - maximumSize, MAX_EVICTION_RATIO);
             for (int i = 0; i < evict; i++) {
@@ -603,6 +700,11 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      */
     private boolean removeElementChosenByEvictionPolicy(final Element elementJustAdded) {
 
+        // expired elements go first, if another thread is not already expiring them
+        if (expiryWheel != null && expiryWheel.tryExpire(System.currentTimeMillis(), expirer, 1) > 0) {
+            return true;
+        }
+
         if (policy == null) {
             return map.evict();
         }
@@ -634,10 +736,26 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      * @return the element chosen as candidate for eviction
      */
     private Element findEvictionCandidate(final Element elementJustAdded) {
+        ConcurrentEvictionEngine engine = evictionEngine;
+        if (engine != null) {
+            // this can return null. Let the cache get bigger by one.
+            return engine.selectVictim(elementJustAdded);
+        }
         Object objectKey = elementJustAdded != null ? elementJustAdded.getObjectKey() : null;
+        Policy currentPolicy = policy;
+        if (currentPolicy instanceof AbstractPolicy) {
+            Element[] buffer = EVICTION_SAMPLE.get();
+            int sampled = map.getRandomValues(buffer, AbstractPolicy.calculateSampleSize(map.quickSize()), objectKey);
+            try {
+                // this can return null. Let the cache get bigger by one.
+                return ((AbstractPolicy) currentPolicy).selectedBasedOnPolicy(buffer, sampled, elementJustAdded);
+            } finally {
+                Arrays.fill(buffer, 0, sampled, null);
+            }
+        }
         Element[] elements = sampleElements(objectKey);
         // this can return null. Let the cache get bigger by one.
-        return policy.selectedBasedOnPolicy(elements, elementJustAdded);
+        return currentPolicy.selectedBasedOnPolicy(elements, elementJustAdded);
     }
 
     /**
@@ -676,14 +794,32 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      * {@inheritDoc}
      */
     public void timeToIdleChanged(long oldTti, long newTti) {
-        // no-op
+        rescheduleExpiry();
     }
 
     /**
      * {@inheritDoc}
      */
     public void timeToLiveChanged(long oldTtl, long newTtl) {
-        // no-op
+        rescheduleExpiry();
+    }
+
+    /**
+     * Schedules all keys again, as elements using the cache default lifespan may now expire earlier than scheduled.
+     */
+    private void rescheduleExpiry() {
+        if (expiryWheel == null) {
+            return;
+        }
+        CacheConfiguration configuration = cache.getCacheConfiguration();
+        for (Object key : map.keySet()) {
+            Element element = map.get(key);
+            if (element != null) {
+                // refreshes the lifespan of elements using the cache defaults
+                element.isExpired(configuration);
+                expiryWheel.schedule(key, element.getExpirationTime());
+            }
+        }
     }
 
     /**
@@ -785,6 +921,38 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         return getSize();
     }
 
+    /**
+     * Return the mean time taken to size an element put into this store, when its SizeOf engine estimates sizes.
+     *
+     * @return the mean sizing time in nanoseconds, 0 if sizes are not estimated
+     */
+    @Statistic(name = "sizeof-time", tags = "local-heap")
+    public long getAverageSizeOfTime() {
+        SamplingSizeOfEngine engine = getSamplingSizeOfEngine();
+        return engine == null ? 0 : engine.getAverageSizingTime();
+    }
+
+    /**
+     * Return the mean error of the sizes estimated for elements put into this store.
+     *
+     * @return the mean estimation error in percent, 0 if sizes are not estimated
+     */
+    @Statistic(name = "sizeof-error", tags = "local-heap")
+    public double getAverageSizeOfError() {
+        SamplingSizeOfEngine engine = getSamplingSizeOfEngine();
+        return engine == null ? 0 : engine.getAverageEstimationError();
+    }
+
+    private SamplingSizeOfEngine getSamplingSizeOfEngine() {
+        if (poolAccessor instanceof AbstractPoolAccessor) {
+            SizeOfEngine engine = ((AbstractPoolAccessor) poolAccessor).getSizeOfEngine();
+            if (engine instanceof SamplingSizeOfEngine) {
+                return (SamplingSizeOfEngine) engine;
+            }
+        }
+        return null;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -849,6 +1017,11 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
      */
     public void setInMemoryEvictionPolicy(Policy policy) {
         this.policy = policy;
+        ConcurrentEvictionEngine engine = evictionEngine;
+        if (engine != null) {
+            evictionEngine = null;
+            engine.disable();
+        }
     }
 
     @Override
@@ -860,6 +1033,9 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
             attrs.add(new Attribute(name));
         }
         ((BruteForceSearchManager)searchManager).addSearchAttributes(attrs);
+        if (searchManager instanceof IndexedSearchManager) {
+            ((IndexedSearchManager) searchManager).indexAttributes(extractors);
+        }
     }
 
     /**
@@ -1026,6 +1202,15 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         return map.values();
     }
 
+    /**
+     * Get the elements in this store, split by segment of the backing map
+     *
+     * @return the elements of each segment
+     */
+    List<Iterable<Element>> segmentElementSets() {
+        return map.segmentValues();
+    }
+
     /**
      * LockProvider implementation that uses the segment locks.
      */
@@ -1098,6 +1283,33 @@ public class MemoryStore extends AbstractStore implements CacheConfigurationList
         }
     }
 
+    /**
+     * Expires the keys of the expiry wheel found due.
+     */
+    private final class Expirer implements ExpiryWheel.Expirer<Object> {
+
+        @Override
+        public long getExpirationTime(Object key) {
+            Element element = map.get(key);
+            if (element == null) {
+                return Long.MAX_VALUE;
+            }
+            // refreshes the lifespan of elements using the cache defaults
+            element.isExpired(cache.getCacheConfiguration());
+            return element.getExpirationTime();
+        }
+
+        @Override
+        public boolean expire(Object key, long now) {
+            Element element = map.get(key);
+            if (element != null && element.isExpired() && map.remove(key, element)) {
+                notifyExpiry(element);
+                return true;
+            }
+            return false;
+        }
+    }
+
     /**
      * Factory interface to create a MemoryStore backing.
      */
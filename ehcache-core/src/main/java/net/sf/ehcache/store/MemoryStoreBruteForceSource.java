@@ -16,6 +16,8 @@
 
 package net.sf.ehcache.store;
 
+import java.util.List;
+
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.Searchable;
 
@@ -47,6 +49,16 @@ class MemoryStoreBruteForceSource implements BruteForceSource {
         return memoryStore.elementSet();
     }
 
+    @Override
+    public List<Iterable<Element>> segments() {
+        return memoryStore.segmentElementSets();
+    }
+
+    @Override
+    public Element element(Object key) {
+        return memoryStore.getQuiet(key);
+    }
+
     @Override
     public Searchable getSearchable() {
         return searchable;
@@ -30,6 +30,8 @@ import org.slf4j.LoggerFactory;
  * <li>LRU - least recently used
  * <li>LFU - least frequently used
  * <li>FIFO - first in first out, the oldest element by creation time
+ * <li>EXACT_LRU - least recently used, tracked exactly rather than sampled
+ * <li>TINY_LFU - least recently used admission window in front of a frequency filtered main region (W-TinyLFU)
  * </ol>
  * The default value is LRU
  *
@@ -60,6 +62,17 @@ public final class MemoryStoreEvictionPolicy implements Serializable {
      */
     public static final MemoryStoreEvictionPolicy CLOCK = new MemoryStoreEvictionPolicy("CLOCK");
 
+    /**
+     * EXACT_LRU - least recently used, with the access order kept exactly by a concurrent eviction engine.
+     */
+    public static final MemoryStoreEvictionPolicy EXACT_LRU = new MemoryStoreEvictionPolicy("EXACT_LRU");
+
+    /**
+     * TINY_LFU - window TinyLFU, newly added elements are only retained if they are accessed more frequently than the
+     * elements they would displace.
+     */
+    public static final MemoryStoreEvictionPolicy TINY_LFU = new MemoryStoreEvictionPolicy("TINY_LFU");
+
     private static final Logger LOG = LoggerFactory.getLogger(MemoryStoreEvictionPolicy.class.getName());
 
     private final String myName;
@@ -83,7 +96,7 @@ public final class MemoryStoreEvictionPolicy implements Serializable {
     /**
      * Converts a string representation of the policy into a policy.
      *
-     * @param policy either LRU, LFU or FIFO
+     * @param policy either LRU, LFU, FIFO, CLOCK, EXACT_LRU or TINY_LFU
      * @return one of the static instances
      */
     public static MemoryStoreEvictionPolicy fromString(String policy) {
@@ -96,6 +109,10 @@ public final class MemoryStoreEvictionPolicy implements Serializable {
                 return FIFO;
             } else if (policy.equalsIgnoreCase("CLOCK")) {
                 return CLOCK;
+            } else if (policy.equalsIgnoreCase("EXACT_LRU")) {
+                return EXACT_LRU;
+            } else if (policy.equalsIgnoreCase("TINY_LFU")) {
+                return TINY_LFU;
             }
         }
             LOG.warn("The memoryStoreEvictionPolicy of {} cannot be resolved. The policy will be set to LRU", policy);
@@ -118,6 +135,14 @@ public final class MemoryStoreEvictionPolicy implements Serializable {
         /**
          * Value for {@link MemoryStoreEvictionPolicy#FIFO}
          */
-        FIFO;
+        FIFO,
+        /**
+         * Value for {@link MemoryStoreEvictionPolicy#EXACT_LRU}
+         */
+        EXACT_LRU,
+        /**
+         * Value for {@link MemoryStoreEvictionPolicy#TINY_LFU}
+         */
+        TINY_LFU;
     }
 }
@@ -0,0 +1,197 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.store.StoreOperationOutcomes.GetOutcome;
+import net.sf.ehcache.store.StoreOperationOutcomes.PutOutcome;
+import net.sf.ehcache.store.StoreOperationOutcomes.RemoveOutcome;
+
+import org.terracotta.statistics.observer.OperationObserver;
+
+/**
+ * The bulk operations of a store partitioned in segments, as the disk and off-heap stores are.
+ * <p>
+ * Keys are grouped by segment, so that each segment is handed all of its keys at once and can take its lock once for
+ * all of them. Per-key store statistics are recorded from what each segment reports back.
+ *
+ * @param <S> the type of the segments
+ */
+public abstract class SegmentedBulkOperations<S> {
+
+    private final S[] segments;
+    private final int segmentShift;
+    private final OperationObserver<GetOutcome> getObserver;
+    private final OperationObserver<PutOutcome> putObserver;
+    private final OperationObserver<RemoveOutcome> removeObserver;
+
+    /**
+     * Creates the bulk operations of a segmented store.
+     *
+     * @param segments the segments of the store, a power of two of them
+     * @param segmentShift the shift giving the index of the segment of a spread hash
+     * @param getObserver the observer of the store's gets
+     * @param putObserver the observer of the store's puts
+     * @param removeObserver the observer of the store's removes
+     */
+    protected SegmentedBulkOperations(S[] segments, int segmentShift, OperationObserver<GetOutcome> getObserver,
+                                      OperationObserver<PutOutcome> putObserver, OperationObserver<RemoveOutcome> removeObserver) {
+        this.segments = segments;
+        this.segmentShift = segmentShift;
+        this.getObserver = getObserver;
+        this.putObserver = putObserver;
+        this.removeObserver = removeObserver;
+    }
+
+    /**
+     * Gets the elements of the given keys.
+     *
+     * @param keys the keys
+     * @param markFaulted whether the mappings read are to be marked as faulted in the caching tier
+     * @param updateStats whether to record a get per key
+     * @return a map of the keys to their elements, a key mapping to null if it is absent
+     */
+    public Map<Object, Element> getAll(Collection<?> keys, boolean markFaulted, boolean updateStats) {
+        Map<Object, Element> result = new HashMap<Object, Element>(keys.size() * 2);
+        List<Object>[] grouped = groupBySegment(keys);
+        for (int i = 0; i < grouped.length; i++) {
+            if (grouped[i] != null) {
+                getAll(segments[i], grouped[i], markFaulted, result);
+            }
+        }
+        if (result.size() < keys.size()) {
+            for (Object key : keys) {
+                if (key == null) {
+                    result.put(null, null);
+                    break;
+                }
+            }
+        }
+        if (updateStats) {
+            for (Element element : result.values()) {
+                getObserver.begin();
+                getObserver.end(element == null ? GetOutcome.MISS : GetOutcome.HIT);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Puts the given elements, skipping null ones.
+     *
+     * @param elements the elements
+     */
+    public void putAll(Collection<Element> elements) {
+        List<Element>[] grouped = newSegmentLists();
+        for (Element element : elements) {
+            if (element != null) {
+                add(grouped, element.getObjectKey(), element);
+            }
+        }
+        for (int i = 0; i < grouped.length; i++) {
+            if (grouped[i] != null) {
+                for (Element oldElement : putAll(segments[i], grouped[i])) {
+                    putObserver.begin();
+                    putObserver.end(oldElement == null ? PutOutcome.ADDED : PutOutcome.UPDATED);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the mappings of the given keys, recording a remove for each mapping actually removed.
+     *
+     * @param keys the keys
+     */
+    public void removeAll(Collection<?> keys) {
+        List<Object>[] grouped = groupBySegment(keys);
+        for (int i = 0; i < grouped.length; i++) {
+            if (grouped[i] != null) {
+                int removed = removeAll(segments[i], grouped[i]);
+                for (int j = 0; j < removed; j++) {
+                    removeObserver.begin();
+                    removeObserver.end(RemoveOutcome.SUCCESS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Spreads the hash code of a key the way the store does to find its segment.
+     *
+     * @param key the key
+     * @return the spread hash
+     */
+    protected abstract int hash(Object key);
+
+    /**
+     * Gets the elements of keys all mapping to the given segment into the result map.
+     *
+     * @param segment the segment
+     * @param keys the keys
+     * @param markFaulted whether the mappings read are to be marked as faulted in the caching tier
+     * @param result the map to add the keys and their elements to
+     */
+    protected abstract void getAll(S segment, List<Object> keys, boolean markFaulted, Map<Object, Element> result);
+
+    /**
+     * Puts elements all mapping to the given segment.
+     *
+     * @param segment the segment
+     * @param elements the elements
+     * @return the elements replaced, in the order of the elements put, null for the new mappings
+     */
+    protected abstract Element[] putAll(S segment, List<Element> elements);
+
+    /**
+     * Removes the mappings of keys all mapping to the given segment.
+     *
+     * @param segment the segment
+     * @param keys the keys
+     * @return the number of mappings actually removed
+     */
+    protected abstract int removeAll(S segment, List<Object> keys);
+
+    private List<Object>[] groupBySegment(Collection<?> keys) {
+        List<Object>[] grouped = newSegmentLists();
+        for (Object key : keys) {
+            if (key != null) {
+                add(grouped, key, key);
+            }
+        }
+        return grouped;
+    }
+
+    private <T> void add(List<T>[] grouped, Object key, T value) {
+        int index = hash(key) >>> segmentShift;
+        if (grouped[index] == null) {
+            grouped[index] = new ArrayList<T>();
+        }
+        grouped[index].add(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T>[] newSegmentLists() {
+        return new List[segments.length];
+    }
+}
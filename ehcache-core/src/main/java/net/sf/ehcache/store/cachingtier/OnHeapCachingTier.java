@@ -33,6 +33,10 @@ import net.sf.ehcache.store.LruPolicy;
 import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 import net.sf.ehcache.store.Policy;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -136,11 +140,11 @@ public class OnHeapCachingTier<K, V> implements CachingTier<K, V> {
     static Policy determineEvictionPolicy(Ehcache cache) {
         MemoryStoreEvictionPolicy policySelection = cache.getCacheConfiguration().getMemoryStoreEvictionPolicy();
 
-        if (policySelection.equals(MemoryStoreEvictionPolicy.LRU)) {
+        if (policySelection.equals(MemoryStoreEvictionPolicy.LRU) || policySelection.equals(MemoryStoreEvictionPolicy.EXACT_LRU)) {
             return new LruPolicy();
         } else if (policySelection.equals(MemoryStoreEvictionPolicy.FIFO)) {
             return new FifoPolicy();
-        } else if (policySelection.equals(MemoryStoreEvictionPolicy.LFU)) {
+        } else if (policySelection.equals(MemoryStoreEvictionPolicy.LFU) || policySelection.equals(MemoryStoreEvictionPolicy.TINY_LFU)) {
             return new LfuPolicy();
         } else if (policySelection.equals(MemoryStoreEvictionPolicy.CLOCK)) {
             return new LruPolicy();
@@ -173,17 +177,7 @@ public class OnHeapCachingTier<K, V> implements CachingTier<K, V> {
             cachedValue = backEnd.putIfAbsent(key, f);
             if (cachedValue == null) {
                 try {
-                    V value = f.get();
-                    putObserver.begin();
-                    if (value == null) {
-                        backEnd.remove(key, f);
-                    } else if (backEnd.replace(key, f, value)) {
-                        putObserver.end(PutOutcome.ADDED);
-                    } else {
-                        V p =  getValue(backEnd.remove(key));
-                        return p == null ? value : p;
-                    }
-                    return value;
+                    return install(key, f, f.get());
                 } catch (Throwable e) {
                     backEnd.remove(key, f);
                     if (e instanceof RuntimeException) {
@@ -200,6 +194,76 @@ public class OnHeapCachingTier<K, V> implements CachingTier<K, V> {
         return getValue(cachedValue);
     }
 
+    @Override
+    public Map<K, V> getAll(final Collection<? extends K> keys, final BulkSource<K, V> source, final boolean updateStats) {
+        Map<K, V> result = new HashMap<K, V>(keys.size() * 2);
+        Map<K, Fault<V>> faults = new HashMap<K, Fault<V>>();
+        for (final K key : keys) {
+            if (result.containsKey(key) || faults.containsKey(key)) {
+                continue;
+            }
+            if (updateStats) { getObserver.begin(); }
+            Object cachedValue = backEnd.get(key);
+            if (cachedValue == null) {
+                if (updateStats) { getObserver.end(GetOutcome.MISS); }
+                Fault<V> f = new Fault<V>(new Callable<V>() {
+                    @Override
+                    public V call() throws Exception {
+                        return source.loadAll(Collections.singleton(key)).get(key);
+                    }
+                });
+                cachedValue = backEnd.putIfAbsent(key, f);
+                if (cachedValue == null) {
+                    faults.put(key, f);
+                    continue;
+                }
+            } else {
+                if (updateStats) { getObserver.end(GetOutcome.HIT); }
+            }
+            result.put(key, getValue(cachedValue));
+        }
+
+        if (!faults.isEmpty()) {
+            faultAll(faults, source, result);
+        }
+        return result;
+    }
+
+    private void faultAll(final Map<K, Fault<V>> faults, final BulkSource<K, V> source, final Map<K, V> result) {
+        Iterator<Map.Entry<K, Fault<V>>> it = faults.entrySet().iterator();
+        try {
+            Map<K, V> values = source.loadAll(faults.keySet());
+            while (it.hasNext()) {
+                Map.Entry<K, Fault<V>> fault = it.next();
+                result.put(fault.getKey(), install(fault.getKey(), fault.getValue(), fault.getValue().resolve(values.get(fault.getKey()))));
+                it.remove();
+            }
+        } catch (Throwable e) {
+            for (Map.Entry<K, Fault<V>> fault : faults.entrySet()) {
+                fault.getValue().abort(e);
+                backEnd.remove(fault.getKey(), fault.getValue());
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException)e;
+            } else {
+                throw new CacheException(e);
+            }
+        }
+    }
+
+    private V install(final K key, final Fault<V> f, final V value) {
+        putObserver.begin();
+        if (value == null) {
+            backEnd.remove(key, f);
+        } else if (backEnd.replace(key, f, value)) {
+            putObserver.end(PutOutcome.ADDED);
+        } else {
+            V p =  getValue(backEnd.remove(key));
+            return p == null ? value : p;
+        }
+        return value;
+    }
+
     @Override
     public V remove(final K key) {
         removeObserver.begin();
@@ -342,6 +406,31 @@ public class OnHeapCachingTier<K, V> implements CachingTier<K, V> {
             return throwOrReturn();
         }
 
+        /**
+         * Completes this fault with a value loaded in bulk, unless a concurrent get already completed it.
+         */
+        private V resolve(V loaded) {
+            synchronized (this) {
+                if (!complete) {
+                    complete(loaded);
+                }
+            }
+            return throwOrReturn();
+        }
+
+        /**
+         * Fails this fault with the failure of a bulk load, unless a concurrent get already completed it.
+         */
+        private void abort(final Throwable t) {
+            synchronized (this) {
+                if (!complete) {
+                    this.throwable = t;
+                    this.complete = true;
+                    notifyAll();
+                }
+            }
+        }
+
       private V throwOrReturn() {
         if (throwable != null) {
           if (throwable instanceof RuntimeException) {
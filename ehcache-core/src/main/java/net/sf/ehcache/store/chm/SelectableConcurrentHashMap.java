@@ -28,6 +28,7 @@ import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import net.sf.ehcache.CacheOperationOutcomes.EvictionOutcome;
@@ -195,6 +196,59 @@ public class SelectableConcurrentHashMap {
         return sampled.toArray(new Element[sampled.size()]);
     }
 
+    /**
+     * Samples up to {@code size} values into the given buffer, without allocating.
+     * <p>
+     * The map is walked like {@link #getRandomValues(int, Object)} does, but the walk stops as soon as the buffer holds
+     * {@code size} values, rather than at the end of the current hash chain. Callers reusing the buffer should clear
+     * the sampled slots once done, so that sampled elements do not stay reachable through it.
+     *
+     * @param buffer the buffer receiving the values, at least {@code size} long
+     * @param size the number of values wanted
+     * @param keyHint a key used as a hint indicating where the just added element is, may be null
+     * @return the number of values written at the start of the buffer
+     */
+    public int getRandomValues(final Element[] buffer, final int size, Object keyHint) {
+        if (size <= 0) {
+            return 0;
+        }
+        int randomHash = ThreadLocalRandom.current().nextInt();
+
+        final int segmentStart;
+        if (keyHint == null) {
+            segmentStart = (randomHash >>> segmentShift) & segmentMask;
+        } else {
+            segmentStart = (hash(keyHint.hashCode()) >>> segmentShift) & segmentMask;
+        }
+
+        int sampled = 0;
+        int segmentIndex = segmentStart;
+        do {
+            final HashEntry[] table = segments[segmentIndex].table;
+            final int tableStart = randomHash & (table.length - 1);
+            int tableIndex = tableStart;
+            do {
+                for (HashEntry e = table[tableIndex]; e != null; e = e.next) {
+                    Element value = e.value;
+                    if (value != null) {
+                        buffer[sampled++] = value;
+                        if (sampled == size) {
+                            return sampled;
+                        }
+                    }
+                }
+
+                //move to next table slot
+                tableIndex = (tableIndex + 1) & (table.length - 1);
+            } while (tableIndex != tableStart);
+
+            //move to next segment
+            segmentIndex = (segmentIndex + 1) & segmentMask;
+        } while (segmentIndex != segmentStart);
+
+        return sampled;
+    }
+
     /**
      * Return an object of the kind which will be stored when
      * the element is going to be inserted
@@ -420,6 +474,20 @@ public class SelectableConcurrentHashMap {
         return (es != null) ? es : (entrySet = new EntrySet());
     }
 
+    /**
+     * Returns one view of the values per segment of this map, so that the segments can be traversed concurrently.
+     * Like {@link #values()}, the views are weakly consistent.
+     *
+     * @return the values of each segment
+     */
+    public List<Iterable<Element>> segmentValues() {
+        List<Iterable<Element>> views = new ArrayList<Iterable<Element>>(segments.length);
+        for (Segment segment : segments) {
+            views.add(new SegmentValues(segment));
+        }
+        return views;
+    }
+
     protected Segment createSegment(int initialCapacity, float lf) {
         return new Segment(initialCapacity, lf);
     }
@@ -501,7 +569,7 @@ public class SelectableConcurrentHashMap {
 
         }
 
-        protected void postInstall(Object key, Element value) {
+        protected void postInstall(Object key, Element oldValue, Element value) {
 
         }
 
@@ -661,7 +729,7 @@ public class SelectableConcurrentHashMap {
                             cacheEventNotificationService.notifyElementUpdatedOrdered(oldValue, value);
                         }
                         if (fire) {
-                            postInstall(key, value);
+                            postInstall(key, oldValue, value);
                         }
                     }
                 } else {
@@ -673,7 +741,7 @@ public class SelectableConcurrentHashMap {
                         cacheEventNotificationService.notifyElementPutOrdered(value);
                     }
                     if (fire) {
-                        postInstall(key, value);
+                        postInstall(key, oldValue, value);
                     }
                 }
 
@@ -963,6 +1031,34 @@ public class SelectableConcurrentHashMap {
         }
     }
 
+    static final class SegmentValues implements Iterable<Element> {
+        private final Segment segment;
+
+        SegmentValues(Segment segment) {
+            this.segment = segment;
+        }
+
+        public Iterator<Element> iterator() {
+            final SegmentIterator entries = new SegmentIterator(segment);
+            return new Iterator<Element>() {
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                public Element next() {
+                    if (!entries.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return entries.next().value;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException("remove is not supported");
+                }
+            };
+        }
+    }
+
     final class KeySet extends AbstractSet<Object> {
 
         @Override
@@ -18,13 +18,12 @@ package net.sf.ehcache.store.compound;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.ElementIdHelper;
-import net.sf.ehcache.util.PreferredLoaderObjectInputStream;
+import net.sf.ehcache.serializer.JavaSerializer;
+import net.sf.ehcache.serializer.Serializer;
 
 /**
  * A copy strategy that can use partial (if both copy on read and copy on write are set) or full Serialization to copy the object graph
@@ -36,6 +35,24 @@ public class ReadWriteSerializationCopyStrategy implements ReadWriteCopyStrategy
 
     private static final long serialVersionUID = 2659269742281205622L;
 
+    private final Serializer serializer;
+
+    /**
+     * Create a copy strategy using Java serialization
+     */
+    public ReadWriteSerializationCopyStrategy() {
+        this(new JavaSerializer());
+    }
+
+    /**
+     * Create a copy strategy using the given serializer
+     *
+     * @param serializer the serializer values are copied with
+     */
+    public ReadWriteSerializationCopyStrategy(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
     /**
      * Deep copies some object and returns an internal storage-ready copy
      *
@@ -47,25 +64,15 @@ public class ReadWriteSerializationCopyStrategy implements ReadWriteCopyStrategy
             return null;
         } else {
             ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            ObjectOutputStream oos = null;
 
             if (value.getObjectValue() == null) {
                 return duplicateElementWithNewValue(value, null);
             }
 
             try {
-                oos = new ObjectOutputStream(bout);
-                oos.writeObject(value.getObjectValue());
+                serializer.serialize(value.getObjectValue(), bout);
             } catch (Exception e) {
                 throw new CacheException("When configured copyOnRead or copyOnWrite, a Store will only accept Serializable values", e);
-            } finally {
-                try {
-                    if (oos != null) {
-                        oos.close();
-                    }
-                } catch (Exception e) {
-                    //
-                }
             }
 
             return duplicateElementWithNewValue(value, bout.toByteArray());
@@ -87,20 +94,10 @@ public class ReadWriteSerializationCopyStrategy implements ReadWriteCopyStrategy
             }
 
             ByteArrayInputStream bin = new ByteArrayInputStream((byte[]) storedValue.getObjectValue());
-            ObjectInputStream ois = null;
             try {
-                ois = new PreferredLoaderObjectInputStream(bin, loader);
-                return duplicateElementWithNewValue(storedValue, ois.readObject());
+                return duplicateElementWithNewValue(storedValue, serializer.deserialize(bin, loader));
             } catch (Exception e) {
                 throw new CacheException("When configured copyOnRead or copyOnWrite, a Store will only accept Serializable values", e);
-            } finally {
-                try {
-                    if (ois != null) {
-                        ois.close();
-                    }
-                } catch (Exception e) {
-                    //
-                }
             }
         }
     }
@@ -17,6 +17,7 @@
 package net.sf.ehcache.store.compound;
 
 import net.sf.ehcache.Element;
+import net.sf.ehcache.serializer.Serializer;
 
 /**
  * A copy strategy that uses full Serialization to copy the object graph
@@ -28,7 +29,23 @@ public class SerializationCopyStrategy implements ReadWriteCopyStrategy<Element>
 
     private static final long serialVersionUID = -7932063007392582487L;
     
-    private final ReadWriteSerializationCopyStrategy copyStrategy = new ReadWriteSerializationCopyStrategy();
+    private final ReadWriteSerializationCopyStrategy copyStrategy;
+
+    /**
+     * Create a copy strategy using Java serialization
+     */
+    public SerializationCopyStrategy() {
+        this.copyStrategy = new ReadWriteSerializationCopyStrategy();
+    }
+
+    /**
+     * Create a copy strategy using the given serializer
+     *
+     * @param serializer the serializer values are copied with
+     */
+    public SerializationCopyStrategy(Serializer serializer) {
+        this.copyStrategy = new ReadWriteSerializationCopyStrategy(serializer);
+    }
 
     /**
      * Deep copies some object and returns an internal storage-ready copy
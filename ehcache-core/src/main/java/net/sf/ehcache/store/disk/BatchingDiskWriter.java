@@ -0,0 +1,245 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.util.VmUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of writer threads draining spooled items in batches.
+ * <p>
+ * Each item is assigned to a writer by hash, so that items submitted for the same key are always written in
+ * submission order. A writer blocks for the first item of a batch, then drains whatever else is already queued
+ * (up to the maximum batch size) and hands the whole batch to the {@link BatchHandler} in one call.
+ *
+ * @param <T> the type of the spooled items
+ */
+final class BatchingDiskWriter<T> {
+
+    /**
+     * Writes a batch of spooled items.
+     *
+     * @param <T> the type of the spooled items
+     */
+    interface BatchHandler<T> {
+
+        /**
+         * Write the given batch.
+         *
+         * @param batch the items to write, in submission order for any given hash
+         */
+        void write(List<T> batch);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingDiskWriter.class);
+
+    private static final Object STOP = new Object();
+
+    private final BatchHandler<T> handler;
+    private final int maxBatchSize;
+    private final Writer[] writers;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    /**
+     * Create and start a writer pool.
+     *
+     * @param name base name of the writer threads
+     * @param threads number of writer threads
+     * @param maxBatchSize maximum number of items per batch
+     * @param handler the batch handler
+     */
+    BatchingDiskWriter(String name, int threads, int maxBatchSize, BatchHandler<T> handler) {
+        this.handler = handler;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.writers = new BatchingDiskWriter.Writer[Math.max(1, threads)];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Writer(writers.length == 1 ? name : name + "-" + i);
+            writers[i].thread.start();
+        }
+    }
+
+    /**
+     * Queue an item for writing.
+     * <p>
+     * Items submitted once the writer is shut down are dropped.
+     *
+     * @param hash the hash selecting the writer thread
+     * @param item the item to write
+     */
+    void submit(int hash, T item) {
+        if (shutdown) {
+            LOG.debug("Disk writer is shut down, dropping write of {}", item);
+            return;
+        }
+        pending.incrementAndGet();
+        writers[(hash & Integer.MAX_VALUE) % writers.length].queue.add(item);
+    }
+
+    /**
+     * Wait until every item submitted before this call has been written.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void awaitWritten() throws InterruptedException {
+        if (shutdown) {
+            return;
+        }
+        CountDownLatch latch = new CountDownLatch(writers.length);
+        for (Writer writer : writers) {
+            writer.queue.add(latch);
+        }
+        while (!latch.await(1, TimeUnit.SECONDS)) {
+            if (shutdown && !isAlive()) {
+                return;
+            }
+        }
+    }
+
+    private boolean isAlive() {
+        for (Writer writer : writers) {
+            if (writer.thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop the writer threads once they have written everything already queued.
+     *
+     * @param timeout the maximum time to wait for each writer
+     * @param unit the timeout unit
+     * @return {@code true} if all writers terminated in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        shutdown = true;
+        for (Writer writer : writers) {
+            writer.queue.add(STOP);
+        }
+        boolean terminated = true;
+        for (Writer writer : writers) {
+            writer.thread.join(unit.toMillis(timeout));
+            terminated &= !writer.thread.isAlive();
+        }
+        return terminated;
+    }
+
+    /**
+     * Return the number of items queued or being written.
+     *
+     * @return the write queue depth
+     */
+    int getQueueDepth() {
+        return pending.get();
+    }
+
+    /**
+     * Return the mean number of items written per batch.
+     *
+     * @return the mean batch size
+     */
+    double getAverageBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : ((double) writtenCount.get()) / batches;
+    }
+
+    /**
+     * Return the mean time taken to write a batch.
+     *
+     * @return the mean batch write latency in nanoseconds
+     */
+    long getAverageWriteLatency() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : writeNanos.get() / batches;
+    }
+
+    private void write(List<T> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            handler.write(batch);
+        } catch (Throwable t) {
+            LOG.error("Disk write of a batch of " + batch.size() + " elements failed", t);
+        } finally {
+            writeNanos.addAndGet(System.nanoTime() - start);
+            writtenCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+            pending.addAndGet(-batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * A writer thread and its queue.
+     */
+    private final class Writer implements Runnable {
+
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+        private final Thread thread;
+
+        Writer(String name) {
+            thread = VmUtils.newThread(this, name, false);
+        }
+
+        public void run() {
+            List<Object> drained = new ArrayList<Object>(maxBatchSize);
+            List<T> batch = new ArrayList<T>(maxBatchSize);
+            while (true) {
+                try {
+                    drained.add(queue.take());
+                } catch (InterruptedException e) {
+                    LOG.debug("Disk writer {} interrupted while idle", thread.getName());
+                    continue;
+                }
+                queue.drainTo(drained, maxBatchSize - 1);
+                for (Object o : drained) {
+                    if (o == STOP) {
+                        write(batch);
+                        return;
+                    } else if (o instanceof CountDownLatch) {
+                        write(batch);
+                        ((CountDownLatch) o).countDown();
+                    } else {
+                        batch.add((T) o);
+                    }
+                }
+                drained.clear();
+                write(batch);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A disk access engine using positional {@link FileChannel} reads and writes.
+ * <p>
+ * Positional I/O does not touch the channel's file pointer, so any number of threads can fault from the data file
+ * concurrently without a lock. A thread interrupted during I/O closes the channel for everyone (this is how
+ * {@link java.nio.channels.InterruptibleChannel} works), in which case the channel is transparently re-opened and
+ * the operations of the non-interrupted threads are retried.
+ */
+final class ChannelDiskDataAccess extends DiskDataAccess {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChannelDiskDataAccess.class);
+
+    private final File file;
+    private final RandomAccessFile control;
+
+    private volatile RandomAccessFile channelFile;
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+
+    /**
+     * Create a channel engine over the given file.
+     *
+     * @param file the data file
+     * @throws FileNotFoundException if the file cannot be opened
+     */
+    ChannelDiskDataAccess(File file) throws FileNotFoundException {
+        this.file = file;
+        this.control = new RandomAccessFile(file, "rw");
+        this.channelFile = new RandomAccessFile(file, "rw");
+        this.channel = channelFile.getChannel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    ByteBuffer read(long position, int size, Object key) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (true) {
+            FileChannel current = channel;
+            try {
+                while (buffer.hasRemaining()) {
+                    if (current.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException("Unexpected end of data file " + file + " reading " + size + " bytes at " + position);
+                    }
+                }
+                buffer.flip();
+                return buffer;
+            } catch (ClosedByInterruptException e) {
+                reopen(current);
+                throw e;
+            } catch (ClosedChannelException e) {
+                reopen(current);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void write(long position, byte[] data, int offset, int length, Object key) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        while (true) {
+            FileChannel current = channel;
+            try {
+                while (buffer.hasRemaining()) {
+                    current.write(buffer, position + (buffer.position() - offset));
+                }
+                return;
+            } catch (ClosedByInterruptException e) {
+                reopen(current);
+                throw e;
+            } catch (ClosedChannelException e) {
+                reopen(current);
+            }
+        }
+    }
+
+    private synchronized void reopen(FileChannel failed) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (channel == failed) {
+            LOG.debug("Re-opening channel to data file {} after asynchronous close", file);
+            try {
+                channelFile.close();
+            } catch (IOException e) {
+                LOG.debug("Exception closing the previous data file channel", e);
+            }
+            channelFile = new RandomAccessFile(file, "rw");
+            channel = channelFile.getChannel();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    long length() throws IOException {
+        synchronized (control) {
+            return control.length();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void setLength(long length) throws IOException {
+        synchronized (control) {
+            control.setLength(length);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    RandomAccessFile getAllocatorFile() {
+        return control;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            channelFile.close();
+        }
+        synchronized (control) {
+            control.close();
+        }
+    }
+}
@@ -0,0 +1,1068 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import net.sf.ehcache.CacheOperationOutcomes.EvictionOutcome;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.event.RegisteredEventListeners;
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.store.ElementValueComparator;
+import net.sf.ehcache.store.disk.DiskStorageFactory.DiskMarker;
+import net.sf.ehcache.store.disk.DiskStorageFactory.DiskSubstitute;
+import net.sf.ehcache.store.disk.DiskStorageFactory.Placeholder;
+import net.sf.ehcache.util.FindBugsSuppressWarnings;
+import net.sf.ehcache.util.TimeUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.statistics.observer.OperationObserver;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Segment implementation indexing its mappings in open-addressed primitive arrays.
+ * <p>
+ * Once written to disk a mapping costs one slot in each of a handful of parallel arrays (hash, position, size, hit count,
+ * expiry and faulted flag) instead of a {@link HashEntry}, a {@link DiskMarker} and a reference to the key. The key is not
+ * retained: it is read back from the data file whenever a hash match has to be confirmed, which for reads costs nothing more
+ * since the value has to be read anyway. The keys of mappings faulted into a higher tier are the exception, they are held in a
+ * side map so that flushing them back does not touch the disk. Mappings still waiting to be written are kept, along with their
+ * placeholder, in a plain map exactly as costly as in the chained {@link Segment}.
+ * <p>
+ * The table uses linear probing and backward-shift deletion so it never accumulates tombstones. Key iteration reads every key
+ * from disk and should be avoided on large stores.
+ */
+class CompactSegment extends Segment {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompactSegment.class.getName());
+
+    private static final long EMPTY = -1L;
+    private static final int MINIMUM_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * Stand-in for one slot of the index arrays: the on-heap pool is charged its size for every on-disk mapping.
+     */
+    private static final int[] INDEX_SLOT = new int[7];
+    private static final Pending NULL_PENDING = new Pending(0, null, false);
+
+    private final DiskStorageFactory disk;
+    private final PoolAccessor onHeapPoolAccessor;
+    private final PoolAccessor onDiskPoolAccessor;
+    private final RegisteredEventListeners cacheEventNotificationService;
+    private final OperationObserver<EvictionOutcome> evictionObserver;
+    private final boolean cachePinned;
+    private final float loadFactor;
+
+    private final Map<Object, Pending> pending = new HashMap<Object, Pending>();
+    private final Map<Object, Long> faultedKeys = new ConcurrentHashMap<Object, Long>();
+
+    private int[] hashes;
+    private long[] positions;
+    private int[] sizes;
+    private int[] hits;
+    private int[] expiries;
+    private boolean[] faulted;
+    private int onDiskCount;
+    private int threshold;
+    private long slotHeapSize;
+
+    /**
+     * Create a compact Segment with the given initial capacity, load-factor and primary element substitute factory.
+     *
+     * @param initialCapacity initial capacity of store
+     * @param loadFactor fraction of capacity at which rehash occurs
+     * @param primary primary element substitute factory
+     * @param cacheConfiguration the cache configuration
+     * @param onHeapPoolAccessor the pool tracking on-heap usage
+     * @param onDiskPoolAccessor the pool tracking on-disk usage
+     * @param cacheEventNotificationService the cache event notification service
+     * @param evictionObserver the observer of evictions
+     */
+    CompactSegment(int initialCapacity, float loadFactor, DiskStorageFactory primary,
+                   CacheConfiguration cacheConfiguration,
+                   PoolAccessor onHeapPoolAccessor, PoolAccessor onDiskPoolAccessor,
+                   RegisteredEventListeners cacheEventNotificationService,
+                   OperationObserver<EvictionOutcome> evictionObserver) {
+        super(1, loadFactor, primary, cacheConfiguration, onHeapPoolAccessor, onDiskPoolAccessor,
+            cacheEventNotificationService, evictionObserver);
+        this.disk = primary;
+        this.onHeapPoolAccessor = onHeapPoolAccessor;
+        this.onDiskPoolAccessor = onDiskPoolAccessor;
+        this.cacheEventNotificationService = cacheEventNotificationService;
+        this.evictionObserver = evictionObserver;
+        this.cachePinned = determineCachePinned(cacheConfiguration);
+        this.loadFactor = loadFactor;
+        allocate(Math.max(MINIMUM_CAPACITY, Integer.highestOneBit(initialCapacity)));
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        positions = new long[capacity];
+        Arrays.fill(positions, EMPTY);
+        sizes = new int[capacity];
+        hits = new int[capacity];
+        expiries = new int[capacity];
+        faulted = new boolean[capacity];
+        threshold = (int) (capacity * loadFactor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Element get(Object key, int hash, final boolean markFaulted) {
+        readLock().lock();
+        try {
+            // read-volatile
+            if (count != 0) {
+                Pending p = pending.get(key);
+                if (p != null) {
+                    if (markFaulted) {
+                        p.faulted = true;
+                    }
+                    return p.placeholder.getElement();
+                }
+                Lookup found = find(key, hash);
+                if (found != null) {
+                    if (markFaulted) {
+                        setFaulted(key, found.slot);
+                    }
+                    hit(found.slot, found.element);
+                    return found.element;
+                }
+            }
+            return null;
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Object unretrievedGet(Object key, int hash) {
+        readLock().lock();
+        try {
+            if (count != 0) {
+                Pending p = pending.get(key);
+                if (p != null) {
+                    return p.placeholder;
+                }
+                Lookup found = find(key, hash);
+                if (found != null) {
+                    return marker(found.slot, key);
+                }
+            }
+            return null;
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean containsKey(Object key, int hash) {
+        readLock().lock();
+        try {
+            // read-volatile
+            return count != 0 && (pending.containsKey(key) || find(key, hash) != null);
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean replace(Object key, int hash, Element oldElement, Element newElement, ElementValueComparator comparator) {
+        return replaceInternal(key, hash, oldElement, newElement, comparator) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Element replace(Object key, int hash, Element newElement) {
+        return replaceInternal(key, hash, null, newElement, null);
+    }
+
+    private Element replaceInternal(Object key, int hash, Element expect, Element newElement, ElementValueComparator comparator) {
+        boolean installed = false;
+        Placeholder encoded = (Placeholder) disk.create(newElement);
+        final long incomingHeapSize = onHeapPoolAccessor.add(key, encoded, NULL_PENDING, cachePinned);
+        if (incomingHeapSize < 0) {
+            LOG.debug("replace failed to add on heap");
+            return null;
+        } else {
+            encoded.onHeapSize = incomingHeapSize;
+        }
+
+        writeLock().lock();
+        try {
+            Pending existing = pending.get(key);
+            Lookup found = existing == null ? find(key, hash) : null;
+            Element current = current(existing, found);
+            if (current == null || (expect != null && !comparator.equals(expect, current))) {
+                onHeapPoolAccessor.delete(encoded.onHeapSize);
+                return null;
+            }
+
+            unlink(key, existing, found);
+            pending.put(key, new Pending(hash, encoded, false));
+            installed = true;
+            cacheEventNotificationService.notifyElementUpdatedOrdered(expect == null ? current : expect, newElement);
+            return current;
+        } finally {
+            writeLock().unlock();
+
+            if (installed) {
+                encoded.installed();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Element put(Object key, int hash, Element element, boolean onlyIfAbsent, boolean faulted) {
+        boolean installed = false;
+        Placeholder encoded = (Placeholder) disk.create(element);
+        final long incomingHeapSize = onHeapPoolAccessor.add(key, encoded, NULL_PENDING, cachePinned || faulted);
+        if (incomingHeapSize < 0) {
+            LOG.debug("put failed to add on heap");
+            evictionObserver.end(EvictionOutcome.SUCCESS);
+            cacheEventNotificationService.notifyElementEvicted(element, false);
+            return null;
+        } else {
+            LOG.debug("put added {} on heap", incomingHeapSize);
+            encoded.onHeapSize = incomingHeapSize;
+        }
+
+        writeLock().lock();
+        try {
+            Pending existing = pending.get(key);
+            Lookup found = existing == null ? find(key, hash) : null;
+            Element oldElement = current(existing, found);
+            if (oldElement == null) {
+                ++modCount;
+                pending.put(key, new Pending(hash, encoded, faulted));
+                installed = true;
+                // write-volatile
+                count = count + 1;
+                cacheEventNotificationService.notifyElementPutOrdered(element);
+            } else if (onlyIfAbsent) {
+                final long outgoingHeapSize = onHeapPoolAccessor.delete(encoded.onHeapSize);
+                LOG.debug("put if absent failed, deleted {} on heap", outgoingHeapSize);
+            } else {
+                unlink(key, existing, found);
+                pending.put(key, new Pending(hash, encoded, faulted));
+                installed = true;
+                cacheEventNotificationService.notifyElementUpdatedOrdered(oldElement, element);
+            }
+            return oldElement;
+        } finally {
+            writeLock().unlock();
+
+            if (installed) {
+                encoded.installed();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean putRawIfAbsent(Object key, int hash, DiskMarker encoded) throws IllegalArgumentException {
+        writeLock().lock();
+        try {
+            if (!onDiskPoolAccessor.canAddWithoutEvicting(key, null, encoded)) {
+                return false;
+            }
+            final long incomingHeapSize = onHeapPoolAccessor.add(null, null, INDEX_SLOT, cachePinned);
+            if (incomingHeapSize < 0) {
+                return false;
+            }
+            if (onDiskPoolAccessor.add(key, null, encoded, cachePinned) < 0) {
+                onHeapPoolAccessor.delete(incomingHeapSize);
+                return false;
+            }
+
+            if (pending.containsKey(key) || find(key, hash) != null) {
+                onHeapPoolAccessor.delete(incomingHeapSize);
+                onDiskPoolAccessor.delete(encoded.getSize());
+                throw new IllegalArgumentException("Duplicate key detected");
+            }
+            slotHeapSize = incomingHeapSize;
+            ++modCount;
+            insert(hash, encoded, false);
+            // write-volatile
+            count = count + 1;
+            return true;
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Element remove(Object key, int hash, Element value, ElementValueComparator comparator) {
+        writeLock().lock();
+        try {
+            Pending existing = pending.get(key);
+            Lookup found = existing == null ? find(key, hash) : null;
+            Element oldValue = current(existing, found);
+            if (oldValue != null && (value == null || comparator.equals(value, oldValue))) {
+                ++modCount;
+                unlink(key, existing, found);
+                cacheEventNotificationService.notifyElementRemovedOrdered(oldValue);
+                // write-volatile
+                count = count - 1;
+                return oldValue;
+            } else {
+                LOG.debug("remove deleted nothing");
+                return null;
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void clear() {
+        writeLock().lock();
+        try {
+            if (count != 0) {
+                for (int slot = 0; slot < positions.length; slot++) {
+                    if (positions[slot] != EMPTY) {
+                        free(marker(slot, null), false);
+                    }
+                }
+                pending.clear();
+                faultedKeys.clear();
+                allocate(MINIMUM_CAPACITY);
+                onDiskCount = 0;
+                ++modCount;
+                // write-volatile
+                count = 0;
+            }
+            onHeapPoolAccessor.clear();
+            LOG.debug("cleared heap usage");
+            onDiskPoolAccessor.clear();
+            LOG.debug("cleared disk usage");
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean fault(Object key, int hash, Placeholder expect, DiskMarker fault, final boolean skipFaulted) {
+        writeLock().lock();
+        try {
+            Pending existing = pending.get(key);
+            if (cachePinned || existing == null) {
+                free(fault, true);
+                return false;
+            } else if (skipFaulted && existing.faulted) {
+                free(fault, false);
+                return true;
+            } else if (existing.placeholder != expect) {
+                free(fault, true);
+                return false;
+            } else {
+                return install(key, hash, existing, fault);
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    private boolean install(Object key, int hash, Pending existing, DiskMarker fault) {
+        Placeholder expect = existing.placeholder;
+        final long deltaHeapSize = onHeapPoolAccessor.replace(expect.onHeapSize, null, null, INDEX_SLOT, existing.faulted);
+        if (deltaHeapSize == Long.MIN_VALUE) {
+            free(fault, true);
+            remove(key, hash, null, null);
+            return false;
+        }
+        final long faultHeapSize = expect.onHeapSize + deltaHeapSize;
+        LOG.debug("fault removed {} from heap", deltaHeapSize);
+
+        final long incomingDiskSize = onDiskPoolAccessor.add(key, null, fault, existing.faulted);
+        if (incomingDiskSize < 0) {
+            free(fault, true);
+            long deleteSize = onHeapPoolAccessor.replace(faultHeapSize, key, expect, NULL_PENDING, true);
+            LOG.debug("fault failed to add on disk, deleted {} from heap", deleteSize);
+            expect.onHeapSize = faultHeapSize + deleteSize;
+            notifyEviction(remove(key, hash, null, null));
+            return false;
+        } else {
+            LOG.debug("fault added {} on disk", incomingDiskSize);
+        }
+
+        if (pending.get(key) != existing) {
+            // the mapping went away while room was being made on disk
+            final long failDeltaHeapSize = onHeapPoolAccessor.replace(faultHeapSize, key, expect, NULL_PENDING, true);
+            LOG.debug("fault installation failed, deleted {} from heap", failDeltaHeapSize);
+            expect.onHeapSize = faultHeapSize + failDeltaHeapSize;
+            onDiskPoolAccessor.delete(incomingDiskSize);
+            free(fault, true);
+            return false;
+        }
+
+        slotHeapSize = faultHeapSize;
+        pending.remove(key);
+        int slot = insert(hash, fault, existing.faulted);
+        if (existing.faulted) {
+            faultedKeys.put(key, positions[slot]);
+        }
+        return true;
+    }
+
+    private void notifyEviction(final Element evicted) {
+        if (evicted != null) {
+            cacheEventNotificationService.notifyElementEvicted(evicted, false);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A {@link DiskMarker} value is matched on its position in the data file.
+     */
+    @Override
+    Element evict(Object key, int hash, DiskSubstitute value, boolean notify) {
+        if (writeLock().tryLock()) {
+            evictionObserver.begin();
+            Element evictedElement = null;
+            try {
+                evictedElement = evictMapping(key, hash, value);
+                if (evictedElement != null) {
+                    ++modCount;
+                    if (notify) {
+                        cacheEventNotificationService.notifyElementRemovedOrdered(evictedElement);
+                    }
+                    // write-volatile
+                    count = count - 1;
+                }
+                return evictedElement;
+            } finally {
+                writeLock().unlock();
+                if (notify && evictedElement != null) {
+                    if (evictedElement.isExpired()) {
+                        cacheEventNotificationService.notifyElementExpiry(evictedElement, false);
+                    } else {
+                        evictionObserver.end(EvictionOutcome.SUCCESS);
+                        cacheEventNotificationService.notifyElementEvicted(evictedElement, false);
+                    }
+                }
+            }
+        } else {
+            return null;
+        }
+    }
+
+    private Element evictMapping(Object key, int hash, DiskSubstitute value) {
+        Pending existing = key == null ? null : pending.get(key);
+        if (existing != null) {
+            return evictPending(key, existing, value);
+        } else if (value instanceof DiskMarker) {
+            return evictOnDisk(slotOf(hash, ((DiskMarker) value).getPosition()), null);
+        } else if (value == null) {
+            Lookup found = find(key, hash);
+            if (found != null) {
+                return evictOnDisk(found.slot, found.element);
+            }
+        }
+        return null;
+    }
+
+    private Element evictPending(Object key, Pending existing, DiskSubstitute value) {
+        if (!existing.faulted && (value == null || value == existing.placeholder)) {
+            unlink(key, existing, null);
+            return existing.placeholder.getElement();
+        } else {
+            return null;
+        }
+    }
+
+    private Element evictOnDisk(int slot, Element loaded) {
+        if (slot < 0 || faulted[slot]) {
+            return null;
+        }
+        Element element = loaded == null ? load(slot) : loaded;
+        release(null, slot);
+        return element;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are not kept on heap here, so this scans the packed expiry array rather than using an expiry wheel.
+     */
+    @Override
+    void evictExpired(long now) {
+        List<CompactMarker> expired = new ArrayList<CompactMarker>();
+        readLock().lock();
+        try {
+            for (int slot = 0; slot < positions.length; slot++) {
+                if (positions[slot] != EMPTY && expiryMillis(expiries[slot]) < now) {
+                    expired.add(new CompactMarker(this, slot));
+                }
+            }
+        } finally {
+            readLock().unlock();
+        }
+        for (CompactMarker marker : expired) {
+            evict(null, marker.hash, marker);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sampling gives up on this segment rather than wait for a lock held by another thread.
+     */
+    @Override
+    void addRandomSample(ElementSubstituteFilter filter, int sampleSize, Collection<DiskStorageFactory.DiskSubstitute> sampled, int seed) {
+        if (count == 0 || !readLock().tryLock()) {
+            return;
+        }
+        try {
+            int mask = positions.length - 1;
+            int start = seed & mask;
+            int slot = start;
+            do {
+                if (positions[slot] != EMPTY && !faulted[slot]) {
+                    CompactMarker marker = new CompactMarker(this, slot);
+                    if (filter.allows(marker)) {
+                        sampled.add(marker);
+                        if (sampled.size() >= sampleSize) {
+                            return;
+                        }
+                    }
+                }
+                slot = (slot + 1) & mask;
+            } while (slot != start);
+
+            for (Pending p : pending.values()) {
+                if (!p.faulted && filter.allows(p.placeholder)) {
+                    sampled.add(p.placeholder);
+                    if (sampled.size() >= sampleSize) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned iterator works on a snapshot of the index, reading each key from disk as it goes.
+     */
+    @Override
+    Iterator<HashEntry> hashIterator() {
+        return new CompactIterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @FindBugsSuppressWarnings("UL_UNRELEASED_LOCK")
+    boolean cleanUpFailedMarker(final Serializable key, final int hash) {
+        boolean readLocked = false;
+        Placeholder failed = null;
+        if (!isWriteLockedByCurrentThread()) {
+            readLock().lock();
+            readLocked = true;
+        }
+        try {
+            Pending p = pending.get(key);
+            if (p != null && p.placeholder.hasFailedToFlush()) {
+                failed = p.placeholder;
+            }
+        } finally {
+            if (readLocked) {
+                readLock().unlock();
+            }
+        }
+        if (failed != null) {
+            evict(key, hash, failed, false);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Faulted mappings are found through their retained key, so flushing never reads from disk. The faulted flag and the
+     * retained key cannot be cleared in one atomic step, so this runs under the write lock: faults, which only ever set
+     * them under the read lock, cannot interleave with a flush of the same mapping.
+     */
+    @Override
+    boolean flush(final Object key, final int hash, final Element element) {
+        DiskSubstitute diskSubstitute = null;
+        boolean failedToFlush = false;
+        writeLock().lock();
+        try {
+            Pending p = pending.get(key);
+            if (p != null) {
+                final boolean wasFaulted = p.faulted;
+                p.faulted = false;
+                diskSubstitute = p.placeholder;
+                failedToFlush = p.placeholder.hasFailedToFlush();
+                return wasFaulted;
+            }
+            Long position = faultedKeys.remove(key);
+            int slot = position == null ? -1 : slotOf(hash, position);
+            if (slot >= 0) {
+                faulted[slot] = false;
+                hits[slot] = saturatedInt(element.getHitCount());
+                expiries[slot] = TimeUtil.toSecs(element.getExpirationTime());
+                diskSubstitute = marker(slot, key);
+                return true;
+            }
+            return false;
+        } finally {
+            writeLock().unlock();
+            if (diskSubstitute != null && (failedToFlush || element.isExpired())) {
+                evict(key, hash, diskSubstitute);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void clearFaultedBit() {
+        writeLock().lock();
+        try {
+            for (Pending p : pending.values()) {
+                p.faulted = false;
+            }
+            Arrays.fill(faulted, false);
+            faultedKeys.clear();
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFaulted(final int hash, final Object key) {
+        readLock().lock();
+        try {
+            // read-volatile
+            if (count != 0) {
+                Pending p = pending.get(key);
+                if (p != null) {
+                    return p.faulted;
+                }
+                return faultedKeys.containsKey(key);
+            }
+            return false;
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    private Element current(Pending existing, Lookup found) {
+        if (existing != null) {
+            return existing.placeholder.getElement();
+        } else if (found != null) {
+            return found.element;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Release the resources of the given mapping, it must be held under the write lock.
+     */
+    private void unlink(Object key, Pending existing, Lookup found) {
+        if (existing != null) {
+            pending.remove(key);
+            final long outgoingHeapSize = onHeapPoolAccessor.delete(existing.placeholder.onHeapSize);
+            LOG.debug("unlinked pending mapping, deleted {} from heap", outgoingHeapSize);
+        } else if (found != null) {
+            release(key, found.slot);
+        }
+    }
+
+    private void release(Object key, int slot) {
+        DiskMarker marker = marker(slot, key);
+        if (faulted[slot] && key != null) {
+            faultedKeys.remove(key);
+        }
+        delete(slot);
+        free(marker, false);
+        final long outgoingHeapSize = onHeapPoolAccessor.delete(slotHeapSize);
+        LOG.debug("released slot, deleted {} from heap", outgoingHeapSize);
+        final long outgoingDiskSize = onDiskPoolAccessor.delete(marker.getSize());
+        LOG.debug("released slot, deleted {} from disk", outgoingDiskSize);
+    }
+
+    private void free(DiskSubstitute substitute, boolean faultFailure) {
+        disk.free(writeLock(), substitute, faultFailure);
+    }
+
+    /**
+     * Marks a slot as faulted, under the read lock: concurrent faults only ever set the flag, flushes clear it under the
+     * write lock.
+     */
+    private void setFaulted(Object key, int slot) {
+        faulted[slot] = true;
+        faultedKeys.put(key, positions[slot]);
+    }
+
+    private void hit(int slot, Element element) {
+        if (hits[slot] < Integer.MAX_VALUE) {
+            hits[slot]++;
+        }
+        expiries[slot] = TimeUtil.toSecs(element.getExpirationTime());
+    }
+
+    private DiskMarker marker(int slot, Object key) {
+        return new DiskMarker(disk, positions[slot], sizes[slot], key, hits[slot], expiryMillis(expiries[slot]));
+    }
+
+    private Element load(int slot) {
+        return disk.retrieve(marker(slot, null));
+    }
+
+    private Object readKey(int hash, long position) {
+        if (readLock().tryLock()) {
+            try {
+                int slot = slotOf(hash, position);
+                if (slot >= 0) {
+                    return load(slot).getObjectKey();
+                }
+            } finally {
+                readLock().unlock();
+            }
+        }
+        return null;
+    }
+
+    private HashEntry entryAt(int hash, long position) {
+        readLock().lock();
+        try {
+            int slot = slotOf(hash, position);
+            if (slot < 0) {
+                return null;
+            }
+            Object key = load(slot).getObjectKey();
+            return new HashEntry(key, hash, null, marker(slot, key), new AtomicBoolean(faulted[slot]));
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the on-disk mapping for the given key, reading the candidates with a matching hash from disk.
+     */
+    private Lookup find(Object key, int hash) {
+        if (onDiskCount == 0) {
+            return null;
+        }
+        int mask = positions.length - 1;
+        for (int slot = hash & mask; positions[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash) {
+                Element element = load(slot);
+                if (element != null && key.equals(element.getObjectKey())) {
+                    return new Lookup(slot, element);
+                }
+            }
+        }
+        return null;
+    }
+
+    private int slotOf(int hash, long position) {
+        int mask = positions.length - 1;
+        for (int slot = hash & mask; positions[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (positions[slot] == position && hashes[slot] == hash) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int insert(int hash, DiskMarker marker, boolean isFaulted) {
+        if (onDiskCount + 1 > threshold) {
+            rehash();
+        }
+        int mask = positions.length - 1;
+        int slot = hash & mask;
+        while (positions[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        hashes[slot] = hash;
+        positions[slot] = marker.getPosition();
+        sizes[slot] = marker.getSize();
+        hits[slot] = saturatedInt(marker.getHitCount());
+        expiries[slot] = TimeUtil.toSecs(marker.getExpirationTime());
+        faulted[slot] = isFaulted;
+        onDiskCount++;
+        return slot;
+    }
+
+    /**
+     * Remove the given slot, shifting back the following entries of its probe sequence so that no tombstone is needed.
+     */
+    private void delete(int slot) {
+        int mask = positions.length - 1;
+        int hole = slot;
+        for (int next = (slot + 1) & mask; positions[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hashes[next] & mask;
+            boolean reachable = hole <= next ? (home > hole && home <= next) : (home > hole || home <= next);
+            if (!reachable) {
+                move(next, hole);
+                hole = next;
+            }
+        }
+        positions[hole] = EMPTY;
+        faulted[hole] = false;
+        onDiskCount--;
+    }
+
+    private void move(int from, int to) {
+        hashes[to] = hashes[from];
+        positions[to] = positions[from];
+        sizes[to] = sizes[from];
+        hits[to] = hits[from];
+        expiries[to] = expiries[from];
+        faulted[to] = faulted[from];
+    }
+
+    private void rehash() {
+        int oldCapacity = positions.length;
+        if (oldCapacity >= MAXIMUM_CAPACITY) {
+            return;
+        }
+        int[] oldHashes = hashes;
+        long[] oldPositions = positions;
+        int[] oldSizes = sizes;
+        int[] oldHits = hits;
+        int[] oldExpiries = expiries;
+        boolean[] oldFaulted = faulted;
+
+        allocate(oldCapacity << 1);
+        int mask = positions.length - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            if (oldPositions[i] != EMPTY) {
+                int slot = oldHashes[i] & mask;
+                while (positions[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                positions[slot] = oldPositions[i];
+                sizes[slot] = oldSizes[i];
+                hits[slot] = oldHits[i];
+                expiries[slot] = oldExpiries[i];
+                faulted[slot] = oldFaulted[i];
+            }
+        }
+    }
+
+    private static long expiryMillis(int seconds) {
+        return seconds == Integer.MAX_VALUE ? Long.MAX_VALUE : TimeUtil.toMillis(seconds);
+    }
+
+    private static int saturatedInt(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return super.toString() + " onDisk: " + onDiskCount + " pending: " + pending.size();
+    }
+
+    /**
+     * A mapping that is not on disk yet.
+     */
+    private static final class Pending {
+        private final int hash;
+        private final Placeholder placeholder;
+        private volatile boolean faulted;
+
+        private Pending(int hash, Placeholder placeholder, boolean faulted) {
+            this.hash = hash;
+            this.placeholder = placeholder;
+            this.faulted = faulted;
+        }
+    }
+
+    /**
+     * The slot of an on-disk mapping together with the element read from it.
+     */
+    private static final class Lookup {
+        private final int slot;
+        private final Element element;
+
+        private Lookup(int slot, Element element) {
+            this.slot = slot;
+            this.element = element;
+        }
+    }
+
+    /**
+     * A marker handed out for eviction sampling, its key is only read from disk if the sampler asks for it.
+     */
+    private static final class CompactMarker extends DiskMarker {
+
+        private final transient CompactSegment segment;
+        private final int hash;
+        private transient volatile Object resolvedKey;
+
+        private CompactMarker(CompactSegment segment, int slot) {
+            super(segment.disk, segment.positions[slot], segment.sizes[slot], null, segment.hits[slot],
+                expiryMillis(segment.expiries[slot]));
+            this.segment = segment;
+            this.hash = segment.hashes[slot];
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Returns {@code null} if the mapping has gone or its segment is locked by another thread.
+         */
+        @Override
+        Object getKey() {
+            Object key = resolvedKey;
+            if (key == null) {
+                key = segment.readKey(hash, getPosition());
+                resolvedKey = key;
+            }
+            return key;
+        }
+    }
+
+    /**
+     * An iterator over a snapshot of the mappings within this Segment.
+     */
+    private final class CompactIterator implements Iterator<HashEntry> {
+        private final List<HashEntry> pendingEntries;
+        private final int[] snapshotHashes;
+        private final long[] snapshotPositions;
+        private int pendingIndex;
+        private int onDiskIndex;
+        private HashEntry nextEntry;
+        private HashEntry lastReturned;
+
+        private CompactIterator() {
+            readLock().lock();
+            try {
+                pendingEntries = new ArrayList<HashEntry>(pending.size());
+                for (Map.Entry<Object, Pending> e : pending.entrySet()) {
+                    Pending p = e.getValue();
+                    pendingEntries.add(new HashEntry(e.getKey(), p.hash, null, p.placeholder, new AtomicBoolean(p.faulted)));
+                }
+                snapshotHashes = new int[onDiskCount];
+                snapshotPositions = new long[onDiskCount];
+                int i = 0;
+                for (int slot = 0; slot < positions.length; slot++) {
+                    if (positions[slot] != EMPTY) {
+                        snapshotHashes[i] = hashes[slot];
+                        snapshotPositions[i++] = positions[slot];
+                    }
+                }
+            } finally {
+                readLock().unlock();
+            }
+            advance();
+        }
+
+        private void advance() {
+            if (pendingIndex < pendingEntries.size()) {
+                nextEntry = pendingEntries.get(pendingIndex++);
+            } else {
+                nextEntry = null;
+                while (nextEntry == null && onDiskIndex < snapshotPositions.length) {
+                    nextEntry = entryAt(snapshotHashes[onDiskIndex], snapshotPositions[onDiskIndex]);
+                    onDiskIndex++;
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean hasNext() {
+            return nextEntry != null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public HashEntry next() {
+            if (nextEntry == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = nextEntry;
+            advance();
+            return lastReturned;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            CompactSegment.this.remove(lastReturned.key, lastReturned.hash, null, null);
+            lastReturned = null;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheConfiguration.DiskAccessMode;
+
+/**
+ * The I/O engine used by a {@link DiskStorageFactory} to read and write serialized elements in its data file.
+ * <p>
+ * Implementations only move bytes around: the layout of the data file is entirely owned by the factory's
+ * {@link net.sf.ehcache.store.disk.ods.FileAllocationTree} and {@link DiskStorageFactory.DiskMarker} instances, so data files
+ * written by one engine can be read back by any other.
+ */
+abstract class DiskDataAccess {
+
+    /**
+     * Create the data access engine selected by the given cache configuration.
+     *
+     * @param file the data file
+     * @param config the configuration of the cache owning the file
+     * @return a data access engine for the file
+     * @throws FileNotFoundException if the data file cannot be opened
+     */
+    static DiskDataAccess create(File file, CacheConfiguration config) throws FileNotFoundException {
+        DiskAccessMode mode = config.getDiskAccessMode();
+        switch (mode) {
+            case STRIPED:
+                return new StripedDiskDataAccess(file, config.getDiskAccessStripes());
+            case CHANNEL:
+                return new ChannelDiskDataAccess(file);
+            case MAPPED:
+                return new MappedDiskDataAccess(file);
+            default:
+                throw new IllegalArgumentException("Unsupported disk access mode " + mode);
+        }
+    }
+
+    /**
+     * Read {@code size} bytes from the data file starting at {@code position}.
+     * <p>
+     * The returned buffer is positioned at the first byte read and limited to the last, it may be a view of a
+     * shared region and must therefore be treated as read-only by the caller.
+     *
+     * @param position the file offset to read from
+     * @param size the number of bytes to read
+     * @param key the key the record belongs to
+     * @return a buffer containing the record
+     * @throws IOException on read error
+     */
+    abstract ByteBuffer read(long position, int size, Object key) throws IOException;
+
+    /**
+     * Write {@code length} bytes of {@code data} at the given file offset.
+     *
+     * @param position the file offset to write at
+     * @param data the source array
+     * @param offset offset of the first byte in the source array
+     * @param length number of bytes to write
+     * @param key the key the record belongs to
+     * @throws IOException on write error
+     */
+    abstract void write(long position, byte[] data, int offset, int length, Object key) throws IOException;
+
+    /**
+     * Return the current length of the data file.
+     *
+     * @return the data file length in bytes
+     * @throws IOException if the length cannot be determined
+     */
+    abstract long length() throws IOException;
+
+    /**
+     * Truncate (or extend) the data file to the given length.
+     *
+     * @param length the new length of the file
+     * @throws IOException if the file cannot be resized
+     */
+    abstract void setLength(long length) throws IOException;
+
+    /**
+     * Return the file the space allocator may shrink as regions at its tail are freed, or {@code null} if
+     * this engine cannot tolerate the file being truncated underneath it.
+     *
+     * @return the file handed to the allocator, or {@code null}
+     */
+    abstract RandomAccessFile getAllocatorFile();
+
+    /**
+     * Release all resources held by this engine.
+     *
+     * @throws IOException on close failure
+     */
+    abstract void close() throws IOException;
+
+    /**
+     * Round the given stripe count up to the next power of two.
+     *
+     * @param stripes requested stripes
+     * @return the rounded stripe count
+     */
+    static int roundUpToPowerOfTwo(int stripes) {
+        int rounded = stripes;
+        while ((rounded & (rounded - 1)) != 0) {
+            ++rounded;
+        }
+        return rounded;
+    }
+}
@@ -16,7 +16,6 @@
 
 package net.sf.ehcache.store.disk;
 
-import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -25,11 +24,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ConcurrentModificationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -37,21 +40,25 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.DiskStorePathManager;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
-import net.sf.ehcache.concurrent.ConcurrencyUtil;
 import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.PinningConfiguration;
 import net.sf.ehcache.event.RegisteredEventListeners;
 import net.sf.ehcache.pool.sizeof.annotations.IgnoreSizeOf;
+import net.sf.ehcache.serializer.Serializer;
+import net.sf.ehcache.serializer.StatefulSerializer;
 import net.sf.ehcache.store.disk.ods.FileAllocationTree;
 import net.sf.ehcache.store.disk.ods.Region;
+import net.sf.ehcache.util.ByteBufferInputStream;
 import net.sf.ehcache.util.MemoryEfficientByteArrayOutputStream;
 import net.sf.ehcache.util.PreferredLoaderObjectInputStream;
 import net.sf.ehcache.util.TimeUtil;
+import net.sf.ehcache.util.VmUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,6 +80,9 @@ public class DiskStorageFactory {
     private static final int MEGABYTE = 1024 * 1024;
     private static final int MAX_EVICT = 5;
     private static final int SAMPLE_SIZE = 30;
+    private static final int MAX_WRITE_BYTES = MEGABYTE;
+    private static final int MAX_READ_BYTES = MEGABYTE;
+    private static final int MAX_READ_GAP = 4 * 1024;
 
     private static final Logger LOG = LoggerFactory.getLogger(DiskStorageFactory.class.getName());
 
@@ -81,16 +91,20 @@ public class DiskStorageFactory {
      */
     protected volatile DiskStore                  store;
 
-    private final BlockingQueue<Runnable> diskQueue;
     /**
-     * Executor service used to write elements to disk
+     * Executor service used for index writes, frees and expiry
      */
     private final ScheduledThreadPoolExecutor diskWriter;
 
+    /**
+     * Writer threads draining spooled elements to disk in batches
+     */
+    private final BatchingDiskWriter<Placeholder> elementWriter;
+
     private final long queueCapacity;
 
     private final File             file;
-    private final RandomAccessFile[] dataAccess;
+    private final DiskDataAccess dataAccess;
 
     private final FileAllocationTree allocator;
 
@@ -104,6 +118,10 @@ public class DiskStorageFactory {
 
     private final File indexFile;
 
+    private final File serializerStateFile;
+
+    private final Serializer serializer;
+
     private final IndexWriteTask flushTask;
 
     private volatile int diskCapacity;
@@ -127,6 +145,8 @@ public class DiskStorageFactory {
         this.file = diskStorePathManager.getFile(cache.getName(), ".data");
 
         this.indexFile = diskStorePathManager.getFile(cache.getName(), ".index");
+        this.serializerStateFile = diskStorePathManager.getFile(cache.getName(), ".serializer");
+        this.serializer = cache.getCacheConfiguration().getSerializer();
         this.pinningEnabled = determineCachePinned(cache.getCacheConfiguration());
         this.diskPersistent = cache.getCacheConfiguration().isDiskPersistent();
 
@@ -138,23 +158,28 @@ public class DiskStorageFactory {
         } else if (!diskPersistent) {
             deleteFile(file);
             deleteFile(indexFile);
+            deleteFile(serializerStateFile);
         }
 
         try {
-            dataAccess = allocateRandomAccessFiles(file, cache.getCacheConfiguration().getDiskAccessStripes());
+            dataAccess = DiskDataAccess.create(file, cache.getCacheConfiguration());
         } catch (FileNotFoundException e) {
             throw new CacheException(e);
         }
-        this.allocator = new FileAllocationTree(Long.MAX_VALUE, dataAccess[0]);
+        this.allocator = new FileAllocationTree(Long.MAX_VALUE, dataAccess.getAllocatorFile());
 
         diskWriter = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
             public Thread newThread(Runnable r) {
-                Thread t = new Thread(r, file.getName());
-                t.setDaemon(false);
-                return t;
+                return VmUtils.newThread(r, file.getName(), false);
             }
         });
-        this.diskQueue = diskWriter.getQueue();
+        this.elementWriter = new BatchingDiskWriter<Placeholder>(file.getName() + "-writer",
+                cache.getCacheConfiguration().getDiskWriterThreads(), cache.getCacheConfiguration().getDiskWriteBatchSize(),
+                new BatchingDiskWriter.BatchHandler<Placeholder>() {
+                    public void write(List<Placeholder> batch) {
+                        writeBatch(batch);
+                    }
+                });
         this.eventService = cache.getCacheEventNotificationService();
         this.queueCapacity = cache.getCacheConfiguration().getDiskSpoolBufferSizeMB() * MEGABYTE;
         this.diskCapacity = cache.getCacheConfiguration().getMaxElementsOnDisk();
@@ -176,6 +201,10 @@ public class DiskStorageFactory {
                 deleteFile(indexFile);
             }
         }
+        if (indexFile.exists() && serializer instanceof StatefulSerializer && !serializerStateFile.exists()) {
+            LOG.warn("The serializer state for data file {} is missing. Deleting index file {}", getDataFile(), indexFile);
+            deleteFile(indexFile);
+        }
     }
 
     private boolean determineCachePinned(CacheConfiguration cacheConfiguration) {
@@ -196,37 +225,17 @@ public class DiskStorageFactory {
         }
     }
 
-    private static RandomAccessFile[] allocateRandomAccessFiles(File f, int stripes) throws FileNotFoundException {
-        int roundedStripes = stripes;
-        while ((roundedStripes & (roundedStripes - 1)) != 0) {
-            ++roundedStripes;
-        }
-
-        RandomAccessFile [] result = new RandomAccessFile[roundedStripes];
-        for (int i = 0; i < result.length; ++i) {
-            result[i] = new RandomAccessFile(f, "rw");
-        }
-
-        return result;
-    }
-
-    private RandomAccessFile getDataAccess(Object key) {
-        return this.dataAccess[ConcurrencyUtil.selectLock(key, dataAccess.length)];
-    }
-
     /**
      * Return this size in bytes of this factory
      *
      * @return this size in bytes of this factory
      */
     public long getOnDiskSizeInBytes() {
-        synchronized (dataAccess[0]) {
-            try {
-                return dataAccess[0].length();
-            } catch (IOException e) {
-                LOG.warn("Exception trying to determine store size", e);
-                return 0;
-            }
+        try {
+            return dataAccess.length();
+        } catch (IOException e) {
+            LOG.warn("Exception trying to determine store size", e);
+            return 0;
         }
     }
 
@@ -289,21 +298,26 @@ public class DiskStorageFactory {
      * Shrink this store's data file down to a minimal size for its contents.
      */
     protected void shrinkDataFile() {
-        synchronized (dataAccess[0]) {
-            try {
-                dataAccess[0].setLength(allocator.getFileSize());
-            } catch (IOException e) {
-                LOG.error("Exception trying to shrink data file to size", e);
-            }
+        try {
+            dataAccess.setLength(allocator.getFileSize());
+        } catch (IOException e) {
+            LOG.error("Exception trying to shrink data file to size", e);
         }
     }
     /**
      * Shuts down this disk factory.
      * <p>
-     * This shuts down the executor and then waits for its termination, before closing the data file.
+     * This shuts down the element writers and the executor and then waits for their termination, before closing the data file.
      * @throws java.io.IOException if an IO error occurred
      */
     protected void shutdown() throws IOException {
+        try {
+            if (!elementWriter.shutdown(SHUTDOWN_GRACE_PERIOD, TimeUnit.SECONDS)) {
+                LOG.warn("Disk writers of [" + file.getName() + "] did not terminate within " + SHUTDOWN_GRACE_PERIOD + " seconds");
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Received exception while waiting for shutdown", e);
+        }
         diskWriter.shutdown();
         for (int i = 0; i < SHUTDOWN_GRACE_PERIOD; i++) {
             try {
@@ -317,15 +331,12 @@ public class DiskStorageFactory {
             }
         }
 
-        for (final RandomAccessFile raf : dataAccess) {
-            synchronized (raf) {
-                raf.close();
-            }
-        }
+        dataAccess.close();
 
         if (!diskPersistent) {
             deleteFile(file);
             deleteFile(indexFile);
+            deleteFile(serializerStateFile);
         }
     }
 
@@ -357,21 +368,57 @@ public class DiskStorageFactory {
      * @throws ClassNotFoundException on deserialization error
      */
     protected Element read(DiskMarker marker) throws IOException, ClassNotFoundException {
-        final byte[] buffer = new byte[marker.getSize()];
-        final RandomAccessFile data = getDataAccess(marker.getKey());
-        synchronized (data) {
-            // Load the element
-            data.seek(marker.getPosition());
-            data.readFully(buffer);
-        }
+        final ByteBuffer buffer = dataAccess.read(marker.getPosition(), marker.getSize(), marker.getKey());
 
-        ObjectInputStream objstr = new PreferredLoaderObjectInputStream(new ByteArrayInputStream(buffer), classLoader);
+        return (Element) serializer.deserialize(ByteBufferInputStream.of(buffer), classLoader);
+    }
 
-        try {
-            return (Element) objstr.readObject();
-        } finally {
-            objstr.close();
+    /**
+     * Read the data at the given markers in as few contiguous reads as possible, and return the associated deserialized Elements.
+     * <p>
+     * Markers are visited in file order, records lying close enough to each other being fetched by a single read.
+     *
+     * @param markers markers to read
+     * @return deserialized Elements, in the order of the markers
+     * @throws java.io.IOException on read error
+     * @throws ClassNotFoundException on deserialization error
+     */
+    protected Element[] readBatch(List<DiskMarker> markers) throws IOException, ClassNotFoundException {
+        DiskMarker[] sorted = markers.toArray(new DiskMarker[markers.size()]);
+        Arrays.sort(sorted, new Comparator<DiskMarker>() {
+            public int compare(DiskMarker a, DiskMarker b) {
+                return a.getPosition() < b.getPosition() ? -1 : (a.getPosition() == b.getPosition() ? 0 : 1);
+            }
+        });
+
+        Map<DiskMarker, Element> read = new IdentityHashMap<DiskMarker, Element>(sorted.length);
+        int first = 0;
+        while (first < sorted.length) {
+            long start = sorted[first].getPosition();
+            long end = start + sorted[first].getSize();
+            int last = first + 1;
+            for (; last < sorted.length; last++) {
+                long recordEnd = sorted[last].getPosition() + sorted[last].getSize();
+                if (sorted[last].getPosition() - end > MAX_READ_GAP || recordEnd - start > MAX_READ_BYTES) {
+                    break;
+                }
+                end = Math.max(end, recordEnd);
+            }
+            final ByteBuffer buffer = dataAccess.read(start, (int) (end - start), sorted[first].getKey());
+            for (int i = first; i < last; i++) {
+                ByteBuffer record = buffer.duplicate();
+                int offset = buffer.position() + (int) (sorted[i].getPosition() - start);
+                record.limit(offset + sorted[i].getSize()).position(offset);
+                read.put(sorted[i], (Element) serializer.deserialize(ByteBufferInputStream.of(record.slice()), classLoader));
+            }
+            first = last;
         }
+
+        Element[] elements = new Element[markers.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = read.get(markers.get(i));
+        }
+        return elements;
     }
 
     /**
@@ -387,20 +434,92 @@ public class DiskStorageFactory {
         elementSize = bufferLength;
         DiskMarker marker = alloc(element, bufferLength);
         // Write the record
-        final RandomAccessFile data = getDataAccess(element.getObjectKey());
-        synchronized (data) {
-            data.seek(marker.getPosition());
-            data.write(buffer.toByteArray(), 0, bufferLength);
-        }
+        dataAccess.write(marker.getPosition(), buffer.getBytes(), 0, bufferLength, element.getObjectKey());
         return marker;
     }
 
+    /**
+     * Write the given placeholders to disk in as few contiguous writes as possible, and fault in the resultant markers.
+     *
+     * @param batch placeholders to write
+     */
+    void writeBatch(List<Placeholder> batch) {
+        List<Placeholder> placeholders = new ArrayList<Placeholder>(batch.size());
+        List<MemoryEfficientByteArrayOutputStream> buffers = new ArrayList<MemoryEfficientByteArrayOutputStream>(batch.size());
+        int length = 0;
+        for (Placeholder placeholder : batch) {
+            if (store.containsKey(placeholder.getKey())) {
+                try {
+                    MemoryEfficientByteArrayOutputStream buffer = serializeElement(placeholder.getElement());
+                    if (length > 0 && length + buffer.size() > MAX_WRITE_BYTES) {
+                        writeContiguous(placeholders, buffers, length);
+                        length = 0;
+                    }
+                    placeholders.add(placeholder);
+                    buffers.add(buffer);
+                    length += buffer.size();
+                } catch (Throwable e) {
+                    LOG.error("Disk Write of " + placeholder.getKey() + " failed: ", e);
+                    store.evict(placeholder.getKey(), placeholder);
+                }
+            }
+        }
+        writeContiguous(placeholders, buffers, length);
+    }
+
+    private void writeContiguous(List<Placeholder> placeholders, List<MemoryEfficientByteArrayOutputStream> buffers, int length) {
+        if (placeholders.isEmpty()) {
+            return;
+        }
+        elementSize = length / placeholders.size();
+        Region region = null;
+        try {
+            region = allocator.alloc(length);
+            if (buffers.size() == 1) {
+                dataAccess.write(region.start(), buffers.get(0).getBytes(), 0, length, placeholders.get(0).getKey());
+            } else {
+                byte[] data = new byte[length];
+                int offset = 0;
+                for (MemoryEfficientByteArrayOutputStream buffer : buffers) {
+                    System.arraycopy(buffer.getBytes(), 0, data, offset, buffer.size());
+                    offset += buffer.size();
+                }
+                dataAccess.write(region.start(), data, 0, length, placeholders.get(0).getKey());
+            }
+        } catch (Throwable e) {
+            LOG.error("Disk Write of " + placeholders.size() + " elements failed: ", e);
+            if (region != null) {
+                allocator.free(region);
+            }
+            for (Placeholder placeholder : placeholders) {
+                store.evict(placeholder.getKey(), placeholder);
+            }
+            placeholders.clear();
+            buffers.clear();
+            return;
+        }
+
+        long position = region.start();
+        for (int i = 0; i < placeholders.size(); i++) {
+            Placeholder placeholder = placeholders.get(i);
+            int size = buffers.get(i).size();
+            DiskMarker marker = createMarker(position, size, placeholder.getElement());
+            position += size;
+            if (store.fault(placeholder.getKey(), placeholder, marker)) {
+                int disk = onDisk.incrementAndGet();
+                onDiskEvict(disk, placeholder.getKey());
+            }
+        }
+        placeholders.clear();
+        buffers.clear();
+    }
+
     private MemoryEfficientByteArrayOutputStream serializeElement(Element element) throws IOException {
         // A ConcurrentModificationException can occur because Java's serialization
         // mechanism is not threadsafe and POJOs are seldom implemented in a threadsafe way.
         // e.g. we are serializing an ArrayList field while another thread somewhere in the application is appending to it.
         try {
-            return MemoryEfficientByteArrayOutputStream.serialize(element);
+            return MemoryEfficientByteArrayOutputStream.serialize(element, serializer);
         } catch (ConcurrentModificationException e) {
             throw new CacheException("Failed to serialize element due to ConcurrentModificationException. " +
                                      "This is frequently the result of inappropriately sharing thread unsafe object " +
@@ -429,7 +548,34 @@ public class DiskStorageFactory {
      * @return {@code true} if the disk write queue is full.
      */
     public boolean bufferFull() {
-        return (diskQueue.size() * elementSize) > queueCapacity;
+        return ((long) elementWriter.getQueueDepth() * elementSize) > queueCapacity;
+    }
+
+    /**
+     * Return the number of elements waiting to be written to disk.
+     *
+     * @return the disk write queue length
+     */
+    public int getWriteQueueLength() {
+        return elementWriter.getQueueDepth();
+    }
+
+    /**
+     * Return the mean number of elements written to disk per batch.
+     *
+     * @return the mean write batch size
+     */
+    public double getAverageWriteBatchSize() {
+        return elementWriter.getAverageBatchSize();
+    }
+
+    /**
+     * Return the mean time taken to write a batch of elements to disk.
+     *
+     * @return the mean batch write latency in nanoseconds
+     */
+    public long getAverageWriteLatency() {
+        return elementWriter.getAverageWriteLatency();
     }
 
     /**
@@ -637,7 +783,7 @@ public class DiskStorageFactory {
          */
         @Override
         public void installed() {
-            DiskStorageFactory.this.schedule(new PersistentDiskWriteTask(this));
+            elementWriter.submit(key.hashCode(), this);
         }
 
         /**
@@ -722,6 +868,21 @@ public class DiskStorageFactory {
             this.hitCount = hits;
         }
 
+        /**
+         * Create a new marker tied to the given factory instance.
+         *
+         * @param factory factory responsible for this marker
+         * @param position position on disk where the element is stored
+         * @param size size of the serialized element
+         * @param key key to which this element is mapped
+         * @param hits hit count for this element
+         * @param expiry expiration time of this element
+         */
+        DiskMarker(DiskStorageFactory factory, long position, int size, Object key, long hits, long expiry) {
+            this(factory, position, size, key, hits);
+            this.expiry = expiry;
+        }
+
         /**
          * Key to which this Element is mapped.
          *
@@ -745,7 +906,7 @@ public class DiskStorageFactory {
          *
          * @return disk offset
          */
-        private long getPosition() {
+        long getPosition() {
             return position;
         }
 
@@ -813,19 +974,7 @@ public class DiskStorageFactory {
          * {@inheritDoc}
          */
         public void run() {
-            long now = System.currentTimeMillis();
-            for (Object key : store.keySet()) {
-                Object value = store.unretrievedGet(key);
-                if (created(value) && value instanceof DiskStorageFactory.DiskMarker) {
-                    checkExpiry((DiskMarker) value, now);
-                }
-            }
-        }
-
-        private void checkExpiry(DiskMarker marker, long now) {
-            if (marker.getExpirationTime() < now) {
-                store.evict(marker.getKey(), marker);
-            }
+            store.evictExpired(System.currentTimeMillis());
         }
     }
 
@@ -899,6 +1048,47 @@ public class DiskStorageFactory {
         }
     }
 
+    /**
+     * Decodes the supplied {@link DiskSubstitute}s, reading all of those already written to disk in a single sorted batch,
+     * and updating statistics.
+     *
+     * @param objects ElementSubstitutes to decode
+     * @return the decoded elements, in the order of the substitutes
+     */
+    public Element[] retrieveAll(List<DiskSubstitute> objects) {
+        Element[] elements = new Element[objects.size()];
+        List<DiskMarker> markers = new ArrayList<DiskMarker>();
+        for (int i = 0; i < elements.length; i++) {
+            DiskSubstitute object = objects.get(i);
+            if (object instanceof DiskMarker) {
+                markers.add((DiskMarker) object);
+            } else if (object instanceof Placeholder) {
+                elements[i] = ((Placeholder) object).getElement();
+            }
+        }
+        if (markers.isEmpty()) {
+            return elements;
+        }
+
+        Element[] read;
+        try {
+            read = readBatch(markers);
+        } catch (IOException e) {
+            throw new CacheException(e);
+        } catch (ClassNotFoundException e) {
+            throw new CacheException(e);
+        }
+        int m = 0;
+        for (int i = 0; i < elements.length; i++) {
+            if (objects.get(i) instanceof DiskMarker) {
+                Element e = read[m++];
+                ((DiskMarker) objects.get(i)).hit(e);
+                elements[i] = e;
+            }
+        }
+        return elements;
+    }
+
     /**
      * Returns <code>true</code> if this factory created the given object.
      *
@@ -927,6 +1117,7 @@ public class DiskStorageFactory {
             shutdown();
             if (diskStorePathManager.isAutoCreated()) {
                 deleteFile(indexFile);
+                deleteFile(serializerStateFile);
                 delete();
             }
         } catch (IOException e) {
@@ -1039,7 +1230,11 @@ public class DiskStorageFactory {
         DiskSubstitute hintTarget = null;
         for (DiskSubstitute substitute : sample) {
             if ((target == null) || (substitute.getHitCount() < target.getHitCount())) {
-                if (substitute.getKey().equals(keyHint)) {
+                Object key = substitute.getKey();
+                if (key == null) {
+                    // the key of a compactly indexed entry could not be read back, the entry is gone or its segment is busy
+                    continue;
+                } else if (key.equals(keyHint)) {
                     hintTarget = substitute;
                 } else {
                     target = substitute;
@@ -1084,6 +1279,7 @@ public class DiskStorageFactory {
 
         private final File index;
         private final boolean clearOnFlush;
+        private final Lock lock = new ReentrantLock();
 
         /**
          * Create a disk flush task that writes to the given file.
@@ -1099,7 +1295,18 @@ public class DiskStorageFactory {
         /**
          * {@inheritDoc}
          */
-        public synchronized Void call() throws IOException, InterruptedException {
+        public Void call() throws IOException, InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                writeIndex();
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        }
+
+        private void writeIndex() throws IOException, InterruptedException {
+            elementWriter.awaitWritten();
             ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(index));
             try {
                 for (Object key : store.keySet()) {
@@ -1120,7 +1327,14 @@ public class DiskStorageFactory {
             } finally {
                 oos.close();
             }
-            return null;
+            if (serializer instanceof StatefulSerializer) {
+                FileOutputStream state = new FileOutputStream(serializerStateFile);
+                try {
+                    ((StatefulSerializer) serializer).saveState(state);
+                } finally {
+                    state.close();
+                }
+            }
         }
 
     }
@@ -1131,6 +1345,14 @@ public class DiskStorageFactory {
         }
 
         try {
+            if (serializer instanceof StatefulSerializer) {
+                FileInputStream state = new FileInputStream(serializerStateFile);
+                try {
+                    ((StatefulSerializer) serializer).loadState(state, classLoader);
+                } finally {
+                    state.close();
+                }
+            }
             ObjectInputStream ois = new PreferredLoaderObjectInputStream(new FileInputStream(indexFile), classLoader);
             try {
                 Object key = ois.readObject();
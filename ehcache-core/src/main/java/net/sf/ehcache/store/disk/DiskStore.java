@@ -39,6 +39,7 @@ import net.sf.ehcache.store.AuthoritativeTier;
 import net.sf.ehcache.store.CacheStore;
 import net.sf.ehcache.store.ElementValueComparator;
 import net.sf.ehcache.store.Policy;
+import net.sf.ehcache.store.SegmentedBulkOperations;
 import net.sf.ehcache.store.Store;
 import net.sf.ehcache.store.StoreOperationOutcomes.GetOutcome;
 import net.sf.ehcache.store.StoreOperationOutcomes.PutOutcome;
@@ -66,6 +67,7 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -110,6 +112,8 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
     private final PoolAccessor onHeapPoolAccessor;
     private final PoolAccessor onDiskPoolAccessor;
 
+    private final SegmentedBulkOperations<Segment> bulkOperations;
+
     private volatile CacheLockProvider lockProvider;
     private volatile Set<Object> keySet;
 
@@ -128,11 +132,39 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
             SizeOfPolicyConfiguration.resolveBehavior(cache).equals(SizeOfPolicyConfiguration.MaxDepthExceededBehavior.ABORT));
         this.onDiskPoolAccessor = onDiskPool.createPoolAccessor(new DiskStoreDiskPoolParticipant(hitRate, missRate), new DiskSizeOfEngine());
 
+        boolean compact = cache.getCacheConfiguration().getDiskIndex() == CacheConfiguration.DiskIndex.COMPACT;
         for (int i = 0; i < this.segments.length; ++i) {
-            this.segments[i] = new Segment(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR,
-                    disk, cache.getCacheConfiguration(), onHeapPoolAccessor, onDiskPoolAccessor,
-                    cache.getCacheEventNotificationService(), evictionObserver);
+            if (compact) {
+                this.segments[i] = new CompactSegment(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR,
+                        disk, cache.getCacheConfiguration(), onHeapPoolAccessor, onDiskPoolAccessor,
+                        cache.getCacheEventNotificationService(), evictionObserver);
+            } else {
+                this.segments[i] = new Segment(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR,
+                        disk, cache.getCacheConfiguration(), onHeapPoolAccessor, onDiskPoolAccessor,
+                        cache.getCacheEventNotificationService(), evictionObserver);
+            }
         }
+        this.bulkOperations = new SegmentedBulkOperations<Segment>(segments, segmentShift, getObserver, putObserver, removeObserver) {
+            @Override
+            protected int hash(Object key) {
+                return DiskStore.hash(key.hashCode());
+            }
+
+            @Override
+            protected void getAll(Segment segment, List<Object> keys, boolean markFaulted, Map<Object, Element> result) {
+                segment.getAll(keys, markFaulted, result);
+            }
+
+            @Override
+            protected Element[] putAll(Segment segment, List<Element> elements) {
+                return segment.putAll(elements, false);
+            }
+
+            @Override
+            protected int removeAll(Segment segment, List<Object> keys) {
+                return segment.removeAll(keys);
+            }
+        };
 
         this.disk = disk;
         this.disk.bind(this);
@@ -218,6 +250,11 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
     }
 
 
+    @Override
+    public Map<Object, Element> faultAll(final Collection<?> keys, final boolean updateStats) {
+        return bulkOperations.getAll(keys, true, true);
+    }
+
     @Override
     public boolean putFaulted(final Element element) {
         if (element == null) {
@@ -387,6 +424,17 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         disk.expireElements();
     }
 
+    /**
+     * Evict the on-disk mappings that expired before the given time.
+     *
+     * @param now the current time in milliseconds
+     */
+    void evictExpired(long now) {
+        for (Segment segment : segments) {
+            segment.evictExpired(now);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -455,6 +503,36 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         }
     }
 
+    /**
+     * Return the number of elements waiting to be written to disk.
+     *
+     * @return the disk write queue length
+     */
+    @Statistic(name = "write-queue-length", tags = "local-disk")
+    public int getWriteQueueLength() {
+        return disk.getWriteQueueLength();
+    }
+
+    /**
+     * Return the mean number of elements written to disk per batch.
+     *
+     * @return the mean write batch size
+     */
+    @Statistic(name = "write-batch-size", tags = "local-disk")
+    public double getAverageWriteBatchSize() {
+        return disk.getAverageWriteBatchSize();
+    }
+
+    /**
+     * Return the mean time taken to write a batch of elements to disk.
+     *
+     * @return the mean batch write latency in nanoseconds
+     */
+    @Statistic(name = "write-latency", tags = "local-disk")
+    public long getAverageWriteLatency() {
+        return disk.getAverageWriteLatency();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -514,6 +592,16 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements are grouped by segment, each segment being locked once for all of its elements.
+     */
+    @Override
+    public void putAll(Collection<Element> elements) {
+        bulkOperations.putAll(elements);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -564,6 +652,26 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, each segment being locked once and reading its elements from disk as a single batch.
+     */
+    @Override
+    public Map<Object, Element> getAll(Collection<?> keys) {
+        return bulkOperations.getAll(keys, false, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, each segment being locked once and reading its elements from disk as a single batch.
+     */
+    @Override
+    public Map<Object, Element> getAllQuiet(Collection<?> keys) {
+        return bulkOperations.getAll(keys, false, false);
+    }
+
     /**
      * Return the unretrieved (undecoded) value for this key
      *
@@ -629,6 +737,17 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, each segment being locked once for all of its keys. A remove is recorded for each
+     * mapping actually removed.
+     */
+    @Override
+    public void removeAll(Collection<?> keys) {
+        bulkOperations.removeAll(keys);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -884,7 +1003,7 @@ public final class DiskStore extends AbstractStore implements StripedReadWriteLo
         return sampled;
     }
 
-    private static int hash(int hash) {
+    static int hash(int hash) {
         int spread = hash;
         spread += (spread << FIFTEEN ^ FFFFCD7D);
         spread ^= spread >>> TEN;
@@ -0,0 +1,197 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A disk access engine mapping the data file into memory in fixed size segments.
+ * <p>
+ * Reads contained in a single segment return a view of the mapping and so involve neither a system call nor a copy.
+ * Segments are mapped lazily as the file grows and are never unmapped before {@link #close()}, which means the data
+ * file is not truncated while this engine is in use: freed space at the tail of the file is simply reused. The file
+ * therefore spans whole segments, the logical length of the data being tracked apart, and restored on close.
+ */
+final class MappedDiskDataAccess extends DiskDataAccess {
+
+    /**
+     * Size of each mapped segment (64MB).
+     */
+    static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedDiskDataAccess.class);
+
+    private static final MappedByteBuffer[] NO_SEGMENTS = new MappedByteBuffer[0];
+
+    private final RandomAccessFile data;
+    private final FileChannel channel;
+    private final AtomicLong logicalLength;
+
+    private volatile MappedByteBuffer[] segments = NO_SEGMENTS;
+
+    /**
+     * Create a mapped engine over the given file.
+     *
+     * @param file the data file
+     * @throws FileNotFoundException if the file cannot be opened
+     */
+    MappedDiskDataAccess(File file) throws FileNotFoundException {
+        this.data = new RandomAccessFile(file, "rw");
+        this.channel = data.getChannel();
+        this.logicalLength = new AtomicLong(file.length());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    ByteBuffer read(long position, int size, Object key) throws IOException {
+        int index = segmentIndex(position);
+        int offset = segmentOffset(position);
+        if (offset + size <= SEGMENT_SIZE) {
+            ByteBuffer view = segment(index).duplicate();
+            view.limit(offset + size).position(offset);
+            return view.slice().asReadOnlyBuffer();
+        } else {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            while (buffer.hasRemaining()) {
+                ByteBuffer view = segment(index++).duplicate();
+                view.position(offset);
+                view.limit(Math.min(SEGMENT_SIZE, offset + buffer.remaining()));
+                buffer.put(view);
+                offset = 0;
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void write(long position, byte[] source, int offset, int length, Object key) throws IOException {
+        int index = segmentIndex(position);
+        int segmentOffset = segmentOffset(position);
+        int written = 0;
+        while (written < length) {
+            ByteBuffer view = segment(index++).duplicate();
+            view.position(segmentOffset);
+            int chunk = Math.min(length - written, SEGMENT_SIZE - segmentOffset);
+            view.put(source, offset + written, chunk);
+            written += chunk;
+            segmentOffset = 0;
+        }
+        long end = position + length;
+        for (long current = logicalLength.get(); current < end; current = logicalLength.get()) {
+            if (logicalLength.compareAndSet(current, end)) {
+                break;
+            }
+        }
+    }
+
+    private MappedByteBuffer segment(int index) throws IOException {
+        MappedByteBuffer[] current = segments;
+        if (index < current.length) {
+            return current[index];
+        } else {
+            return map(index);
+        }
+    }
+
+    private synchronized MappedByteBuffer map(int index) throws IOException {
+        MappedByteBuffer[] current = segments;
+        if (index < current.length) {
+            return current[index];
+        }
+        MappedByteBuffer[] grown = Arrays.copyOf(current, index + 1);
+        for (int i = current.length; i < grown.length; i++) {
+            grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, ((long) i) * SEGMENT_SIZE, SEGMENT_SIZE);
+        }
+        segments = grown;
+        return grown[index];
+    }
+
+    private static int segmentIndex(long position) {
+        return (int) (position / SEGMENT_SIZE);
+    }
+
+    private static int segmentOffset(long position) {
+        return (int) (position % SEGMENT_SIZE);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is the logical length of the data, not the extent of the mapped segments.
+     */
+    @Override
+    long length() throws IOException {
+        return logicalLength.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The file is never shrunk below the extent of the segments already mapped.
+     */
+    @Override
+    synchronized void setLength(long length) throws IOException {
+        long mapped = ((long) segments.length) * SEGMENT_SIZE;
+        data.setLength(Math.max(length, mapped));
+        logicalLength.set(length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Truncating a mapped region would turn later accesses into bus errors, so the allocator is given no file.
+     */
+    @Override
+    RandomAccessFile getAllocatorFile() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    synchronized void close() throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        segments = NO_SEGMENTS;
+        try {
+            data.setLength(logicalLength.get());
+        } catch (IOException e) {
+            // some platforms refuse to truncate a file still mapped until the mappings are collected
+            LOG.debug("Unable to truncate the data file to the length of its data", e);
+        }
+        data.close();
+    }
+}
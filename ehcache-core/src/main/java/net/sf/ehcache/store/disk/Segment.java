@@ -26,6 +26,7 @@ import net.sf.ehcache.config.PinningConfiguration;
 import net.sf.ehcache.event.RegisteredEventListeners;
 import net.sf.ehcache.pool.PoolAccessor;
 import net.sf.ehcache.store.ElementValueComparator;
+import net.sf.ehcache.store.ExpiryWheel;
 import net.sf.ehcache.store.disk.DiskStorageFactory.DiskMarker;
 import net.sf.ehcache.store.disk.DiskStorageFactory.DiskSubstitute;
 import net.sf.ehcache.store.disk.DiskStorageFactory.Placeholder;
@@ -36,8 +37,11 @@ import org.slf4j.LoggerFactory;
 import org.terracotta.statistics.observer.OperationObserver;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -103,6 +107,12 @@ public class Segment extends ReentrantReadWriteLock {
 
     private final OperationObserver<EvictionOutcome> evictionObserver;
 
+    /**
+     * The keys of this segment by expiration time, scheduled whenever their expiration moves backwards and cancelled
+     * with their mapping.
+     */
+    private final ExpiryWheel<Object> expiryWheel = new ExpiryWheel<Object>(System.currentTimeMillis());
+
     /**
      * Create a Segment with the given initial capacity, load-factor, primary element substitute factory, and identity element substitute factory.
      * <p>
@@ -137,7 +147,7 @@ public class Segment extends ReentrantReadWriteLock {
         this.cachePinned = determineCachePinned(cacheConfiguration);
     }
 
-    private static boolean determineCachePinned(CacheConfiguration cacheConfiguration) {
+    static boolean determineCachePinned(CacheConfiguration cacheConfiguration) {
         PinningConfiguration pinningConfiguration = cacheConfiguration.getPinningConfiguration();
         if (pinningConfiguration == null) {
             return false;
@@ -233,6 +243,47 @@ public class Segment extends ReentrantReadWriteLock {
         }
     }
 
+    /**
+     * Get the elements mapped to the given keys, taking the read lock of this segment once for all of them.
+     * <p>
+     * The elements found on disk are read as a single batch, sorted by file position.
+     *
+     * @param keys keys to lookup, all mapping to this segment
+     * @param markFaulted whether the mappings found should be marked as faulted
+     * @param result map the keys are added to, with their element or null when there is no mapping
+     */
+    void getAll(Collection<?> keys, final boolean markFaulted, Map<Object, Element> result) {
+        List<Object> found = new ArrayList<Object>(keys.size());
+        List<DiskSubstitute> substitutes = new ArrayList<DiskSubstitute>(keys.size());
+        readLock().lock();
+        try {
+            for (Object key : keys) {
+                int hash = DiskStore.hash(key.hashCode());
+                HashEntry e = count == 0 ? null : getFirst(hash);
+                while (e != null && (e.hash != hash || !key.equals(e.key))) {
+                    e = e.next;
+                }
+                if (e == null) {
+                    result.put(key, null);
+                } else {
+                    if (markFaulted) {
+                        e.faulted.set(true);
+                    }
+                    found.add(key);
+                    substitutes.add(e.element);
+                }
+            }
+            if (!substitutes.isEmpty()) {
+                Element[] elements = disk.retrieveAll(substitutes);
+                for (int i = 0; i < elements.length; i++) {
+                    result.put(found.get(i), elements[i]);
+                }
+            }
+        } finally {
+            readLock().unlock();
+        }
+    }
+
     /**
      * Return the unretrieved (undecoded) value for this key
      *
@@ -329,6 +380,7 @@ public class Segment extends ReentrantReadWriteLock {
                 e.element = encoded;
                 e.faulted.set(false);
                 installed = true;
+                scheduleExpiry(key, onDiskSubstitute, encoded);
                 free(onDiskSubstitute);
 
                 if (onDiskSubstitute instanceof DiskStorageFactory.DiskMarker) {
@@ -385,6 +437,7 @@ public class Segment extends ReentrantReadWriteLock {
                 e.element = encoded;
                 e.faulted.set(false);
                 installed = true;
+                scheduleExpiry(key, onDiskSubstitute, encoded);
                 oldElement = decode(onDiskSubstitute);
                 free(onDiskSubstitute);
 
@@ -423,6 +476,68 @@ public class Segment extends ReentrantReadWriteLock {
      */
     Element put(Object key, int hash, Element element, boolean onlyIfAbsent, boolean faulted) {
         boolean installed = false;
+        DiskSubstitute encoded = encode(key, element, faulted);
+        if (encoded == null) {
+            return null;
+        }
+
+        writeLock().lock();
+        try {
+            Element oldElement = install(key, hash, element, encoded, onlyIfAbsent, faulted);
+            installed = !onlyIfAbsent || oldElement == null;
+            return oldElement;
+        } finally {
+            writeLock().unlock();
+
+            if (installed) {
+                encoded.installed();
+            }
+        }
+    }
+
+    /**
+     * Add the supplied mappings, taking the write lock of this segment once for all of them.
+     *
+     * @param elements elements to store
+     * @param faulted whether the mappings should be marked as faulted
+     * @return the elements previously mapped to the keys, in the order of the supplied elements
+     */
+    Element[] putAll(List<Element> elements, boolean faulted) {
+        Element[] oldElements = new Element[elements.size()];
+        DiskSubstitute[] encoded = new DiskSubstitute[oldElements.length];
+        for (int i = 0; i < encoded.length; i++) {
+            Element element = elements.get(i);
+            encoded[i] = encode(element.getObjectKey(), element, faulted);
+        }
+
+        int installed = 0;
+        writeLock().lock();
+        try {
+            for (; installed < encoded.length; installed++) {
+                if (encoded[installed] != null) {
+                    Element element = elements.get(installed);
+                    Object key = element.getObjectKey();
+                    oldElements[installed] = install(key, DiskStore.hash(key.hashCode()), element, encoded[installed], false, faulted);
+                }
+            }
+            return oldElements;
+        } finally {
+            writeLock().unlock();
+
+            for (int i = 0; i < installed; i++) {
+                if (encoded[i] != null) {
+                    encoded[i].installed();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the substitute for an element about to be stored, accounting for its heap usage.
+     *
+     * @return the substitute, or null if the element was evicted straight away
+     */
+    private DiskSubstitute encode(Object key, Element element, boolean faulted) {
         DiskSubstitute encoded = disk.create(element);
         final long incomingHeapSize = onHeapPoolAccessor.add(key, encoded, NULL_HASH_ENTRY, cachePinned || faulted);
         if (incomingHeapSize < 0) {
@@ -433,65 +548,63 @@ public class Segment extends ReentrantReadWriteLock {
         } else {
             LOG.debug("put added {} on heap", incomingHeapSize);
             encoded.onHeapSize = incomingHeapSize;
+            return encoded;
         }
+    }
 
-        writeLock().lock();
-        try {
-            // ensure capacity
-            if (count + 1 > threshold) {
-                rehash();
-            }
-            HashEntry[] tab = table;
-            int index = hash & (tab.length - 1);
-            HashEntry first = tab[index];
-            HashEntry e = first;
-            while (e != null && (e.hash != hash || !key.equals(e.key))) {
-                e = e.next;
-            }
-
-            Element oldElement;
-            if (e != null) {
-                DiskSubstitute onDiskSubstitute = e.element;
-                if (!onlyIfAbsent) {
-                    e.element = encoded;
-                    installed = true;
-                    oldElement = decode(onDiskSubstitute);
+    /**
+     * Installs a substitute in the table. Must be called under the write lock.
+     *
+     * @return the element previously mapped to the key
+     */
+    private Element install(Object key, int hash, Element element, DiskSubstitute encoded, boolean onlyIfAbsent, boolean faulted) {
+        // ensure capacity
+        if (count + 1 > threshold) {
+            rehash();
+        }
+        HashEntry[] tab = table;
+        int index = hash & (tab.length - 1);
+        HashEntry first = tab[index];
+        HashEntry e = first;
+        while (e != null && (e.hash != hash || !key.equals(e.key))) {
+            e = e.next;
+        }
 
-                    free(onDiskSubstitute);
-                    final long existingHeapSize = onHeapPoolAccessor.delete(onDiskSubstitute.onHeapSize);
-                    LOG.debug("put updated, deleted {} on heap", existingHeapSize);
+        Element oldElement;
+        if (e != null) {
+            DiskSubstitute onDiskSubstitute = e.element;
+            if (!onlyIfAbsent) {
+                e.element = encoded;
+                scheduleExpiry(key, onDiskSubstitute, encoded);
+                oldElement = decode(onDiskSubstitute);
 
-                    if (onDiskSubstitute instanceof DiskStorageFactory.DiskMarker) {
-                        final long existingDiskSize = onDiskPoolAccessor.delete(((DiskStorageFactory.DiskMarker) onDiskSubstitute).getSize());
-                        LOG.debug("put updated, deleted {} on disk", existingDiskSize);
-                    }
-                    e.faulted.set(faulted);
-                    cacheEventNotificationService.notifyElementUpdatedOrdered(oldElement, element);
-                } else {
-                    oldElement = decode(onDiskSubstitute);
+                free(onDiskSubstitute);
+                final long existingHeapSize = onHeapPoolAccessor.delete(onDiskSubstitute.onHeapSize);
+                LOG.debug("put updated, deleted {} on heap", existingHeapSize);
 
-                    free(encoded);
-                    final long outgoingHeapSize = onHeapPoolAccessor.delete(encoded.onHeapSize);
-                    LOG.debug("put if absent failed, deleted {} on heap", outgoingHeapSize);
+                if (onDiskSubstitute instanceof DiskStorageFactory.DiskMarker) {
+                    final long existingDiskSize = onDiskPoolAccessor.delete(((DiskStorageFactory.DiskMarker) onDiskSubstitute).getSize());
+                    LOG.debug("put updated, deleted {} on disk", existingDiskSize);
                 }
+                e.faulted.set(faulted);
+                cacheEventNotificationService.notifyElementUpdatedOrdered(oldElement, element);
             } else {
-                oldElement = null;
-                ++modCount;
-                tab[index] = new HashEntry(key, hash, first, encoded, new AtomicBoolean(faulted));
-                installed = true;
-                // write-volatile
-                count = count + 1;
-                cacheEventNotificationService.notifyElementPutOrdered(element);
-            }
-            return oldElement;
-
-        } finally {
-            writeLock().unlock();
+                oldElement = decode(onDiskSubstitute);
 
-            if (installed) {
-                encoded.installed();
+                free(encoded);
+                final long outgoingHeapSize = onHeapPoolAccessor.delete(encoded.onHeapSize);
+                LOG.debug("put if absent failed, deleted {} on heap", outgoingHeapSize);
             }
+        } else {
+            oldElement = null;
+            ++modCount;
+            tab[index] = new HashEntry(key, hash, first, encoded, new AtomicBoolean(faulted));
+            scheduleExpiry(key, null, encoded);
+            // write-volatile
+            count = count + 1;
+            cacheEventNotificationService.notifyElementPutOrdered(element);
         }
+        return oldElement;
     }
 
 
@@ -541,6 +654,7 @@ public class Segment extends ReentrantReadWriteLock {
                 tab[index] = new HashEntry(key, hash, first, encoded, new AtomicBoolean(false));
                 // write-volatile
                 count = count + 1;
+                scheduleExpiry(key, null, encoded);
                 return true;
             } else {
                 onHeapPoolAccessor.delete(encoded.onHeapSize);
@@ -652,6 +766,7 @@ public class Segment extends ReentrantReadWriteLock {
                         newFirst = new HashEntry(p.key, p.hash, newFirst, p.element, p.faulted);
                     }
                     tab[index] = newFirst;
+                    expiryWheel.cancel(key);
                     /*
                      * make sure we re-get from the HashEntry - since the decode in the conditional
                      * may have faulted in a different type - we must make sure we know what type
@@ -687,6 +802,27 @@ public class Segment extends ReentrantReadWriteLock {
         }
     }
 
+    /**
+     * Remove the mappings of the given keys, taking the write lock of this segment once for all of them.
+     *
+     * @param keys keys to remove, all mapping to this segment
+     * @return the number of mappings removed
+     */
+    int removeAll(Collection<?> keys) {
+        int removed = 0;
+        writeLock().lock();
+        try {
+            for (Object key : keys) {
+                if (remove(key, DiskStore.hash(key.hashCode()), null, null) != null) {
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
     /**
      * Removes all mappings from this segment.
      */
@@ -701,6 +837,7 @@ public class Segment extends ReentrantReadWriteLock {
                     }
                     tab[i] = null;
                 }
+                expiryWheel.clear();
                 ++modCount;
                 // write-volatile
                 count = 0;
@@ -870,6 +1007,7 @@ public class Segment extends ReentrantReadWriteLock {
                         newFirst = new HashEntry(p.key, p.hash, newFirst, p.element, p.faulted);
                     }
                     tab[index] = newFirst;
+                    expiryWheel.cancel(key);
                     /*
                      * make sure we re-get from the HashEntry - since the decode in the conditional
                      * may have faulted in a different type - we must make sure we know what type
@@ -944,6 +1082,48 @@ public class Segment extends ReentrantReadWriteLock {
         } while (tableIndex != tableStart);
     }
 
+    /**
+     * Schedules a key in the expiry wheel if the substitute installed expires earlier than the one it replaces.
+     * <p>
+     * Must be called under the write lock.
+     *
+     * @param key the key
+     * @param previous the substitute replaced, or {@code null} if there was none
+     * @param installed the substitute installed
+     */
+    private void scheduleExpiry(Object key, DiskSubstitute previous, DiskSubstitute installed) {
+        long expirationTime = installed.getExpirationTime();
+        if (previous == null || previous.getExpirationTime() > expirationTime) {
+            expiryWheel.schedule(key, expirationTime);
+        }
+    }
+
+    /**
+     * Evict the on-disk mappings of this segment that expired before the given time.
+     * <p>
+     * Only the keys due in the expiry wheel are visited. Mappings still in flight to the disk, or faulted in memory,
+     * are tried again on the next call.
+     *
+     * @param now the current time in milliseconds
+     */
+    void evictExpired(long now) {
+        expiryWheel.expire(now, new ExpiryWheel.Expirer<Object>() {
+            @Override
+            public long getExpirationTime(Object key) {
+                Object substitute = unretrievedGet(key, DiskStore.hash(key.hashCode()));
+                return substitute instanceof DiskSubstitute ? ((DiskSubstitute) substitute).getExpirationTime() : Long.MAX_VALUE;
+            }
+
+            @Override
+            public boolean expire(Object key, long now) {
+                int hash = DiskStore.hash(key.hashCode());
+                Object substitute = unretrievedGet(key, hash);
+                return substitute instanceof DiskMarker && disk.created(substitute) && ((DiskMarker) substitute).getExpirationTime() < now
+                    && evict(key, hash, (DiskMarker) substitute) != null;
+            }
+        }, Integer.MAX_VALUE);
+    }
+
     /**
      * Creates an iterator over the HashEntry objects within this Segment.
      * @return an iterator over the HashEntry objects within this Segment.
@@ -0,0 +1,143 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.sf.ehcache.concurrent.ConcurrencyUtil;
+
+/**
+ * The historical disk access engine: an array of {@link RandomAccessFile} stripes, each guarded by its own lock.
+ * <p>
+ * Every access seeks the shared file pointer of its stripe, so concurrency is bounded by the number of stripes. The
+ * stripes are guarded by j.u.c. locks rather than their monitors, so that virtual threads blocking on disk I/O or
+ * waiting for a stripe do not pin their carrier thread. The file length is managed through a separate control file,
+ * guarded by a lock of its own, which is also the one handed to the space allocator.
+ */
+final class StripedDiskDataAccess extends DiskDataAccess {
+
+    private final RandomAccessFile[] stripes;
+    private final ReentrantLock[] locks;
+    private final RandomAccessFile control;
+    private final ReentrantLock controlLock = new ReentrantLock();
+
+    /**
+     * Create a striped engine over the given file.
+     *
+     * @param file the data file
+     * @param stripes number of stripes (rounded up to a power-of-2)
+     * @throws FileNotFoundException if the file cannot be opened
+     */
+    StripedDiskDataAccess(File file, int stripes) throws FileNotFoundException {
+        this.stripes = new RandomAccessFile[roundUpToPowerOfTwo(stripes)];
+        this.locks = new ReentrantLock[this.stripes.length];
+        for (int i = 0; i < this.stripes.length; ++i) {
+            this.stripes[i] = new RandomAccessFile(file, "rw");
+            this.locks[i] = new ReentrantLock();
+        }
+        this.control = new RandomAccessFile(file, "rw");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    ByteBuffer read(long position, int size, Object key) throws IOException {
+        final byte[] buffer = new byte[size];
+        final int stripe = ConcurrencyUtil.selectLock(key, stripes.length);
+        locks[stripe].lock();
+        try {
+            stripes[stripe].seek(position);
+            stripes[stripe].readFully(buffer);
+        } finally {
+            locks[stripe].unlock();
+        }
+        return ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void write(long position, byte[] data, int offset, int length, Object key) throws IOException {
+        final int stripe = ConcurrencyUtil.selectLock(key, stripes.length);
+        locks[stripe].lock();
+        try {
+            stripes[stripe].seek(position);
+            stripes[stripe].write(data, offset, length);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    long length() throws IOException {
+        controlLock.lock();
+        try {
+            return control.length();
+        } finally {
+            controlLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void setLength(long length) throws IOException {
+        controlLock.lock();
+        try {
+            control.setLength(length);
+        } finally {
+            controlLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    RandomAccessFile getAllocatorFile() {
+        return control;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void close() throws IOException {
+        for (int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                stripes[i].close();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        synchronized (control) {
+            control.close();
+        }
+    }
+}
@@ -0,0 +1,762 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import net.sf.ehcache.CacheOperationOutcomes.EvictionOutcome;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.RegisteredEventListeners;
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.store.ElementValueComparator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.statistics.observer.OperationObserver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A segment of the off-heap store index.
+ * <p>
+ * Keys stay on heap in an open-addressing table (linear probing, tombstones for removed slots) that lives in a handful
+ * of parallel primitive arrays, values are serialized into chunks of the store's {@link SlabAllocator}. Each slot has
+ * a reference bit, set on access and cleared by the eviction clock hand as it sweeps past, and a faulted bit, set while
+ * the mapping is held by the caching tier above this store. Faulted mappings are never evicted.
+ * <p>
+ * Like the disk store segments, this class extends ReentrantReadWriteLock: reads happen under the read lock, mutations
+ * under the write lock.
+ */
+final class OffHeapSegment extends ReentrantReadWriteLock {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapSegment.class);
+
+    private static final Object TOMBSTONE = new Object();
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MAXIMUM_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE);
+
+    /**
+     * Count of mappings in the segment.
+     */
+    volatile int count;
+
+    /**
+     * Mod-count used to detect concurrent modifications when summing the segment sizes.
+     */
+    int modCount;
+
+    private final OffHeapStore store;
+    private final SlabAllocator allocator;
+    private final PoolAccessor onHeapPoolAccessor;
+    private final PoolAccessor offHeapPoolAccessor;
+    private final RegisteredEventListeners cacheEventNotificationService;
+    private final OperationObserver<EvictionOutcome> evictionObserver;
+    private final boolean pinned;
+
+    private Object[] keys;
+    private int[] hashes;
+    private long[] addresses;
+    private int[] lengths;
+    private int[] heapSizes;
+    private int[] offHeapSizes;
+    private long[] expirations;
+    private boolean[] referenced;
+    private boolean[] faulted;
+    private int tombstones;
+    private int threshold;
+    private int hand;
+
+    /**
+     * Create an empty segment.
+     *
+     * @param initialCapacity initial number of slots, a power of two
+     * @param store the owning store, used to encode and decode elements
+     * @param allocator the allocator holding the serialized elements
+     * @param onHeapPoolAccessor the pool tracking on-heap usage
+     * @param offHeapPoolAccessor the pool tracking off-heap usage
+     * @param cacheEventNotificationService the service notified of evictions and expiries
+     * @param evictionObserver the eviction statistic
+     * @param pinned whether mappings must never be evicted
+     */
+    OffHeapSegment(int initialCapacity, OffHeapStore store, SlabAllocator allocator,
+                   PoolAccessor onHeapPoolAccessor, PoolAccessor offHeapPoolAccessor,
+                   RegisteredEventListeners cacheEventNotificationService,
+                   OperationObserver<EvictionOutcome> evictionObserver, boolean pinned) {
+        this.store = store;
+        this.allocator = allocator;
+        this.onHeapPoolAccessor = onHeapPoolAccessor;
+        this.offHeapPoolAccessor = offHeapPoolAccessor;
+        this.cacheEventNotificationService = cacheEventNotificationService;
+        this.evictionObserver = evictionObserver;
+        this.pinned = pinned;
+        allocateTable(initialCapacity);
+    }
+
+    private void allocateTable(int capacity) {
+        keys = new Object[capacity];
+        hashes = new int[capacity];
+        addresses = new long[capacity];
+        lengths = new int[capacity];
+        heapSizes = new int[capacity];
+        offHeapSizes = new int[capacity];
+        expirations = new long[capacity];
+        referenced = new boolean[capacity];
+        faulted = new boolean[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+        tombstones = 0;
+        hand = 0;
+    }
+
+    private int find(Object key, int hash) {
+        Object[] tab = keys;
+        int mask = tab.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            Object k = tab[i];
+            if (k == null) {
+                return -1;
+            } else if (k != TOMBSTONE && hashes[i] == hash && key.equals(k)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Get the element mapped to this key, marking the mapping as recently used.
+     *
+     * @param key key to lookup
+     * @param hash spread-hash for this key
+     * @param markFaulted whether the mapping is being faulted into the caching tier
+     * @return the mapped element, or null
+     */
+    Element get(Object key, int hash, boolean markFaulted) {
+        byte[] bytes;
+        readLock().lock();
+        try {
+            if (count == 0) {
+                return null;
+            }
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            referenced[slot] = true;
+            if (markFaulted) {
+                faulted[slot] = true;
+            }
+            bytes = allocator.read(addresses[slot], lengths[slot]);
+        } finally {
+            readLock().unlock();
+        }
+        return store.decode(bytes);
+    }
+
+    /**
+     * Get the elements mapped to the given keys, taking the read lock once for all of them.
+     * <p>
+     * As for single gets, the elements are deserialized once the lock has been released.
+     *
+     * @param keys keys to lookup, all mapping to this segment
+     * @param markFaulted whether the mappings are being faulted into the caching tier
+     * @param result map the keys are added to, with their element or null when there is no mapping
+     */
+    void getAll(List<Object> keys, boolean markFaulted, Map<Object, Element> result) {
+        byte[][] found = new byte[keys.size()][];
+        readLock().lock();
+        try {
+            for (int i = 0; i < found.length && count != 0; i++) {
+                Object key = keys.get(i);
+                int slot = find(key, OffHeapStore.hash(key.hashCode()));
+                if (slot >= 0) {
+                    referenced[slot] = true;
+                    if (markFaulted) {
+                        faulted[slot] = true;
+                    }
+                    found[i] = allocator.read(addresses[slot], lengths[slot]);
+                }
+            }
+        } finally {
+            readLock().unlock();
+        }
+        for (int i = 0; i < found.length; i++) {
+            result.put(keys.get(i), found[i] == null ? null : store.decode(found[i]));
+        }
+    }
+
+    /**
+     * Return true if this segment contains a mapping for this key.
+     *
+     * @param key key to check for
+     * @param hash spread-hash for key
+     * @return <code>true</code> if there is a mapping for this key
+     */
+    boolean containsKey(Object key, int hash) {
+        readLock().lock();
+        try {
+            return count != 0 && find(key, hash) >= 0;
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Verifies if the mapping for a key is marked as faulted.
+     *
+     * @param key the key to check the mapping for
+     * @param hash spread-hash for key
+     * @return true if faulted, false otherwise (including no mapping)
+     */
+    boolean isFaulted(Object key, int hash) {
+        readLock().lock();
+        try {
+            int slot = count == 0 ? -1 : find(key, hash);
+            return slot >= 0 && faulted[slot];
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Add the supplied mapping.
+     *
+     * @param key key to map the element to
+     * @param hash spread-hash for the key
+     * @param element element to store
+     * @param onlyIfAbsent if true does not replace existing mappings
+     * @param markFaulted whether the mapping is also held by the caching tier
+     * @return previous element mapped to this key
+     */
+    Element put(Object key, int hash, Element element, boolean onlyIfAbsent, boolean markFaulted) {
+        Record record = encode(key, element, markFaulted);
+        if (record == null) {
+            return null;
+        }
+
+        writeLock().lock();
+        try {
+            return put(key, hash, element, record, onlyIfAbsent, markFaulted);
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add the supplied mappings, taking the write lock once for all of them.
+     *
+     * @param elements elements to store, all mapping to this segment
+     * @param markFaulted whether the mappings are also held by the caching tier
+     * @return the elements previously mapped to the keys, in the order of the supplied elements
+     */
+    Element[] putAll(List<Element> elements, boolean markFaulted) {
+        Element[] oldElements = new Element[elements.size()];
+        Record[] records = new Record[oldElements.length];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = encode(elements.get(i).getObjectKey(), elements.get(i), markFaulted);
+        }
+
+        writeLock().lock();
+        try {
+            for (int i = 0; i < records.length; i++) {
+                if (records[i] != null) {
+                    Object key = elements.get(i).getObjectKey();
+                    oldElements[i] = put(key, OffHeapStore.hash(key.hashCode()), elements.get(i), records[i], false, markFaulted);
+                }
+            }
+            return oldElements;
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    private Element put(Object key, int hash, Element element, Record record, boolean onlyIfAbsent, boolean markFaulted) {
+        int slot = count == 0 ? -1 : find(key, hash);
+        if (slot < 0) {
+            insert(key, hash, record, markFaulted);
+            cacheEventNotificationService.notifyElementPutOrdered(element);
+            return null;
+        }
+
+        Element oldElement = decode(slot);
+        if (onlyIfAbsent) {
+            free(record);
+        } else {
+            freeSlot(slot);
+            install(slot, record);
+            faulted[slot] = markFaulted;
+            cacheEventNotificationService.notifyElementUpdatedOrdered(oldElement, element);
+        }
+        return oldElement;
+    }
+
+    /**
+     * Replace the element mapped to this key only if currently mapped to the given element.
+     *
+     * @param key key to map the element to
+     * @param hash spread-hash for the key
+     * @param oldElement expected element
+     * @param newElement element to add
+     * @param comparator the comparator to use to compare values
+     * @return <code>true</code> on a successful replace
+     */
+    boolean replace(Object key, int hash, Element oldElement, Element newElement, ElementValueComparator comparator) {
+        Record record = encode(key, newElement, false);
+        if (record == null) {
+            return false;
+        }
+
+        writeLock().lock();
+        try {
+            int slot = count == 0 ? -1 : find(key, hash);
+            if (slot >= 0 && comparator.equals(oldElement, decode(slot))) {
+                freeSlot(slot);
+                install(slot, record);
+                faulted[slot] = false;
+                cacheEventNotificationService.notifyElementUpdatedOrdered(oldElement, newElement);
+                return true;
+            } else {
+                free(record);
+                return false;
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the entry for this key only if currently mapped to some element.
+     *
+     * @param key key to map the element to
+     * @param hash spread-hash for the key
+     * @param newElement element to add
+     * @return previous element mapped to this key
+     */
+    Element replace(Object key, int hash, Element newElement) {
+        Record record = encode(key, newElement, false);
+        if (record == null) {
+            return null;
+        }
+
+        writeLock().lock();
+        try {
+            int slot = count == 0 ? -1 : find(key, hash);
+            if (slot >= 0) {
+                Element oldElement = decode(slot);
+                freeSlot(slot);
+                install(slot, record);
+                faulted[slot] = false;
+                cacheEventNotificationService.notifyElementUpdatedOrdered(oldElement, newElement);
+                return oldElement;
+            } else {
+                free(record);
+                return null;
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the mapping for this key, if it matches the given value.
+     * <p>
+     * If <code>value</code> is <code>null</code> then match on the key only,
+     * else match on both the key and the value.
+     *
+     * @param key key to match against
+     * @param hash spread-hash for the key
+     * @param value optional value to match against
+     * @param comparator the comparator to use to compare values
+     * @return removed element
+     */
+    Element remove(Object key, int hash, Element value, ElementValueComparator comparator) {
+        writeLock().lock();
+        try {
+            int slot = count == 0 ? -1 : find(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            Element oldElement = decode(slot);
+            if (value == null || comparator.equals(value, oldElement)) {
+                delete(slot);
+                cacheEventNotificationService.notifyElementRemovedOrdered(oldElement);
+                return oldElement;
+            } else {
+                return null;
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the mappings of the given keys, taking the write lock once for all of them.
+     *
+     * @param keys keys to remove, all mapping to this segment
+     * @return the number of mappings removed
+     */
+    int removeAll(List<Object> keys) {
+        int removed = 0;
+        writeLock().lock();
+        try {
+            for (Object key : keys) {
+                if (remove(key, OffHeapStore.hash(key.hashCode()), null, null) != null) {
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks a mapping as no longer held by the caching tier, and records its latest expiration time.
+     *
+     * @param key the key
+     * @param hash the key's hash
+     * @param element the element as it was in the caching tier
+     * @return true if the mapping was faulted
+     */
+    boolean flush(Object key, int hash, Element element) {
+        boolean wasFaulted = false;
+        readLock().lock();
+        try {
+            int slot = count == 0 ? -1 : find(key, hash);
+            if (slot >= 0) {
+                wasFaulted = faulted[slot];
+                faulted[slot] = false;
+                referenced[slot] = true;
+                expirations[slot] = element.getExpirationTime();
+            }
+        } finally {
+            readLock().unlock();
+        }
+        if (element.isExpired()) {
+            evict(key, hash);
+        }
+        return wasFaulted;
+    }
+
+    /**
+     * Evict the mapping for this key, unless it is faulted or the segment is contended.
+     *
+     * @param key key to evict
+     * @param hash spread-hash for the key
+     * @return the evicted element, or null
+     */
+    Element evict(Object key, int hash) {
+        if (pinned || !writeLock().tryLock()) {
+            return null;
+        }
+        Element evicted = null;
+        try {
+            int slot = count == 0 ? -1 : find(key, hash);
+            if (slot >= 0 && !faulted[slot]) {
+                evictionObserver.begin();
+                evicted = decode(slot);
+                delete(slot);
+                cacheEventNotificationService.notifyElementRemovedOrdered(evicted);
+            }
+        } finally {
+            writeLock().unlock();
+        }
+        notifyEvicted(evicted);
+        return evicted;
+    }
+
+    /**
+     * Advance the clock hand until a mapping can be evicted, and evict it.
+     * <p>
+     * Mappings seen since the hand last passed them get a second chance, expired mappings do not.
+     * When {@code chunkSize} is positive only mappings stored in chunks of that size are considered, since freeing
+     * one of those is guaranteed to make room for an allocation of the same size class.
+     *
+     * @param chunkSize the chunk size to look for, or zero for any mapping
+     * @param now current time in milliseconds
+     * @return true if a mapping was evicted
+     */
+    boolean evictNext(int chunkSize, long now) {
+        if (pinned || count == 0 || !writeLock().tryLock()) {
+            return false;
+        }
+        Element evicted = null;
+        try {
+            int slot = advanceHand(chunkSize, now);
+            if (slot >= 0) {
+                evictionObserver.begin();
+                evicted = decode(slot);
+                delete(slot);
+                cacheEventNotificationService.notifyElementRemovedOrdered(evicted);
+            }
+        } finally {
+            writeLock().unlock();
+        }
+        notifyEvicted(evicted);
+        return evicted != null;
+    }
+
+    private int advanceHand(int chunkSize, long now) {
+        Object[] tab = keys;
+        int mask = tab.length - 1;
+        for (int step = 0; step < 2 * tab.length; step++) {
+            int slot = hand;
+            hand = (hand + 1) & mask;
+            Object k = tab[slot];
+            if (k == null || k == TOMBSTONE || faulted[slot]) {
+                continue;
+            }
+            if (chunkSize > 0 && allocator.chunkSize(addresses[slot]) != chunkSize) {
+                continue;
+            }
+            if (expirations[slot] <= now || !referenced[slot]) {
+                return slot;
+            }
+            referenced[slot] = false;
+        }
+        return -1;
+    }
+
+    /**
+     * Remove all expired mappings that are not faulted, notifying their expiry.
+     *
+     * @param now current time in milliseconds
+     */
+    void expire(long now) {
+        List<Element> expired = new ArrayList<Element>();
+        writeLock().lock();
+        try {
+            Object[] tab = keys;
+            for (int slot = 0; count != 0 && slot < tab.length; slot++) {
+                Object k = tab[slot];
+                if (k != null && k != TOMBSTONE && !faulted[slot] && expirations[slot] <= now) {
+                    Element element = decode(slot);
+                    delete(slot);
+                    cacheEventNotificationService.notifyElementRemovedOrdered(element);
+                    expired.add(element);
+                }
+            }
+        } finally {
+            writeLock().unlock();
+        }
+        for (Element element : expired) {
+            cacheEventNotificationService.notifyElementExpiry(element, false);
+        }
+    }
+
+    /**
+     * Removes all mappings from this segment.
+     */
+    void clear() {
+        writeLock().lock();
+        try {
+            if (count != 0) {
+                Object[] tab = keys;
+                for (int slot = 0; slot < tab.length; slot++) {
+                    if (tab[slot] != null && tab[slot] != TOMBSTONE) {
+                        freeSlot(slot);
+                    }
+                }
+                ++modCount;
+                allocateTable(keys.length);
+                count = 0;
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Clears the faulted bit on all mappings.
+     */
+    void clearFaultedBit() {
+        writeLock().lock();
+        try {
+            Arrays.fill(faulted, false);
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return a snapshot of the keys in this segment.
+     *
+     * @return the keys currently mapped
+     */
+    List<Object> keys() {
+        readLock().lock();
+        try {
+            List<Object> snapshot = new ArrayList<Object>(count);
+            if (count != 0) {
+                for (Object k : keys) {
+                    if (k != null && k != TOMBSTONE) {
+                        snapshot.add(k);
+                    }
+                }
+            }
+            return snapshot;
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    private void notifyEvicted(Element evicted) {
+        if (evicted != null) {
+            if (evicted.isExpired()) {
+                cacheEventNotificationService.notifyElementExpiry(evicted, false);
+            } else {
+                evictionObserver.end(EvictionOutcome.SUCCESS);
+                cacheEventNotificationService.notifyElementEvicted(evicted, false);
+            }
+        }
+    }
+
+    private Record encode(Object key, Element element, boolean markFaulted) {
+        byte[] bytes = store.encode(element);
+        long address = store.allocate(bytes.length);
+        if (address < 0) {
+            LOG.debug("put failed to allocate {} bytes off-heap", bytes.length);
+            evictionObserver.end(EvictionOutcome.SUCCESS);
+            cacheEventNotificationService.notifyElementEvicted(element, false);
+            return null;
+        }
+        allocator.write(address, bytes, bytes.length);
+
+        Record record = new Record(address, bytes.length, element.getExpirationTime());
+        long offHeapSize = offHeapPoolAccessor.add(key, null, allocator.chunkSize(address), pinned || markFaulted);
+        if (offHeapSize < 0) {
+            LOG.debug("put failed to add off-heap");
+            allocator.free(address);
+            evictionObserver.end(EvictionOutcome.SUCCESS);
+            cacheEventNotificationService.notifyElementEvicted(element, false);
+            return null;
+        }
+        record.offHeapSize = (int) offHeapSize;
+        record.heapSize = (int) onHeapPoolAccessor.add(key, null, null, true);
+        return record;
+    }
+
+    private void free(Record record) {
+        allocator.free(record.address);
+        offHeapPoolAccessor.delete(record.offHeapSize);
+        onHeapPoolAccessor.delete(record.heapSize);
+    }
+
+    private void freeSlot(int slot) {
+        allocator.free(addresses[slot]);
+        offHeapPoolAccessor.delete(offHeapSizes[slot]);
+        onHeapPoolAccessor.delete(heapSizes[slot]);
+    }
+
+    private Element decode(int slot) {
+        return store.decode(allocator.read(addresses[slot], lengths[slot]));
+    }
+
+    private void install(int slot, Record record) {
+        addresses[slot] = record.address;
+        lengths[slot] = record.length;
+        expirations[slot] = record.expiration;
+        offHeapSizes[slot] = record.offHeapSize;
+        heapSizes[slot] = record.heapSize;
+        referenced[slot] = true;
+    }
+
+    private void insert(Object key, int hash, Record record, boolean markFaulted) {
+        if (count + tombstones + 1 > threshold) {
+            rehash();
+        }
+        Object[] tab = keys;
+        int mask = tab.length - 1;
+        int slot = hash & mask;
+        while (tab[slot] != null && tab[slot] != TOMBSTONE) {
+            slot = (slot + 1) & mask;
+        }
+        if (tab[slot] == TOMBSTONE) {
+            tombstones--;
+        }
+        tab[slot] = key;
+        hashes[slot] = hash;
+        install(slot, record);
+        faulted[slot] = markFaulted;
+        ++modCount;
+        count = count + 1;
+    }
+
+    private void delete(int slot) {
+        freeSlot(slot);
+        keys[slot] = TOMBSTONE;
+        faulted[slot] = false;
+        referenced[slot] = false;
+        tombstones++;
+        ++modCount;
+        count = count - 1;
+    }
+
+    private void rehash() {
+        Object[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        long[] oldAddresses = addresses;
+        int[] oldLengths = lengths;
+        int[] oldHeapSizes = heapSizes;
+        int[] oldOffHeapSizes = offHeapSizes;
+        long[] oldExpirations = expirations;
+        boolean[] oldReferenced = referenced;
+        boolean[] oldFaulted = faulted;
+
+        int capacity = oldKeys.length;
+        if ((count + 1) > threshold / 2 && capacity < MAXIMUM_CAPACITY) {
+            capacity <<= 1;
+        }
+        allocateTable(capacity);
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            Object k = oldKeys[i];
+            if (k != null && k != TOMBSTONE) {
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = k;
+                hashes[slot] = oldHashes[i];
+                addresses[slot] = oldAddresses[i];
+                lengths[slot] = oldLengths[i];
+                heapSizes[slot] = oldHeapSizes[i];
+                offHeapSizes[slot] = oldOffHeapSizes[i];
+                expirations[slot] = oldExpirations[i];
+                referenced[slot] = oldReferenced[i];
+                faulted[slot] = oldFaulted[i];
+            }
+        }
+    }
+
+    /**
+     * A serialized element waiting to be installed in a slot.
+     */
+    private static final class Record {
+        private final long address;
+        private final int length;
+        private final long expiration;
+        private int offHeapSize;
+        private int heapSize;
+
+        Record(long address, int length, long expiration) {
+            this.address = address;
+            this.length = length;
+            this.expiration = expiration;
+        }
+    }
+}
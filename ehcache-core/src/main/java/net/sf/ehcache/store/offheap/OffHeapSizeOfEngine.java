@@ -0,0 +1,49 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import net.sf.ehcache.pool.Size;
+import net.sf.ehcache.pool.SizeOfEngine;
+
+/**
+ * SizeOf engine which calculates exact usage of the off-heap store.
+ * <p>
+ * The off-heap store passes the size of the chunk holding a record as the container, which is exactly what the
+ * record costs.
+ */
+final class OffHeapSizeOfEngine implements SizeOfEngine {
+
+    /**
+     * {@inheritDoc}
+     */
+    public Size sizeOf(Object key, Object value, Object container) {
+        if (container == null) {
+            return new Size(0, true);
+        } else if (container instanceof Integer) {
+            return new Size((Integer) container, true);
+        } else {
+            throw new IllegalArgumentException("can only size off-heap chunk sizes");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SizeOfEngine copyWith(int maxDepth, boolean abortWhenMaxDepthExceeded) {
+        return new OffHeapSizeOfEngine();
+    }
+}
@@ -0,0 +1,1011 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import net.sf.ehcache.CacheEntry;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheOperationOutcomes.EvictionOutcome;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.concurrent.CacheLockProvider;
+import net.sf.ehcache.concurrent.ReadWriteLockSync;
+import net.sf.ehcache.concurrent.StripedReadWriteLock;
+import net.sf.ehcache.concurrent.Sync;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.PinningConfiguration;
+import net.sf.ehcache.config.SizeOfPolicyConfiguration;
+import net.sf.ehcache.pool.Pool;
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.pool.PoolParticipant;
+import net.sf.ehcache.serializer.Serializer;
+import net.sf.ehcache.store.AbstractStore;
+import net.sf.ehcache.store.AuthoritativeTier;
+import net.sf.ehcache.store.CacheStore;
+import net.sf.ehcache.store.ElementValueComparator;
+import net.sf.ehcache.store.Policy;
+import net.sf.ehcache.store.SegmentedBulkOperations;
+import net.sf.ehcache.store.Store;
+import net.sf.ehcache.store.StoreOperationOutcomes.GetOutcome;
+import net.sf.ehcache.store.StoreOperationOutcomes.PutOutcome;
+import net.sf.ehcache.store.StoreOperationOutcomes.RemoveOutcome;
+import net.sf.ehcache.store.StripedReadWriteLockProvider;
+import net.sf.ehcache.store.cachingtier.OnHeapCachingTier;
+import net.sf.ehcache.store.disk.StoreUpdateException;
+import net.sf.ehcache.util.MemoryEfficientByteArrayOutputStream;
+import net.sf.ehcache.writer.CacheWriterManager;
+
+import org.terracotta.statistics.OperationStatistic;
+import org.terracotta.statistics.Statistic;
+import org.terracotta.statistics.StatisticsManager;
+import org.terracotta.statistics.derived.EventRateSimpleMovingAverage;
+import org.terracotta.statistics.derived.OperationResultFilter;
+import org.terracotta.statistics.observer.OperationObserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static net.sf.ehcache.statistics.StatisticBuilder.operation;
+
+/**
+ * An authoritative tier keeping serialized elements in direct memory, outside of the garbage collected heap.
+ * <p>
+ * Elements are serialized with the cache's {@link Serializer} into chunks handed out by a {@link SlabAllocator}, which
+ * never reserves more direct memory than the cache's (or cache manager's) {@code maxBytesLocalOffHeap}. Keys and a
+ * compact index stay on heap and are accounted against the on-heap pool. The index is split in segments, each with its
+ * own lock and its own clock eviction hand. When the allocator or the off-heap pool runs out of room, mappings that
+ * are not currently held by the caching tier are evicted until the incoming element fits.
+ * <p>
+ * This store is meant to sit below an {@link OnHeapCachingTier} in a {@link CacheStore},
+ * see {@link #createCacheStore(Ehcache, Pool, Pool)}.
+ */
+public final class OffHeapStore extends AbstractStore implements StripedReadWriteLockProvider, AuthoritativeTier {
+
+    private static final int FFFFCD7D = 0xffffcd7d;
+    private static final int FIFTEEN = 15;
+    private static final int TEN = 10;
+    private static final int THREE = 3;
+    private static final int SIX = 6;
+    private static final int FOURTEEN = 14;
+    private static final int SIXTEEN = 16;
+
+    private static final int RETRIES_BEFORE_LOCK = 2;
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final int DEFAULT_SEGMENT_COUNT = 64;
+
+    private final OffHeapSegment[] segments;
+    private final int segmentShift;
+    private final SlabAllocator allocator;
+    private final Serializer serializer;
+    private final ClassLoader classLoader;
+    private final AtomicInteger evictionSegment = new AtomicInteger();
+    private final AtomicReference<Status> status = new AtomicReference<Status>(Status.STATUS_UNINITIALISED);
+    private final OperationObserver<GetOutcome> getObserver = operation(GetOutcome.class).of(this).named("get").tag("local-offheap").build();
+    private final OperationObserver<PutOutcome> putObserver = operation(PutOutcome.class).of(this).named("put").tag("local-offheap").build();
+    private final OperationObserver<RemoveOutcome> removeObserver = operation(RemoveOutcome.class).of(this).named("remove")
+        .tag("local-offheap").build();
+    private final OperationObserver<EvictionOutcome> evictionObserver = operation(EvictionOutcome.class).named("eviction").of(this).build();
+    private final PoolAccessor onHeapPoolAccessor;
+    private final PoolAccessor offHeapPoolAccessor;
+
+    private final SegmentedBulkOperations<OffHeapSegment> bulkOperations;
+
+    private volatile CacheLockProvider lockProvider;
+    private volatile Set<Object> keySet;
+
+    private OffHeapStore(Ehcache cache, Pool onHeapPool, Pool offHeapPool, long capacity) {
+        CacheConfiguration config = cache.getCacheConfiguration();
+        this.allocator = new SlabAllocator(capacity);
+        this.serializer = config.getSerializer();
+        this.classLoader = config.getClassLoader();
+        this.segments = new OffHeapSegment[DEFAULT_SEGMENT_COUNT];
+        this.segmentShift = Integer.numberOfLeadingZeros(segments.length - 1);
+
+        EventRateSimpleMovingAverage hitRate = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
+        EventRateSimpleMovingAverage missRate = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
+        OperationStatistic<GetOutcome> getStatistic = StatisticsManager.getOperationStatisticFor(getObserver);
+        getStatistic.addDerivedStatistic(new OperationResultFilter<GetOutcome>(EnumSet.of(GetOutcome.HIT), hitRate));
+        getStatistic.addDerivedStatistic(new OperationResultFilter<GetOutcome>(EnumSet.of(GetOutcome.MISS), missRate));
+
+        this.onHeapPoolAccessor = onHeapPool.createPoolAccessor(new OffHeapStorePoolParticipant(hitRate, missRate),
+            SizeOfPolicyConfiguration.resolveMaxDepth(cache),
+            SizeOfPolicyConfiguration.resolveBehavior(cache).equals(SizeOfPolicyConfiguration.MaxDepthExceededBehavior.ABORT));
+        this.offHeapPoolAccessor = offHeapPool.createPoolAccessor(new OffHeapStorePoolParticipant(hitRate, missRate),
+            new OffHeapSizeOfEngine());
+
+        boolean pinned = config.getPinningConfiguration() != null
+                         && PinningConfiguration.Store.INCACHE.equals(config.getPinningConfiguration().getStore());
+        for (int i = 0; i < segments.length; ++i) {
+            segments[i] = new OffHeapSegment(DEFAULT_INITIAL_CAPACITY, this, allocator, onHeapPoolAccessor, offHeapPoolAccessor,
+                cache.getCacheEventNotificationService(), evictionObserver, pinned);
+        }
+        this.bulkOperations = new SegmentedBulkOperations<OffHeapSegment>(segments, segmentShift, getObserver, putObserver, removeObserver) {
+            @Override
+            protected int hash(Object key) {
+                return OffHeapStore.hash(key.hashCode());
+            }
+
+            @Override
+            protected void getAll(OffHeapSegment segment, List<Object> keys, boolean markFaulted, Map<Object, Element> result) {
+                segment.getAll(keys, markFaulted, result);
+            }
+
+            @Override
+            protected Element[] putAll(OffHeapSegment segment, List<Element> elements) {
+                return segment.putAll(elements, false);
+            }
+
+            @Override
+            protected int removeAll(OffHeapSegment segment, List<Object> keys) {
+                return segment.removeAll(keys);
+            }
+        };
+        this.status.set(Status.STATUS_ALIVE);
+    }
+
+    /**
+     * Creates an off-heap store for the given cache.
+     * <p>
+     * The store reserves direct memory up to the cache's {@code maxBytesLocalOffHeap}, or the cache manager's when the
+     * cache shares the cache manager's off-heap pool.
+     *
+     * @param cache cache that fronts this store
+     * @param onHeapPool pool to track heap usage
+     * @param offHeapPool pool to track off-heap usage
+     * @return a fully initialized store
+     * @throws CacheException if no off-heap size is configured for the cache
+     */
+    public static OffHeapStore create(Ehcache cache, Pool onHeapPool, Pool offHeapPool) {
+        long capacity = cache.getCacheConfiguration().getMaxBytesLocalOffHeap();
+        if (capacity <= 0 && cache.getCacheManager() != null) {
+            capacity = cache.getCacheManager().getConfiguration().getMaxBytesLocalOffHeap();
+        }
+        if (capacity <= 0) {
+            throw new CacheException("Cache " + cache.getName() + " overflows to off-heap but neither the cache nor its cache manager "
+                                     + "define maxBytesLocalOffHeap");
+        }
+        return new OffHeapStore(cache, onHeapPool, offHeapPool, capacity);
+    }
+
+    /**
+     * Create a CacheStore with an on-heap caching tier in front of an off-heap store.
+     *
+     * @param cache the cache
+     * @param onHeapPool the pool tracking on-heap usage
+     * @param offHeapPool the pool tracking off-heap usage
+     * @return the tiered store
+     */
+    public static Store createCacheStore(Ehcache cache, Pool onHeapPool, Pool offHeapPool) {
+        OffHeapStore offHeapStore = create(cache, onHeapPool, offHeapPool);
+        OnHeapCachingTier<Object, Element> onHeapCache = OnHeapCachingTier.createOnHeapCache(cache, onHeapPool);
+        return new CacheStore(onHeapCache, offHeapStore, cache.getCacheConfiguration());
+    }
+
+    /**
+     * Serialize an element for storage.
+     *
+     * @param element the element to serialize
+     * @return its binary form
+     */
+    byte[] encode(Element element) {
+        try {
+            return MemoryEfficientByteArrayOutputStream.serialize(element, serializer).getBytes();
+        } catch (ConcurrentModificationException e) {
+            throw new CacheException("Failed to serialize element due to ConcurrentModificationException. " +
+                                     "This is frequently the result of inappropriately sharing thread unsafe object " +
+                                     "(eg. ArrayList, HashMap, etc) between threads", e);
+        } catch (IOException e) {
+            throw new CacheException("Failed to serialize element " + element.getObjectKey() + " for the off-heap store", e);
+        }
+    }
+
+    /**
+     * Deserialize a stored element.
+     *
+     * @param bytes the binary form of the element
+     * @return the element
+     */
+    Element decode(byte[] bytes) {
+        try {
+            return (Element) serializer.deserialize(new ByteArrayInputStream(bytes), classLoader);
+        } catch (IOException e) {
+            throw new CacheException(e);
+        } catch (ClassNotFoundException e) {
+            throw new CacheException(e);
+        }
+    }
+
+    /**
+     * Allocate a chunk of the given size, evicting mappings until it fits.
+     *
+     * @param size record size
+     * @return the chunk address, or a negative value if nothing more can be evicted
+     */
+    long allocate(int size) {
+        long address = allocator.allocate(size);
+        if (address >= 0) {
+            return address;
+        }
+        int chunkSize = allocator.chunkSizeFor(size);
+        boolean sameSize = size <= allocator.getPageSize();
+        while (address < 0) {
+            if (sameSize && !evictOne(chunkSize)) {
+                sameSize = false;
+            } else if (!sameSize && !evictOne(0)) {
+                return address;
+            }
+            address = allocator.allocate(size);
+        }
+        return address;
+    }
+
+    /**
+     * Evict up to {@code count} mappings.
+     *
+     * @param count number of mappings to evict
+     * @return number of mappings actually evicted
+     */
+    int evict(int count) {
+        int evicted = 0;
+        while (evicted < count && evictOne(0)) {
+            evicted++;
+        }
+        return evicted;
+    }
+
+    private boolean evictOne(int chunkSize) {
+        long now = System.currentTimeMillis();
+        int start = evictionSegment.getAndIncrement();
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[(start + i) & (segments.length - 1)].evictNext(chunkSize, now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Element fault(final Object key, final boolean updateStats) {
+        getObserver.begin();
+        if (key == null) {
+            getObserver.end(GetOutcome.MISS);
+            return null;
+        } else {
+            int hash = hash(key.hashCode());
+            Element e = segmentFor(hash).get(key, hash, true);
+            if (e == null) {
+                getObserver.end(GetOutcome.MISS);
+            } else {
+                getObserver.end(GetOutcome.HIT);
+            }
+            return e;
+        }
+    }
+
+    @Override
+    public Map<Object, Element> faultAll(final Collection<?> keys, final boolean updateStats) {
+        return bulkOperations.getAll(keys, true, true);
+    }
+
+    @Override
+    public boolean putFaulted(final Element element) {
+        if (element == null) {
+            return false;
+        } else {
+            putObserver.begin();
+            Object key = element.getObjectKey();
+            int hash = hash(key.hashCode());
+            Element oldElement = segmentFor(hash).put(key, hash, element, false, true);
+            if (oldElement == null) {
+                putObserver.end(PutOutcome.ADDED);
+                return true;
+            } else {
+                putObserver.end(PutOutcome.UPDATED);
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void flush(final Element element) {
+        final Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        segmentFor(hash).flush(key, hash, element);
+    }
+
+    /**
+     * Verifies if the mapping for a key is marked as faulted
+     * @param key the key to check the mapping for
+     * @return true if faulted, false otherwise (including no mapping)
+     */
+    public boolean isFaulted(final Object key) {
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).isFaulted(key, hash);
+    }
+
+    /**
+     * Marks all entries has flushed (i.e. not faulted)
+     */
+    public void clearFaultedBit() {
+        for (OffHeapSegment segment : segments) {
+            segment.clearFaultedBit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean bufferFull() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyInMemory(Object key) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyOffHeap(Object key) {
+        return containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyOnDisk(Object key) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void expireElements() {
+        long now = System.currentTimeMillis();
+        for (OffHeapSegment segment : segments) {
+            segment.expire(now);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void flush() throws IOException {
+        // nothing to flush : the off-heap store does not outlive the JVM
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Policy getInMemoryEvictionPolicy() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setInMemoryEvictionPolicy(Policy policy) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getInMemorySize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getInMemorySizeInBytes() {
+        long size = onHeapPoolAccessor.getSize();
+        if (size < 0) {
+            return 0;
+        } else {
+            return size;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Statistic(name = "size", tags = "local-offheap")
+    public int getOffHeapSize() {
+        return getSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Statistic(name = "size-in-bytes", tags = "local-offheap")
+    public long getOffHeapSizeInBytes() {
+        long size = offHeapPoolAccessor.getSize();
+        if (size < 0) {
+            return allocator.getOccupied();
+        } else {
+            return size;
+        }
+    }
+
+    /**
+     * Return the number of bytes of direct memory reserved by this store.
+     * <p>
+     * This is at least {@link #getOffHeapSizeInBytes()}, the difference being free space in partially used pages.
+     *
+     * @return the reserved direct memory in bytes
+     */
+    public long getOffHeapReservedSizeInBytes() {
+        return allocator.getReserved();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getOnDiskSize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getOnDiskSizeInBytes() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getTerracottaClusteredSize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getMBean() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean put(Element element) {
+        if (element == null) {
+            return false;
+        } else {
+            putObserver.begin();
+            Object key = element.getObjectKey();
+            int hash = hash(key.hashCode());
+            Element oldElement = segmentFor(hash).put(key, hash, element, false, false);
+            if (oldElement == null) {
+                putObserver.end(PutOutcome.ADDED);
+                return true;
+            } else {
+                putObserver.end(PutOutcome.UPDATED);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements are grouped by segment, each segment being locked once for all of its elements.
+     */
+    @Override
+    public void putAll(Collection<Element> elements) {
+        bulkOperations.putAll(elements);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean putWithWriter(Element element, CacheWriterManager writerManager) {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        final ReentrantReadWriteLock.WriteLock writeLock = segmentFor(hash).writeLock();
+        writeLock.lock();
+        try {
+            boolean newPut = put(element);
+            if (writerManager != null) {
+                try {
+                    writerManager.put(element);
+                } catch (RuntimeException e) {
+                    throw new StoreUpdateException(e, !newPut);
+                }
+            }
+            return newPut;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element get(Object key) {
+        getObserver.begin();
+        Element e = getQuiet(key);
+        if (e == null) {
+            getObserver.end(GetOutcome.MISS);
+            return null;
+        } else {
+            getObserver.end(GetOutcome.HIT);
+            return e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element getQuiet(Object key) {
+        if (key == null) {
+            return null;
+        } else {
+            int hash = hash(key.hashCode());
+            return segmentFor(hash).get(key, hash, false);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, each segment being locked once for all of its keys.
+     */
+    @Override
+    public Map<Object, Element> getAll(Collection<?> keys) {
+        return bulkOperations.getAll(keys, false, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, each segment being locked once for all of its keys.
+     */
+    @Override
+    public Map<Object, Element> getAllQuiet(Collection<?> keys) {
+        return bulkOperations.getAll(keys, false, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List getKeys() {
+        return new ArrayList(keySet());
+    }
+
+    /**
+     * Get a set view of the keys in this store
+     *
+     * @return a set view of the keys in this store
+     */
+    public Set<Object> keySet() {
+        if (keySet != null) {
+            return keySet;
+        } else {
+            keySet = new KeySet();
+            return keySet;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        removeObserver.begin();
+        try {
+            int hash = hash(key.hashCode());
+            return segmentFor(hash).remove(key, hash, null, null);
+        } finally {
+            removeObserver.end(RemoveOutcome.SUCCESS);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Keys are grouped by segment, each segment being locked once for all of its keys. A remove is recorded for each
+     * mapping actually removed.
+     */
+    @Override
+    public void removeAll(Collection<?> keys) {
+        bulkOperations.removeAll(keys);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element removeWithWriter(Object key, CacheWriterManager writerManager) {
+        int hash = hash(key.hashCode());
+        final ReentrantReadWriteLock.WriteLock writeLock = segmentFor(hash).writeLock();
+        writeLock.lock();
+        try {
+            Element removed = remove(key);
+            if (writerManager != null) {
+                writerManager.remove(new CacheEntry(key, removed));
+            }
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeAll() {
+        for (OffHeapSegment s : segments) {
+            s.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void dispose() {
+        if (status.compareAndSet(Status.STATUS_ALIVE, Status.STATUS_SHUTDOWN)) {
+            removeAll();
+            allocator.dispose();
+            onHeapPoolAccessor.unlink();
+            offHeapPoolAccessor.unlink();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getSize() {
+        final OffHeapSegment[] segs = this.segments;
+        long size = -1;
+        // Try a few times to get accurate count. On failure due to
+        // continuous async changes in table, resort to locking.
+        for (int k = 0; k < RETRIES_BEFORE_LOCK; ++k) {
+            size = volatileSize(segs);
+            if (size >= 0) {
+                break;
+            }
+        }
+        if (size < 0) {
+            // Resort to locking all segments
+            size = lockedSize(segs);
+        }
+        if (size > Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        } else {
+            return (int) size;
+        }
+    }
+
+    private static long volatileSize(OffHeapSegment[] segs) {
+        int[] mc = new int[segs.length];
+        long check = 0;
+        long sum = 0;
+        int mcsum = 0;
+        for (int i = 0; i < segs.length; ++i) {
+            sum += segs[i].count;
+            mc[i] = segs[i].modCount;
+            mcsum += mc[i];
+        }
+        if (mcsum != 0) {
+            for (int i = 0; i < segs.length; ++i) {
+                check += segs[i].count;
+                if (mc[i] != segs[i].modCount) {
+                    return -1;
+                }
+            }
+        }
+        if (check == sum) {
+            return sum;
+        } else {
+            return -1;
+        }
+    }
+
+    private static long lockedSize(OffHeapSegment[] segs) {
+        long size = 0;
+        for (OffHeapSegment seg : segs) {
+            seg.readLock().lock();
+        }
+        for (OffHeapSegment seg : segs) {
+            size += seg.count;
+        }
+        for (OffHeapSegment seg : segs) {
+            seg.readLock().unlock();
+        }
+
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Status getStatus() {
+        return status.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKey(Object key) {
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).containsKey(key, hash);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getInternalContext() {
+        if (lockProvider != null) {
+            return lockProvider;
+        } else {
+            lockProvider = new LockProvider();
+            return lockProvider;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element putIfAbsent(Element element) throws NullPointerException {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).put(key, hash, element, true, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element removeElement(Element element, ElementValueComparator comparator) throws NullPointerException {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).remove(key, hash, element, comparator);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean replace(Element old, Element element, ElementValueComparator comparator)
+            throws NullPointerException, IllegalArgumentException {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).replace(key, hash, old, element, comparator);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element replace(Element element) throws NullPointerException {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).replace(key, hash, element);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public StripedReadWriteLock createStripedReadWriteLock() {
+        return new OffHeapStoreStripedReadWriteLock();
+    }
+
+    static int hash(int hash) {
+        int spread = hash;
+        spread += (spread << FIFTEEN ^ FFFFCD7D);
+        spread ^= spread >>> TEN;
+        spread += (spread << THREE);
+        spread ^= spread >>> SIX;
+        spread += (spread << 2) + (spread << FOURTEEN);
+        return (spread ^ spread >>> SIXTEEN);
+    }
+
+    private OffHeapSegment segmentFor(int hash) {
+        return segments[hash >>> segmentShift];
+    }
+
+    /**
+     * Key set implementation for the OffHeapStore
+     */
+    final class KeySet extends AbstractSet<Object> {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Iterator<Object> iterator() {
+            return new KeyIterator();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return OffHeapStore.this.getSize();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean contains(Object o) {
+            return OffHeapStore.this.containsKey(o);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean remove(Object o) {
+            return OffHeapStore.this.remove(o) != null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void clear() {
+            OffHeapStore.this.removeAll();
+        }
+    }
+
+    /**
+     * Iterator over the store key set, weakly consistent at segment granularity.
+     */
+    private final class KeyIterator implements Iterator<Object> {
+        private int segmentIndex = segments.length;
+        private Iterator<Object> current = Collections.emptyList().iterator();
+        private Object lastReturned;
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean hasNext() {
+            while (!current.hasNext() && segmentIndex > 0) {
+                current = segments[--segmentIndex].keys().iterator();
+            }
+            return current.hasNext();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = current.next();
+            return lastReturned;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            OffHeapStore.this.remove(lastReturned);
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * LockProvider implementation that uses the segment locks.
+     */
+    private class LockProvider implements CacheLockProvider {
+
+        /**
+         * {@inheritDoc}
+         */
+        public Sync getSyncForKey(Object key) {
+            int hash = key == null ? 0 : hash(key.hashCode());
+            return new ReadWriteLockSync(segmentFor(hash));
+        }
+    }
+
+    /**
+     * StripedReadWriteLock impl.
+     */
+    private final class OffHeapStoreStripedReadWriteLock implements StripedReadWriteLock {
+
+        private final ReadWriteLockSync[] locks = new ReadWriteLockSync[DEFAULT_SEGMENT_COUNT];
+
+        private OffHeapStoreStripedReadWriteLock() {
+            for (int i = 0; i < locks.length; i++) {
+                locks[i] = new ReadWriteLockSync();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public ReadWriteLock getLockForKey(final Object key) {
+            return getSyncForKey(key).getReadWriteLock();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public List<ReadWriteLockSync> getAllSyncs() {
+            ArrayList<ReadWriteLockSync> syncs = new ArrayList<ReadWriteLockSync>(locks.length);
+            Collections.addAll(syncs, locks);
+            return syncs;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public ReadWriteLockSync getSyncForKey(final Object key) {
+            return locks[hash(key.hashCode()) >>> segmentShift];
+        }
+    }
+
+    /**
+     * PoolParticipant used with both the heap pool (keys and index live on heap) and the off-heap pool.
+     */
+    private final class OffHeapStorePoolParticipant implements PoolParticipant {
+
+        private final EventRateSimpleMovingAverage hitRate;
+        private final EventRateSimpleMovingAverage missRate;
+
+        private OffHeapStorePoolParticipant(final EventRateSimpleMovingAverage hitRate, final EventRateSimpleMovingAverage missRate) {
+            this.hitRate = hitRate;
+            this.missRate = missRate;
+        }
+
+        @Override
+        public boolean evict(int count, long size) {
+            return OffHeapStore.this.evict(count) == count;
+        }
+
+        @Override
+        public float getApproximateHitRate() {
+            return hitRate.rate(TimeUnit.SECONDS).floatValue();
+        }
+
+        @Override
+        public float getApproximateMissRate() {
+            return missRate.rate(TimeUnit.SECONDS).floatValue();
+        }
+
+        @Override
+        public long getApproximateCountSize() {
+            return getOffHeapSize();
+        }
+    }
+}
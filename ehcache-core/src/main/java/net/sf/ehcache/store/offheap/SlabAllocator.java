@@ -0,0 +1,434 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Allocator carving direct {@link ByteBuffer} pages into fixed size chunks.
+ * <p>
+ * Chunk sizes follow a geometric progression of size classes, so a record never wastes more than a quarter of its
+ * chunk. Pages are handed to a size class on demand and go back to a shared pool as soon as all of their chunks are
+ * free, which lets memory migrate between size classes as the workload changes. Records larger than a page get a
+ * dedicated buffer of their own. Free chunks are chained through their first four bytes, so the allocator has no
+ * per-chunk heap overhead.
+ * <p>
+ * An address holds the page index in its upper and the offset within the page in its lower 32 bits.
+ * Allocating and freeing are synchronized. Reading and writing the contents of a chunk is left to its owner.
+ */
+final class SlabAllocator {
+
+    /**
+     * Size of the smallest chunk
+     */
+    static final int MIN_CHUNK_SIZE = 64;
+
+    /**
+     * Size of the pages chunks are carved from, unless the capacity is too small to hold enough of them
+     */
+    static final int DEFAULT_PAGE_SIZE = 1024 * 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlabAllocator.class);
+
+    private static final int MIN_PAGE_SIZE = 4 * 1024;
+    private static final int MIN_PAGE_COUNT = 16;
+    private static final float GROWTH_FACTOR = 1.25f;
+    private static final int ALIGNMENT = 8;
+    private static final int HUGE = -1;
+    private static final int NO_CHUNK = -1;
+    private static final int ADDRESS_SHIFT = 32;
+    private static final long OFFSET_MASK = 0xffffffffL;
+
+    private final int pageSize;
+    private final int[] chunkSizes;
+    private final Page[] partialPages;
+    private final Deque<ByteBuffer> sparePages = new ArrayDeque<ByteBuffer>();
+
+    private volatile Page[] pages = new Page[MIN_PAGE_COUNT];
+    private int[] freeIds = new int[MIN_PAGE_COUNT];
+    private int freeIdCount;
+    private int nextId;
+
+    private long capacity;
+    private volatile long reserved;
+    private volatile long occupied;
+
+    /**
+     * Create an allocator that will never reserve more than the given number of bytes.
+     *
+     * @param capacity the maximum number of bytes of direct memory to reserve
+     */
+    SlabAllocator(long capacity) {
+        this.capacity = capacity;
+        this.pageSize = pageSizeFor(capacity);
+        this.chunkSizes = chunkSizesFor(pageSize);
+        this.partialPages = new Page[chunkSizes.length];
+    }
+
+    private static int pageSizeFor(long capacity) {
+        long size = Math.min(DEFAULT_PAGE_SIZE, capacity / MIN_PAGE_COUNT);
+        if (size <= MIN_PAGE_SIZE) {
+            return MIN_PAGE_SIZE;
+        } else {
+            return Integer.highestOneBit((int) size);
+        }
+    }
+
+    private static int[] chunkSizesFor(int pageSize) {
+        int[] sizes = new int[MIN_PAGE_COUNT];
+        int count = 0;
+        int size = MIN_CHUNK_SIZE;
+        while (size < pageSize) {
+            if (count == sizes.length) {
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+            sizes[count++] = size;
+            int next = (int) (size * GROWTH_FACTOR);
+            size = (next + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+        }
+        sizes = Arrays.copyOf(sizes, count + 1);
+        sizes[count] = pageSize;
+        return sizes;
+    }
+
+    /**
+     * Allocate a chunk able to hold the given number of bytes.
+     *
+     * @param size the number of bytes needed
+     * @return the address of the chunk, or a negative value if the capacity is exhausted
+     */
+    synchronized long allocate(int size) {
+        if (size > pageSize) {
+            return allocateHuge(size);
+        }
+        int sizeClass = sizeClassFor(size);
+        Page page = partialPages[sizeClass];
+        if (page == null) {
+            page = newPage(sizeClass);
+            if (page == null) {
+                return NO_CHUNK;
+            }
+        }
+        int offset = page.allocate();
+        if (page.isFull()) {
+            unlink(page);
+        }
+        occupied += page.chunkSize;
+        return (((long) page.id) << ADDRESS_SHIFT) | offset;
+    }
+
+    /**
+     * Return the chunk at the given address to the allocator.
+     *
+     * @param address address of the chunk
+     */
+    synchronized void free(long address) {
+        Page page = page(address);
+        occupied -= page.chunkSize;
+        if (page.sizeClass == HUGE) {
+            reserved -= page.chunkSize;
+            release(page);
+        } else {
+            boolean wasFull = page.isFull();
+            page.free(offset(address));
+            if (page.live == 0) {
+                if (!wasFull) {
+                    unlink(page);
+                }
+                release(page);
+                sparePages.push(page.buffer);
+            } else if (wasFull) {
+                link(page);
+            }
+        }
+    }
+
+    /**
+     * Free every chunk at once.
+     * <p>
+     * Page buffers are kept for reuse, dedicated buffers are dropped.
+     */
+    synchronized void clear() {
+        for (Page page : pages) {
+            if (page != null) {
+                if (page.sizeClass == HUGE) {
+                    reserved -= page.chunkSize;
+                } else {
+                    sparePages.push(page.buffer);
+                }
+            }
+        }
+        Arrays.fill(partialPages, null);
+        pages = new Page[MIN_PAGE_COUNT];
+        freeIds = new int[MIN_PAGE_COUNT];
+        freeIdCount = 0;
+        nextId = 0;
+        occupied = 0;
+    }
+
+    /**
+     * Free every chunk and drop all buffers, making the direct memory collectable.
+     */
+    synchronized void dispose() {
+        clear();
+        reserved -= ((long) sparePages.size()) * pageSize;
+        sparePages.clear();
+    }
+
+    /**
+     * Copy the first {@code length} bytes of the chunk at the given address.
+     *
+     * @param address address of the chunk
+     * @param length number of bytes to copy
+     * @return a copy of the chunk contents
+     */
+    byte[] read(long address, int length) {
+        ByteBuffer view = page(address).buffer.duplicate();
+        view.position(offset(address));
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Copy the given bytes to the start of the chunk at the given address.
+     *
+     * @param address address of the chunk
+     * @param source bytes to copy
+     * @param length number of bytes to copy
+     */
+    void write(long address, byte[] source, int length) {
+        ByteBuffer view = page(address).buffer.duplicate();
+        view.position(offset(address));
+        view.put(source, 0, length);
+    }
+
+    /**
+     * Return the size of the chunk at the given address, this is what the record stored there costs.
+     *
+     * @param address address of the chunk
+     * @return the chunk size
+     */
+    int chunkSize(long address) {
+        return page(address).chunkSize;
+    }
+
+    /**
+     * Return the size of the chunk that would be allocated for a record of the given size.
+     *
+     * @param size record size
+     * @return the chunk size
+     */
+    int chunkSizeFor(int size) {
+        if (size > pageSize) {
+            return size;
+        } else {
+            return chunkSizes[sizeClassFor(size)];
+        }
+    }
+
+    /**
+     * Return the number of bytes in allocated chunks.
+     *
+     * @return the occupied size in bytes
+     */
+    long getOccupied() {
+        return occupied;
+    }
+
+    /**
+     * Return the number of bytes of direct memory held by this allocator.
+     *
+     * @return the reserved size in bytes
+     */
+    long getReserved() {
+        return reserved;
+    }
+
+    /**
+     * Return the size of the pages this allocator carves chunks from.
+     *
+     * @return the page size in bytes
+     */
+    int getPageSize() {
+        return pageSize;
+    }
+
+    private int sizeClassFor(int size) {
+        int index = Arrays.binarySearch(chunkSizes, Math.max(size, MIN_CHUNK_SIZE));
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private Page newPage(int sizeClass) {
+        ByteBuffer buffer = sparePages.poll();
+        if (buffer == null) {
+            buffer = allocateDirect(pageSize);
+            if (buffer == null) {
+                return null;
+            }
+        }
+        Page page = new Page(nextFreeId(), buffer, sizeClass, chunkSizes[sizeClass]);
+        register(page);
+        link(page);
+        return page;
+    }
+
+    private long allocateHuge(int size) {
+        ByteBuffer buffer = allocateDirect(size);
+        if (buffer == null) {
+            return NO_CHUNK;
+        }
+        Page page = new Page(nextFreeId(), buffer, HUGE, size);
+        page.allocate();
+        register(page);
+        occupied += size;
+        return ((long) page.id) << ADDRESS_SHIFT;
+    }
+
+    private ByteBuffer allocateDirect(int size) {
+        while (reserved + size > capacity && !sparePages.isEmpty()) {
+            sparePages.pop();
+            reserved -= pageSize;
+        }
+        if (reserved + size > capacity) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+            reserved += size;
+            return buffer;
+        } catch (OutOfMemoryError e) {
+            LOG.warn("Could not reserve {} more bytes of direct memory, capping the off-heap store at {} bytes instead of {}. "
+                     + "Consider raising -XX:MaxDirectMemorySize", new Object[] {size, reserved, capacity});
+            capacity = reserved;
+            return null;
+        }
+    }
+
+    private void link(Page page) {
+        Page head = partialPages[page.sizeClass];
+        page.previous = null;
+        page.next = head;
+        if (head != null) {
+            head.previous = page;
+        }
+        partialPages[page.sizeClass] = page;
+    }
+
+    private void unlink(Page page) {
+        if (page.previous == null) {
+            partialPages[page.sizeClass] = page.next;
+        } else {
+            page.previous.next = page.next;
+        }
+        if (page.next != null) {
+            page.next.previous = page.previous;
+        }
+        page.previous = null;
+        page.next = null;
+    }
+
+    private int nextFreeId() {
+        if (freeIdCount > 0) {
+            return freeIds[--freeIdCount];
+        } else {
+            return nextId++;
+        }
+    }
+
+    private void register(Page page) {
+        Page[] current = pages;
+        if (page.id >= current.length) {
+            Page[] grown = Arrays.copyOf(current, current.length * 2);
+            grown[page.id] = page;
+            pages = grown;
+        } else {
+            current[page.id] = page;
+        }
+    }
+
+    private void release(Page page) {
+        pages[page.id] = null;
+        if (freeIdCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIdCount * 2);
+        }
+        freeIds[freeIdCount++] = page.id;
+    }
+
+    private Page page(long address) {
+        return pages[(int) (address >>> ADDRESS_SHIFT)];
+    }
+
+    private static int offset(long address) {
+        return (int) (address & OFFSET_MASK);
+    }
+
+    /**
+     * A page of chunks of a single size.
+     */
+    private static final class Page {
+
+        private final int id;
+        private final ByteBuffer buffer;
+        private final int sizeClass;
+        private final int chunkSize;
+        private final int chunks;
+
+        private int unused;
+        private int freeHead = NO_CHUNK;
+        private int live;
+        private Page previous;
+        private Page next;
+
+        Page(int id, ByteBuffer buffer, int sizeClass, int chunkSize) {
+            this.id = id;
+            this.buffer = buffer;
+            this.sizeClass = sizeClass;
+            this.chunkSize = chunkSize;
+            this.chunks = buffer.capacity() / chunkSize;
+        }
+
+        int allocate() {
+            int offset;
+            if (freeHead == NO_CHUNK) {
+                offset = unused;
+                unused += chunkSize;
+            } else {
+                offset = freeHead;
+                freeHead = buffer.getInt(offset);
+            }
+            live++;
+            return offset;
+        }
+
+        void free(int offset) {
+            buffer.putInt(offset, freeHead);
+            freeHead = offset;
+            live--;
+        }
+
+        boolean isFull() {
+            return live == chunks;
+        }
+    }
+}
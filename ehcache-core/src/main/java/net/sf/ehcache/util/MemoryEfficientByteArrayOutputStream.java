@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
+import net.sf.ehcache.serializer.Serializer;
+
 /**
  * This class is designed to minimise the number of System.arraycopy(); methods
  * required to complete.
@@ -99,4 +101,19 @@ public final class MemoryEfficientByteArrayOutputStream extends ByteArrayOutputS
         lastSize = outstr.getBytes().length;
         return outstr;
     }
+
+    /**
+     * Factory method. Serializes the given object using the supplied {@link Serializer}, with the same initial
+     * buffer size guess as {@link #serialize(Serializable)}.
+     * @param object the object to serialize
+     * @param serializer the serializer to use
+     * @return a ByteArrayOutputStream with the serialized object in it
+     * @throws java.io.IOException if something goes wrong with the serialization
+     */
+    public static MemoryEfficientByteArrayOutputStream serialize(Object object, Serializer serializer) throws IOException {
+        MemoryEfficientByteArrayOutputStream outstr = new MemoryEfficientByteArrayOutputStream(lastSize);
+        serializer.serialize(object, outstr);
+        lastSize = outstr.size();
+        return outstr;
+    }
 }
@@ -56,11 +56,11 @@ public class NamedThreadFactory implements ThreadFactory {
 
     /**
      * Returns a new thread using a name as specified by this factory {@inheritDoc}
+     * <p>
+     * The thread is a virtual thread when the virtual thread friendly execution mode is enabled, see {@link VmUtils#newThread}.
      */
     public Thread newThread(Runnable runnable) {
-        final Thread thread = new Thread(runnable, namePrefix + " thread-" + threadNumber.getAndIncrement());
-        thread.setDaemon(daemon);
-        return thread;
+        return VmUtils.newThread(runnable, namePrefix + " thread-" + threadNumber.getAndIncrement(), daemon);
     }
 
 }
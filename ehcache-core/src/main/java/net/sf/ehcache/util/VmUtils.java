@@ -19,6 +19,11 @@
  */
 package net.sf.ehcache.util;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import net.sf.ehcache.CacheException;
+
 /**
  * Misc. VM utilities.
  * 
@@ -26,8 +31,19 @@ package net.sf.ehcache.util;
  */
 public class VmUtils {
 
+    /**
+     * System property enabling the virtual thread friendly execution mode: when set to true, and the VM supports
+     * virtual threads, the internal worker threads of Ehcache are created as virtual threads and the blocking waits of
+     * {@link net.sf.ehcache.constructs.blocking.BlockingCache} are interruptible.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "net.sf.ehcache.virtualThreads";
+
     private static boolean inGoogleAppEngine;
 
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_UNSTARTED;
+
     static {
         try {
             Class.forName("com.google.apphosting.api.DeadlineExceededException");
@@ -35,6 +51,23 @@ public class VmUtils {
         } catch (ClassNotFoundException cnfe) {
             inGoogleAppEngine = false;
         }
+
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderUnstarted = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builder.getMethod("name", String.class);
+            builderUnstarted = builder.getMethod("unstarted", Runnable.class);
+        } catch (ClassNotFoundException e) {
+            ofVirtual = null;
+        } catch (NoSuchMethodException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_UNSTARTED = builderUnstarted;
     }
 
     /**
@@ -43,4 +76,62 @@ public class VmUtils {
     public static boolean isInGoogleAppEngine() {
         return inGoogleAppEngine;
     }
+
+    /**
+     * @return true if the VM supports virtual threads, false otherwise.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @return true if the virtual thread friendly execution mode is enabled and supported by the VM, false otherwise.
+     * @see #VIRTUAL_THREADS_PROPERTY
+     */
+    public static boolean isVirtualThreadModeEnabled() {
+        return isVirtualThreadSupported() && Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY);
+    }
+
+    /**
+     * Creates an unstarted internal worker thread: a virtual thread when the virtual thread friendly execution mode is
+     * enabled and a daemon thread is asked for, a platform thread otherwise.
+     * <p>
+     * Virtual threads are always daemon threads: non-daemon threads, such as the disk writers that must complete before
+     * the VM exits, remain platform threads in every mode.
+     *
+     * @param task the task the thread runs
+     * @param name the name of the thread
+     * @param daemon whether the thread is a daemon thread
+     * @return the unstarted thread
+     */
+    public static Thread newThread(Runnable task, String name, boolean daemon) {
+        if (daemon && isVirtualThreadModeEnabled()) {
+            return newVirtualThread(task, name);
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(daemon);
+        return thread;
+    }
+
+    /**
+     * Creates an unstarted virtual thread.
+     *
+     * @param task the task the thread runs
+     * @param name the name of the thread
+     * @return the unstarted thread
+     * @throws UnsupportedOperationException if the VM does not support virtual threads
+     */
+    public static Thread newVirtualThread(Runnable task, String name) throws UnsupportedOperationException {
+        if (!isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this VM");
+        }
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+            return (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+        } catch (IllegalAccessException e) {
+            throw new CacheException("Unable to create virtual thread " + name, e);
+        } catch (InvocationTargetException e) {
+            throw new CacheException("Unable to create virtual thread " + name, e.getCause());
+        }
+    }
 }
@@ -33,6 +33,7 @@ import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.CacheWriterConfiguration;
+import net.sf.ehcache.util.VmUtils;
 import net.sf.ehcache.writer.CacheWriter;
 import net.sf.ehcache.writer.writebehind.operations.DeleteOperation;
 import net.sf.ehcache.writer.writebehind.operations.SingleOperation;
@@ -99,8 +100,7 @@ public abstract class AbstractWriteBehindQueue implements WriteBehind {
       this.retryAttempts = cacheWriterConfig.getRetryAttempts();
       this.retryAttemptDelaySeconds = cacheWriterConfig.getRetryAttemptDelaySeconds();
 
-      this.processingThread = new Thread(new ProcessingThread(), cacheName + " write-behind");
-      this.processingThread.setDaemon(true);
+      this.processingThread = VmUtils.newThread(new ProcessingThread(), cacheName + " write-behind", true);
   }
 
   /**
@@ -899,6 +899,32 @@ public class ElementTest {
         }
     }
 
+    @Test
+    public void testSampledAccessStatistics() {
+        long now = System.currentTimeMillis();
+        Element element = new Element("key", "value", 1, now, now - 10 * Element.ACCESS_TIME_RESOLUTION_MILLIS, now, 0);
+        for (int i = 0; i < Element.HIT_SAMPLING_RATE; i++) {
+            element.sampleAccessStatistics();
+        }
+        assertThat(element.getHitCount(), is((long) Element.HIT_SAMPLING_RATE));
+        long lastAccessTime = element.getLastAccessTime();
+        assertTrue(lastAccessTime >= now);
+
+        Element recent = new Element("key", "value", 1, now, now, now, 0);
+        recent.sampleAccessStatistics();
+        if (System.currentTimeMillis() - now < Element.ACCESS_TIME_RESOLUTION_MILLIS) {
+            assertThat(recent.getLastAccessTime(), is(now));
+        }
+
+        int hits = 100000;
+        for (int i = 0; i < hits; i++) {
+            element.sampleAccessStatistics();
+        }
+        long counted = element.getHitCount() - Element.HIT_SAMPLING_RATE;
+        assertTrue("counted " + counted + " for " + hits + " hits", Math.abs(counted - hits) < hits / 10);
+        assertTrue(element.getLastAccessTime() >= lastAccessTime);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testConstructorLLLLLthrowsNegativeTTI() {
         new Element("", "", false, -1, 1);
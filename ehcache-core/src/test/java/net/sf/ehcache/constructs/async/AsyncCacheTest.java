@@ -0,0 +1,134 @@
+package net.sf.ehcache.constructs.async;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.loader.CountingCacheLoader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.CheckShorts;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(CheckShorts.class)
+public class AsyncCacheTest {
+
+    private CacheManager manager;
+    private Cache cache;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("asyncCacheTest").asyncExecutorPoolSize(2));
+        cache = new Cache(new CacheConfiguration().name("test").maxEntriesLocalHeap(100));
+        manager.addCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testHeapHitCompletesOnCallerThread() throws Exception {
+        CountingExecutor executor = new CountingExecutor();
+        AsyncCache async = new AsyncCache(cache, executor);
+        cache.put(new Element("key", "value"));
+
+        CompletableFuture<Element> hit = async.getAsync("key");
+        assertTrue(hit.isDone());
+        assertEquals("value", hit.get().getObjectValue());
+        assertEquals(0, executor.executed.get());
+
+        assertNull(async.getAsync("absent").get(1, TimeUnit.SECONDS));
+        assertEquals(1, executor.executed.get());
+    }
+
+    @Test
+    public void testOperationsCompleteOnCacheManagerExecutor() throws Exception {
+        AsyncCache async = new AsyncCache(cache);
+        assertSame(manager.getAsyncExecutor(), async.getExecutor());
+
+        async.putAsync(new Element("key", "value")).get(1, TimeUnit.SECONDS);
+        assertEquals("value", cache.get("key").getObjectValue());
+
+        Map<Object, Element> all = async.getAllAsync(Arrays.asList("key", "absent")).get(1, TimeUnit.SECONDS);
+        assertEquals(2, all.size());
+        assertEquals("value", all.get("key").getObjectValue());
+        assertNull(all.get("absent"));
+
+        assertTrue(async.removeAsync("key").get(1, TimeUnit.SECONDS));
+        assertFalse(async.removeAsync("key").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLoadCompletionIsObservable() throws Exception {
+        CountingCacheLoader loader = new CountingCacheLoader();
+        cache.registerCacheLoader(loader);
+        AsyncCache async = new AsyncCache(cache);
+
+        async.loadAsync("key").get(1, TimeUnit.SECONDS);
+        assertTrue(cache.isKeyInCache("key"));
+
+        async.loadAllAsync(Arrays.asList("key", "other1", "other2"), null).get(1, TimeUnit.SECONDS);
+        assertTrue(cache.isKeyInCache("other1"));
+        assertTrue(cache.isKeyInCache("other2"));
+        assertEquals(3, loader.getLoadCounter() + loader.getLoadAllCounter());
+
+        Element loaded = async.getWithLoaderAsync("key", null, null).get(1, TimeUnit.SECONDS);
+        assertEquals(loaded, cache.get("key"));
+    }
+
+    @Test
+    public void testFailuresCompleteTheFutureExceptionally() throws Exception {
+        AsyncCache async = new AsyncCache(cache);
+        manager.shutdown();
+        try {
+            async.getAsync("key").get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException || e.getCause() instanceof CacheException);
+        }
+    }
+
+    @Test
+    public void testApplicationExecutorReplacesThePool() throws Exception {
+        CountingExecutor executor = new CountingExecutor();
+        manager.setAsyncExecutor(executor);
+        AsyncCache async = new AsyncCache(cache);
+
+        async.putAsync(new Element("key", "value")).get(1, TimeUnit.SECONDS);
+        assertEquals(1, executor.executed.get());
+    }
+
+    /**
+     * Runs tasks on the calling thread, counting them
+     */
+    private static final class CountingExecutor implements Executor {
+
+        private final AtomicInteger executed = new AtomicInteger();
+
+        public void execute(Runnable command) {
+            executed.incrementAndGet();
+            command.run();
+        }
+    }
+}
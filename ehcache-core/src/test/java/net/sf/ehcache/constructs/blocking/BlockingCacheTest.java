@@ -18,6 +18,7 @@ package net.sf.ehcache.constructs.blocking;
 
 import static org.hamcrest.number.OrderingComparison.lessThanOrEqualTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
@@ -40,6 +41,7 @@ import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.concurrent.LockType;
 import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.Configuration;
 import net.sf.ehcache.config.DiskStoreConfiguration;
@@ -48,10 +50,12 @@ import net.sf.ehcache.statistics.extended.ExtendedStatistics;
 import net.sf.ehcache.statistics.extended.ExtendedStatistics.Operation;
 import net.sf.ehcache.statistics.extended.ExtendedStatistics.Result;
 import net.sf.ehcache.store.disk.DiskStoreHelper;
+import net.sf.ehcache.util.VmUtils;
 
 import org.hamcrest.collection.IsCollectionWithSize;
 import org.hamcrest.collection.IsEmptyCollection;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -541,6 +545,97 @@ public final class BlockingCacheTest {
         }
     }
 
+    @Test
+    public void testInterruptedWaiterOfAnInterruptibleCacheGivesUp() throws InterruptedException {
+        CacheManager manager = createCacheManager("testInterruptedWaiterOfAnInterruptibleCacheGivesUp");
+        try {
+            BlockingCache blockingCache = new BlockingCache(manager.getEhcache("testInterruptedWaiterOfAnInterruptibleCacheGivesUp"));
+            blockingCache.setInterruptible(true);
+            String key = "BLOCKING_KEY";
+            assertNull(blockingCache.get(key));
+
+            Waiter waiter = new Waiter(blockingCache, key);
+            waiter.start();
+            waiter.awaitBlocked();
+            waiter.interrupt();
+            waiter.join(10000);
+
+            assertFalse(waiter.isAlive());
+            assertTrue(waiter.outcome instanceof LockTimeoutException);
+            assertTrue(waiter.interrupted);
+            // the waiter released no lock, so the key is still locked by the miss of this thread
+            assertTrue(blockingCache.getLockForKey(key).isHeldByCurrentThread(LockType.WRITE));
+
+            blockingCache.put(new Element(key, "VALUE"));
+            assertFalse(blockingCache.getLockForKey(key).isHeldByCurrentThread(LockType.WRITE));
+            assertEquals("VALUE", blockingCache.get(key).getObjectValue());
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testWaitersOfADefaultCacheAreNotInterruptible() throws InterruptedException {
+        Assume.assumeTrue(!VmUtils.isVirtualThreadModeEnabled());
+        CacheManager manager = createCacheManager("testWaitersOfADefaultCacheAreNotInterruptible");
+        try {
+            BlockingCache blockingCache = new BlockingCache(manager.getEhcache("testWaitersOfADefaultCacheAreNotInterruptible"));
+            assertFalse(blockingCache.isInterruptible());
+            String key = "BLOCKING_KEY";
+            assertNull(blockingCache.get(key));
+
+            Waiter waiter = new Waiter(blockingCache, key);
+            waiter.start();
+            waiter.awaitBlocked();
+            waiter.interrupt();
+            waiter.join(200);
+            assertTrue(waiter.isAlive());
+
+            blockingCache.put(new Element(key, "VALUE"));
+            waiter.join(10000);
+            assertFalse(waiter.isAlive());
+            assertEquals("VALUE", ((Element) waiter.outcome).getObjectValue());
+            assertTrue(waiter.interrupted);
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    /**
+     * A thread getting a key, recording what the get returned or threw and whether it was left interrupted.
+     */
+    private static final class Waiter extends Thread {
+
+        private final BlockingCache blockingCache;
+        private final String key;
+        private volatile Object outcome;
+        private volatile boolean interrupted;
+
+        private Waiter(BlockingCache blockingCache, String key) {
+            this.blockingCache = blockingCache;
+            this.key = key;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                outcome = blockingCache.get(key);
+            } catch (Throwable t) {
+                outcome = t;
+            }
+            interrupted = isInterrupted();
+        }
+
+        private void awaitBlocked() throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (getState() != State.WAITING && getState() != State.TIMED_WAITING) {
+                assertTrue("waiter did not block on the key", System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+
     /**
      * Checks we cannot use a cache after shutdown
      */
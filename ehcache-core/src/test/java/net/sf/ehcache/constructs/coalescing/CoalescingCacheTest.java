@@ -0,0 +1,229 @@
+package net.sf.ehcache.constructs.coalescing;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.loader.CacheLoader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.CheckShorts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(CheckShorts.class)
+public class CoalescingCacheTest {
+
+    private CacheManager manager;
+    private Cache cache;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("coalescingCacheTest"));
+        cache = new Cache(new CacheConfiguration().name("test").maxEntriesLocalHeap(1000));
+        manager.addCache(cache);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        manager.shutdown();
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        RecordingLoader loader = new RecordingLoader();
+        loader.block("key");
+        CoalescingCache coalescing = new CoalescingCache(cache, loader);
+
+        List<Future<Element>> gets = new ArrayList<Future<Element>>();
+        for (int i = 0; i < 10; i++) {
+            gets.add(executor.submit(get(coalescing, "key")));
+        }
+        loader.awaitLoading("key");
+        loader.release("key");
+
+        for (Future<Element> get : gets) {
+            assertEquals("value-key", get.get(5, TimeUnit.SECONDS).getObjectValue());
+        }
+        assertEquals(1, loader.loads.get());
+        assertEquals(0, coalescing.getInFlightCount());
+        assertEquals("value-key", cache.get("key").getObjectValue());
+    }
+
+    @Test
+    public void testUnrelatedKeysDoNotWaitForEachOther() throws Exception {
+        RecordingLoader loader = new RecordingLoader();
+        loader.block("slow");
+        CoalescingCache coalescing = new CoalescingCache(cache, loader);
+
+        Future<Element> slow = executor.submit(get(coalescing, "slow"));
+        loader.awaitLoading("slow");
+
+        assertEquals("value-fast", executor.submit(get(coalescing, "fast")).get(5, TimeUnit.SECONDS).getObjectValue());
+        assertTrue(!slow.isDone());
+        loader.release("slow");
+        assertEquals("value-slow", slow.get(5, TimeUnit.SECONDS).getObjectValue());
+    }
+
+    @Test
+    public void testMissesWithinTheWindowAreLoadedInOneBatch() throws Exception {
+        RecordingLoader loader = new RecordingLoader();
+        CoalescingCache coalescing = new CoalescingCache(cache, loader, 500, 5);
+
+        List<Future<Element>> gets = new ArrayList<Future<Element>>();
+        for (int i = 0; i < 5; i++) {
+            gets.add(executor.submit(get(coalescing, "key" + i)));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals("value-key" + i, gets.get(i).get(5, TimeUnit.SECONDS).getObjectValue());
+        }
+        assertEquals(0, loader.loads.get());
+        assertEquals(1, loader.batches.get());
+    }
+
+    @Test
+    public void testGetAllLoadsMissesAtOnce() throws Exception {
+        RecordingLoader loader = new RecordingLoader();
+        CoalescingCache coalescing = new CoalescingCache(cache, loader);
+        cache.put(new Element("hit", "cached"));
+
+        Map<Object, Element> all = coalescing.getAll(Arrays.asList("hit", "miss1", "miss2", "absent"));
+        assertEquals("cached", all.get("hit").getObjectValue());
+        assertEquals("value-miss1", all.get("miss1").getObjectValue());
+        assertEquals("value-miss2", all.get("miss2").getObjectValue());
+        assertNull(all.get("absent"));
+        assertEquals(1, loader.batches.get());
+        assertEquals(0, loader.loads.get());
+    }
+
+    @Test
+    public void testFailedLoadIsReportedAndRetried() throws Exception {
+        RecordingLoader loader = new RecordingLoader();
+        loader.failures.set(1);
+        CoalescingCache coalescing = new CoalescingCache(cache, loader);
+
+        try {
+            coalescing.get("key");
+            fail();
+        } catch (CacheException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals("value-key", coalescing.get("key").getObjectValue());
+        assertEquals(0, coalescing.getInFlightCount());
+    }
+
+    private static Callable<Element> get(final Ehcache cache, final Object key) {
+        return new Callable<Element>() {
+            public Element call() {
+                return cache.get(key);
+            }
+        };
+    }
+
+    /**
+     * Loads "value-" + key for every key but "absent", optionally blocking the loads of some keys
+     */
+    private static final class RecordingLoader implements CacheLoader {
+
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger batches = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final Map<Object, CountDownLatch> blocked = new HashMap<Object, CountDownLatch>();
+        private final Map<Object, CountDownLatch> loading = new HashMap<Object, CountDownLatch>();
+
+        void block(Object key) {
+            blocked.put(key, new CountDownLatch(1));
+            loading.put(key, new CountDownLatch(1));
+        }
+
+        void awaitLoading(Object key) throws InterruptedException {
+            assertTrue(loading.get(key).await(5, TimeUnit.SECONDS));
+        }
+
+        void release(Object key) {
+            blocked.get(key).countDown();
+        }
+
+        public Object load(Object key) throws CacheException {
+            loads.incrementAndGet();
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("database down");
+            }
+            if (blocked.containsKey(key)) {
+                loading.get(key).countDown();
+                try {
+                    blocked.get(key).await();
+                } catch (InterruptedException e) {
+                    throw new CacheException(e);
+                }
+            }
+            return "absent".equals(key) ? null : "value-" + key;
+        }
+
+        public Map loadAll(Collection keys) {
+            batches.incrementAndGet();
+            Map<Object, Object> values = new HashMap<Object, Object>();
+            for (Object key : keys) {
+                if (!"absent".equals(key)) {
+                    values.put(key, "value-" + key);
+                }
+            }
+            return values;
+        }
+
+        public Object load(Object key, Object argument) {
+            return load(key);
+        }
+
+        public Map loadAll(Collection keys, Object argument) {
+            return loadAll(keys);
+        }
+
+        public String getName() {
+            return "recording";
+        }
+
+        public CacheLoader clone(Ehcache cache) throws CloneNotSupportedException {
+            throw new CloneNotSupportedException();
+        }
+
+        public void init() {
+            // nothing to initialise
+        }
+
+        public void dispose() {
+            // nothing to dispose
+        }
+
+        public Status getStatus() {
+            return Status.STATUS_ALIVE;
+        }
+    }
+}
@@ -13,18 +13,22 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.terracotta.test.categories.CheckShorts;
 
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 import static net.sf.ehcache.util.RetryAssert.assertBy;
 import static net.sf.ehcache.util.RetryAssert.sleepFor;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 @Category(CheckShorts.class)
 public class RefreshAheadCacheTest {
@@ -176,4 +180,77 @@ public class RefreshAheadCacheTest {
             cacheManager.shutdown();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStaleValuesAreServedForABoundedTime() {
+
+        CacheManager manager = new CacheManager(new Configuration().name("boundedStaleness"));
+
+        try {
+            manager.addCache(new Cache(new CacheConfiguration().name("test").timeToLiveSeconds(60).overflowToDisk(false)
+                    .maxElementsInMemory(100)));
+            Ehcache cache = manager.getEhcache("test");
+            // a loader that never has a value, so the stale value is never replaced
+            cache.registerCacheLoader(new NullLoaderFactory().createCacheLoader(null, null));
+
+            RefreshAheadCacheConfiguration refreshConfig = new RefreshAheadCacheConfiguration().timeToRefreshSeconds(1)
+                    .maximumStalenessSeconds(1).maximumRefreshBacklogItems(100).build();
+            RefreshAheadCache decorator = new RefreshAheadCache(cache, refreshConfig);
+
+            decorator.put(new Element(1, "1"));
+            sleepFor(1500, TimeUnit.MILLISECONDS);
+            // stale, but within the staleness window
+            assertNotNull(decorator.get(1));
+
+            sleepFor(1000, TimeUnit.MILLISECONDS);
+            // staler than allowed
+            assertNull(decorator.get(1));
+            assertNotNull(cache.get(1));
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testEarlyRefreshIsWeightedByRefreshLatency() {
+
+        CacheManager manager = new CacheManager(new Configuration().name("earlyRefresh"));
+
+        try {
+            manager.addCache(new Cache(new CacheConfiguration().name("test").timeToLiveSeconds(60).overflowToDisk(false)
+                    .maxElementsInMemory(100)));
+            Ehcache cache = manager.getEhcache("test");
+            Properties loaderProperties = new Properties();
+            loaderProperties.setProperty("delayMS", "10");
+            cache.registerCacheLoader(new StringifyCacheLoaderFactory().createCacheLoader(null, loaderProperties));
+
+            RefreshAheadCacheConfiguration refreshConfig = new RefreshAheadCacheConfiguration().timeToRefreshSeconds(2)
+                    .earlyRefreshBeta(1e9).maximumRefreshBacklogItems(100).build();
+            final RefreshAheadCache decorator = new RefreshAheadCache(cache, refreshConfig);
+
+            // no latency measured yet: the first refresh happens at the time to refresh
+            decorator.put(new Element(1, "1"));
+            assertEquals(0, decorator.getRefreshSuccessCount());
+            assertBy(5, TimeUnit.SECONDS, new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    decorator.get(1);
+                    return decorator.getRefreshSuccessCount();
+                }
+            }, not(is(0L)));
+            assertTrue(decorator.getAverageRefreshLatencyMillis() > 0);
+
+            // with the measured latency so heavily weighted, a fresh entry is refreshed well before its time to refresh
+            final Element fresh = new Element(2, "2");
+            decorator.put(fresh);
+            assertBy(1, TimeUnit.SECONDS, new Callable<Element>() {
+                @Override
+                public Element call() throws Exception {
+                    return decorator.get(2);
+                }
+            }, not(sameInstance(fresh)));
+        } finally {
+            manager.shutdown();
+        }
+    }
+}
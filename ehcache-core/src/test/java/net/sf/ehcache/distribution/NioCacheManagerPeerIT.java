@@ -0,0 +1,113 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.FactoryConfiguration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static net.sf.ehcache.util.RetryAssert.assertBy;
+import static net.sf.ehcache.util.RetryAssert.elementAt;
+import static net.sf.ehcache.util.RetryAssert.sizeOf;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests replication between CacheManagers connected by the NIO peer transport on the loopback interface
+ */
+public class NioCacheManagerPeerIT extends AbstractRMITest {
+
+    private CacheManager manager1;
+    private CacheManager manager2;
+
+    private static Configuration createConfiguration(String name, int port, int peerPort) {
+        return new Configuration()
+                .cacheManagerPeerListenerFactory(new FactoryConfiguration()
+                .className("net.sf.ehcache.distribution.NioCacheManagerPeerListenerFactory")
+                .properties("hostName=localhost, port=" + port + ", socketTimeoutMillis=2000"))
+                .cacheManagerPeerProviderFactory(new FactoryConfiguration()
+                .className("net.sf.ehcache.distribution.NioCacheManagerPeerProviderFactory")
+                .properties("peerDiscovery=manual, socketTimeoutMillis=2000, peerUrls=//localhost:" + peerPort + "/asynchronousCache"))
+                .cache(createAsynchronousCache().name("asynchronousCache"))
+                .name(name);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        List<CacheManager> managers = startupManagers(Arrays.asList(createConfiguration("NioCacheManagerPeerIT-1", 5021, 5022),
+                createConfiguration("NioCacheManagerPeerIT-2", 5022, 5021)));
+        manager1 = managers.get(0);
+        manager2 = managers.get(1);
+        waitForClusterMembership(10, TimeUnit.SECONDS, manager1, manager2);
+    }
+
+    @After
+    public void tearDown() {
+        manager1.shutdown();
+        manager2.shutdown();
+    }
+
+    @Test
+    public void testPutsAndRemovesAreReplicated() {
+        Ehcache cache1 = manager1.getEhcache("asynchronousCache");
+        Ehcache cache2 = manager2.getEhcache("asynchronousCache");
+
+        for (int i = 0; i < 1000; i++) {
+            cache1.put(new Element(Integer.valueOf(i), "value" + i));
+        }
+        assertBy(10, TimeUnit.SECONDS, sizeOf(cache2), is(1000));
+
+        cache2.remove(Integer.valueOf(42));
+        assertBy(10, TimeUnit.SECONDS, elementAt(cache1, Integer.valueOf(42)), nullValue());
+
+        cache1.removeAll();
+        assertBy(10, TimeUnit.SECONDS, sizeOf(cache2), is(0));
+    }
+
+    @Test
+    public void testPeerCallsAreServedByTheRemoteCache() throws Exception {
+        Ehcache cache2 = manager2.getEhcache("asynchronousCache");
+        cache2.put(new Element("key", "value"));
+
+        CachePeer peer = (CachePeer) manager1.getCacheManagerPeerProvider("RMI")
+                .listRemoteCachePeers(manager1.getEhcache("asynchronousCache")).get(0);
+        assertEquals("//localhost:5022/asynchronousCache", peer.getUrl());
+        assertEquals(cache2.getGuid(), peer.getGuid());
+        assertEquals(Arrays.asList("key"), new ArrayList(peer.getKeys()));
+        assertEquals("value", peer.getQuiet("key").getObjectValue());
+        assertEquals(1, peer.getElements(Arrays.asList("key", "missing")).size());
+        assertTrue(peer.remove("key"));
+        assertBy(10, TimeUnit.SECONDS, elementAt(cache2, "key"), nullValue());
+
+        peer.put(new Element("other", "value"));
+        assertBy(10, TimeUnit.SECONDS, elementAt(cache2, "other"), notNullValue());
+    }
+}
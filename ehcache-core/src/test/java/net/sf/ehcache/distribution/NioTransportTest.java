@@ -0,0 +1,194 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sf.ehcache.util.ByteBufferInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.CheckShorts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the NIO peer transport over the loopback interface
+ */
+@Category(CheckShorts.class)
+public class NioTransportTest {
+
+    private static final int TIMEOUT = 10000;
+
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private NioTransport server;
+    private NioTransport client;
+    private InetSocketAddress address;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new NioTransport("server", new NioTransport.FrameHandler() {
+            public void frameReceived(final NioConnection connection, final long id, final byte code, final ByteBuffer payload) {
+                connection.executeInOrder(new Runnable() {
+                    public void run() {
+                        echo(connection, id, code, payload);
+                    }
+                }, workers);
+            }
+        });
+        server.listen(new InetSocketAddress("localhost", 0));
+        server.start();
+        address = new InetSocketAddress("localhost", server.getLocalPort());
+        client = new NioTransport("client", null);
+        client.start();
+    }
+
+    @After
+    public void tearDown() {
+        client.dispose();
+        server.dispose();
+        workers.shutdownNow();
+    }
+
+    private static void echo(NioConnection connection, long id, byte code, ByteBuffer payload) {
+        try {
+            DataInputStream in = new DataInputStream(ByteBufferInputStream.of(payload));
+            String header = in.readUTF();
+            Object argument = NioConnection.readObject(in, NioTransportTest.class.getClassLoader());
+            connection.reply(id, code, header + ":" + argument);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private String call(byte code, String header, Object argument) throws Exception {
+        NioConnection.PendingCall call = client.connect(address, TIMEOUT).call(code, header, argument, TIMEOUT);
+        assertEquals(code, call.getStatus());
+        return (String) NioConnection.readObject(ByteBufferInputStream.of(call.getPayload()), getClass().getClassLoader());
+    }
+
+    @Test
+    public void testCallsAreAnsweredAndConnectionsReused() throws Exception {
+        assertEquals("cache:value", call((byte) 3, "cache", "value"));
+        assertEquals("cache:null", call((byte) 4, "cache", null));
+        assertSame(client.connect(address, TIMEOUT), client.connect(address, TIMEOUT));
+    }
+
+    @Test
+    public void testConcurrentCallsArePipelinedOverOneConnection() throws Exception {
+        final NioConnection connection = client.connect(address, TIMEOUT);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 1000; i++) {
+                final int value = i;
+                results.add(callers.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return NioTransportTest.this.call((byte) 1, "cache" + (value % 7), "value" + value);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("cache" + (i % 7) + ":value" + i, results.get(i).get());
+            }
+        } finally {
+            callers.shutdown();
+        }
+        assertSame(connection, client.connect(address, TIMEOUT));
+    }
+
+    @Test
+    public void testLargeFramesAreWrittenAcrossSeveralWrites() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+        assertEquals("cache:" + value, call((byte) 1, "cache", value.toString()));
+    }
+
+    @Test
+    public void testOversizedFrameClosesOnlyItsConnection() throws Exception {
+        Socket socket = new Socket(address.getAddress(), address.getPort());
+        try {
+            socket.setSoTimeout(TIMEOUT);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(Integer.MAX_VALUE);
+            out.writeLong(1L);
+            out.flush();
+            try {
+                assertEquals(-1, socket.getInputStream().read());
+            } catch (SocketException e) {
+                // reset by the server, as good as closed
+            }
+        } finally {
+            socket.close();
+        }
+        assertEquals("cache:value", call((byte) 1, "cache", "value"));
+    }
+
+    @Test
+    public void testResponsesToOwnCallsAreNotLimitedByTheMaxFrameSize() throws Exception {
+        NioTransport small = new NioTransport("small client", null, 1024);
+        small.start();
+        try {
+            StringBuilder value = new StringBuilder();
+            for (int i = 0; i < 10000; i++) {
+                value.append((char) ('a' + i % 26));
+            }
+            NioConnection.PendingCall call = small.connect(address, TIMEOUT).call((byte) 1, "cache", value.toString(), TIMEOUT);
+            assertEquals("cache:" + value, NioConnection.readObject(ByteBufferInputStream.of(call.getPayload()), getClass().getClassLoader()));
+        } finally {
+            small.dispose();
+        }
+    }
+
+    @Test
+    public void testCallsFailOnceTheServerIsGoneAndReconnect() throws Exception {
+        NioConnection connection = client.connect(address, TIMEOUT);
+        server.dispose();
+        try {
+            connection.call((byte) 1, "cache", "value", TIMEOUT);
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(connection.isClosed());
+
+        server = new NioTransport("server", null);
+        server.listen(address);
+        server.start();
+        assertNotSame(connection, client.connect(address, TIMEOUT));
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.SerializerConfiguration;
+import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+import net.sf.ehcache.serializer.CompactSerializer;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.CheckShorts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the coalescing and compression of asynchronous replication batches
+ */
+@Category(CheckShorts.class)
+public class RMIAsynchronousCacheReplicatorTest {
+
+    private static RmiEventMessage put(String key, String value) {
+        return new RmiEventMessage(null, RmiEventType.PUT, null, new Element(key, value));
+    }
+
+    private static RmiEventMessage remove(String key) {
+        return new RmiEventMessage(null, RmiEventType.REMOVE, key, null);
+    }
+
+    private static RmiEventMessage removeAll() {
+        return new RmiEventMessage(null, RmiEventType.REMOVE_ALL, null, null);
+    }
+
+    @Test
+    public void testDistinctKeysAreNotCoalesced() {
+        List<EventMessage> batch = Arrays.<EventMessage>asList(put("a", "1"), remove("b"), put("c", "1"));
+        assertSame(batch, RMIAsynchronousCacheReplicator.coalesce(batch));
+    }
+
+    @Test
+    public void testOnlyTheLastMessageForAKeyIsKept() {
+        RmiEventMessage lastA = put("a", "3");
+        RmiEventMessage lastB = remove("b");
+        RmiEventMessage c = put("c", "1");
+        List<EventMessage> batch = Arrays.<EventMessage>asList(put("a", "1"), put("b", "1"), put("a", "2"), c, lastB, lastA);
+
+        assertEquals(Arrays.<EventMessage>asList(c, lastB, lastA), RMIAsynchronousCacheReplicator.coalesce(batch));
+    }
+
+    @Test
+    public void testMessagesBeforeRemoveAllAreDropped() {
+        RmiEventMessage removeAll = removeAll();
+        RmiEventMessage a = put("a", "2");
+        List<EventMessage> batch = Arrays.<EventMessage>asList(put("a", "1"), remove("b"), removeAll(), put("c", "1"), removeAll, a);
+
+        assertEquals(Arrays.<EventMessage>asList(removeAll, a), RMIAsynchronousCacheReplicator.coalesce(batch));
+    }
+
+    @Test
+    public void testCompressedPayloadRoundTrips() throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("compressed", 100));
+        List<EventMessage> batch = new ArrayList<EventMessage>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(new RmiEventMessage(cache, RmiEventType.PUT, null, new Element("key" + i, "a fairly repetitive value " + i)));
+        }
+        batch.add(new RmiEventMessage(cache, RmiEventType.REMOVE, "key0", null));
+
+        SerializedPayload plain = SerializedPayload.encodeEvents(cache, batch, false);
+        SerializedPayload compressed = SerializedPayload.encodeEvents(cache, batch, true);
+        assertTrue(serializedLength(compressed) < serializedLength(plain) / 2);
+
+        List<RmiEventMessage> decoded = compressed.decodeEvents(cache);
+        assertEquals(batch.size(), decoded.size());
+        assertEquals("a fairly repetitive value 42", decoded.get(42).getElement().getObjectValue());
+        assertEquals(RmiEventType.REMOVE, decoded.get(100).getType());
+        assertEquals("key0", decoded.get(100).getSerializableKey());
+    }
+
+    @Test
+    public void testPayloadOfAnotherSerializerIsRejected() throws Exception {
+        Cache sender = new Cache(new CacheConfiguration("sender", 100)
+            .serializer(new SerializerConfiguration().className(CompactSerializer.class.getName())));
+        Cache receiver = new Cache(new CacheConfiguration("receiver", 100));
+        SerializedPayload payload = SerializedPayload.encodeElements(sender, Arrays.asList(new Element("key", "value")));
+
+        assertEquals("value", payload.decodeElements(sender).get(0).getObjectValue());
+        try {
+            payload.decodeElements(receiver);
+            fail("expected RemoteException");
+        } catch (RemoteException e) {
+            assertTrue(e.getMessage().contains(CompactSerializer.class.getName()));
+        }
+    }
+
+    private static int serializedLength(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.size();
+    }
+}
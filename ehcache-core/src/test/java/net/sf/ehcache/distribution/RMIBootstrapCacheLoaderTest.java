@@ -0,0 +1,241 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SerializerConfiguration;
+import net.sf.ehcache.serializer.CompactSerializer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.CheckShorts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the parallel and delta bootstrap of the RMIBootstrapCacheLoader against in-memory peers
+ */
+@Category(CheckShorts.class)
+public class RMIBootstrapCacheLoaderTest {
+
+    private static final int ELEMENTS = 1000;
+
+    private CacheManager manager;
+    private Ehcache cache;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("RMIBootstrapCacheLoaderTest"));
+        manager.addCache(new net.sf.ehcache.Cache(new CacheConfiguration("bootstrap", 0)));
+        cache = manager.getEhcache("bootstrap");
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    private static RMIBootstrapCacheLoader loader(int peers, boolean delta, final CachePeer... cachePeers) {
+        return new RMIBootstrapCacheLoader(false, 2000, peers, 2, delta) {
+            @Override
+            protected List acquireCachePeers(Ehcache cache) {
+                return Arrays.asList(cachePeers);
+            }
+        };
+    }
+
+    @Test
+    public void testElementsAreFetchedFromSeveralPeers() {
+        InMemoryCachePeer peer1 = new InMemoryCachePeer(false);
+        InMemoryCachePeer peer2 = new InMemoryCachePeer(false);
+        InMemoryCachePeer peer3 = new InMemoryCachePeer(false);
+        RMIBootstrapCacheLoader loader = loader(3, false, peer1, peer2, peer3);
+
+        loader.load(cache);
+
+        assertEquals(ELEMENTS, cache.getSize());
+        assertEquals(ELEMENTS, loader.getBootstrappedElements());
+        assertEquals(1.0, loader.getBootstrapProgress(), 0);
+        assertTrue(loader.getBootstrapThroughput() > 0);
+        int servingPeers = 0;
+        for (InMemoryCachePeer peer : Arrays.asList(peer1, peer2, peer3)) {
+            servingPeers += peer.chunksServed.get() > 0 ? 1 : 0;
+        }
+        assertTrue(servingPeers > 1);
+    }
+
+    @Test
+    public void testChunksOfAFailingPeerAreFetchedFromTheOthers() {
+        InMemoryCachePeer failing = new InMemoryCachePeer(true);
+        RMIBootstrapCacheLoader loader = loader(2, false, failing, new InMemoryCachePeer(false));
+
+        loader.load(cache);
+
+        assertEquals(ELEMENTS, cache.getSize());
+        assertEquals(0, failing.chunksServed.get());
+    }
+
+    @Test
+    public void testDeltaBootstrapSkipsLocalKeys() {
+        for (int i = 0; i < 100; i++) {
+            cache.put(new Element(Integer.valueOf(i), "local"));
+        }
+        InMemoryCachePeer peer = new InMemoryCachePeer(false);
+        RMIBootstrapCacheLoader loader = loader(1, true, peer);
+
+        loader.load(cache);
+
+        assertEquals(ELEMENTS, cache.getSize());
+        assertEquals(ELEMENTS - 100, loader.getBootstrappedElements());
+        assertEquals("local", cache.get(Integer.valueOf(42)).getObjectValue());
+        assertEquals("remote", cache.get(Integer.valueOf(420)).getObjectValue());
+        assertEquals(1.0, loader.getBootstrapProgress(), 0);
+    }
+
+    @Test
+    public void testDeltaBootstrapKeepsUpdatesReplicatedWhileComparing() {
+        final Integer key = Integer.valueOf(7);
+        net.sf.ehcache.Cache racing = new net.sf.ehcache.Cache(new CacheConfiguration("racing", 0)) {
+            private boolean replicated;
+
+            @Override
+            public Element putIfAbsent(Element element, boolean doNotNotifyCacheReplicators) {
+                if (key.equals(element.getObjectKey()) && !replicated) {
+                    // an update replicated between the bootstrap reading the key as absent and installing it
+                    replicated = true;
+                    put(new Element(key, "replicated", 2L), true);
+                }
+                return super.putIfAbsent(element, doNotNotifyCacheReplicators);
+            }
+        };
+        manager.addCache(racing);
+        RMIBootstrapCacheLoader loader = loader(1, true, new InMemoryCachePeer(false));
+
+        loader.load(racing);
+
+        assertEquals(ELEMENTS, racing.getSize());
+        assertEquals(ELEMENTS - 1, loader.getBootstrappedElements());
+        assertEquals("replicated", racing.get(key).getObjectValue());
+    }
+
+    @Test
+    public void testElementsOfPlainAndSerializedResponsesAreDecoded() throws Exception {
+        Ehcache serialized = new net.sf.ehcache.Cache(new CacheConfiguration("serialized", 0)
+            .serializer(new SerializerConfiguration().className(CompactSerializer.class.getName())));
+        List<Element> elements = Arrays.asList(new Element("a", "1"), new Element("b", "2"));
+
+        List<Element> plain = RMIBootstrapCacheLoader.decodeElements(serialized, Arrays.asList(elements.get(0), null, elements.get(1)));
+        assertEquals(elements, plain);
+
+        List<Element> decoded = RMIBootstrapCacheLoader.decodeElements(serialized,
+            Arrays.asList(SerializedPayload.encodeElements(serialized, elements)));
+        assertEquals(2, decoded.size());
+        assertEquals("a", decoded.get(0).getObjectKey());
+        assertEquals("2", decoded.get(1).getObjectValue());
+    }
+
+    /**
+     * A peer serving the elements of a map, which may fail all element requests
+     */
+    private static final class InMemoryCachePeer implements CachePeer {
+
+        private final Map<Object, Element> elements = new ConcurrentHashMap<Object, Element>();
+        private final boolean failing;
+        private final AtomicInteger chunksServed = new AtomicInteger();
+
+        InMemoryCachePeer(boolean failing) {
+            this.failing = failing;
+            for (int i = 0; i < ELEMENTS; i++) {
+                elements.put(Integer.valueOf(i), new Element(Integer.valueOf(i), "remote"));
+            }
+        }
+
+        public List getKeys() {
+            return new ArrayList<Object>(elements.keySet());
+        }
+
+        public Element getQuiet(Serializable key) {
+            return elements.get(key);
+        }
+
+        public List getElements(List keys) throws RemoteException {
+            if (failing) {
+                throw new RemoteException("peer down");
+            }
+            chunksServed.incrementAndGet();
+            try {
+                // a network round trip
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new RemoteException("interrupted", e);
+            }
+            List<Element> result = new ArrayList<Element>();
+            for (Object key : keys) {
+                result.add(elements.get(key));
+            }
+            return result;
+        }
+
+        public void put(Element element) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean remove(Serializable key) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void removeAll() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void send(List eventMessages) {
+            throw new UnsupportedOperationException();
+        }
+
+        public String getName() {
+            return "bootstrap";
+        }
+
+        public String getGuid() {
+            return "guid";
+        }
+
+        public String getUrl() {
+            return "//peer/bootstrap";
+        }
+
+        public String getUrlBase() {
+            return "//peer";
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package net.sf.ehcache.distribution;
 
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -254,10 +253,7 @@ public class RMICacheReplicatorPerfTest extends AbstractRMITest {
     }
 
     private void fetchAndPutElements(Ehcache cache, List requestChunk, CachePeer cachePeer) throws RemoteException {
-        List receivedChunk = cachePeer.getElements(requestChunk);
-        for (int i = 0; i < receivedChunk.size(); i++) {
-            Element element = (Element) receivedChunk.get(i);
-            assertNotNull(element);
+        for (Element element : RMIBootstrapCacheLoader.decodeElements(cache, cachePeer.getElements(requestChunk))) {
             cache.put(element, true);
         }
 
@@ -0,0 +1,202 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.pool.PoolParticipant;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReservingPoolTest {
+
+    private static final long ENTRY_SIZE = 100;
+
+    /**
+     * A participant holding fixed size entries, evicting them on demand.
+     */
+    private static final class Participant implements PoolParticipant {
+
+        private final AtomicInteger entries = new AtomicInteger();
+        private final AtomicInteger evictions = new AtomicInteger();
+        private volatile PoolAccessor accessor;
+        private volatile boolean evictable = true;
+
+        private boolean put() {
+            if (accessor.add(null, "value", null, false) < 0) {
+                return false;
+            }
+            entries.incrementAndGet();
+            return true;
+        }
+
+        private boolean remove() {
+            while (true) {
+                int current = entries.get();
+                if (current == 0) {
+                    return false;
+                } else if (entries.compareAndSet(current, current - 1)) {
+                    accessor.delete(ENTRY_SIZE);
+                    return true;
+                }
+            }
+        }
+
+        public boolean evict(int count, long size) {
+            evictions.incrementAndGet();
+            if (!evictable) {
+                return false;
+            }
+            boolean evicted = false;
+            for (int i = 0; i < count; i++) {
+                evicted |= remove();
+            }
+            return evicted;
+        }
+
+        public float getApproximateHitRate() {
+            return 0;
+        }
+
+        public float getApproximateMissRate() {
+            return 0;
+        }
+
+        public long getApproximateCountSize() {
+            return entries.get();
+        }
+    }
+
+    private static Participant participant(ReservingPool pool) {
+        Participant participant = new Participant();
+        participant.accessor = pool.createPoolAccessor(participant, new ConstantSizeOfEngine(0, ENTRY_SIZE, 0));
+        return participant;
+    }
+
+    @Test
+    public void testPoolNeverExceedsItsBound() {
+        ReservingPool pool = new ReservingPool(1000, 200, new BalancedAccessEvictor(), null);
+        Participant one = participant(pool);
+        Participant two = participant(pool);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(one.put());
+        }
+        assertEquals(1000, pool.getSize());
+        assertEquals(1000, pool.getReservedSize());
+        assertTrue(pool.isUnderPressure());
+
+        assertTrue(two.put());
+        assertEquals(1000, pool.getSize());
+        assertEquals(9, one.entries.get());
+
+        one.evictable = false;
+        two.evictable = false;
+        assertFalse(two.put());
+        assertEquals(1000, pool.getReservedSize());
+    }
+
+    @Test
+    public void testCreditsStayWithinSlack() {
+        ReservingPool pool = new ReservingPool(100000, 1000, new BalancedAccessEvictor(), null);
+        Participant one = participant(pool);
+        Participant two = participant(pool);
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(one.put());
+            assertTrue(two.put());
+        }
+        for (int i = 0; i < 50; i++) {
+            assertTrue(one.remove());
+        }
+        assertEquals(50 * ENTRY_SIZE, pool.getSize());
+        assertTrue(pool.getReservedSize() - pool.getSize() <= pool.getSlack());
+        assertFalse(pool.isUnderPressure());
+
+        one.accessor.unlink();
+        assertEquals(50 * ENTRY_SIZE, pool.getSize());
+        assertTrue(pool.getReservedSize() - two.accessor.getSize() <= pool.getCreditLimit());
+    }
+
+    @Test
+    public void testConcurrentAccessorsRespectTheBound() throws InterruptedException {
+        final ReservingPool pool = new ReservingPool(20000, 2000, new BalancedAccessEvictor(), null);
+        final List<Participant> participants = new ArrayList<Participant>();
+        for (int i = 0; i < 4; i++) {
+            participants.add(participant(pool));
+        }
+        final AtomicBoolean overflow = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final Participant participant = participants.get(t % participants.size());
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        if (i % 3 == 2) {
+                            participant.remove();
+                        } else {
+                            participant.put();
+                        }
+                        if (pool.getReservedSize() > pool.getMaxSize()) {
+                            overflow.set(true);
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(overflow.get());
+        long entries = 0;
+        for (Participant participant : participants) {
+            entries += participant.entries.get();
+        }
+        assertEquals(entries * ENTRY_SIZE, pool.getSize());
+        assertTrue(pool.getSize() <= pool.getReservedSize());
+    }
+
+    @Test
+    public void testEvictorVisitsEveryAccessor() {
+        for (int count = 1; count < 20; count++) {
+            ReservingPool pool = new ReservingPool(1000, 0, new BalancedAccessEvictor(), null);
+            List<Participant> participants = new ArrayList<Participant>();
+            for (int i = 0; i < count; i++) {
+                Participant participant = participant(pool);
+                participant.evictable = false;
+                participants.add(participant);
+            }
+
+            assertFalse(pool.getEvictor().freeSpace(pool.getPoolAccessors(), ENTRY_SIZE));
+            for (Participant participant : participants) {
+                assertEquals(1, participant.evictions.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+import net.sf.ehcache.pool.Size;
+import net.sf.ehcache.pool.SizeOfEngine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SamplingSizeOfEngineTest {
+
+    /**
+     * Sizes strings to their length, counting the calls.
+     */
+    private static final class CountingSizeOfEngine implements SizeOfEngine {
+
+        private int calls;
+
+        public Size sizeOf(Object key, Object value, Object container) {
+            calls++;
+            return new Size(value instanceof String ? ((String) value).length() : 100, true);
+        }
+
+        public SizeOfEngine copyWith(int maxDepth, boolean abortWhenMaxDepthExceeded) {
+            return this;
+        }
+    }
+
+    @Test
+    public void testFixedShapeIsEstimatedBetweenSamples() {
+        CountingSizeOfEngine delegate = new CountingSizeOfEngine();
+        SamplingSizeOfEngine engine = new SamplingSizeOfEngine(delegate, 10, 10);
+
+        for (int i = 0; i < SamplingSizeOfEngine.WARMUP_SAMPLES; i++) {
+            assertEquals(100, engine.sizeOf("key", i, null).getCalculated());
+        }
+        assertEquals(SamplingSizeOfEngine.WARMUP_SAMPLES, delegate.calls);
+
+        for (int i = 0; i < 100; i++) {
+            Size size = engine.sizeOf("key", i, null);
+            assertEquals(100, size.getCalculated());
+            assertTrue(size.isExact());
+        }
+        assertEquals(SamplingSizeOfEngine.WARMUP_SAMPLES + 10, delegate.calls);
+        assertEquals(0, engine.getAverageEstimationError(), 0);
+        assertTrue(engine.getEstimatedRatio() > 0.8);
+    }
+
+    @Test
+    public void testVaryingShapeKeepsBeingMeasured() {
+        CountingSizeOfEngine delegate = new CountingSizeOfEngine();
+        SamplingSizeOfEngine engine = new SamplingSizeOfEngine(delegate, 10, 10);
+
+        for (int i = 0; i < 200; i++) {
+            String value = i % 2 == 0 ? "short" : "a rather longer string";
+            assertEquals(value.length(), engine.sizeOf("key", value, null).getCalculated());
+        }
+        assertEquals(200, delegate.calls);
+        assertEquals(0, engine.getEstimatedRatio(), 0);
+    }
+
+    @Test
+    public void testEstimationErrorIsBoundedAndReported() {
+        CountingSizeOfEngine delegate = new CountingSizeOfEngine();
+        SamplingSizeOfEngine engine = new SamplingSizeOfEngine(delegate, 2, 20);
+
+        for (int i = 0; i < 1000; i++) {
+            String value = i % 2 == 0 ? "0123456789" : "012345678901";
+            long size = engine.sizeOf("key", value, null).getCalculated();
+            assertTrue(Math.abs(size - value.length()) <= 2);
+        }
+        assertTrue(engine.getEstimatedRatio() > 0.4);
+        assertTrue(engine.getAverageEstimationError() > 0);
+        assertTrue(engine.getAverageEstimationError() <= 20);
+    }
+
+    @Test
+    public void testCopiesShareWhatWasLearnt() {
+        CountingSizeOfEngine delegate = new CountingSizeOfEngine();
+        SamplingSizeOfEngine engine = new SamplingSizeOfEngine(delegate, 1000, 10);
+
+        for (int i = 0; i < SamplingSizeOfEngine.WARMUP_SAMPLES; i++) {
+            engine.sizeOf("key", i, null);
+        }
+        SamplingSizeOfEngine copy = (SamplingSizeOfEngine) engine.copyWith(10, false);
+        copy.sizeOf("key", 1, null);
+        assertEquals(SamplingSizeOfEngine.WARMUP_SAMPLES, delegate.calls);
+        assertEquals(1, copy.getEstimatedRatio(), 0);
+        assertEquals(0, engine.getEstimatedRatio(), 0);
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.ehcache.pool.SizeOfEngine;
+import net.sf.ehcache.serializer.JavaSerializer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SerializedSizeOfEngineTest {
+
+    private static final long OVERHEAD = 48;
+    private static final long GRAPH_SIZE = 10000;
+
+    private final JavaSerializer serializer = new JavaSerializer();
+
+    private long serializedLength(Object object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(object, out);
+        return out.size();
+    }
+
+    @Test
+    public void testSerializedValuesAreSizedByTheirLength() throws IOException {
+        SizeOfEngine engine = new SerializedSizeOfEngine(new ConstantSizeOfEngine(GRAPH_SIZE, GRAPH_SIZE, OVERHEAD), serializer);
+
+        assertEquals(serializedLength("key") + 100 + OVERHEAD, engine.sizeOf("key", new byte[100], new Object()).getCalculated());
+        assertEquals(serializedLength("key") + OVERHEAD, engine.sizeOf("key", null, new Object()).getCalculated());
+    }
+
+    @Test
+    public void testObjectValuesAreSizedBySerializing() throws IOException {
+        SizeOfEngine engine = new SerializedSizeOfEngine(new ConstantSizeOfEngine(GRAPH_SIZE, GRAPH_SIZE, OVERHEAD), serializer);
+        List<String> value = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            value.add("value" + i);
+        }
+
+        assertEquals(serializedLength(1) + serializedLength(value) + OVERHEAD, engine.sizeOf(1, value, new Object()).getCalculated());
+        assertEquals(serializedLength(1) + serializedLength(value),
+            engine.copyWith(10, false).sizeOf(1, value, null).getCalculated());
+    }
+
+    @Test
+    public void testUnserializableValuesAreSizedByTheirGraph() {
+        SizeOfEngine engine = new SerializedSizeOfEngine(new ConstantSizeOfEngine(GRAPH_SIZE, GRAPH_SIZE, OVERHEAD), serializer);
+
+        assertEquals(2 * GRAPH_SIZE + OVERHEAD, engine.sizeOf("key", new Object(), new Object()).getCalculated());
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.Person.Gender;
+import net.sf.ehcache.search.expression.Criteria;
+import net.sf.ehcache.search.expression.ILike;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class IndexedSearchTest {
+
+    private CacheManager cacheManager;
+    private Cache indexed;
+    private Cache scanned;
+    private Attribute<Integer> age;
+    private Attribute<String> name;
+    private Attribute<Gender> gender;
+
+    @Before
+    public void setUp() {
+        cacheManager = new CacheManager(new Configuration().name("IndexedSearchTest"));
+        indexed = createCache("indexed", true, 0);
+        scanned = createCache("scanned", false, 0);
+        age = indexed.getSearchAttribute("age");
+        name = indexed.getSearchAttribute("name");
+        gender = indexed.getSearchAttribute("gender");
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    private Cache createCache(String cacheName, boolean index, int maxEntries) {
+        Searchable searchable = new Searchable()
+            .searchAttribute(new SearchAttribute().name("age").expression("value.getAge()"))
+            .searchAttribute(new SearchAttribute().name("name").expression("value.getName()"))
+            .searchAttribute(new SearchAttribute().name("gender").expression("value.getGender()"));
+        searchable.indexed(index);
+        Cache cache = new Cache(new CacheConfiguration(cacheName, maxEntries).searchable(searchable));
+        cacheManager.addCache(cache);
+        return cache;
+    }
+
+    private void putBoth(Element element) {
+        indexed.put(element);
+        scanned.put(new Element(element.getObjectKey(), element.getObjectValue()));
+    }
+
+    private void populate() {
+        for (int i = 0; i < 200; i++) {
+            putBoth(new Element(i, new Person((i % 2 == 0 ? "Name " : "name ") + (i % 7), i % 50, i % 3 == 0 ? Gender.FEMALE : Gender.MALE)));
+        }
+    }
+
+    private static Set<Object> keys(Cache cache, Criteria criteria) {
+        Results results = cache.createQuery().includeKeys().addCriteria(criteria).execute();
+        try {
+            Set<Object> keys = new HashSet<Object>();
+            for (Result result : results.all()) {
+                keys.add(result.getKey());
+            }
+            return keys;
+        } finally {
+            results.discard();
+        }
+    }
+
+    private void assertSameResults(Criteria criteria) {
+        assertEquals(criteria.toString(), keys(scanned, criteria), keys(indexed, criteria));
+    }
+
+    private void assertAllQueriesAgree() {
+        assertSameResults(age.eq(10));
+        assertSameResults(name.eq("NAME 3"));
+        assertSameResults(gender.eq(Gender.FEMALE));
+        assertSameResults(age.in(Arrays.asList(1, 2, 3, 99)));
+        assertSameResults(name.in(Arrays.asList("name 1", "NaMe 2")));
+        assertSameResults(age.in(new HashSet<Integer>()));
+        assertSameResults(age.between(10, 20));
+        assertSameResults(age.between(10, 20, false, false));
+        assertSameResults(age.between(20, 10));
+        assertSameResults(age.gt(45));
+        assertSameResults(age.ge(45));
+        assertSameResults(age.lt(3));
+        assertSameResults(age.le(3));
+        assertSameResults(name.between("name 2", "NAME 4", true, false));
+        assertSameResults(name.gt("Name 5"));
+        assertSameResults(age.between(10, 30).and(gender.eq(Gender.MALE)).and(name.eq("name 1")));
+        assertSameResults(age.eq(1).or(name.eq("name 6")));
+        assertSameResults(age.lt(5).and(new ILike("name", "name 1*")));
+        assertSameResults(age.lt(5).or(new ILike("name", "*4")));
+        assertSameResults(age.eq(3).not());
+    }
+
+    @Test
+    public void testIndexedResultsMatchScannedResults() {
+        populate();
+        assertAllQueriesAgree();
+    }
+
+    @Test
+    public void testIndexesFollowUpdatesAndRemovals() {
+        populate();
+        for (int i = 0; i < 200; i += 3) {
+            putBoth(new Element(i, new Person("renamed " + i, (i * 7) % 50, Gender.MALE)));
+        }
+        for (int i = 0; i < 200; i += 5) {
+            indexed.remove(i);
+            scanned.remove(i);
+        }
+        assertAllQueriesAgree();
+
+        indexed.removeAll();
+        scanned.removeAll();
+        assertEquals(0, keys(indexed, age.ge(0)).size());
+        populate();
+        assertAllQueriesAgree();
+    }
+
+    @Test
+    public void testIndexesFollowEvictions() {
+        Cache bounded = createCache("bounded", true, 100);
+        Attribute<Integer> boundedAge = bounded.getSearchAttribute("age");
+        for (int i = 0; i < 500; i++) {
+            bounded.put(new Element(i, new Person("name " + i, i % 50, Gender.MALE)));
+        }
+        Set<Object> expected = new HashSet<Object>();
+        for (Object key : bounded.getKeys()) {
+            if (((Person) bounded.get(key).getObjectValue()).getAge() < 10) {
+                expected.add(key);
+            }
+        }
+        assertEquals(expected, keys(bounded, boundedAge.lt(10)));
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.Person.Gender;
+import net.sf.ehcache.search.aggregator.Aggregators;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelSearchTest {
+
+    private static final ExecutionHints SEQUENTIAL = new ExecutionHints().setParallelism(1);
+    private static final ExecutionHints PARALLEL = new ExecutionHints().setParallelism(4);
+
+    private CacheManager cacheManager;
+    private Cache cache;
+    private Attribute<Integer> age;
+    private Attribute<String> name;
+    private Attribute<Gender> gender;
+
+    @Before
+    public void setUp() {
+        cacheManager = new CacheManager(new Configuration().name("ParallelSearchTest"));
+        Searchable searchable = new Searchable()
+            .searchAttribute(new SearchAttribute().name("age").expression("value.getAge()"))
+            .searchAttribute(new SearchAttribute().name("name").expression("value.getName()"))
+            .searchAttribute(new SearchAttribute().name("gender").expression("value.getGender()"));
+        searchable.parallelism(4);
+        cache = new Cache(new CacheConfiguration("parallel", 0).searchable(searchable));
+        cacheManager.addCache(cache);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new Element(i, new Person("name " + i, i % 60, i % 3 == 0 ? Gender.FEMALE : Gender.MALE)));
+        }
+        age = cache.getSearchAttribute("age");
+        name = cache.getSearchAttribute("name");
+        gender = cache.getSearchAttribute("gender");
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    private static List<Object> keys(Results results) {
+        List<Object> keys = new ArrayList<Object>();
+        for (Result result : results.all()) {
+            keys.add(result.getKey());
+        }
+        return keys;
+    }
+
+    @Test
+    public void testMatchesAreTheSame() {
+        Query query = cache.createQuery().includeKeys().addCriteria(age.between(10, 20).and(gender.eq(Gender.MALE))).end();
+        assertEquals(new HashSet<Object>(keys(query.execute(SEQUENTIAL))), new HashSet<Object>(keys(query.execute(PARALLEL))));
+        assertEquals(new HashSet<Object>(keys(query.execute(SEQUENTIAL))),
+            new HashSet<Object>(keys(query.execute(new ExecutionHints().setParallelism(16)))));
+    }
+
+    @Test
+    public void testOrderedTopResults() {
+        Query query = cache.createQuery().includeKeys().includeAttribute(age).addCriteria(age.ge(30))
+            .addOrderBy(age, Direction.DESCENDING).addOrderBy(name, Direction.ASCENDING).maxResults(25).end();
+        List<Object> sequential = keys(query.execute(SEQUENTIAL));
+        assertEquals(25, sequential.size());
+        assertEquals(sequential, keys(query.execute(PARALLEL)));
+    }
+
+    @Test
+    public void testUnorderedLimit() {
+        Query query = cache.createQuery().includeKeys().addCriteria(gender.eq(Gender.FEMALE)).maxResults(10).end();
+        assertEquals(10, query.execute().size());
+
+        Results none = cache.createQuery().includeKeys().addCriteria(gender.eq(Gender.FEMALE)).maxResults(0).execute();
+        assertEquals(0, none.size());
+        assertFalse(none.hasAggregators());
+    }
+
+    @Test
+    public void testAggregatesAreMerged() {
+        Query query = cache.createQuery().addCriteria(age.lt(50)).includeAggregator(Aggregators.count(), Aggregators.sum(age),
+            Aggregators.average(age), Aggregators.min(age), Aggregators.max(age)).end();
+        Results sequential = query.execute(SEQUENTIAL);
+        Results parallel = query.execute(PARALLEL);
+        assertEquals(1, parallel.size());
+        assertTrue(parallel.hasAggregators());
+        assertEquals(sequential.all().get(0).getAggregatorResults(), parallel.all().get(0).getAggregatorResults());
+    }
+
+    @Test
+    public void testGroupedAggregatesAreMerged() {
+        Query query = cache.createQuery().includeAttribute(gender).addGroupBy(gender).addCriteria(age.ge(5))
+            .includeAggregator(Aggregators.count(), Aggregators.average(age), Aggregators.max(age)).end();
+        assertEquals(groups(query.execute(SEQUENTIAL)), groups(query.execute(PARALLEL)));
+    }
+
+    private Map<Object, List<Object>> groups(Results results) {
+        Map<Object, List<Object>> groups = new HashMap<Object, List<Object>>();
+        for (Result result : results.all()) {
+            groups.put(result.getAttribute(gender), result.getAggregatorResults());
+        }
+        assertEquals(2, groups.size());
+        return groups;
+    }
+
+    @Test
+    public void testNoMatch() {
+        Query query = cache.createQuery().addCriteria(age.gt(100)).includeAggregator(Aggregators.count()).end();
+        Results results = query.execute();
+        assertEquals(0, results.size());
+        assertFalse(results.hasAggregators());
+    }
+}
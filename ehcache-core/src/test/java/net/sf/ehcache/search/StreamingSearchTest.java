@@ -0,0 +1,163 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.Person.Gender;
+import net.sf.ehcache.search.aggregator.Aggregators;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingSearchTest {
+
+    private static final ExecutionHints PAGED = new ExecutionHints().setResultBatchSize(7);
+
+    private CacheManager cacheManager;
+    private Cache cache;
+    private Attribute<Integer> age;
+
+    @Before
+    public void setUp() {
+        cacheManager = new CacheManager(new Configuration().name("StreamingSearchTest"));
+        cache = new Cache(new CacheConfiguration("streaming", 0).searchable(new Searchable()
+            .searchAttribute(new SearchAttribute().name("age").expression("value.getAge()"))));
+        cacheManager.addCache(cache);
+        for (int i = 0; i < 100; i++) {
+            cache.put(new Element(i, new Person("name " + i, i % 10, Gender.MALE)));
+        }
+        age = cache.getSearchAttribute("age");
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    private Set<Object> expectedKeys() {
+        Set<Object> keys = new HashSet<Object>();
+        for (Result result : cache.createQuery().includeKeys().addCriteria(age.lt(3)).execute().all()) {
+            keys.add(result.getKey());
+        }
+        return keys;
+    }
+
+    @Test
+    public void testPagesCoverAllResults() {
+        Results results = cache.createQuery().includeKeys().addCriteria(age.lt(3)).execute(PAGED);
+        assertTrue(results instanceof StreamingResults);
+        StreamingResults streaming = (StreamingResults) results;
+
+        Set<Object> keys = new HashSet<Object>();
+        List<Result> page;
+        int pages = 0;
+        while (!(page = streaming.nextPage()).isEmpty()) {
+            assertTrue(page.size() <= 7);
+            for (Result result : page) {
+                assertTrue(keys.add(result.getKey()));
+            }
+            pages++;
+        }
+        assertEquals(expectedKeys(), keys);
+        assertEquals(5, pages);
+        assertEquals(30, streaming.size());
+        assertTrue(streaming.hasKeys());
+    }
+
+    @Test
+    public void testRangeAndIteration() {
+        StreamingResults streaming = (StreamingResults) cache.createQuery().includeKeys().addCriteria(age.lt(3)).execute(PAGED);
+
+        Set<Object> keys = new HashSet<Object>();
+        for (int start = 0; start < 30; start += 10) {
+            for (Result result : streaming.range(start, 10)) {
+                keys.add(result.getKey());
+            }
+        }
+        assertTrue(streaming.range(30, 10).isEmpty());
+        assertEquals(expectedKeys(), keys);
+        assertEquals(5, streaming.range(0, 5).size());
+
+        Set<Object> iterated = new HashSet<Object>();
+        for (Result result : streaming) {
+            iterated.add(result.getKey());
+        }
+        assertEquals(expectedKeys(), iterated);
+        assertEquals(30, streaming.stream().count());
+        assertEquals(30, streaming.all().size());
+    }
+
+    @Test
+    public void testValuesAreReadLazily() {
+        StreamingResults streaming = (StreamingResults) cache.createQuery().includeKeys().includeValues()
+            .addCriteria(age.eq(4)).execute(PAGED);
+        List<Result> page = streaming.nextPage();
+        Result first = page.get(0);
+        Result second = page.get(1);
+
+        cache.put(new Element(first.getKey(), new Person("renamed", 4, Gender.FEMALE)));
+        cache.remove(second.getKey());
+        assertEquals("renamed", ((Person) first.getValue()).getName());
+        assertNull(second.getValue());
+    }
+
+    @Test
+    public void testMaxResults() {
+        StreamingResults streaming = (StreamingResults) cache.createQuery().includeKeys().addCriteria(age.ge(0)).maxResults(12)
+            .execute(PAGED);
+        assertEquals(7, streaming.nextPage().size());
+        assertEquals(5, streaming.nextPage().size());
+        assertTrue(streaming.nextPage().isEmpty());
+    }
+
+    @Test
+    public void testNotStreamedWhenResultsAreComputedTogether() {
+        assertFalse(cache.createQuery().includeKeys().addOrderBy(age, Direction.ASCENDING).execute(PAGED) instanceof StreamingResults);
+        assertFalse(cache.createQuery().includeAggregator(Aggregators.count()).execute(PAGED) instanceof StreamingResults);
+        assertFalse(cache.createQuery().includeKeys().execute() instanceof StreamingResults);
+    }
+
+    @Test
+    public void testDiscard() {
+        StreamingResults streaming = (StreamingResults) cache.createQuery().includeKeys().execute(PAGED);
+        streaming.nextPage();
+        streaming.discard();
+        try {
+            streaming.nextPage();
+            fail();
+        } catch (SearchException e) {
+            // expected
+        }
+    }
+}
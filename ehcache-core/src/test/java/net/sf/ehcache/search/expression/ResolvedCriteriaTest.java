@@ -0,0 +1,129 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search.expression;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.search.Person;
+import net.sf.ehcache.search.Person.Gender;
+import net.sf.ehcache.search.attribute.AttributeExtractor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResolvedCriteriaTest {
+
+    @Test
+    public void testResolvedCriteriaMatchLikeTheCriteriaWithoutLookingExtractorsUp() {
+        CountingExtractors extractors = new CountingExtractors();
+        Criteria[] criteria = {
+            new EqualTo("name", "NAME 3"),
+            new NotEqualTo("age", 3),
+            new Between("age", 2, 5, true, false),
+            new GreaterThan("age", 4).and(new LessThanOrEqual("age", 7)).and(new ILike("name", "*1")),
+            new LessThan("age", 2).or(new GreaterThanOrEqual("age", 8)).or(new NotILike("name", "name ?")),
+            new Not(new InCollection("age", Arrays.asList(1, 3, 5))),
+            new InCollection("age", Arrays.asList()),
+            new IsNull("gender").or(new NotNull("name").and(new EqualTo("gender", Gender.FEMALE))),
+            new AlwaysMatch()
+        };
+
+        for (Criteria criterion : criteria) {
+            ResolvedCriteria resolved = ResolvedCriteria.resolve(criterion, extractors);
+            for (int i = 0; i < 12; i++) {
+                Element element = new Element(i, new Person("name " + i, i, i % 2 == 0 ? Gender.MALE : Gender.FEMALE));
+                extractors.lookups = 0;
+                boolean matches = resolved.execute(element);
+                assertEquals(0, extractors.lookups);
+                assertEquals(criterion.execute(element, extractors), matches);
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownAttributesAreOnlyReportedWhenTested() {
+        ResolvedCriteria resolved = ResolvedCriteria.resolve(new EqualTo("age", 1).and(new EqualTo("unknown", 1)),
+            new CountingExtractors());
+
+        assertFalse(resolved.execute(new Element(1, new Person("name", 2, Gender.MALE))));
+        try {
+            resolved.execute(new Element(1, new Person("name", 1, Gender.MALE)));
+            fail();
+        } catch (AssertionError e) {
+            assertEquals("Unknown search attribute unknown", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCriteriaOfOtherTypesAreExecutedWithTheExtractorsResolvedAgainst() {
+        final CountingExtractors extractors = new CountingExtractors();
+        Criteria custom = new EqualTo("age", 1) {
+            @Override
+            public boolean execute(Element e, Map<String, AttributeExtractor> attributeExtractors) {
+                assertSame(extractors, attributeExtractors);
+                return !super.execute(e, attributeExtractors);
+            }
+        };
+
+        ResolvedCriteria resolved = ResolvedCriteria.resolve(new Not(custom), extractors);
+        assertTrue(resolved.execute(new Element(1, new Person("name", 1, Gender.MALE))));
+        assertFalse(resolved.execute(new Element(1, new Person("name", 2, Gender.MALE))));
+    }
+
+    /**
+     * Extractors of the attributes of a person, counting the lookups of extractors by name.
+     */
+    private static final class CountingExtractors extends HashMap<String, AttributeExtractor> {
+
+        private int lookups;
+
+        private CountingExtractors() {
+            put("name", new AttributeExtractor() {
+                @Override
+                public Object attributeFor(Element element, String attributeName) {
+                    return ((Person) element.getObjectValue()).getName();
+                }
+            });
+            put("age", new AttributeExtractor() {
+                @Override
+                public Object attributeFor(Element element, String attributeName) {
+                    return ((Person) element.getObjectValue()).getAge();
+                }
+            });
+            put("gender", new AttributeExtractor() {
+                @Override
+                public Object attributeFor(Element element, String attributeName) {
+                    return ((Person) element.getObjectValue()).getGender();
+                }
+            });
+        }
+
+        @Override
+        public AttributeExtractor get(Object key) {
+            lookups++;
+            return super.get(key);
+        }
+    }
+}
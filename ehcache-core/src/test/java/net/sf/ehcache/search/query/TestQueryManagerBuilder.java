@@ -16,5 +16,10 @@ public class TestQueryManagerBuilder {
         public Query createQuery(String statement) throws CacheException {
             return null;
         }
+
+        @Override
+        public PreparedQuery prepareQuery(String statement) throws CacheException {
+            return null;
+        }
     }
 }
@@ -0,0 +1,163 @@
+package net.sf.ehcache.serializer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Date;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+import net.sf.ehcache.config.SerializerConfiguration;
+import net.sf.ehcache.store.compound.ReadWriteSerializationCopyStrategy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompactSerializerTest {
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testCommonTypesRoundTrip() throws Exception {
+        CompactSerializer serializer = new CompactSerializer();
+        for (Object value : Arrays.asList(null, "", "h\u00e9llo", 42, 42L, (short) 42, (byte) 42, 'x', true, 4.2f, 4.2d)) {
+            assertEquals(value, roundTrip(serializer, value));
+        }
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) roundTrip(serializer, new byte[] {1, 2, 3}));
+        assertEquals(0, serializer.getDictionarySize());
+    }
+
+    @Test
+    public void testElementRoundTrip() throws Exception {
+        CompactSerializer serializer = new CompactSerializer();
+        Element element = new Element("key", new Date(1234L), 7L, 10L, 20L, 3L, false, 60, 30, 15L);
+
+        Element copy = (Element) roundTrip(serializer, element);
+
+        assertEquals("key", copy.getObjectKey());
+        assertEquals(new Date(1234L), copy.getObjectValue());
+        assertEquals(7L, copy.getVersion());
+        assertEquals(10L, copy.getCreationTime());
+        assertEquals(20L, copy.getLastAccessTime());
+        assertEquals(3L, copy.getHitCount());
+        assertEquals(15L, copy.getLastUpdateTime());
+        assertEquals(60, copy.getTimeToLive());
+        assertEquals(30, copy.getTimeToIdle());
+        assertEquals(false, copy.usesCacheDefaultLifespan());
+    }
+
+    @Test
+    public void testClassDescriptorsAreWrittenOnce() throws Exception {
+        CompactSerializer serializer = new CompactSerializer();
+        byte[] first = serialize(serializer, new Value("a", 1));
+        byte[] second = serialize(serializer, new Value("b", 2));
+
+        assertTrue(second.length < first.length);
+        assertEquals(1, serializer.getDictionarySize());
+        assertEquals(new Value("a", 1), serializer.deserialize(new ByteArrayInputStream(first), getClass().getClassLoader()));
+        assertEquals(new Value("b", 2), serializer.deserialize(new ByteArrayInputStream(second), getClass().getClassLoader()));
+    }
+
+    @Test
+    public void testStateRestoresDictionary() throws Exception {
+        CompactSerializer serializer = new CompactSerializer();
+        serialize(serializer, new Value("a", 1));
+        byte[] record = serialize(serializer, new Value("b", 2));
+
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        serializer.saveState(state);
+
+        CompactSerializer restored = new CompactSerializer();
+        restored.loadState(new ByteArrayInputStream(state.toByteArray()), getClass().getClassLoader());
+        assertEquals(new Value("b", 2), restored.deserialize(new ByteArrayInputStream(record), getClass().getClassLoader()));
+    }
+
+    @Test
+    public void testCopyStrategyUsesSerializer() {
+        ReadWriteSerializationCopyStrategy strategy = new ReadWriteSerializationCopyStrategy(new CompactSerializer());
+        Value value = new Value("a", 1);
+
+        Element stored = strategy.copyForWrite(new Element("key", value), getClass().getClassLoader());
+        Element read = strategy.copyForRead(stored, getClass().getClassLoader());
+
+        assertEquals(value, read.getObjectValue());
+        assertNotSame(value, read.getObjectValue());
+    }
+
+    @Test
+    public void testPersistentDiskStore() throws Exception {
+        Configuration config = new Configuration().name("CompactSerializerTest")
+                .diskStore(new DiskStoreConfiguration().path(tempFolder.newFolder().getAbsolutePath()));
+        CacheConfiguration cacheConfig = new CacheConfiguration("compact", 10).overflowToDisk(true).diskPersistent(true)
+                .serializer(new SerializerConfiguration().className(CompactSerializer.class.getName()));
+
+        CacheManager manager = new CacheManager(config);
+        try {
+            manager.addCache(new Cache(cacheConfig.clone()));
+            Cache cache = manager.getCache("compact");
+            for (int i = 0; i < 100; i++) {
+                cache.put(new Element(i, new Value("value", i)));
+            }
+        } finally {
+            manager.shutdown();
+        }
+
+        manager = new CacheManager(config);
+        try {
+            manager.addCache(new Cache(cacheConfig.clone()));
+            Cache cache = manager.getCache("compact");
+            assertEquals(100, cache.getSize());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(new Value("value", i), cache.get(i).getObjectValue());
+            }
+            assertNull(cache.get(100));
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    private static Object roundTrip(Serializer serializer, Object object) throws IOException, ClassNotFoundException {
+        return serializer.deserialize(new ByteArrayInputStream(serialize(serializer, object)), CompactSerializerTest.class.getClassLoader());
+    }
+
+    private static byte[] serialize(Serializer serializer, Object object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(object, out);
+        return out.toByteArray();
+    }
+
+    private static final class Value implements Serializable {
+
+        private final String name;
+        private final int count;
+
+        Value(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Value && ((Value) obj).name.equals(name) && ((Value) obj).count == count;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() ^ count;
+        }
+    }
+}
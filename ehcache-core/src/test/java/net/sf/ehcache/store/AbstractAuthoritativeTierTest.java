@@ -6,6 +6,10 @@ import net.sf.ehcache.config.CacheConfiguration;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -63,6 +67,50 @@ public abstract class AbstractAuthoritativeTierTest<T extends AuthoritativeTier>
         }
     }
 
+    @Test
+    public void testBulkOperations() throws Exception {
+        CacheManager cacheManager = createCacheManager();
+        T authoritativeTier = createAuthoritativeTier(cacheManager);
+
+        try {
+          final List<Element> elements = new ArrayList<Element>();
+          final List<Object> keys = new ArrayList<Object>();
+          for (int i = 0; i < 100; i++) {
+              elements.add(new Element(i, "value" + i));
+              keys.add(i);
+          }
+          authoritativeTier.removeAll();
+          authoritativeTier.putAll(elements);
+          assertThat(authoritativeTier.getSize(), is(100));
+
+          keys.add("missing");
+          Map<Object, Element> faulted = authoritativeTier.faultAll(keys, true);
+          assertThat(faulted.size(), is(101));
+          assertThat(faulted.get("missing") == null, is(true));
+          for (int i = 0; i < 100; i++) {
+              assertThat(faulted.get(i).getObjectValue(), is((Object) ("value" + i)));
+              assertThat(isFaulted(i, authoritativeTier), is(true));
+          }
+
+          final List<Object> evenKeys = new ArrayList<Object>();
+          for (int i = 0; i < 100; i += 2) {
+              evenKeys.add(i);
+          }
+          authoritativeTier.removeAll(evenKeys);
+          assertThat(authoritativeTier.getSize(), is(50));
+          Map<Object, Element> remaining = authoritativeTier.getAllQuiet(keys);
+          assertThat(remaining.size(), is(101));
+          for (int i = 0; i < 100; i++) {
+              assertThat(remaining.get(i) == null, is(i % 2 == 0));
+          }
+        }
+        finally {
+          if(cacheManager != null ) {
+            cacheManager.shutdown();
+          }
+        }
+    }
+
     protected abstract T createAuthoritativeTier(CacheManager cacheManager) throws Exception;
 
     protected abstract boolean isFaulted(Object key, T authoritativeTier);
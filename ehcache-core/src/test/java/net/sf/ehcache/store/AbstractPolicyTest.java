@@ -0,0 +1,65 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Element;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AbstractPolicyTest {
+
+    private static Element element(int key, long hits) {
+        Element element = new Element(key, key);
+        for (long i = 0; i < hits; i++) {
+            element.updateAccessStatistics();
+        }
+        return element;
+    }
+
+    @Test
+    public void testSelectionFromBuffer() {
+        Element rare = element(1, 1);
+        Element justAdded = element(2, 0);
+        Element stale = element(3, 0);
+        Element[] buffer = {element(4, 5), rare, justAdded, stale};
+
+        LfuPolicy lfu = new LfuPolicy();
+        assertSame(rare, lfu.selectedBasedOnPolicy(buffer, 2, justAdded));
+        assertSame(lfu.selectedBasedOnPolicy(buffer, justAdded), lfu.selectedBasedOnPolicy(buffer, buffer.length, justAdded));
+        assertSame(buffer[0], lfu.selectedBasedOnPolicy(buffer, 1, justAdded));
+        assertNull(lfu.selectedBasedOnPolicy(buffer, 0, justAdded));
+    }
+
+    @Test
+    public void testOverriddenSelectionSeesExactSample() {
+        final int[] seen = new int[1];
+        AbstractPolicy policy = new LruPolicy() {
+            @Override
+            public Element selectedBasedOnPolicy(Element[] sampledElements, Element justAdded) {
+                seen[0] = sampledElements.length;
+                return sampledElements[sampledElements.length - 1];
+            }
+        };
+        Element[] buffer = {element(1, 0), element(2, 0), null, null};
+        assertSame(buffer[1], policy.selectedBasedOnPolicy(buffer, 2, null));
+        assertEquals(2, seen[0]);
+    }
+}
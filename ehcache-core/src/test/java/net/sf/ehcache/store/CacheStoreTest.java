@@ -21,6 +21,7 @@ import org.mockito.ArgumentCaptor;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -208,6 +209,15 @@ class DelegatingStoreAuthority implements AuthoritativeTier {
         return faultAction.fault(key, updateStats);
     }
 
+    @Override
+    public Map<Object, Element> faultAll(final Collection<?> keys, final boolean updateStats) {
+        Map<Object, Element> result = new HashMap<Object, Element>();
+        for (Object key : keys) {
+            result.put(key, faultAction.fault(key, updateStats));
+        }
+        return result;
+    }
+
     @Override
     public boolean putFaulted(final Element element) {
         return delegate.put(element);
@@ -0,0 +1,219 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.pool.impl.UnboundedPool;
+import net.sf.ehcache.store.chm.SelectableConcurrentHashMap;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentEvictionEngineTest {
+
+    private static Element[] install(ConcurrentEvictionEngine engine, int count) {
+        Element[] elements = new Element[count];
+        for (int i = 0; i < count; i++) {
+            elements[i] = new Element(i, i);
+            engine.installed(i, null, elements[i]);
+        }
+        return elements;
+    }
+
+    /**
+     * Selects a victim and reports its removal, as the store does once the eviction succeeded.
+     */
+    private static Element evict(ConcurrentEvictionEngine engine, Element elementJustAdded) {
+        Element victim = engine.selectVictim(elementJustAdded);
+        engine.removed(victim.getObjectKey(), victim);
+        return victim;
+    }
+
+    @Test
+    public void testExactLruOrder() {
+        ConcurrentEvictionEngine engine = ConcurrentEvictionEngine.forPolicy(MemoryStoreEvictionPolicy.EXACT_LRU, 10);
+        Element[] elements = install(engine, 10);
+        engine.recordRead(elements[0]);
+        engine.recordRead(elements[1]);
+        engine.removed(2, elements[2]);
+
+        assertSame(elements[3], evict(engine, null));
+        assertSame(elements[5], evict(engine, elements[4]));
+        assertSame(elements[4], evict(engine, null));
+
+        Element updated = new Element(6, "updated");
+        engine.installed(6, elements[6], updated);
+        engine.removed(6, elements[6]);
+        assertSame(elements[7], engine.selectVictim(null));
+        assertEquals(6, engine.size());
+    }
+
+    @Test
+    public void testFailedEvictionKeepsTheVictimOrdered() {
+        ConcurrentEvictionEngine engine = ConcurrentEvictionEngine.forPolicy(MemoryStoreEvictionPolicy.EXACT_LRU, 10);
+        Element[] elements = install(engine, 10);
+        for (int attempt = 0; attempt < 20; attempt++) {
+            assertSame(elements[0], engine.selectVictim(null));
+        }
+        assertEquals(10, engine.size());
+        assertSame(elements[0], evict(engine, null));
+        assertSame(elements[1], engine.selectVictim(null));
+        assertEquals(9, engine.size());
+    }
+
+    @Test
+    public void testMemoryStoreRetriesVictimAfterContendedEviction() throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("contended", 10).memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.EXACT_LRU));
+        final MemoryStore store = (MemoryStore) MemoryStore.create(cache, new UnboundedPool());
+        for (int i = 0; i < 10; i++) {
+            store.put(new Element(i, i));
+        }
+
+        Field mapField = MemoryStore.class.getDeclaredField("map");
+        mapField.setAccessible(true);
+        SelectableConcurrentHashMap map = (SelectableConcurrentHashMap) mapField.get(store);
+        final Lock segmentLock = map.lockFor(0).writeLock();
+        int added = 10;
+        while (map.lockFor(added) == map.lockFor(0)) {
+            added++;
+        }
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread() {
+            @Override
+            public void run() {
+                segmentLock.lock();
+                try {
+                    locked.countDown();
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    segmentLock.unlock();
+                }
+            }
+        };
+        holder.start();
+        try {
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+            store.put(new Element(added, added));
+            assertEquals(11, store.getSize());
+            assertTrue(store.containsKey(0));
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+
+        store.put(new Element(-1, -1));
+        assertEquals(10, store.getSize());
+        assertFalse("the victim of the failed eviction was never retried", store.containsKey(0));
+        store.dispose();
+    }
+
+    @Test
+    public void testTinyLfuRejectsInfrequentCandidates() {
+        ConcurrentEvictionEngine.TinyLfu engine = (ConcurrentEvictionEngine.TinyLfu) ConcurrentEvictionEngine.forPolicy(
+                MemoryStoreEvictionPolicy.TINY_LFU, 100);
+        Element[] elements = install(engine, 100);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 50; i++) {
+                engine.recordRead(elements[i]);
+            }
+        }
+        for (int i = 100; i < 200; i++) {
+            engine.installed(i, null, new Element(i, i));
+            Element victim = evict(engine, null);
+            int key = (Integer) victim.getObjectKey();
+            assertTrue("evicted frequently read key " + key, key >= 50);
+        }
+        engine.selectVictim(null);
+        assertEquals(100, engine.size());
+    }
+
+    @Test
+    public void testDisabledEngineForgetsOrder() {
+        ConcurrentEvictionEngine engine = ConcurrentEvictionEngine.forPolicy(MemoryStoreEvictionPolicy.EXACT_LRU, 0);
+        install(engine, 3);
+        engine.disable();
+        engine.installed(4, null, new Element(4, 4));
+        assertNull(engine.selectVictim(null));
+        assertNull(ConcurrentEvictionEngine.forPolicy(MemoryStoreEvictionPolicy.LRU, 10));
+    }
+
+    @Test
+    public void testFrequencySketch() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("hot");
+        }
+        sketch.increment("cold");
+        assertEquals(15, sketch.frequency("hot"));
+        assertEquals(1, sketch.frequency("cold"));
+        for (int i = 0; i < 10 * 64; i++) {
+            sketch.increment(i);
+        }
+        assertTrue(sketch.frequency("hot") < 15);
+    }
+
+    @Test
+    public void testMemoryStoreWithExactPolicies() {
+        CacheManager manager = new CacheManager(new Configuration().name("ConcurrentEvictionEngineTest"));
+        try {
+            for (MemoryStoreEvictionPolicy policy : new MemoryStoreEvictionPolicy[] {MemoryStoreEvictionPolicy.EXACT_LRU,
+                MemoryStoreEvictionPolicy.TINY_LFU}) {
+                Cache cache = new Cache(new CacheConfiguration().name(policy.toString()).maxEntriesLocalHeap(100)
+                    .memoryStoreEvictionPolicy(policy));
+                manager.addCache(cache);
+                for (int i = 0; i < 100; i++) {
+                    cache.put(new Element(i, i));
+                }
+                for (int i = 100; i < 300; i++) {
+                    cache.get(0);
+                    cache.put(new Element(i, i));
+                }
+                assertEquals(100, cache.getSize());
+                assertTrue(policy + " evicted the hot key", cache.isKeyInCache(0));
+                int residents = 0;
+                for (int i = 1; i < 100; i++) {
+                    residents += cache.isKeyInCache(i) ? 1 : 0;
+                }
+                // a scan flushes LRU, but is mostly not admitted by TinyLFU
+                if (policy == MemoryStoreEvictionPolicy.EXACT_LRU) {
+                    assertEquals(0, residents);
+                } else {
+                    assertTrue("only " + residents + " residents left", residents > 90);
+                }
+            }
+        } finally {
+            manager.shutdown();
+        }
+    }
+}
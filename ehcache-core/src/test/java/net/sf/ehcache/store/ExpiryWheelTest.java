@@ -0,0 +1,203 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.pool.impl.UnboundedPool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiryWheelTest {
+
+    private static final long START = 1000000L;
+
+    /**
+     * A store of keys and expiration times, recording the keys it is asked about.
+     */
+    private static final class MapExpirer implements ExpiryWheel.Expirer<String> {
+
+        private final Map<String, Long> expirations = new HashMap<String, Long>();
+        private final List<String> expired = new ArrayList<String>();
+        private int lookups;
+
+        private void put(ExpiryWheel<String> wheel, String key, long expirationTime) {
+            Long previous = expirations.put(key, expirationTime);
+            if (previous == null || previous > expirationTime) {
+                wheel.schedule(key, expirationTime);
+            }
+        }
+
+        @Override
+        public long getExpirationTime(String key) {
+            lookups++;
+            Long expirationTime = expirations.get(key);
+            return expirationTime == null ? Long.MAX_VALUE : expirationTime;
+        }
+
+        @Override
+        public boolean expire(String key, long now) {
+            expirations.remove(key);
+            expired.add(key);
+            return true;
+        }
+    }
+
+    @Test
+    public void testExpiresOnlyKeysDue() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<String>(START);
+        MapExpirer store = new MapExpirer();
+        store.put(wheel, "a", START + 1500);
+        store.put(wheel, "b", START + 70000);
+        store.put(wheel, "c", START + 5000000);
+        store.put(wheel, "eternal", Long.MAX_VALUE);
+
+        assertEquals(0, wheel.expire(START + 1000, store, Integer.MAX_VALUE));
+        assertEquals(0, store.lookups);
+        assertEquals(1, wheel.expire(START + 2000, store, Integer.MAX_VALUE));
+        assertEquals(1, store.lookups);
+        assertEquals(0, wheel.expire(START + 69000, store, Integer.MAX_VALUE));
+        assertEquals(1, wheel.expire(START + 70000, store, Integer.MAX_VALUE));
+        assertEquals(0, wheel.expire(START + 4999000, store, Integer.MAX_VALUE));
+        assertEquals(1, wheel.expire(START + 5001000, store, Integer.MAX_VALUE));
+        assertEquals("[a, b, c]", store.expired.toString());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testReschedulesKeysWhoseExpirationMovedOn() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<String>(START);
+        MapExpirer store = new MapExpirer();
+        store.put(wheel, "idle", START + 1000);
+        store.put(wheel, "idle", START + 10000);
+        store.put(wheel, "removed", START + 1000);
+        store.expirations.remove("removed");
+
+        assertEquals(0, wheel.expire(START + 2000, store, Integer.MAX_VALUE));
+        assertEquals(1, wheel.size());
+        assertEquals(1, wheel.expire(START + 10000, store, Integer.MAX_VALUE));
+        assertEquals("[idle]", store.expired.toString());
+    }
+
+    @Test
+    public void testEarlierExpirationIsScheduledAgain() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<String>(START);
+        MapExpirer store = new MapExpirer();
+        store.put(wheel, "key", START + 600000);
+        store.put(wheel, "key", START + 3000);
+
+        assertEquals(1, wheel.expire(START + 3000, store, Integer.MAX_VALUE));
+        assertEquals(0, wheel.expire(START + 600000, store, Integer.MAX_VALUE));
+        assertEquals(1, store.expired.size());
+    }
+
+    @Test
+    public void testLimitAndMaintenanceKeepKeysDue() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<String>(START);
+        MapExpirer store = new MapExpirer();
+        for (int i = 0; i < 10; i++) {
+            store.put(wheel, "key" + i, START + 1000);
+        }
+
+        wheel.maintain(START + 5000);
+        assertEquals(0, store.expired.size());
+        assertEquals(10, wheel.size());
+        assertEquals(1, wheel.tryExpire(START + 5000, store, 1));
+        assertEquals("keys due beyond the limit were looked up", 1, store.lookups);
+        assertEquals(9, wheel.expire(START + 5000, store, Integer.MAX_VALUE));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testCancelledKeysLeaveTheWheel() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<String>(START);
+        MapExpirer store = new MapExpirer();
+        for (int i = 0; i < 10000; i++) {
+            store.put(wheel, "key" + i, START + 3600000);
+            store.expirations.remove("key" + i);
+            wheel.cancel("key" + i);
+        }
+        store.put(wheel, "kept", START + 3600000);
+        store.put(wheel, "kept", START + 1000);
+
+        wheel.maintain(START);
+        assertEquals(1, wheel.size());
+        assertEquals(1, wheel.expire(START + 1000, store, Integer.MAX_VALUE));
+        assertEquals(0, wheel.size());
+        assertEquals(1, store.lookups);
+    }
+
+    @Test
+    public void testRemovedAndEvictedMappingsLeaveTheWheelOfTheMemoryStore() throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("wheel", 100).timeToLiveSeconds(3600));
+        MemoryStore store = (MemoryStore) MemoryStore.create(cache, new UnboundedPool());
+        Field wheelField = MemoryStore.class.getDeclaredField("expiryWheel");
+        wheelField.setAccessible(true);
+        ExpiryWheel<?> wheel = (ExpiryWheel<?>) wheelField.get(store);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                store.put(new Element(i, i));
+                if (i % 2 == 0) {
+                    store.remove(i);
+                }
+            }
+            cache.getCacheConfiguration().setTimeToLiveSeconds(7200);
+            store.timeToLiveChanged(3600, 7200);
+            wheel.maintain(System.currentTimeMillis());
+            assertEquals(100, store.getSize());
+            assertEquals(store.getSize(), wheel.size());
+
+            store.removeAll();
+            wheel.maintain(System.currentTimeMillis());
+            assertEquals(0, wheel.size());
+        } finally {
+            store.dispose();
+        }
+    }
+
+    @Test
+    public void testMemoryStoreExpiresThroughTheWheel() throws InterruptedException {
+        CacheManager manager = new CacheManager(new Configuration().name("ExpiryWheelTest"));
+        try {
+            Cache cache = new Cache(new CacheConfiguration().name("expiring").maxEntriesLocalHeap(0).timeToLiveSeconds(1));
+            manager.addCache(cache);
+            for (int i = 0; i < 100; i++) {
+                cache.put(new Element(i, i));
+            }
+            cache.put(new Element("eternal", "eternal", true));
+            assertEquals(101, cache.getSize());
+            Thread.sleep(2100);
+            cache.evictExpiredElements();
+            assertEquals(1, cache.getSize());
+            assertTrue(cache.isKeyInCache("eternal"));
+        } finally {
+            manager.shutdown();
+        }
+    }
+}
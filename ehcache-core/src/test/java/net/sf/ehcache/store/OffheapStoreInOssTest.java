@@ -17,8 +17,8 @@
 package net.sf.ehcache.store;
 
 import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
 
 import net.sf.ehcache.config.Configuration;
@@ -37,10 +37,14 @@ public class OffheapStoreInOssTest {
         try {
             Cache cache = new Cache(new CacheConfiguration("test", 1).overflowToOffHeap(true).maxMemoryOffHeap("1M"));
             manager.addCache(cache);
-            Assert.fail();
-        } catch (CacheException e) {
-            // expected
-            Assert.assertTrue(e.getMessage().contains("You must use an enterprise version of Ehcache"));
+            for (int i = 0; i < 100; i++) {
+                cache.put(new Element(i, "value-" + i));
+            }
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals("value-" + i, cache.get(i).getObjectValue());
+            }
+            Assert.assertTrue(cache.isElementOffHeap(42));
+            Assert.assertEquals(100, cache.getSize());
         } finally {
           manager.shutdown();
         }
@@ -15,6 +15,7 @@ import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -86,6 +87,52 @@ public class OnHeapCachingTierTest {
         assertThat(valuesRead.get(), is(threadCount));
     }
 
+    @Test
+    public void testGetAllLoadsAllMissesAtOnce() {
+        final CachingTier<String, String> cache = new OnHeapCachingTier<String, String>(new CountBasedBackEnd<String, Object>(100));
+        final Set<String> loaded = new HashSet<String>();
+        final AtomicInteger loads = new AtomicInteger();
+        final CachingTier.BulkSource<String, String> source = new CachingTier.BulkSource<String, String>() {
+            @Override
+            public Map<String, String> loadAll(final Collection<String> keys) throws Exception {
+                loads.incrementAndGet();
+                loaded.addAll(keys);
+                final Map<String, String> values = new HashMap<String, String>();
+                for (String key : keys) {
+                    if (!"9".equals(key)) {
+                        values.put(key, "value" + key);
+                    }
+                }
+                return values;
+            }
+        };
+        cache.get("0", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "cached";
+            }
+        }, false);
+
+        final Set<String> keys = new HashSet<String>();
+        for (int i = 0; i < 10; i++) {
+            keys.add(Integer.toString(i));
+        }
+        Map<String, String> values = cache.getAll(keys, source, true);
+        assertThat(loads.get(), is(1));
+        assertThat(loaded.size(), is(9));
+        assertThat(loaded.contains("0"), is(false));
+        assertThat(values.size(), is(10));
+        assertThat(values.get("0"), is("cached"));
+        assertThat(values.get("5"), is("value5"));
+        assertThat(values.get("9") == null, is(true));
+
+        loaded.clear();
+        values = cache.getAll(keys, source, true);
+        assertThat(loads.get(), is(2));
+        assertThat(loaded, is(Collections.singleton("9")));
+        assertThat(values.get("5"), is("value5"));
+    }
+
     @Test
     public void testEvictsAtCapacityAndNotifies() {
         final Map<String, String> evictions = new HashMap<String, String>();
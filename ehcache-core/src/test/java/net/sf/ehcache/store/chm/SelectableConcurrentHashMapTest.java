@@ -87,6 +87,25 @@ public class SelectableConcurrentHashMapTest {
             not(sameInstance(evictionIterator.currentTable)));
     }
 
+    @Test
+    public void testRandomValuesIntoBuffer() {
+        Element[] buffer = new Element[10];
+        assertThat(map.getRandomValues(buffer, 0, null), is(0));
+        assertThat(buffer[0], nullValue());
+
+        assertThat(map.getRandomValues(buffer, 3, 2), is(3));
+        Set<Element> sampled = expectedSet(buffer[0], buffer[1], buffer[2]);
+        assertThat(sampled.size(), is(3));
+        assertThat(buffer[3], nullValue());
+
+        assertThat(map.getRandomValues(buffer, 10, null), is(4));
+        Set<Object> keys = new HashSet<Object>();
+        for (int i = 0; i < 4; i++) {
+            keys.add(buffer[i].getObjectKey());
+        }
+        assertThat(keys, is(expectedSet((Object) 1, 2, 3, 4)));
+    }
+
     private <T> Set<T> expectedSet(T... values) {
         final Set<T> set = new HashSet<T>();
         Collections.addAll(set, values);
@@ -0,0 +1,105 @@
+package net.sf.ehcache.store.disk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.junit.Test;
+
+public class BatchingDiskWriterTest {
+
+    @Test
+    public void testItemsForOneHashAreWrittenInOrder() throws Exception {
+        final Map<Integer, List<Integer>> written = new ConcurrentHashMap<Integer, List<Integer>>();
+        BatchingDiskWriter<int[]> writer = new BatchingDiskWriter<int[]>("BatchingDiskWriterTest", 4, 16,
+                new BatchingDiskWriter.BatchHandler<int[]>() {
+                    public void write(List<int[]> batch) {
+                        for (int[] item : batch) {
+                            List<Integer> values = written.get(item[0]);
+                            if (values == null) {
+                                values = Collections.synchronizedList(new ArrayList<Integer>());
+                                written.put(item[0], values);
+                            }
+                            values.add(item[1]);
+                        }
+                    }
+                });
+        try {
+            for (int i = 0; i < 10000; i++) {
+                writer.submit(i % 37, new int[] {i % 37, i});
+            }
+            writer.awaitWritten();
+
+            assertEquals(0, writer.getQueueDepth());
+            int total = 0;
+            for (List<Integer> values : written.values()) {
+                total += values.size();
+                for (int i = 1; i < values.size(); i++) {
+                    assertTrue(values.get(i) > values.get(i - 1));
+                }
+            }
+            assertEquals(10000, total);
+            assertTrue(writer.getAverageBatchSize() >= 1);
+        } finally {
+            assertTrue(writer.shutdown(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testFailedBatchDoesNotStopWriter() throws Exception {
+        final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+        BatchingDiskWriter<String> writer = new BatchingDiskWriter<String>("BatchingDiskWriterTest", 1, 1,
+                new BatchingDiskWriter.BatchHandler<String>() {
+                    public void write(List<String> batch) {
+                        if (batch.contains("fail")) {
+                            throw new IllegalStateException();
+                        }
+                        written.addAll(batch);
+                    }
+                });
+        try {
+            writer.submit(0, "fail");
+            writer.submit(0, "ok");
+            writer.awaitWritten();
+            assertEquals(Collections.singletonList("ok"), written);
+            assertEquals(0, writer.getQueueDepth());
+        } finally {
+            assertTrue(writer.shutdown(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testCacheWithMultipleWriterThreads() throws Exception {
+        CacheManager manager = new CacheManager(new Configuration().name("BatchingDiskWriterTest")
+            .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir") + File.separator + "BatchingDiskWriterTest")));
+        try {
+            Cache cache = new Cache(new CacheConfiguration("writers", 10).overflowToDisk(true)
+                .diskWriterThreads(4).diskWriteBatchSize(8));
+            manager.addCache(cache);
+            for (int i = 0; i < 1000; i++) {
+                cache.put(new Element(i, "value-" + i));
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("value-" + i, cache.get(i).getObjectValue());
+            }
+            assertEquals(0, cache.getStatistics().getLocalDiskWriteQueueLength());
+        } finally {
+            manager.shutdown();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package net.sf.ehcache.store.disk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheConfiguration.DiskIndex;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactSegmentTest {
+
+    private CacheManager manager;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("CompactSegmentTest")
+            .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir") + File.separator + "CompactSegmentTest")));
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testOverflowedEntriesAreReadable() throws Exception {
+        Cache cache = compactCache("readable", 10);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new Element(i, "value-" + i));
+        }
+        DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+
+        assertEquals(1000, cache.getSize());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value-" + i, cache.get(i).getObjectValue());
+        }
+        assertNull(cache.get(1000));
+        assertFalse(cache.isKeyInCache(1000));
+    }
+
+    @Test
+    public void testMutationsOfOnDiskEntries() throws Exception {
+        Cache cache = compactCache("mutations", 1);
+        for (int i = 0; i < 100; i++) {
+            cache.put(new Element(i, "value-" + i));
+        }
+        DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+
+        assertTrue(cache.remove(10));
+        assertNull(cache.get(10));
+        assertNotNull(cache.replace(new Element(20, "replaced")));
+        assertEquals("replaced", cache.get(20).getObjectValue());
+        cache.put(new Element(30, "updated"));
+        DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+        assertEquals("updated", cache.get(30).getObjectValue());
+        assertEquals(99, cache.getSize());
+
+        cache.removeAll();
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get(20));
+    }
+
+    @Test
+    public void testCollidingHashesAreToldApart() throws Exception {
+        Cache cache = compactCache("collisions", 1);
+        for (int i = 0; i < 50; i++) {
+            cache.put(new Element(new CollidingKey(i), i));
+        }
+        DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, cache.get(new CollidingKey(i)).getObjectValue());
+        }
+        assertTrue(cache.remove(new CollidingKey(25)));
+        for (int i = 0; i < 50; i++) {
+            if (i == 25) {
+                assertNull(cache.get(new CollidingKey(i)));
+            } else {
+                assertEquals(i, cache.get(new CollidingKey(i)).getObjectValue());
+            }
+        }
+    }
+
+    @Test
+    public void testKeyIterationReadsKeysBack() throws Exception {
+        Cache cache = compactCache("keys", 1);
+        Set<Object> expected = new HashSet<Object>();
+        for (int i = 0; i < 200; i++) {
+            cache.put(new Element(i, "value-" + i));
+            expected.add(i);
+        }
+        DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+
+        assertEquals(expected, new HashSet<Object>(cache.getKeys()));
+    }
+
+    @Test
+    public void testDiskCapacityIsEnforced() throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("bounded", 10).overflowToDisk(true).maxEntriesLocalDisk(100)
+            .diskIndex(DiskIndex.COMPACT));
+        manager.addCache(cache);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new Element(i, "value-" + i));
+            if (i % 100 == 0) {
+                DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+            }
+        }
+        DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+        assertTrue(cache.getSize() <= 200);
+    }
+
+    private Cache compactCache(String name, int heapEntries) {
+        Cache cache = new Cache(new CacheConfiguration(name, heapEntries).overflowToDisk(true).diskIndex(DiskIndex.COMPACT));
+        manager.addCache(cache);
+        return cache;
+    }
+
+    private static final class CollidingKey implements Serializable {
+
+        private final int id;
+
+        private CollidingKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CollidingKey && ((CollidingKey) obj).id == id;
+        }
+    }
+}
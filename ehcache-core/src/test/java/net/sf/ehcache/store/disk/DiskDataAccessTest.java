@@ -0,0 +1,211 @@
+package net.sf.ehcache.store.disk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheConfiguration.DiskAccessMode;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskDataAccessTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("DiskDataAccessTest", ".data");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testStripedRoundTrip() throws Exception {
+        assertRoundTrip(new StripedDiskDataAccess(file, 3));
+    }
+
+    @Test
+    public void testChannelRoundTrip() throws Exception {
+        assertRoundTrip(new ChannelDiskDataAccess(file));
+    }
+
+    @Test
+    public void testMappedRoundTrip() throws Exception {
+        assertRoundTrip(new MappedDiskDataAccess(file));
+    }
+
+    @Test
+    public void testMappedRecordSpanningSegments() throws Exception {
+        DiskDataAccess access = new MappedDiskDataAccess(file);
+        try {
+            byte[] record = randomBytes(4096, 42);
+            long position = MappedDiskDataAccess.SEGMENT_SIZE - 1000;
+            access.write(position, record, 0, record.length, "key");
+            assertArrayEquals(record, toArray(access.read(position, record.length, "key")));
+        } finally {
+            access.close();
+        }
+    }
+
+    @Test
+    public void testMappedLengthIsTheLogicalLength() throws Exception {
+        DiskDataAccess access = new MappedDiskDataAccess(file);
+        try {
+            byte[] record = randomBytes(100, 5);
+            access.write(1000, record, 0, record.length, "key");
+            assertEquals(1100, access.length());
+            access.write(0, record, 0, record.length, "key");
+            assertEquals(1100, access.length());
+            access.setLength(500);
+            assertEquals(500, access.length());
+        } finally {
+            access.close();
+        }
+    }
+
+    @Test
+    public void testFilesAreInterchangeableBetweenEngines() throws Exception {
+        byte[] record = randomBytes(1000, 7);
+
+        DiskDataAccess channel = new ChannelDiskDataAccess(file);
+        channel.write(12345, record, 0, record.length, "key");
+        channel.close();
+
+        DiskDataAccess mapped = new MappedDiskDataAccess(file);
+        assertArrayEquals(record, toArray(mapped.read(12345, record.length, "key")));
+        mapped.close();
+
+        DiskDataAccess striped = new StripedDiskDataAccess(file, 4);
+        assertArrayEquals(record, toArray(striped.read(12345, record.length, "key")));
+        striped.close();
+    }
+
+    @Test
+    public void testChannelSurvivesInterruptedReader() throws Exception {
+        DiskDataAccess access = new ChannelDiskDataAccess(file);
+        try {
+            byte[] record = randomBytes(128, 3);
+            access.write(0, record, 0, record.length, "key");
+
+            Thread.currentThread().interrupt();
+            try {
+                access.read(0, record.length, "key");
+            } catch (IOException e) {
+                // expected : the interrupt closes the underlying channel
+            } finally {
+                Thread.interrupted();
+            }
+
+            assertArrayEquals(record, toArray(access.read(0, record.length, "key")));
+        } finally {
+            access.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentChannelReads() throws Exception {
+        final DiskDataAccess access = new ChannelDiskDataAccess(file);
+        final int records = 256;
+        final int size = 512;
+        try {
+            for (int i = 0; i < records; i++) {
+                byte[] record = randomBytes(size, i);
+                access.write(((long) i) * size, record, 0, size, i);
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<Void>> futures = new ArrayList<Future<Void>>();
+                for (int t = 0; t < 8; t++) {
+                    futures.add(executor.submit(new Callable<Void>() {
+                        public Void call() throws Exception {
+                            for (int i = 0; i < records; i++) {
+                                assertArrayEquals(randomBytes(size, i), toArray(access.read(((long) i) * size, size, i)));
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<Void> f : futures) {
+                    f.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+        } finally {
+            access.close();
+        }
+    }
+
+    @Test
+    public void testCacheOverflowsToDiskWithEachMode() throws Exception {
+        for (DiskAccessMode mode : DiskAccessMode.values()) {
+            CacheManager manager = new CacheManager(new Configuration().name("DiskDataAccessTest-" + mode)
+                .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir") + File.separator + "DiskDataAccessTest")));
+            try {
+                Cache cache = new Cache(new CacheConfiguration("disk-" + mode, 10).overflowToDisk(true).diskAccessMode(mode));
+                manager.addCache(cache);
+                for (int i = 0; i < 100; i++) {
+                    cache.put(new Element(i, "value-" + i));
+                }
+                DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+                for (int i = 0; i < 100; i++) {
+                    assertEquals("value-" + i, cache.get(i).getObjectValue());
+                }
+            } finally {
+                manager.shutdown();
+            }
+        }
+    }
+
+    private static void assertRoundTrip(DiskDataAccess access) throws IOException {
+        try {
+            byte[] first = randomBytes(100, 1);
+            byte[] second = randomBytes(300, 2);
+            access.write(0, first, 0, first.length, "a");
+            access.write(100, second, 50, 200, "b");
+
+            assertArrayEquals(first, toArray(access.read(0, first.length, "a")));
+            byte[] expected = new byte[200];
+            System.arraycopy(second, 50, expected, 0, 200);
+            assertArrayEquals(expected, toArray(access.read(100, 200, "b")));
+            assertTrue(access.length() >= 300);
+        } finally {
+            access.close();
+        }
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,116 @@
+package net.sf.ehcache.store.offheap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.MemoryUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapStoreTest {
+
+    private CacheManager manager;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("OffHeapStoreTest"));
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testAllocatorRoundTripAndReuse() {
+        SlabAllocator allocator = new SlabAllocator(MemoryUnit.MEGABYTES.toBytes(1));
+        try {
+            byte[] small = filled(100, (byte) 1);
+            byte[] huge = filled(allocator.getPageSize() * 2, (byte) 2);
+
+            long smallAddress = allocator.allocate(small.length);
+            long hugeAddress = allocator.allocate(huge.length);
+            allocator.write(smallAddress, small, small.length);
+            allocator.write(hugeAddress, huge, huge.length);
+
+            assertArrayEquals(small, allocator.read(smallAddress, small.length));
+            assertArrayEquals(huge, allocator.read(hugeAddress, huge.length));
+            assertTrue(allocator.chunkSize(smallAddress) >= small.length);
+
+            allocator.free(smallAddress);
+            assertEquals(smallAddress, allocator.allocate(small.length));
+            allocator.free(smallAddress);
+            allocator.free(hugeAddress);
+            assertEquals(0, allocator.getOccupied());
+        } finally {
+            allocator.dispose();
+        }
+    }
+
+    @Test
+    public void testAllocatorNeverExceedsCapacity() {
+        long capacity = MemoryUnit.MEGABYTES.toBytes(1);
+        SlabAllocator allocator = new SlabAllocator(capacity);
+        try {
+            int allocated = 0;
+            while (allocator.allocate(1000) >= 0) {
+                allocated++;
+            }
+            assertTrue(allocated > 0);
+            assertTrue(allocator.getReserved() <= capacity);
+        } finally {
+            allocator.dispose();
+        }
+    }
+
+    @Test
+    public void testCacheEvictsWithinOffHeapCapacity() {
+        Cache cache = new Cache(new CacheConfiguration("bounded", 10).overflowToOffHeap(true).maxBytesLocalOffHeap(2, MemoryUnit.MEGABYTES));
+        manager.addCache(cache);
+
+        for (int i = 0; i < 10000; i++) {
+            cache.put(new Element(i, filled(1024, (byte) i)));
+        }
+
+        assertTrue(cache.getSize() < 10000);
+        assertTrue(cache.getSize() > 0);
+        Element last = cache.get(9999);
+        assertNotNull(last);
+        assertArrayEquals(filled(1024, (byte) 9999), (byte[]) last.getObjectValue());
+    }
+
+    @Test
+    public void testRemoveAndReplaceThroughOffHeap() {
+        Cache cache = new Cache(new CacheConfiguration("ops", 1).overflowToOffHeap(true).maxBytesLocalOffHeap(1, MemoryUnit.MEGABYTES));
+        manager.addCache(cache);
+
+        for (int i = 0; i < 50; i++) {
+            cache.put(new Element(i, "value-" + i));
+        }
+        assertTrue(cache.remove(10));
+        assertEquals(null, cache.get(10));
+        assertNotNull(cache.replace(new Element(20, "replaced")));
+        assertEquals("replaced", cache.get(20).getObjectValue());
+        assertEquals(null, cache.putIfAbsent(new Element(10, "back")));
+        assertEquals("back", cache.get(10).getObjectValue());
+        cache.removeAll();
+        assertEquals(0, cache.getSize());
+    }
+
+    private static byte[] filled(int size, byte value) {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, value);
+        return bytes;
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.ehcache.search.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.ehcache.search.expression.And;
+import net.sf.ehcache.search.expression.Criteria;
+import net.sf.ehcache.search.expression.Not;
+import net.sf.ehcache.search.expression.Or;
+
+/**
+ * A criteria model compiled against a class loader, so that it can be turned into ehcache criteria repeatedly.
+ * <p>
+ * Attribute names, literals and enum constants are resolved once. Sub-trees without parameter placeholders are built
+ * once and shared by every binding, and nested and/or groups are flattened into single n-ary criteria, so that
+ * evaluation does not walk a chain of binary nodes.
+ */
+abstract class CompiledCriteria {
+
+    /**
+     * Creates the ehcache criteria for the given parameter values.
+     *
+     * @param parameters the parameter values, indexed from 0
+     * @return the criteria
+     */
+    abstract Criteria bind(Object[] parameters);
+
+    /**
+     * Whether the criteria are the same for all parameter values.
+     *
+     * @return true if no parameter is referenced
+     */
+    boolean isConstant() {
+        return false;
+    }
+
+    /**
+     * Compiles the given criteria model.
+     *
+     * @param crit   the criteria model
+     * @param loader the class loader resolving enum literals
+     * @return the compiled criteria
+     */
+    static CompiledCriteria compile(MCriteria crit, ClassLoader loader) {
+        if (crit instanceof MCriteria.Simple) {
+            MCriteria.Simple simple = (MCriteria.Simple)crit;
+            if (simple.getRhs() instanceof MValue.MParameter) {
+                return new SimpleNode(simple, Operand.compile(simple.getRhs(), loader));
+            }
+        } else if (crit instanceof MCriteria.Between) {
+            MCriteria.Between between = (MCriteria.Between)crit;
+            Operand min = Operand.compile(between.getMin(), loader);
+            Operand max = Operand.compile(between.getMax(), loader);
+            if (min.isParameter() || max.isParameter()) {
+                return new BetweenNode(between, min, max);
+            }
+        } else if (crit instanceof MCriteria.And) {
+            List<MCriteria> members = new ArrayList<MCriteria>();
+            flattenAnd((MCriteria.And)crit, members);
+            return junction(true, members, loader);
+        } else if (crit instanceof MCriteria.Or) {
+            List<MCriteria> members = new ArrayList<MCriteria>();
+            flattenOr((MCriteria.Or)crit, members);
+            return junction(false, members, loader);
+        } else if (crit instanceof MCriteria.Not) {
+            CompiledCriteria negated = compile(((MCriteria.Not)crit).getCriterium(), loader);
+            if (!negated.isConstant()) {
+                return new NotNode(negated);
+            }
+            return new Constant(new Not(negated.bind(null)));
+        }
+        return new Constant(crit.asEhcacheObject(loader));
+    }
+
+    private static void flattenAnd(MCriteria.And and, List<MCriteria> members) {
+        for (MCriteria member : and.getCriteria()) {
+            if (member instanceof MCriteria.And) {
+                flattenAnd((MCriteria.And)member, members);
+            } else {
+                members.add(member);
+            }
+        }
+    }
+
+    private static void flattenOr(MCriteria.Or or, List<MCriteria> members) {
+        for (MCriteria member : or.getCrits()) {
+            if (member instanceof MCriteria.Or) {
+                flattenOr((MCriteria.Or)member, members);
+            } else {
+                members.add(member);
+            }
+        }
+    }
+
+    private static CompiledCriteria junction(boolean and, List<MCriteria> members, ClassLoader loader) {
+        CompiledCriteria[] compiled = new CompiledCriteria[members.size()];
+        boolean constant = true;
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = compile(members.get(i), loader);
+            constant &= compiled[i].isConstant();
+        }
+        JunctionNode junction = new JunctionNode(and, compiled);
+        return constant ? new Constant(junction.bind(null)) : junction;
+    }
+
+    /**
+     * Criteria built once, independent of any parameter.
+     */
+    private static final class Constant extends CompiledCriteria {
+
+        private final Criteria criteria;
+
+        private Constant(Criteria criteria) {
+            this.criteria = criteria;
+        }
+
+        @Override
+        Criteria bind(Object[] parameters) {
+            return criteria;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+    }
+
+    /**
+     * A right hand side value, either resolved at compile time or taken from the bound parameters.
+     */
+    private static final class Operand {
+
+        private final int parameter;
+        private final Object value;
+
+        private Operand(int parameter, Object value) {
+            this.parameter = parameter;
+            this.value = value;
+        }
+
+        static Operand compile(ModelElement<?> element, ClassLoader loader) {
+            if (element instanceof MValue.MParameter) {
+                return new Operand(((MValue.MParameter)element).getIndex() - 1, null);
+            }
+            return new Operand(-1, element.asEhcacheObject(loader));
+        }
+
+        boolean isParameter() {
+            return parameter >= 0;
+        }
+
+        Object valueFor(Object[] parameters) {
+            return isParameter() ? parameters[parameter] : value;
+        }
+    }
+
+    /**
+     * A comparison against a parameter.
+     */
+    private static final class SimpleNode extends CompiledCriteria {
+
+        private final MCriteria.Simple simple;
+        private final Operand operand;
+
+        private SimpleNode(MCriteria.Simple simple, Operand operand) {
+            this.simple = simple;
+            this.operand = operand;
+        }
+
+        @Override
+        Criteria bind(Object[] parameters) {
+            return simple.criteriaFor(operand.valueFor(parameters));
+        }
+    }
+
+    /**
+     * A range with at least one parameter bound.
+     */
+    private static final class BetweenNode extends CompiledCriteria {
+
+        private final MCriteria.Between between;
+        private final Operand min;
+        private final Operand max;
+
+        private BetweenNode(MCriteria.Between between, Operand min, Operand max) {
+            this.between = between;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        Criteria bind(Object[] parameters) {
+            return between.criteriaFor(min.valueFor(parameters), max.valueFor(parameters));
+        }
+    }
+
+    /**
+     * A negation of parameterized criteria.
+     */
+    private static final class NotNode extends CompiledCriteria {
+
+        private final CompiledCriteria negated;
+
+        private NotNode(CompiledCriteria negated) {
+            this.negated = negated;
+        }
+
+        @Override
+        Criteria bind(Object[] parameters) {
+            return new Not(negated.bind(parameters));
+        }
+    }
+
+    /**
+     * A flattened and/or group.
+     */
+    private static final class JunctionNode extends CompiledCriteria {
+
+        private final boolean and;
+        private final CompiledCriteria[] members;
+
+        private JunctionNode(boolean and, CompiledCriteria[] members) {
+            this.and = and;
+            this.members = members;
+        }
+
+        @Override
+        Criteria bind(Object[] parameters) {
+            Criteria first = members[0].bind(parameters);
+            if (members.length == 1) {
+                return first;
+            }
+            Criteria second = members[1].bind(parameters);
+            Criteria crit = and ? new And(first, second) : new Or(first, second);
+            for (int i = 2; i < members.length; i++) {
+                // And.and and Or.or append to the existing group rather than nesting
+                crit = and ? crit.and(members[i].bind(parameters)) : crit.or(members[i].bind(parameters));
+            }
+            return crit;
+        }
+    }
+}
@@ -165,19 +165,29 @@ public interface MCriteria extends ModelElement<Criteria> {
          * @see net.sf.ehcache.search.parser.MCriteria#asCriteria()
          */
         public Criteria asEhcacheObject(ClassLoader loader) {
+            return criteriaFor(rhs == null ? null : getRhs().asEhcacheObject(loader));
+        }
+
+        /**
+         * Creates the ehcache criteria comparing the attribute to the given, already resolved, value.
+         *
+         * @param value the right hand side value
+         * @return the criteria
+         */
+        Criteria criteriaFor(Object value) {
             switch (op) {
                 case EQ:
-                    return new EqualTo(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new EqualTo(attr.asEhcacheAttributeString(), value);
                 case NE:
-                    return new NotEqualTo(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new NotEqualTo(attr.asEhcacheAttributeString(), value);
                 case GT:
-                    return new GreaterThan(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new GreaterThan(attr.asEhcacheAttributeString(), value);
                 case LE:
-                    return new LessThanOrEqual(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new LessThanOrEqual(attr.asEhcacheAttributeString(), value);
                 case LT:
-                    return new LessThan(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new LessThan(attr.asEhcacheAttributeString(), value);
                 case GE:
-                    return new GreaterThanOrEqual(attr.asEhcacheAttributeString(), getRhs().asEhcacheObject(loader));
+                    return new GreaterThanOrEqual(attr.asEhcacheAttributeString(), value);
                 case NULL:
                     return new IsNull(attr.asEhcacheAttributeString());
                 case NOT_NULL:
@@ -328,8 +338,19 @@ public interface MCriteria extends ModelElement<Criteria> {
          * @see net.sf.ehcache.search.parser.MCriteria#asCriteria()
          */
         public Criteria asEhcacheObject(ClassLoader loader) {
-            return new net.sf.ehcache.search.expression.Between(attr.asEhcacheAttributeString(), getMin().asEhcacheObject(loader),
-                getMax().asEhcacheObject(loader), isIncludeMin(), isIncludeMax());
+            return criteriaFor(getMin().asEhcacheObject(loader), getMax().asEhcacheObject(loader));
+        }
+
+        /**
+         * Creates the ehcache criteria for the given, already resolved, bounds.
+         *
+         * @param minValue the lower bound
+         * @param maxValue the upper bound
+         * @return the criteria
+         */
+        Criteria criteriaFor(Object minValue, Object maxValue) {
+            return new net.sf.ehcache.search.expression.Between(attr.asEhcacheAttributeString(), minValue, maxValue,
+                isIncludeMin(), isIncludeMax());
         }
 
         /*
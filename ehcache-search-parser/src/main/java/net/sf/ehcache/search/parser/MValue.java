@@ -10,6 +10,7 @@ package net.sf.ehcache.search.parser;
 
 import java.util.Date;
 
+import net.sf.ehcache.search.SearchException;
 import net.sf.ehcache.search.parser.CustomParseException.Message;
 
 /**
@@ -438,6 +439,59 @@ public abstract class MValue<T> implements ModelElement<T> {
         }
     }
 
+    /**
+     * The model class for a {@code ?} parameter placeholder, bound when a {@link net.sf.ehcache.search.query.PreparedQuery} is executed.
+     */
+    public static class MParameter extends MValue<Object> {
+
+        /**
+         * The parameter index, starting at 1.
+         */
+        private final int index;
+
+        /**
+         * Instantiates a new m parameter.
+         *
+         * @param index the parameter index, starting at 1
+         */
+        public MParameter(Token tok, int index) {
+            super(tok, "parameter", null, Integer.toString(index));
+            this.index = index;
+        }
+
+        /**
+         * Gets the parameter index.
+         *
+         * @return the index, starting at 1
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see net.sf.ehcache.search.parser.MValue#asJavaObject()
+         */
+        @Override
+        protected Object constructJavaObject() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object asEhcacheObject(ClassLoader loader) {
+            throw new SearchException("No value bound for parameter " + index + ", statements with parameters must be prepared");
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see net.sf.ehcache.search.parser.MValue#toString()
+         */
+        @Override
+        public String toString() {
+            return "?";
+        }
+    }
+
     /**
      * The class for java enum instances
      */
@@ -19,6 +19,7 @@ import net.sf.ehcache.search.Attribute;
 import net.sf.ehcache.search.Direction;
 import net.sf.ehcache.search.Query;
 import net.sf.ehcache.search.SearchException;
+import net.sf.ehcache.search.expression.Criteria;
 import net.sf.ehcache.search.parser.MAggregate.AggOp;
 import net.sf.ehcache.store.StoreQuery;
 
@@ -75,6 +76,11 @@ public class ParseModel {
 
     private boolean cacheManagerNameWasAttempted = false;
 
+    /**
+     * The number of parameter placeholders.
+     */
+    private int parameterCount = 0;
+
     /**
      * Instantiates a new query parse model.
      */
@@ -263,15 +269,27 @@ public class ParseModel {
      * @param ehcache the ehcache
      * @return the query
      */
-    @SuppressWarnings("rawtypes")
     public Query getQuery(Ehcache ehcache) {
+        ClassLoader loader = ehcache.getCacheConfiguration().getClassLoader();
+        return getQuery(ehcache, criteria == null ? null : criteria.asEhcacheObject(loader));
+    }
+
+    /**
+     * Gets the query as an instantiated ehcache query object, using already built criteria.
+     *
+     * @param ehcache the ehcache
+     * @param crit    the criteria, or null for none
+     * @return the query
+     */
+    @SuppressWarnings("rawtypes")
+    Query getQuery(Ehcache ehcache, Criteria crit) {
     	ClassLoader loader = ehcache.getCacheConfiguration().getClassLoader();    	
     	
         Query q = ehcache.createQuery();
 
         // single criteria
-        if (criteria != null) {
-            q.addCriteria(criteria.asEhcacheObject(loader));
+        if (crit != null) {
+            q.addCriteria(crit);
         }
 
         // limit.
@@ -358,4 +376,22 @@ public class ParseModel {
     public String getCacheManagerName() {
         return this.cacheManagerName;
     }
+
+    /**
+     * Sets the number of parameter placeholders.
+     *
+     * @param parameterCount the parameter count
+     */
+    public void setParameterCount(int parameterCount) {
+        this.parameterCount = parameterCount;
+    }
+
+    /**
+     * Gets the number of parameter placeholders.
+     *
+     * @return the parameter count
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
 }
@@ -0,0 +1,89 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.ehcache.search.parser;
+
+import java.util.Arrays;
+
+import net.sf.ehcache.search.Query;
+import net.sf.ehcache.search.Results;
+import net.sf.ehcache.search.SearchException;
+import net.sf.ehcache.search.query.PreparedQuery;
+
+/**
+ * Prepared query binding parameters to a plan.
+ * <p>
+ * Instances hold the bound values; the underlying plan is shared through the plan cache of the
+ * {@link QueryManagerImpl}, so preparing the same statement again is cheap.
+ */
+final class PreparedQueryImpl implements PreparedQuery {
+
+    private final QueryPlan plan;
+    private final Object[] parameters;
+
+    /**
+     * Creates a prepared query for the given plan.
+     *
+     * @param plan the plan
+     */
+    PreparedQueryImpl(QueryPlan plan) {
+        this.plan = plan;
+        this.parameters = new Object[plan.getParameterCount()];
+    }
+
+    @Override
+    public String getStatement() {
+        return plan.getStatement();
+    }
+
+    @Override
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    @Override
+    public PreparedQuery setParameter(int index, Object value) throws SearchException {
+        if (index < 1 || index > parameters.length) {
+            throw new SearchException("Parameter index " + index + " is out of range, the statement has " + parameters.length
+                                      + " parameters");
+        }
+        if (value == null) {
+            throw new SearchException("Parameter " + index + " cannot be bound to null, use IS NULL instead");
+        }
+        parameters[index - 1] = value;
+        return this;
+    }
+
+    @Override
+    public PreparedQuery clearParameters() {
+        Arrays.fill(parameters, null);
+        return this;
+    }
+
+    @Override
+    public Query createQuery() throws SearchException {
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i] == null) {
+                throw new SearchException("No value bound for parameter " + (i + 1));
+            }
+        }
+        return plan.createQuery(parameters);
+    }
+
+    @Override
+    public Results execute() throws SearchException {
+        return createQuery().end().execute();
+    }
+}
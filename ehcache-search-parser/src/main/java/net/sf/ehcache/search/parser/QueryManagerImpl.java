@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +30,7 @@ import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.search.Query;
 import net.sf.ehcache.search.Results;
 import net.sf.ehcache.search.SearchException;
+import net.sf.ehcache.search.query.PreparedQuery;
 import net.sf.ehcache.search.query.QueryManager;
 
 /**
@@ -36,9 +38,28 @@ import net.sf.ehcache.search.query.QueryManager;
  */
 public class QueryManagerImpl implements QueryManager {
 
+    /**
+     * Default number of statements whose plans are kept by a query manager.
+     */
+    public static final int PLAN_CACHE_SIZE_DEFAULT = 128;
+
+    private static final Object[] NO_PARAMETERS = new Object[0];
+
     private final Map<CacheManager, List<Ehcache>> cacheManagerEhcacheMap = new HashMap<CacheManager, List<Ehcache>>();
 
+    private final Map<String, QueryPlan> plans;
+
     public QueryManagerImpl(Collection<Ehcache> ehcaches) {
+        this(ehcaches, PLAN_CACHE_SIZE_DEFAULT);
+    }
+
+    /**
+     * Creates a query manager keeping the plans of the given number of most recently used statements.
+     *
+     * @param ehcaches the caches that can be queried
+     * @param planCacheSize the number of plans kept, 0 to parse every statement
+     */
+    public QueryManagerImpl(Collection<Ehcache> ehcaches, int planCacheSize) {
         CacheManager cm;
         for (Ehcache ehcache : ehcaches) {
             cm = ehcache.getCacheManager();
@@ -50,35 +71,54 @@ public class QueryManagerImpl implements QueryManager {
                 cacheManagerEhcacheMap.put(cm, ehcacheList);
             }
         }
+        this.plans = new PlanCache(Math.max(0, planCacheSize));
     }
 
     Results search(Ehcache cache, String statement) throws SearchException {
-        return createQuery(cache, statement).end().execute();
+        return parse(statement).getQuery(cache).end().execute();
     }
 
     @Override
     public Query createQuery(String statement) throws SearchException {
-        Map<String, String> cacheManagerCacheNameMap = extractSearchCacheName(statement);
-        String cacheManagerName = cacheManagerCacheNameMap.values().iterator().next();
-        String cacheName = cacheManagerCacheNameMap.keySet().iterator().next();
-        if (cacheManagerCacheNameMap.size() == 0) {
-            throw new SearchException("Please specify the cache's name with the FROM clause.");
-        } else {
-            return createQuery(getCache(cacheName, cacheManagerName), statement);
+        QueryPlan plan = plan(statement);
+        if (plan.getParameterCount() > 0) {
+            throw new SearchException("The statement has " + plan.getParameterCount() + " parameters, use prepareQuery to bind them.");
+        }
+        return plan.createQuery(NO_PARAMETERS);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Parsed statements are kept in a plan cache keyed by the statement text, so that preparing or creating a query for a
+     * recently used statement neither parses it nor rebuilds its constant criteria again.
+     */
+    @Override
+    public PreparedQuery prepareQuery(String statement) throws CacheException {
+        return new PreparedQueryImpl(plan(statement));
+    }
+
+    private QueryPlan plan(String statement) throws CacheException {
+        QueryPlan plan;
+        synchronized (plans) {
+            plan = plans.get(statement);
+        }
+        if (plan == null) {
+            ParseModel model = parse(statement);
+            if (model.getCacheName() == null) {
+                throw new SearchException("Please specify the cache's name with the FROM clause.");
+            }
+            plan = new QueryPlan(statement, getCache(model.getCacheName(), model.getCacheManagerName()), model);
+            synchronized (plans) {
+                plans.put(statement, plan);
+            }
         }
+        return plan;
     }
 
     // returns a map of cache name and cache manager name
     Map<String, String> extractSearchCacheName(String statement) throws SearchException {
-        EhcacheSearchParser parser = new EhcacheSearchParser(new StringReader(statement));
-        ParseModel model = null;
-        try {
-            model = parser.QueryStatement();
-        } catch (ParseException p) {
-            throw new SearchException(p);
-        } catch (TokenMgrError e) {
-            throw new SearchException(e);   
-        }
+        ParseModel model = parse(statement);
         Map<String, String> retMap = new HashMap<String, String>();
         String cacheName = model.getCacheName();
         String cacheManagerName = model.getCacheManagerName();
@@ -86,18 +126,15 @@ public class QueryManagerImpl implements QueryManager {
         return retMap;
     }
 
-    private Query createQuery(Ehcache cache, String statement) throws SearchException {
+    private ParseModel parse(String statement) throws SearchException {
         EhcacheSearchParser parser = new EhcacheSearchParser(new StringReader(statement));
-        ParseModel model;
         try {
-            model = parser.QueryStatement();
+            return parser.QueryStatement();
         } catch (ParseException p) {
             throw new SearchException(p);
         } catch (TokenMgrError e) {
             throw new SearchException(e);   
         }
-        
-        return model.getQuery(cache);
     }
 
     private Ehcache getCache(String cacheName, String cacheManagerName) throws CacheException {
@@ -138,6 +175,24 @@ public class QueryManagerImpl implements QueryManager {
             }
         }
     }
-}
 
+    /**
+     * Least recently used map of statement plans.
+     */
+    private static final class PlanCache extends LinkedHashMap<String, QueryPlan> {
 
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        private PlanCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, QueryPlan> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.ehcache.search.parser;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.search.Query;
+
+/**
+ * A parsed statement resolved against its cache, with its criteria compiled.
+ * <p>
+ * Plans are immutable and shared by all the {@link PreparedQueryImpl} instances created for the same statement text.
+ */
+final class QueryPlan {
+
+    private final String statement;
+    private final Ehcache cache;
+    private final ParseModel model;
+    private final CompiledCriteria criteria;
+
+    /**
+     * Creates a plan.
+     *
+     * @param statement the statement text
+     * @param cache     the cache named in the FROM clause
+     * @param model     the parsed statement
+     */
+    QueryPlan(String statement, Ehcache cache, ParseModel model) {
+        this.statement = statement;
+        this.cache = cache;
+        this.model = model;
+        if (model.getCriteria() == null) {
+            this.criteria = null;
+        } else {
+            this.criteria = CompiledCriteria.compile(model.getCriteria(), cache.getCacheConfiguration().getClassLoader());
+        }
+    }
+
+    /**
+     * Gets the statement text.
+     *
+     * @return the statement
+     */
+    String getStatement() {
+        return statement;
+    }
+
+    /**
+     * Gets the number of parameter placeholders.
+     *
+     * @return the parameter count
+     */
+    int getParameterCount() {
+        return model.getParameterCount();
+    }
+
+    /**
+     * Creates the query for the given parameter values.
+     *
+     * @param parameters the parameter values, indexed from 0
+     * @return the query
+     */
+    Query createQuery(Object[] parameters) {
+        return model.getQuery(cache, criteria == null ? null : criteria.bind(parameters));
+    }
+}
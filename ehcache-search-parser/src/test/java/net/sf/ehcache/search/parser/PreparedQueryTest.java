@@ -0,0 +1,154 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.search.parser;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.SearchException;
+import net.sf.ehcache.search.expression.And;
+import net.sf.ehcache.search.expression.Criteria;
+import net.sf.ehcache.search.expression.EqualTo;
+import net.sf.ehcache.search.expression.Or;
+import net.sf.ehcache.search.query.PreparedQuery;
+import net.sf.ehcache.search.query.QueryManager;
+import net.sf.ehcache.search.query.QueryManagerBuilder;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PreparedQueryTest {
+
+    private CacheManager cacheManager;
+    private QueryManager queryManager;
+
+    @Before
+    public void setUp() {
+        cacheManager = new CacheManager(new Configuration().name("PreparedQueryTest"));
+        Searchable searchable = new Searchable();
+        searchable.addSearchAttribute(new SearchAttribute().name("age").className(Indexer.class.getName()));
+        searchable.addSearchAttribute(new SearchAttribute().name("zip").className(Indexer.class.getName()));
+        cacheManager.addCache(new Cache(new CacheConfiguration().name("people").maxEntriesLocalHeap(1000).searchable(searchable)));
+        Ehcache cache = cacheManager.getEhcache("people");
+        for (int i = 10; i < 30; i++) {
+            Map<String, Object> nv = new HashMap<String, Object>();
+            nv.put("age", i);
+            nv.put("zip", "210" + i);
+            cache.put(new Element(i, new CacheValue("John Frisk " + i, nv)));
+        }
+        queryManager = QueryManagerBuilder.newQueryManagerBuilder().addCache(cache).build();
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testParametersCanBeRebound() {
+        PreparedQuery query = queryManager.prepareQuery("select key from people where (age > ? and age < ?)");
+        Assert.assertEquals(2, query.getParameterCount());
+        Assert.assertEquals(1, query.setParameter(1, 11).setParameter(2, 13).execute().size());
+        Assert.assertEquals(9, query.setParameter(1, 10).setParameter(2, 20).execute().size());
+        Assert.assertEquals(0, query.setParameter(2, 5).execute().size());
+    }
+
+    @Test
+    public void testParametersMixedWithLiterals() {
+        PreparedQuery query = queryManager.prepareQuery("select key from people where (zip = '21015' or age = ? or age between ? and 12)");
+        Assert.assertEquals(4, query.setParameter(1, 20).setParameter(2, 11).execute().size());
+        Assert.assertEquals(2, query.setParameter(1, 15).setParameter(2, 12).execute().size());
+    }
+
+    @Test
+    public void testStatementsWithoutParameters() {
+        String statement = "select key from people where (not (age < 20))";
+        Assert.assertEquals(10, queryManager.createQuery(statement).end().execute().size());
+        Assert.assertEquals(10, queryManager.createQuery(statement).end().execute().size());
+        Assert.assertEquals(10, queryManager.prepareQuery(statement).execute().size());
+
+        QueryManagerImpl uncached = new QueryManagerImpl(Collections.<Ehcache>singleton(cacheManager.getEhcache("people")), 0);
+        Assert.assertEquals(10, uncached.createQuery(statement).end().execute().size());
+    }
+
+    @Test
+    public void testUnboundParameters() {
+        String statement = "select key from people where age = ?";
+        try {
+            queryManager.createQuery(statement);
+            Assert.fail();
+        } catch (SearchException e) {
+            // expected
+        }
+
+        PreparedQuery query = queryManager.prepareQuery(statement);
+        try {
+            query.execute();
+            Assert.fail();
+        } catch (SearchException e) {
+            // expected
+        }
+        try {
+            query.setParameter(2, 12);
+            Assert.fail();
+        } catch (SearchException e) {
+            // expected
+        }
+        try {
+            query.setParameter(1, null);
+            Assert.fail();
+        } catch (SearchException e) {
+            // expected
+        }
+        Assert.assertEquals(1, query.setParameter(1, 12).execute().size());
+        try {
+            query.clearParameters().execute();
+            Assert.fail();
+        } catch (SearchException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNestedGroupsAreFlattened() throws CustomParseException {
+        ClassLoader loader = getClass().getClassLoader();
+        MCriteria.Simple age = new MCriteria.Simple(new MAttribute("age"), MCriteria.SimpleOp.EQ, new MValue.MInt(null, "12"));
+        MCriteria.Simple zip = new MCriteria.Simple(new MAttribute("zip"), MCriteria.SimpleOp.EQ, new MValue.MString(null, "21012"));
+        MCriteria.Simple parameter = new MCriteria.Simple(new MAttribute("age"), MCriteria.SimpleOp.EQ, new MValue.MParameter(null, 1));
+
+        Criteria and = CompiledCriteria.compile(new MCriteria.And(age, new MCriteria.And(zip, parameter)), loader)
+            .bind(new Object[] {13});
+        Assert.assertEquals(3, ((And)and).getCriterion().length);
+        Assert.assertEquals(13, ((EqualTo)((And)and).getCriterion()[2]).getValue());
+
+        CompiledCriteria constant = CompiledCriteria.compile(new MCriteria.Or(new MCriteria.Or(age, zip), age), loader);
+        Assert.assertTrue(constant.isConstant());
+        Assert.assertSame(constant.bind(null), constant.bind(null));
+        Assert.assertEquals(3, ((Or)constant.bind(null)).getCriterion().length);
+    }
+}